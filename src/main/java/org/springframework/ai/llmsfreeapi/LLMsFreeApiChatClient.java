@@ -2,6 +2,7 @@ package org.springframework.ai.llmsfreeapi;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 import org.springframework.ai.chat.ChatClient;
 import org.springframework.ai.chat.ChatResponse;
 import org.springframework.ai.chat.Generation;
@@ -11,26 +12,72 @@ import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.llmsfreeapi.api.LLMsFreeApi;
 import org.springframework.ai.llmsfreeapi.api.LLMsFreeApiChatOptions;
+import org.springframework.ai.llmsfreeapi.api.LLMsFreeApiVirtualThreads;
+import org.springframework.ai.llmsfreeapi.api.RequestDeadline;
+import org.springframework.ai.llmsfreeapi.api.RequestPriority;
+import org.springframework.ai.llmsfreeapi.attachment.AttachmentCache;
+import org.springframework.ai.llmsfreeapi.attachment.AttachmentPrefetcher;
 import org.springframework.ai.llmsfreeapi.chat.messages.DocumentChatMessage;
 import org.springframework.ai.llmsfreeapi.chat.messages.ImageChatMessage;
+import org.springframework.ai.llmsfreeapi.conversation.ConversationAffinityRegistry;
+import org.springframework.ai.llmsfreeapi.function.FunctionResultCache;
+import org.springframework.ai.llmsfreeapi.function.ToolLoopLimitExceededException;
+import org.springframework.ai.llmsfreeapi.function.ToolLoopLimits;
+import org.springframework.ai.llmsfreeapi.metadata.LLMsFreeApiChatResponseMetadata;
+import org.springframework.ai.llmsfreeapi.metadata.LLMsFreeApiUsage;
+import org.springframework.ai.llmsfreeapi.metrics.LLMsFreeApiMetrics;
+import org.springframework.ai.llmsfreeapi.stream.JsonStreamParser;
+import org.springframework.ai.llmsfreeapi.stream.ResumableChatEvent;
+import org.springframework.ai.llmsfreeapi.stream.ResumableStreamRegistry;
+import org.springframework.ai.llmsfreeapi.stream.SharedChatStream;
+import org.springframework.ai.llmsfreeapi.stream.SharedStreamRegistry;
+import org.springframework.ai.llmsfreeapi.tenant.TenantAdmissionController;
+import org.springframework.ai.llmsfreeapi.tokenizer.HistoryTrimStrategy;
+import org.springframework.ai.llmsfreeapi.tokenizer.TokenEstimator;
 import org.springframework.ai.model.ModelOptionsUtils;
 import org.springframework.ai.model.function.AbstractFunctionCallSupport;
+import org.springframework.ai.model.function.FunctionCallback;
 import org.springframework.ai.model.function.FunctionCallbackContext;
 import org.springframework.ai.retry.RetryUtils;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.core.io.Resource;
 import org.springframework.http.ResponseEntity;
 import org.springframework.retry.support.RetryTemplate;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
+import org.springframework.util.MimeType;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 public class LLMsFreeApiChatClient
         extends AbstractFunctionCallSupport<LLMsFreeApi.ChatCompletionMessage, LLMsFreeApi.ChatCompletionRequest, ResponseEntity<LLMsFreeApi.ChatCompletion>>
         implements ChatClient, StreamingChatClient {
 
     private final Logger log = LoggerFactory.getLogger(getClass());
+    /**
+     * Priority and deadline of the call running on the current thread, for the tool rounds
+     * issued through {@link #doChatCompletion(LLMsFreeApi.ChatCompletionRequest)}.
+     */
+    private static final ThreadLocal<CallContext> CURRENT_CALL = new ThreadLocal<>();
+    /**
+     * Retries of a stream failing before its first chunk, within its deadline.
+     */
+    private static final int STREAM_MAX_RETRIES = 3;
+    private static final Duration STREAM_RETRY_BACKOFF = Duration.ofMillis(500);
     /**
      * Default options to be used for all chat requests.
      */
@@ -40,6 +87,50 @@ public class LLMsFreeApiChatClient
      */
     private final LLMsFreeApi llmsFreeApi;
     private final RetryTemplate retryTemplate;
+    /**
+     * Registry of the streams started with {@link #streamResumable(Prompt)}.
+     */
+    private ResumableStreamRegistry resumableStreamRegistry;
+    /**
+     * Registry of the streams started with {@link #streamShared(String, Prompt)}.
+     */
+    private SharedStreamRegistry sharedStreamRegistry;
+    /**
+     * Upstream conversations of the chat sessions, {@code null} if conversation reuse is disabled.
+     */
+    private ConversationAffinityRegistry conversationAffinityRegistry;
+    /**
+     * Estimated prompt tokens a request may have, 0 for no limit.
+     */
+    private int maxPromptTokens = 0;
+    private HistoryTrimStrategy historyTrimStrategy = HistoryTrimStrategy.NONE;
+    /**
+     * Admission control of the tenants' calls, {@code null} if disabled.
+     */
+    private TenantAdmissionController tenantAdmissionController;
+    /**
+     * Cache of function results, {@code null} if disabled.
+     */
+    private FunctionResultCache functionResultCache;
+    private ToolLoopLimits toolLoopLimits = ToolLoopLimits.DEFAULT;
+    /**
+     * Encodings of the local and in-memory files of the image and document messages.
+     */
+    private AttachmentCache attachmentCache;
+    /**
+     * Checks of the attachment URLs, {@code null} if disabled.
+     */
+    private AttachmentPrefetcher attachmentPrefetcher;
+    /**
+     * Scheduler the chunks of streams are handled on, {@code null} for the threads of the client.
+     */
+    private Scheduler toolScheduler;
+
+    private Scheduler callScheduler;
+    /**
+     * Tool definitions sent with the requests, by function name, built once per callback.
+     */
+    private final Map<String, FunctionToolPayload> functionTools = new ConcurrentHashMap<>();
 
     public LLMsFreeApiChatClient(LLMsFreeApi llmsFreeApi) {
         this(llmsFreeApi, LLMsFreeApiChatOptions.builder()
@@ -60,17 +151,181 @@ public class LLMsFreeApiChatClient
         this.llmsFreeApi = llmsFreeApi;
         this.defaultOptions = options;
         this.retryTemplate = retryTemplate;
+        this.resumableStreamRegistry = new ResumableStreamRegistry(ResumableStreamRegistry.DEFAULT_MAX_STREAMS,
+                ResumableStreamRegistry.DEFAULT_BUFFER_SIZE, ResumableStreamRegistry.DEFAULT_TTL,
+                ResumableStreamRegistry.DEFAULT_GRACE_PERIOD, llmsFreeApi.getMetrics());
+        this.sharedStreamRegistry = new SharedStreamRegistry(SharedStreamRegistry.DEFAULT_MAX_STREAMS,
+                SharedStreamRegistry.DEFAULT_BUFFER_SIZE, SharedStreamRegistry.DEFAULT_TTL,
+                SharedStreamRegistry.DEFAULT_GRACE_PERIOD, llmsFreeApi.getMetrics());
+        this.attachmentCache = new AttachmentCache(llmsFreeApi.getMetrics());
+    }
+
+    public void setResumableStreamRegistry(ResumableStreamRegistry resumableStreamRegistry) {
+        Assert.notNull(resumableStreamRegistry, "ResumableStreamRegistry must not be null");
+        this.resumableStreamRegistry = resumableStreamRegistry;
+    }
+
+    public void setSharedStreamRegistry(SharedStreamRegistry sharedStreamRegistry) {
+        Assert.notNull(sharedStreamRegistry, "SharedStreamRegistry must not be null");
+        this.sharedStreamRegistry = sharedStreamRegistry;
+    }
+
+    /**
+     * Enable server-side conversation reuse. Prompts whose {@link LLMsFreeApiChatOptions#getSessionId()
+     * session id} is set continue the upstream conversation of that session and only send
+     * the messages added since the previous turn.
+     * @param conversationAffinityRegistry the registry tracking the upstream conversations.
+     */
+    public void setConversationAffinityRegistry(ConversationAffinityRegistry conversationAffinityRegistry) {
+        this.conversationAffinityRegistry = conversationAffinityRegistry;
+    }
+
+    /**
+     * Limit the estimated size of the requests.
+     * @param maxPromptTokens the estimated prompt tokens a request may have, 0 for no limit.
+     * @param historyTrimStrategy how a conversation history exceeding the limit is handled.
+     */
+    public void setPromptTokenBudget(int maxPromptTokens, HistoryTrimStrategy historyTrimStrategy) {
+        Assert.isTrue(maxPromptTokens >= 0, "maxPromptTokens must not be negative");
+        Assert.notNull(historyTrimStrategy, "HistoryTrimStrategy must not be null");
+        this.maxPromptTokens = maxPromptTokens;
+        this.historyTrimStrategy = historyTrimStrategy;
+    }
+
+
+    /**
+     * Enable tenant admission control. Calls whose tenant is set, through
+     * {@link LLMsFreeApiChatOptions#getTenantId()} or the
+     * {@link TenantAdmissionController#TENANT_ATTRIBUTE} request attribute, are subject to
+     * the quotas of their tenant.
+     * @param tenantAdmissionController the admission control.
+     */
+    public void setTenantAdmissionController(TenantAdmissionController tenantAdmissionController) {
+        this.tenantAdmissionController = tenantAdmissionController;
+    }
+
+    /**
+     * Reuse the results of the functions cached by the given cache instead of calling
+     * them again with the same arguments.
+     * @param functionResultCache the cache.
+     */
+    public void setFunctionResultCache(FunctionResultCache functionResultCache) {
+        this.functionResultCache = functionResultCache;
+    }
+
+    /**
+     * Limit the tool-calling loop of the chat calls.
+     * @param toolLoopLimits the limits, {@link ToolLoopLimits#DEFAULT} by default.
+     */
+    public void setToolLoopLimits(ToolLoopLimits toolLoopLimits) {
+        Assert.notNull(toolLoopLimits, "ToolLoopLimits must not be null");
+        this.toolLoopLimits = toolLoopLimits;
+    }
+
+    /**
+     * Check the URLs of the image and document messages before the requests are sent, and
+     * optionally send the files inline.
+     * @param attachmentPrefetcher the prefetcher, {@code null} to disable the checks.
+     */
+    public void setAttachmentPrefetcher(AttachmentPrefetcher attachmentPrefetcher) {
+        this.attachmentPrefetcher = attachmentPrefetcher;
+    }
+
+    /**
+     * Encode the files of the image and document messages with the given cache, e.g. to
+     * share it between clients or to change its size.
+     * @param attachmentCache the cache.
+     */
+    public void setAttachmentCache(AttachmentCache attachmentCache) {
+        Assert.notNull(attachmentCache, "AttachmentCache must not be null");
+        this.attachmentCache = attachmentCache;
+    }
+
+    /**
+     * Handle the chunks of streams on the given scheduler rather than on the event loop of
+     * the reactive client, so that their tool call rounds, which run the callbacks and send
+     * the follow-up requests blocking, can block, e.g. on virtual threads.
+     * @param toolScheduler the scheduler, {@code null} for the event loop.
+     */
+    public void setToolScheduler(Scheduler toolScheduler) {
+        this.toolScheduler = toolScheduler;
     }
 
+    /**
+     * Run the blocking calls of platform threads on the given scheduler, e.g. on virtual
+     * threads, the calling thread only waiting for their result: their waits for a token
+     * or a tenant slot, retry back-off sleeps, exchanges and tool callbacks then park a
+     * virtual thread. Calls of virtual threads stay on them. The priority, tenant,
+     * deadline and session of a call are resolved on the calling thread, e.g. from the
+     * attributes of its web request, and the MDC is carried over.
+     * @param callScheduler the scheduler, {@code null} for the calling thread.
+     */
+    public void setCallScheduler(Scheduler callScheduler) {
+        this.callScheduler = callScheduler;
+    }
 
     @Override
     public ChatResponse call(Prompt prompt) {
 
         var request = createRequest(prompt, false);
+        String sessionId = getSessionId(prompt);
+        var call = new CallContext(getPriority(prompt), getDeadline(prompt), new ToolLoop());
+        String tenantId = getTenantId(prompt);
+
+        Scheduler callScheduler = this.callScheduler;
+        if (callScheduler == null || LLMsFreeApiVirtualThreads.isVirtualThread()) {
+            return admitAndCall(prompt, request, sessionId, call, tenantId);
+        }
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        return Mono.fromCallable(() -> {
+                    Map<String, String> previous = MDC.getCopyOfContextMap();
+                    setMdc(mdc);
+                    try {
+                        return admitAndCall(prompt, request, sessionId, call, tenantId);
+                    }
+                    finally {
+                        setMdc(previous);
+                    }
+                })
+                .subscribeOn(callScheduler)
+                .block();
+    }
+
+    private static void setMdc(Map<String, String> contextMap) {
+        if (contextMap != null) {
+            MDC.setContextMap(contextMap);
+        }
+        else {
+            MDC.clear();
+        }
+    }
+
+    private ChatResponse admitAndCall(Prompt prompt, LLMsFreeApi.ChatCompletionRequest request, String sessionId,
+                                      CallContext call, String tenantId) {
+
+        var permit = (tenantId != null ? this.tenantAdmissionController.acquire(tenantId, estimatePrompt(request)) : null);
+        try {
+            return doCall(prompt, request, sessionId, call, tenantId);
+        }
+        finally {
+            if (permit != null) {
+                permit.release();
+            }
+            recordToolRounds(call);
+        }
+    }
+
+    private ChatResponse doCall(Prompt prompt, LLMsFreeApi.ChatCompletionRequest request, String sessionId,
+                                CallContext call, String tenantId) {
 
         return retryTemplate.execute(ctx -> {
 
-            ResponseEntity<LLMsFreeApi.ChatCompletion> completionEntity = this.callWithFunctionSupport(request);
+            // Retries share the remaining time, do not start one past the deadline.
+            call.deadline().checkNotExpired();
+
+            ResponseEntity<LLMsFreeApi.ChatCompletion> completionEntity = withCallContext(call, () -> (sessionId != null
+                    ? this.callInConversation(prompt, request, sessionId, call)
+                    : this.callWithFunctionSupport(request)));
 
             var chatCompletion = completionEntity.getBody();
             if (chatCompletion == null) {
@@ -80,14 +335,236 @@ public class LLMsFreeApiChatClient
 
             List<Generation> generations = chatCompletion.choices()
                     .stream()
-                    .map(choice -> new Generation(Objects.toString(choice.message().content()), toMap(chatCompletion.id(), choice))
+                    .map(choice -> new Generation(Objects.toString(choice.message().content(), ""), toMap(chatCompletion.id(), choice))
                             .withGenerationMetadata(ChatGenerationMetadata.from(choice.finishReason().name(), null)))
                     .toList();
 
-            return new ChatResponse(generations);
+            // Prefer the usage reported by the server, and estimate it otherwise.
+            LLMsFreeApiUsage usage;
+            if (chatCompletion.usage() != null) {
+                usage = LLMsFreeApiUsage.from(chatCompletion.usage());
+            }
+            else {
+                var estimator = TokenEstimator.forModel(request.model());
+                long completionTokens = 0;
+                for (var choice : chatCompletion.choices()) {
+                    completionTokens += estimateContent(estimator, choice.message());
+                }
+                usage = LLMsFreeApiUsage.estimated(estimator.estimate(request.messages()), completionTokens);
+            }
+            recordUsage(request.model(), tenantId, usage);
+
+            return new ChatResponse(generations, LLMsFreeApiChatResponseMetadata.from(usage));
+        });
+    }
+
+    private static long estimateContent(TokenEstimator estimator, LLMsFreeApi.ChatCompletionMessage message) {
+        return (message != null && message.content() instanceof String content ? estimator.estimate(content) : 0);
+    }
+
+    private void recordToolRounds(CallContext call) {
+        int rounds = call.toolLoop().rounds.get();
+        if (rounds > 0) {
+            var metrics = this.llmsFreeApi.getMetrics();
+            metrics.increment(LLMsFreeApiMetrics.TOOL_CALLS);
+            metrics.add(LLMsFreeApiMetrics.TOOL_ROUNDS, rounds);
+            metrics.recordValue(LLMsFreeApiMetrics.TOOL_ROUNDS_PER_CALL, rounds);
+        }
+    }
+
+    private static long estimatePrompt(LLMsFreeApi.ChatCompletionRequest request) {
+        return TokenEstimator.forModel(request.model()).estimate(request.messages());
+    }
+
+    private void recordUsage(String model, String tenantId, LLMsFreeApiUsage usage) {
+        String modelTag = Objects.toString(model, "unknown");
+        var metrics = this.llmsFreeApi.getMetrics();
+        metrics.add(LLMsFreeApiMetrics.PROMPT_TOKENS, usage.getPromptTokens(), "model", modelTag);
+        metrics.add(LLMsFreeApiMetrics.COMPLETION_TOKENS, usage.getGenerationTokens(), "model", modelTag);
+        if (tenantId != null) {
+            this.tenantAdmissionController.recordUsage(tenantId, usage.getPromptTokens() + usage.getGenerationTokens());
+        }
+    }
+
+    private ResponseEntity<LLMsFreeApi.ChatCompletion> callInConversation(Prompt prompt, LLMsFreeApi.ChatCompletionRequest request,
+                                                                         String sessionId, CallContext call) {
+        var session = this.conversationAffinityRegistry.get(sessionId, prompt.getInstructions());
+        var conversationRequest = (session != null ? continueConversation(prompt, request, session) : request);
+        String token = (session != null ? session.token() : this.llmsFreeApi.getTokenPool().next());
+
+        ResponseEntity<LLMsFreeApi.ChatCompletion> completionEntity;
+        try {
+            completionEntity = this.llmsFreeApi.chatCompletionEntity(conversationRequest, token, call.priority(), call.deadline());
+        }
+        catch (RuntimeException ex) {
+            // Resend the full history only if the conversation is gone: any other failure
+            // would fail again, at twice the load, e.g. when rate limited.
+            if (session == null || !ConversationAffinityRegistry.isConversationGone(ex)) {
+                throw ex;
+            }
+            log.debug("Continuing conversation {} failed, resending the full history", session.conversationId(), ex);
+            this.conversationAffinityRegistry.invalidate(sessionId);
+            session = null;
+            conversationRequest = request;
+            token = this.llmsFreeApi.getTokenPool().next();
+            completionEntity = this.llmsFreeApi.chatCompletionEntity(conversationRequest, token, call.priority(), call.deadline());
+        }
+
+        var result = handleFunctionCallOrReturn(conversationRequest, completionEntity);
+
+        // Tool rounds run in conversations of their own, only plain answers can be continued.
+        var chatCompletion = result.getBody();
+        String conversationId = (session != null ? session.conversationId()
+                : (chatCompletion != null ? chatCompletion.id() : null));
+        if (result == completionEntity && conversationId != null && chatCompletion != null
+                && !CollectionUtils.isEmpty(chatCompletion.choices())) {
+            this.conversationAffinityRegistry.update(sessionId, conversationId, token, prompt.getInstructions(),
+                    Objects.toString(chatCompletion.choices().get(0).message().content()));
+        }
+        else {
+            this.conversationAffinityRegistry.invalidate(sessionId);
+        }
+        return result;
+    }
+
+    private Flux<LLMsFreeApi.ChatCompletionChunk> streamInConversation(Prompt prompt, LLMsFreeApi.ChatCompletionRequest request,
+                                                                      String sessionId, CallContext call) {
+        return Flux.defer(() -> {
+            var session = this.conversationAffinityRegistry.get(sessionId, prompt.getInstructions());
+            if (session == null) {
+                String token = this.llmsFreeApi.getTokenPool().next();
+                return recordConversation(this.llmsFreeApi.chatCompletionStream(request, token, call.priority(), call.deadline()), prompt, sessionId, null, token);
+            }
+
+            AtomicBoolean received = new AtomicBoolean();
+            return recordConversation(this.llmsFreeApi.chatCompletionStream(continueConversation(prompt, request, session),
+                            session.token(), call.priority(), call.deadline()),
+                    prompt, sessionId, session.conversationId(), session.token())
+                    .doOnNext(chunk -> received.set(true))
+                    .onErrorResume(ex -> !received.get() && ConversationAffinityRegistry.isConversationGone(ex), ex -> {
+                        // The upstream conversation has expired, fall back to the full history.
+                        log.debug("Continuing conversation {} failed, resending the full history", session.conversationId(), ex);
+                        this.conversationAffinityRegistry.invalidate(sessionId);
+                        return streamInConversation(prompt, request, sessionId, call);
+                    });
         });
     }
 
+    private Flux<LLMsFreeApi.ChatCompletionChunk> recordConversation(Flux<LLMsFreeApi.ChatCompletionChunk> chunks, Prompt prompt,
+                                                                    String sessionId, String conversationId, String token) {
+        AtomicReference<String> upstreamId = new AtomicReference<>(conversationId);
+        AtomicBoolean toolCall = new AtomicBoolean();
+        StringBuilder reply = new StringBuilder();
+
+        return chunks.doOnNext(chunk -> {
+                    upstreamId.compareAndSet(null, chunk.id());
+                    if (!CollectionUtils.isEmpty(chunk.choices()) && chunk.choices().get(0).delta() != null) {
+                        var delta = chunk.choices().get(0).delta();
+                        if (!CollectionUtils.isEmpty(delta.toolCalls())) {
+                            toolCall.set(true);
+                        }
+                        if (delta.content() != null) {
+                            reply.append(delta.content());
+                        }
+                    }
+                })
+                .doOnComplete(() -> {
+                    if (toolCall.get() || upstreamId.get() == null) {
+                        this.conversationAffinityRegistry.invalidate(sessionId);
+                    }
+                    else {
+                        this.conversationAffinityRegistry.update(sessionId, upstreamId.get(), token,
+                                prompt.getInstructions(), reply.toString());
+                    }
+                })
+                // An interrupted turn leaves the upstream conversation in an unknown state.
+                .doOnCancel(() -> this.conversationAffinityRegistry.invalidate(sessionId));
+    }
+
+    private LLMsFreeApi.ChatCompletionRequest continueConversation(Prompt prompt, LLMsFreeApi.ChatCompletionRequest request,
+                                                                  ConversationAffinityRegistry.Session session) {
+        // Count from the end, the history may have been trimmed to the prompt token budget.
+        var messages = request.messages();
+        int newMessages = Math.min(prompt.getInstructions().size() - session.messageCount(), messages.size());
+        return new LLMsFreeApi.ChatCompletionRequest(request.model(), messages.subList(messages.size() - newMessages, messages.size()),
+                request.stream(), request.useSearch(), session.conversationId());
+    }
+
+    private String getSessionId(Prompt prompt) {
+        if (this.conversationAffinityRegistry != null && prompt.getOptions() instanceof LLMsFreeApiChatOptions options) {
+            return options.getSessionId();
+        }
+        return null;
+    }
+
+    /**
+     * The priority of a call: the one of the prompt options, else the one of the current
+     * web request's {@link RequestPriority#REQUEST_ATTRIBUTE attribute}, else the default one.
+     */
+    private RequestPriority getPriority(Prompt prompt) {
+        if (prompt.getOptions() instanceof LLMsFreeApiChatOptions options && options.getPriority() != null) {
+            return options.getPriority();
+        }
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null) {
+            Object attribute = attributes.getAttribute(RequestPriority.REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+            if (attribute instanceof RequestPriority priority) {
+                return priority;
+            }
+            if (attribute instanceof String name) {
+                return RequestPriority.valueOf(name.trim().toUpperCase(Locale.ROOT));
+            }
+        }
+        return (this.defaultOptions.getPriority() != null ? this.defaultOptions.getPriority() : RequestPriority.NORMAL);
+    }
+
+    private String getTenantId(Prompt prompt) {
+        if (this.tenantAdmissionController == null) {
+            return null;
+        }
+        if (prompt.getOptions() instanceof LLMsFreeApiChatOptions options && options.getTenantId() != null) {
+            return options.getTenantId();
+        }
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null
+                && attributes.getAttribute(TenantAdmissionController.TENANT_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) instanceof String tenantId) {
+            return tenantId;
+        }
+        return this.defaultOptions.getTenantId();
+    }
+
+    /**
+     * The time limits of a call, from the prompt options, else the default options. They
+     * start when the call does.
+     */
+    private RequestDeadline getDeadline(Prompt prompt) {
+        var options = (prompt.getOptions() instanceof LLMsFreeApiChatOptions promptOptions ? promptOptions : null);
+        return RequestDeadline.of(
+                firstNonNull(options != null ? options.getTimeout() : null, this.defaultOptions.getTimeout()),
+                firstNonNull(options != null ? options.getFirstChunkTimeout() : null, this.defaultOptions.getFirstChunkTimeout()),
+                firstNonNull(options != null ? options.getIdleTimeout() : null, this.defaultOptions.getIdleTimeout()));
+    }
+
+    private static <T> T firstNonNull(T value, T defaultValue) {
+        return (value != null ? value : defaultValue);
+    }
+
+    private static <T> T withCallContext(CallContext call, Supplier<T> action) {
+        CallContext previous = CURRENT_CALL.get();
+        CURRENT_CALL.set(call);
+        try {
+            return action.get();
+        }
+        finally {
+            if (previous != null) {
+                CURRENT_CALL.set(previous);
+            }
+            else {
+                CURRENT_CALL.remove();
+            }
+        }
+    }
+
     private Map<String, Object> toMap(String id, LLMsFreeApi.ChatCompletion.Choice choice) {
         Map<String, Object> map = new HashMap<>();
 
@@ -104,19 +581,39 @@ public class LLMsFreeApiChatClient
 
     @Override
     public Flux<ChatResponse> stream(Prompt prompt) {
+        // The deadline starts when the stream is subscribed to, not when it is assembled.
+        return Flux.defer(() -> doStream(prompt));
+    }
+
+    private Flux<ChatResponse> doStream(Prompt prompt) {
         var request = createRequest(prompt, true);
+        String sessionId = getSessionId(prompt);
+        var call = new CallContext(getPriority(prompt), getDeadline(prompt), new ToolLoop());
+        String tenantId = getTenantId(prompt);
 
-        return retryTemplate.execute(ctx -> {
+        Flux<ChatResponse> responses = retryTemplate.execute(ctx -> {
 
-            var completionChunks = this.llmsFreeApi.chatCompletionStream(request);
+            var completionChunks = (sessionId != null
+                    ? this.streamInConversation(prompt, request, sessionId, call)
+                    : this.llmsFreeApi.chatCompletionStream(request, null, call.priority(), call.deadline()));
+            completionChunks = retryUntilFirstChunk(completionChunks, call.deadline());
+            if (this.toolScheduler != null) {
+                completionChunks = completionChunks.publishOn(this.toolScheduler);
+            }
 
             // For chunked responses, only the first chunk contains the choice role.
             // The rest of the chunks with same ID share the same role.
             ConcurrentHashMap<String, String> roleMap = new ConcurrentHashMap<>();
 
+            // Streamed chunks carry no usage, count the tokens locally as they arrive.
+            var estimator = TokenEstimator.forModel(request.model());
+            long promptTokens = estimator.estimate(request.messages());
+            AtomicLong completionTokens = new AtomicLong();
+
             return completionChunks.map(chunk -> toChatCompletion(chunk)).map(chatCompletion -> {
 
-                chatCompletion = handleFunctionCallOrReturn(request, ResponseEntity.of(Optional.of(chatCompletion)))
+                var chunkEntity = ResponseEntity.of(Optional.of(chatCompletion));
+                chatCompletion = withCallContext(call, () -> handleFunctionCallOrReturn(request, chunkEntity))
                         .getBody();
 
                 @SuppressWarnings("null")
@@ -127,7 +624,7 @@ public class LLMsFreeApiChatClient
                         roleMap.putIfAbsent(id, choice.message().role().name());
                     }
                     String finish = (choice.finishReason() != null ? choice.finishReason().name() : "");
-                    var generation = new Generation(Objects.toString(choice.message().content()),
+                    var generation = new Generation(Objects.toString(choice.message().content(), ""),
                             Map.of("id", id, "role", roleMap.get(id), "finishReason", finish));
                     if (choice.finishReason() != null) {
                         generation = generation
@@ -135,9 +632,114 @@ public class LLMsFreeApiChatClient
                     }
                     return generation;
                 }).toList();
-                return new ChatResponse(generations);
+
+                for (var choice : chatCompletion.choices()) {
+                    completionTokens.addAndGet(estimateContent(estimator, choice.message()));
+                }
+                var usage = LLMsFreeApiUsage.estimated(promptTokens, completionTokens.get());
+                return new ChatResponse(generations, LLMsFreeApiChatResponseMetadata.from(usage));
+            }).doFinally(signal -> {
+                recordUsage(request.model(), tenantId, LLMsFreeApiUsage.estimated(promptTokens, completionTokens.get()));
+                recordToolRounds(call);
             });
         });
+
+        if (tenantId == null) {
+            return responses;
+        }
+        // Admit on subscription and hold the permit until the stream terminates.
+        Mono<TenantAdmissionController.Permit> permit = Mono.fromCallable(
+                () -> this.tenantAdmissionController.acquire(tenantId, estimatePrompt(request)));
+        if (this.tenantAdmissionController.isLimited()) {
+            permit = permit.subscribeOn(Schedulers.boundedElastic());
+        }
+        return permit.doOnDiscard(TenantAdmissionController.Permit.class, TenantAdmissionController.Permit::release)
+                .flatMapMany(admitted -> responses.doFinally(signal -> admitted.release()));
+    }
+
+    /**
+     * Retry a stream failing with a {@link TransientAiException}, e.g. a 5xx response or a
+     * missed first chunk timeout, as long as no chunk was received and the deadline has
+     * time left. Once a chunk was received, retrying would repeat the answer.
+     */
+    private static Flux<LLMsFreeApi.ChatCompletionChunk> retryUntilFirstChunk(
+            Flux<LLMsFreeApi.ChatCompletionChunk> chunks, RequestDeadline deadline) {
+        return Flux.defer(() -> {
+            AtomicBoolean received = new AtomicBoolean();
+            return chunks.doOnNext(chunk -> received.set(true))
+                    .retryWhen(Retry.backoff(STREAM_MAX_RETRIES, STREAM_RETRY_BACKOFF)
+                            .filter(ex -> ex instanceof TransientAiException && !received.get() && !deadline.isExpired())
+                            .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+        });
+    }
+
+    /**
+     * Start a stream which can be resumed after a client reconnect. Every delta carries an
+     * event id; a client reconnecting with the last event id it received continues with
+     * {@link #resume(String)} instead of starting a new upstream generation.
+     * @param prompt the prompt.
+     * @return the deltas, tagged with the stream id and their sequence.
+     */
+    public Flux<ResumableChatEvent> streamResumable(Prompt prompt) {
+        return this.resumableStreamRegistry.register(stream(prompt));
+    }
+
+    /**
+     * Resume a stream started with {@link #streamResumable(Prompt)}.
+     * @param lastEventId the event id of the last delta received, e.g. the SSE
+     * {@code Last-Event-ID} header.
+     * @return the missed deltas followed by the live deltas.
+     */
+    public Flux<ResumableChatEvent> resume(String lastEventId) {
+        return this.resumableStreamRegistry.resume(lastEventId);
+    }
+
+    /**
+     * Stream one answer to many subscribers, e.g. the viewers of a live room. The first
+     * call for a request id starts the generation, the later ones share it instead of
+     * starting their own; late subscribers get the deltas from the start.
+     * @param requestId the id of the request shared by the subscribers.
+     * @param prompt the prompt, only sent by the first call for the request id.
+     * @return the shared stream, to {@link SharedChatStream#subscribe() subscribe} to.
+     * @throws IllegalStateException if the generation is to be started but the maximum
+     * number of shared streams are all live.
+     */
+    public SharedChatStream streamShared(String requestId, Prompt prompt) {
+        return this.sharedStreamRegistry.share(requestId, () -> stream(prompt));
+    }
+
+    /**
+     * Stream a JSON array answer element by element, each element emitted as soon as it is
+     * complete rather than after the whole answer. Text around the JSON, e.g. a markdown
+     * code fence, is skipped.
+     * @param prompt the prompt, asking for a JSON array.
+     * @param elementType the type of the elements.
+     * @param <T> the type of the elements.
+     * @return the elements.
+     */
+    public <T> Flux<T> streamElements(Prompt prompt, Class<T> elementType) {
+        return Flux.defer(() -> parse(stream(prompt), JsonStreamParser.elements(ModelOptionsUtils.OBJECT_MAPPER,
+                elementType)));
+    }
+
+    /**
+     * Stream a JSON object answer as it is generated, emitting the object each time one of
+     * its fields is complete, with the fields complete so far.
+     * @param prompt the prompt, asking for a JSON object.
+     * @param type the type of the object.
+     * @param <T> the type of the object.
+     * @return the object, more complete with every emission.
+     */
+    public <T> Flux<T> streamPartial(Prompt prompt, Class<T> type) {
+        return Flux.defer(() -> parse(stream(prompt), JsonStreamParser.partial(ModelOptionsUtils.OBJECT_MAPPER,
+                type)));
+    }
+
+    private static <T> Flux<T> parse(Flux<ChatResponse> responses, JsonStreamParser<T> parser) {
+        return responses
+                .concatMapIterable(response -> (response.getResult() != null
+                        ? parser.feed(response.getResult().getOutput().getContent()) : List.<T>of()))
+                .concatWith(Flux.defer(() -> Flux.fromIterable(parser.complete())));
     }
 
     private LLMsFreeApi.ChatCompletion toChatCompletion(LLMsFreeApi.ChatCompletionChunk chunk) {
@@ -149,6 +751,35 @@ public class LLMsFreeApiChatClient
         return new LLMsFreeApi.ChatCompletion(chunk.id(), "chat.completion", chunk.created(), chunk.model(), choices, null);
     }
 
+    /**
+     * Check the URLs of the image and document messages of the prompt concurrently, if
+     * enabled. Skipped on a non-blocking thread, where the checks cannot be waited for.
+     */
+    private Map<String, String> prefetchAttachments(Prompt prompt) {
+        if (this.attachmentPrefetcher == null || Schedulers.isInNonBlockingThread()) {
+            return Map.of();
+        }
+        List<AttachmentPrefetcher.Attachment> attachments = new ArrayList<>();
+        for (var message : prompt.getInstructions()) {
+            if (message instanceof ImageChatMessage imageChatMessage && imageChatMessage.getFileUrl() != null) {
+                attachments.add(new AttachmentPrefetcher.Attachment(imageChatMessage.getFileUrl(),
+                        AttachmentPrefetcher.Kind.IMAGE));
+            }
+            else if (message instanceof DocumentChatMessage documentChatMessage && documentChatMessage.getFileUrl() != null) {
+                attachments.add(new AttachmentPrefetcher.Attachment(documentChatMessage.getFileUrl(),
+                        AttachmentPrefetcher.Kind.DOCUMENT));
+            }
+        }
+        return (attachments.isEmpty() ? Map.of() : this.attachmentPrefetcher.prefetch(attachments));
+    }
+
+    private String attachmentUrl(String fileUrl, Resource resource, MimeType mimeType, Map<String, String> prefetched) {
+        if (resource != null) {
+            return this.attachmentCache.toDataUri(resource, mimeType);
+        }
+        return prefetched.getOrDefault(fileUrl, fileUrl);
+    }
+
     /**
      * Accessible for testing.
      */
@@ -157,6 +788,7 @@ public class LLMsFreeApiChatClient
 
         Set<String> functionsForThisRequest = new HashSet<>();
 
+        Map<String, String> prefetched = prefetchAttachments(prompt);
         var chatCompletionMessages = prompt.getInstructions()
                 .stream()
                 .map(m -> {
@@ -165,7 +797,8 @@ public class LLMsFreeApiChatClient
                         // Convert DocumentChatMessage to LLMsFreeApi.ChatCompletionMessage.DocumentContent Array
                         List<LLMsFreeApi.ChatCompletionMessage.DocumentContent> contents = Arrays.asList(
                                 new LLMsFreeApi.ChatCompletionMessage.DocumentContent("file",
-                                        new LLMsFreeApi.ChatCompletionMessage.DocumentFile(documentChatMessage.getFileUrl())),
+                                        new LLMsFreeApi.ChatCompletionMessage.DocumentFile(attachmentUrl(documentChatMessage.getFileUrl(),
+                                                documentChatMessage.getResource(), documentChatMessage.getMimeType(), prefetched))),
                                 new LLMsFreeApi.ChatCompletionMessage.DocumentContent("text", documentChatMessage.getContent()));
                         // Return the LLMsFreeApi.ChatCompletionMessage with the DocumentContent Array
                         return new LLMsFreeApi.ChatCompletionMessage(contents,
@@ -176,7 +809,8 @@ public class LLMsFreeApiChatClient
                         // Convert DocumentChatMessage to LLMsFreeApi.ChatCompletionMessage.DocumentContent Array
                         List<LLMsFreeApi.ChatCompletionMessage.ImageContent> contents = Arrays.asList(
                                 new LLMsFreeApi.ChatCompletionMessage.ImageContent("image_url",
-                                        new LLMsFreeApi.ChatCompletionMessage.ImageFile(imageChatMessage.getFileUrl())),
+                                        new LLMsFreeApi.ChatCompletionMessage.ImageFile(attachmentUrl(imageChatMessage.getFileUrl(),
+                                                imageChatMessage.getResource(), imageChatMessage.getMimeType(), prefetched))),
                                 new LLMsFreeApi.ChatCompletionMessage.ImageContent("text", imageChatMessage.getContent()));
                         // Return the LLMsFreeApi.ChatCompletionMessage with the DocumentContent Array
                         return new LLMsFreeApi.ChatCompletionMessage(contents,
@@ -219,17 +853,46 @@ public class LLMsFreeApiChatClient
                     request, LLMsFreeApi.ChatCompletionRequest.class);
         }
 
+        // Fit the conversation history into the prompt token budget.
+        if (this.maxPromptTokens > 0) {
+            var messages = this.historyTrimStrategy.trim(request.messages(), this.maxPromptTokens,
+                    TokenEstimator.forModel(request.model()));
+            if (messages != request.messages()) {
+                log.debug("Trimmed the conversation history from {} to {} messages", request.messages().size(), messages.size());
+                request = new LLMsFreeApi.ChatCompletionRequest(request.model(), messages, request.stream(),
+                        request.useSearch(), request.conversationId());
+            }
+        }
+
         return request;
     }
 
     private List<LLMsFreeApi.FunctionTool> getFunctionTools(Set<String> functionNames) {
         return this.resolveFunctionCallbacks(functionNames).stream().map(functionCallback -> {
-            var function = new LLMsFreeApi.FunctionTool.Function(functionCallback.getDescription(),
-                    functionCallback.getName(), functionCallback.getInputTypeSchema());
-            return new LLMsFreeApi.FunctionTool(function);
+            // Parsing the input schema is the costly part, reuse the tool until the callback is replaced.
+            var payload = this.functionTools.get(functionCallback.getName());
+            if (payload == null || payload.functionCallback() != functionCallback) {
+                var function = new LLMsFreeApi.FunctionTool.Function(functionCallback.getDescription(),
+                        functionCallback.getName(), functionCallback.getInputTypeSchema());
+                payload = new FunctionToolPayload(functionCallback, new LLMsFreeApi.FunctionTool(function));
+                this.functionTools.put(functionCallback.getName(), payload);
+            }
+            return payload.tool();
         }).toList();
     }
 
+    /**
+     * Prepare the client for its first requests: registers the default function callbacks,
+     * builds their tool definitions and serializes a blocking and a streaming request, so
+     * that the first calls do not pay for schema parsing and serializer creation. Nothing
+     * is sent upstream.
+     */
+    public void warmUp() {
+        var prompt = new Prompt("warm-up");
+        ModelOptionsUtils.toJsonString(createRequest(prompt, false));
+        ModelOptionsUtils.toJsonString(createRequest(prompt, true));
+    }
+
     //
     // Function Calling Support
     //
@@ -238,6 +901,16 @@ public class LLMsFreeApiChatClient
                                                                             LLMsFreeApi.ChatCompletionMessage responseMessage,
                                                                             List<LLMsFreeApi.ChatCompletionMessage> conversationHistory) {
 
+        CallContext call = CURRENT_CALL.get();
+        ToolLoop toolLoop = (call != null ? call.toolLoop() : new ToolLoop());
+        var limits = this.toolLoopLimits;
+
+        int round = toolLoop.rounds.incrementAndGet();
+        if (limits.maxRounds() > 0 && round > limits.maxRounds()) {
+            throw stopToolLoop(ToolLoopLimitExceededException.Limit.MAX_ROUNDS, round - 1,
+                    "limit " + limits.maxRounds());
+        }
+
         // Every tool-call item requires a separate function call and a response (TOOL)
         // message.
         for (LLMsFreeApi.ChatCompletionMessage.ToolCall toolCall : responseMessage.toolCalls()) {
@@ -249,13 +922,30 @@ public class LLMsFreeApiChatClient
                 throw new IllegalStateException("No function callback found for function name: " + functionName);
             }
 
-            String functionResponse = this.functionCallbackRegister.get(functionName).call(functionArguments);
+            var functionCallback = this.functionCallbackRegister.get(functionName);
+            long start = System.nanoTime();
+            String functionResponse = (this.functionResultCache != null
+                    ? this.functionResultCache.call(functionCallback, functionArguments)
+                    : functionCallback.call(functionArguments));
+            long toolNanos = toolLoop.toolNanos.addAndGet(System.nanoTime() - start);
+            if (limits.maxToolTime() != null && toolNanos > limits.maxToolTime().toNanos()) {
+                throw stopToolLoop(ToolLoopLimitExceededException.Limit.MAX_TOOL_TIME, round - 1,
+                        "spent " + Duration.ofNanos(toolNanos).toMillis() + "ms, limit " + limits.maxToolTime().toMillis() + "ms");
+            }
 
             // Add the function response to the conversation.
             conversationHistory
                     .add(new LLMsFreeApi.ChatCompletionMessage(functionResponse, LLMsFreeApi.ChatCompletionMessage.Role.TOOL, functionName, null));
         }
 
+        if (limits.maxHistoryBytes() > 0) {
+            long historyBytes = historyBytes(conversationHistory);
+            if (historyBytes > limits.maxHistoryBytes()) {
+                throw stopToolLoop(ToolLoopLimitExceededException.Limit.MAX_HISTORY_BYTES, round,
+                        historyBytes + " bytes, limit " + limits.maxHistoryBytes());
+            }
+        }
+
         // Recursively call chatCompletionWithTools until the model doesn't call a
         // functions anymore.
         LLMsFreeApi.ChatCompletionRequest newRequest = new LLMsFreeApi.ChatCompletionRequest(null, conversationHistory, false);
@@ -264,6 +954,40 @@ public class LLMsFreeApiChatClient
         return newRequest;
     }
 
+    private ToolLoopLimitExceededException stopToolLoop(ToolLoopLimitExceededException.Limit limit, int rounds, String detail) {
+        this.llmsFreeApi.getMetrics().increment(LLMsFreeApiMetrics.TOOL_LOOP_STOPPED, "limit", limit.name().toLowerCase(Locale.ROOT));
+        return new ToolLoopLimitExceededException(limit, rounds, detail);
+    }
+
+    /**
+     * The approximate size of the messages on the wire: the UTF-8 length of their text.
+     */
+    private static long historyBytes(List<LLMsFreeApi.ChatCompletionMessage> messages) {
+        long bytes = 0;
+        for (var message : messages) {
+            bytes += utf8Length(message.content() instanceof String content ? content : Objects.toString(message.content(), ""));
+            if (message.toolCalls() != null) {
+                for (var toolCall : message.toolCalls()) {
+                    if (toolCall.function() != null) {
+                        bytes += utf8Length(Objects.toString(toolCall.function().name(), ""))
+                                + utf8Length(Objects.toString(toolCall.function().arguments(), ""));
+                    }
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private static long utf8Length(CharSequence text) {
+        long length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            // A surrogate pair is two chars of two bytes each, four bytes in total.
+            length += (c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3);
+        }
+        return length;
+    }
+
     @Override
     protected List<LLMsFreeApi.ChatCompletionMessage> doGetUserMessages(LLMsFreeApi.ChatCompletionRequest request) {
         return request.messages();
@@ -277,7 +1001,12 @@ public class LLMsFreeApiChatClient
 
     @Override
     protected ResponseEntity<LLMsFreeApi.ChatCompletion> doChatCompletion(LLMsFreeApi.ChatCompletionRequest request) {
-        return this.llmsFreeApi.chatCompletionEntity(request);
+        // Requests continuing an upstream conversation must use the token of its account.
+        String token = (this.conversationAffinityRegistry != null
+                ? this.conversationAffinityRegistry.getToken(request.conversationId()) : null);
+        CallContext call = CURRENT_CALL.get();
+        return (call != null ? this.llmsFreeApi.chatCompletionEntity(request, token, call.priority(), call.deadline())
+                : this.llmsFreeApi.chatCompletionEntity(request, token));
     }
 
     @Override
@@ -295,4 +1024,27 @@ public class LLMsFreeApiChatClient
 
         return !CollectionUtils.isEmpty(choices.get(0).message().toolCalls());
     }
+
+    /**
+     * What applies to every upstream request of a chat call.
+     */
+    private record CallContext(RequestPriority priority, RequestDeadline deadline, ToolLoop toolLoop) {
+    }
+
+    /**
+     * The tool definition of a function callback.
+     */
+    private record FunctionToolPayload(FunctionCallback functionCallback, LLMsFreeApi.FunctionTool tool) {
+    }
+
+    /**
+     * The tool-call rounds of a chat call, across its retries.
+     */
+    private static final class ToolLoop {
+
+        private final AtomicInteger rounds = new AtomicInteger();
+
+        private final AtomicLong toolNanos = new AtomicLong();
+
+    }
 }
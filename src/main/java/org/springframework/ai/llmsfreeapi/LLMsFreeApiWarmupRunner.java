@@ -0,0 +1,97 @@
+package org.springframework.ai.llmsfreeapi;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.llmsfreeapi.api.LLMsFreeApi;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+
+/**
+ * Warms the client up at startup, before the first requests: opens pooled connections to
+ * the API, primes the JSON readers and writers of the chat types and builds the tool
+ * definitions of the default functions.
+ * <p>
+ * Runs before the other {@link ApplicationRunner runners}. Spring Boot reports the
+ * application as ready to accept traffic only after all runners completed, so readiness
+ * probes pass once the warm-up is done. A failed warm-up is logged and does not prevent
+ * the startup.
+ */
+public class LLMsFreeApiWarmupRunner implements ApplicationRunner, Ordered {
+
+    public static final int DEFAULT_CONNECTIONS = 2;
+
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final Logger logger = LoggerFactory.getLogger(LLMsFreeApiWarmupRunner.class);
+
+    private final LLMsFreeApi llmsFreeApi;
+
+    private LLMsFreeApiChatClient chatClient;
+
+    private ObjectMapper objectMapper;
+
+    private int connections = DEFAULT_CONNECTIONS;
+
+    private Duration timeout = DEFAULT_TIMEOUT;
+
+    public LLMsFreeApiWarmupRunner(LLMsFreeApi llmsFreeApi) {
+        Assert.notNull(llmsFreeApi, "LLMsFreeApi must not be null");
+        this.llmsFreeApi = llmsFreeApi;
+    }
+
+    /**
+     * @param chatClient the chat client whose default functions are prepared, or {@code null}.
+     */
+    public void setChatClient(LLMsFreeApiChatClient chatClient) {
+        this.chatClient = chatClient;
+    }
+
+    /**
+     * @param objectMapper the mapper of the application's HTTP message converters, which the
+     * blocking requests are serialized with, or {@code null}.
+     */
+    public void setObjectMapper(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public void setConnections(int connections) {
+        Assert.isTrue(connections >= 0, "connections must not be negative");
+        this.connections = connections;
+    }
+
+    public void setTimeout(Duration timeout) {
+        Assert.notNull(timeout, "timeout must not be null");
+        this.timeout = timeout;
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long start = System.nanoTime();
+        try {
+            if (this.objectMapper != null) {
+                this.objectMapper.writerFor(LLMsFreeApi.ChatCompletionRequest.class);
+                this.objectMapper.readerFor(LLMsFreeApi.ChatCompletion.class);
+                this.objectMapper.readerFor(LLMsFreeApi.ChatCompletionChunk.class);
+            }
+            if (this.chatClient != null) {
+                this.chatClient.warmUp();
+            }
+            this.llmsFreeApi.warmUp(this.connections, this.timeout);
+            logger.info("LLMs Free API client warmed up in {} ms", Duration.ofNanos(System.nanoTime() - start).toMillis());
+        }
+        catch (RuntimeException ex) {
+            logger.warn("LLMs Free API client warm-up failed", ex);
+        }
+    }
+
+}
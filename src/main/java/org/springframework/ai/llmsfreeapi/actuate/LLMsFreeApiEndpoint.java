@@ -0,0 +1,222 @@
+package org.springframework.ai.llmsfreeapi.actuate;
+
+import org.springframework.ai.llmsfreeapi.api.LLMsFreeApi;
+import org.springframework.ai.llmsfreeapi.api.RequestPriority;
+import org.springframework.ai.llmsfreeapi.attachment.AttachmentCache;
+import org.springframework.ai.llmsfreeapi.conversation.ConversationAffinityRegistry;
+import org.springframework.ai.llmsfreeapi.function.FunctionResultCache;
+import org.springframework.ai.llmsfreeapi.metrics.DecayingHistogram;
+import org.springframework.ai.llmsfreeapi.metrics.LLMsFreeApiMetrics;
+import org.springframework.ai.llmsfreeapi.stream.ResumableStreamRegistry;
+import org.springframework.ai.llmsfreeapi.stream.SharedStreamRegistry;
+import org.springframework.ai.llmsfreeapi.tenant.TenantAdmissionController;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link Endpoint @Endpoint} exposing the live state of the LLMs Free API client: the
+ * requests in flight and their recent latency and error rate per model, endpoint and
+ * token, the load of each token, the recent tool-call rounds per call, the queue depths and
+ * the cache sizes.
+ * <p>
+ * Everything is read from the lock-free counters and histograms the request path records
+ * into, so reading the endpoint does not slow the requests down. Tokens are shown by
+ * label, never in clear.
+ */
+@Endpoint(id = "llmsfreeapi")
+public class LLMsFreeApiEndpoint {
+
+    private final LLMsFreeApi llmsFreeApi;
+
+    private ResumableStreamRegistry resumableStreamRegistry;
+
+    private SharedStreamRegistry sharedStreamRegistry;
+
+    private ConversationAffinityRegistry conversationAffinityRegistry;
+
+    private FunctionResultCache functionResultCache;
+
+    private AttachmentCache attachmentCache;
+
+    private TenantAdmissionController tenantAdmissionController;
+
+    public LLMsFreeApiEndpoint(LLMsFreeApi llmsFreeApi) {
+        Assert.notNull(llmsFreeApi, "LLMsFreeApi must not be null");
+        this.llmsFreeApi = llmsFreeApi;
+    }
+
+    public void setResumableStreamRegistry(ResumableStreamRegistry resumableStreamRegistry) {
+        this.resumableStreamRegistry = resumableStreamRegistry;
+    }
+
+    public void setSharedStreamRegistry(SharedStreamRegistry sharedStreamRegistry) {
+        this.sharedStreamRegistry = sharedStreamRegistry;
+    }
+
+    public void setConversationAffinityRegistry(ConversationAffinityRegistry conversationAffinityRegistry) {
+        this.conversationAffinityRegistry = conversationAffinityRegistry;
+    }
+
+    public void setFunctionResultCache(FunctionResultCache functionResultCache) {
+        this.functionResultCache = functionResultCache;
+    }
+
+    public void setAttachmentCache(AttachmentCache attachmentCache) {
+        this.attachmentCache = attachmentCache;
+    }
+
+    public void setTenantAdmissionController(TenantAdmissionController tenantAdmissionController) {
+        this.tenantAdmissionController = tenantAdmissionController;
+    }
+
+    @ReadOperation
+    public ClientState state() {
+        return new ClientState(requests(), tokens(), toolRounds(), queues(), caches());
+    }
+
+    private List<RequestState> requests() {
+        var metrics = this.llmsFreeApi.getMetrics();
+        Map<List<String>, Long> active = new LinkedHashMap<>();
+        metrics.gaugeSnapshot().forEach((id, value) -> {
+            if (LLMsFreeApiMetrics.REQUESTS_ACTIVE.equals(id.name())) {
+                active.put(id.tags(), value);
+            }
+        });
+        Map<List<String>, DecayingHistogram.Snapshot> latencies = new LinkedHashMap<>();
+        metrics.histogramSnapshot().forEach((id, snapshot) -> {
+            if (LLMsFreeApiMetrics.REQUESTS_LATENCY.equals(id.name())) {
+                latencies.put(id.tags(), snapshot);
+            }
+        });
+
+        Set<List<String>> series = new LinkedHashSet<>(active.keySet());
+        series.addAll(latencies.keySet());
+        List<RequestState> requests = new ArrayList<>();
+        for (List<String> tags : series) {
+            var id = new LLMsFreeApiMetrics.Id(LLMsFreeApiMetrics.REQUESTS_LATENCY, tags);
+            var latency = latencies.get(tags);
+            requests.add(new RequestState(id.tag("model"), id.tag("endpoint"), id.tag("token"),
+                    active.getOrDefault(tags, 0L), (latency != null ? latency.count() : 0),
+                    (latency != null ? latency.errorRate() : 0),
+                    millis(latency != null ? latency.p50() : Duration.ZERO),
+                    millis(latency != null ? latency.p90() : Duration.ZERO),
+                    millis(latency != null ? latency.p99() : Duration.ZERO)));
+        }
+        return requests;
+    }
+
+    private List<TokenState> tokens() {
+        var tokenPool = this.llmsFreeApi.getTokenPool();
+        return tokenPool.getTokens().stream()
+                .map(token -> new TokenState(tokenPool.getLabel(token), tokenPool.getInFlight(token),
+                        tokenPool.getMaxConcurrencyPerToken()))
+                .toList();
+    }
+
+    private ToolRoundsState toolRounds() {
+        var rounds = this.llmsFreeApi.getMetrics().histogramSnapshot()
+                .get(new LLMsFreeApiMetrics.Id(LLMsFreeApiMetrics.TOOL_ROUNDS_PER_CALL, List.of()));
+        if (rounds == null) {
+            return new ToolRoundsState(0, 0, 0, 0);
+        }
+        return new ToolRoundsState(rounds.count(), DecayingHistogram.Snapshot.value(rounds.p50()),
+                DecayingHistogram.Snapshot.value(rounds.p90()), DecayingHistogram.Snapshot.value(rounds.p99()));
+    }
+
+    private Map<String, Integer> queues() {
+        Map<String, Integer> queues = new LinkedHashMap<>();
+        for (RequestPriority priority : RequestPriority.values()) {
+            queues.put("token." + priority.name().toLowerCase(Locale.ROOT), this.llmsFreeApi.getTokenPool().getWaiting(priority));
+        }
+        if (this.tenantAdmissionController != null) {
+            queues.put("tenant", this.tenantAdmissionController.getQueued());
+        }
+        return queues;
+    }
+
+    private Map<String, Integer> caches() {
+        Map<String, Integer> caches = new LinkedHashMap<>();
+        if (this.resumableStreamRegistry != null) {
+            caches.put("resumable-streams", this.resumableStreamRegistry.size());
+        }
+        if (this.sharedStreamRegistry != null) {
+            caches.put("shared-streams", this.sharedStreamRegistry.size());
+        }
+        if (this.conversationAffinityRegistry != null) {
+            caches.put("conversations", this.conversationAffinityRegistry.size());
+        }
+        if (this.attachmentCache != null) {
+            caches.put("attachments", this.attachmentCache.size());
+        }
+        if (this.functionResultCache != null) {
+            this.functionResultCache.getSizes().forEach((functionName, size) -> caches.put("function." + functionName, size));
+        }
+        return caches;
+    }
+
+    private static double millis(Duration duration) {
+        return duration.toNanos() / 1_000_000.0;
+    }
+
+    /**
+     * The live state of the client.
+     *
+     * @param requests The requests per model, endpoint and token.
+     * @param tokens The load of each token.
+     * @param toolRounds The tool-call rounds of the calls which used tools.
+     * @param queues The number of requests waiting, per queue.
+     * @param caches The number of entries, per cache.
+     */
+    public record ClientState(List<RequestState> requests, List<TokenState> tokens, ToolRoundsState toolRounds,
+                              Map<String, Integer> queues, Map<String, Integer> caches) {
+    }
+
+    /**
+     * The requests of a model, endpoint and token, over the window of the latency histograms.
+     *
+     * @param model The model.
+     * @param endpoint The API endpoint.
+     * @param token The label of the token.
+     * @param active The requests in flight.
+     * @param count The requests completed in the window.
+     * @param errorRate The share of the requests which failed.
+     * @param p50 The median latency in milliseconds.
+     * @param p90 The 90th percentile latency in milliseconds.
+     * @param p99 The 99th percentile latency in milliseconds.
+     */
+    public record RequestState(String model, String endpoint, String token, long active, long count, double errorRate,
+                               double p50, double p90, double p99) {
+    }
+
+    /**
+     * The tool-call rounds per chat call, over the window of the histograms.
+     *
+     * @param calls The calls which went through at least one round.
+     * @param p50 The median rounds.
+     * @param p90 The 90th percentile rounds.
+     * @param p99 The 99th percentile rounds.
+     */
+    public record ToolRoundsState(long calls, long p50, long p90, long p99) {
+    }
+
+    /**
+     * The load of a token.
+     *
+     * @param token The label of the token.
+     * @param inFlight The requests in flight with the token.
+     * @param maxConcurrency The maximum concurrent requests per token, 0 for no limit.
+     */
+    public record TokenState(String token, int inFlight, int maxConcurrency) {
+    }
+
+}
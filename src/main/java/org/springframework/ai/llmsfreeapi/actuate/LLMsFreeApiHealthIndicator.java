@@ -0,0 +1,71 @@
+package org.springframework.ai.llmsfreeapi.actuate;
+
+import org.springframework.ai.llmsfreeapi.api.LLMsFreeApiTokenChecker;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.util.Assert;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@link org.springframework.boot.actuate.health.HealthIndicator HealthIndicator} reporting
+ * the tokens of the LLMs Free API client from the last results of the
+ * {@link LLMsFreeApiTokenChecker}, so that a health check never calls the API.
+ * <p>
+ * The client is up while at least one token is live, and down only once every token was
+ * confirmed dead. Tokens whose check failed say nothing about the tokens themselves: with
+ * no live token, the client is out of service if a check failed, e.g. while the server is
+ * unreachable, and unknown while tokens are not checked yet.
+ */
+public class LLMsFreeApiHealthIndicator extends AbstractHealthIndicator {
+
+    private final LLMsFreeApiTokenChecker tokenChecker;
+
+    public LLMsFreeApiHealthIndicator(LLMsFreeApiTokenChecker tokenChecker) {
+        super("LLMs Free API health check failed");
+        Assert.notNull(tokenChecker, "LLMsFreeApiTokenChecker must not be null");
+        this.tokenChecker = tokenChecker;
+    }
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) {
+        Map<String, Object> tokens = new LinkedHashMap<>();
+        int live = 0;
+        int dead = 0;
+        int unreachable = 0;
+        var statuses = this.tokenChecker.getStatuses();
+        for (var status : statuses) {
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("state", status.state());
+            if (status.checkedAt() != null) {
+                details.put("checkedAt", status.checkedAt());
+            }
+            if (status.error() != null) {
+                details.put("error", status.error());
+            }
+            tokens.put(status.token(), details);
+            switch (status.state()) {
+                case LIVE -> live++;
+                case DEAD -> dead++;
+                case UNREACHABLE -> unreachable++;
+                default -> {
+                }
+            }
+        }
+        if (live > 0) {
+            builder.up();
+        }
+        else if (dead > 0 && dead == statuses.size()) {
+            builder.down();
+        }
+        else if (unreachable > 0) {
+            builder.outOfService();
+        }
+        else {
+            builder.unknown();
+        }
+        builder.withDetail("live", live).withDetail("tokens", tokens);
+    }
+
+}
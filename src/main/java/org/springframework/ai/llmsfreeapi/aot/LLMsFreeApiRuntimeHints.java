@@ -1,15 +1,39 @@
 package org.springframework.ai.llmsfreeapi.aot;
 
+import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.llmsfreeapi.api.LLMsFreeApi;
 import org.springframework.ai.llmsfreeapi.api.LLMsFreeApiChatOptions;
+import org.springframework.ai.llmsfreeapi.api.LLMsFreeApiRecording;
+import org.springframework.ai.llmsfreeapi.batch.BatchResult;
+import org.springframework.ai.llmsfreeapi.batch.LLMsFreeApiBatchRunner;
+import org.springframework.ai.llmsfreeapi.chat.messages.DocumentChatMessage;
+import org.springframework.ai.llmsfreeapi.chat.messages.ImageChatMessage;
+import org.springframework.ai.llmsfreeapi.metadata.LLMsFreeApiChatResponseMetadata;
+import org.springframework.ai.llmsfreeapi.metadata.LLMsFreeApiUsage;
+import org.springframework.ai.llmsfreeapi.stream.ResumableChatEvent;
+import org.springframework.ai.model.function.FunctionCallingOptions;
 import org.springframework.aot.hint.MemberCategory;
 import org.springframework.aot.hint.RuntimeHints;
 import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
 
 import static org.springframework.ai.aot.AiRuntimeHints.findJsonAnnotatedClassesInPackage;
 
+/**
+ * Reflection hints of the types (de)serialized with Jackson or read reflectively by
+ * {@link org.springframework.ai.model.ModelOptionsUtils}, for native images.
+ */
 public class LLMsFreeApiRuntimeHints implements RuntimeHintsRegistrar {
 
+    /**
+     * Portable options created by the Spring AI builders, which
+     * {@link org.springframework.ai.model.ModelOptionsUtils#copyToTarget} reads through their
+     * getters. Registered by name, as they are not all public.
+     */
+    private static final String[] PORTABLE_OPTIONS = {
+            "org.springframework.ai.chat.prompt.ChatOptionsBuilder$ChatOptionsImpl",
+            "org.springframework.ai.model.function.FunctionCallingOptionsBuilder$PortableFunctionCallingOptions" };
+
     @Override
     public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
         var mcs = MemberCategory.values();
@@ -19,6 +43,32 @@ public class LLMsFreeApiRuntimeHints implements RuntimeHintsRegistrar {
         for (var tr : findJsonAnnotatedClassesInPackage(LLMsFreeApiChatOptions.class)) {
             hints.reflection().registerType(tr, mcs);
         }
+
+        // The package scan misses nested types, such as the choices and message contents.
+        registerTypeAndNestedTypes(hints, LLMsFreeApi.class, mcs);
+        registerTypeAndNestedTypes(hints, LLMsFreeApiChatOptions.class, mcs);
+        registerTypeAndNestedTypes(hints, LLMsFreeApiBatchRunner.class, mcs);
+        registerTypeAndNestedTypes(hints, LLMsFreeApiRecording.class, mcs);
+
+        // Messages and responses, as written by the resumable streams and batches.
+        for (var type : new Class<?>[] { DocumentChatMessage.class, ImageChatMessage.class, ResumableChatEvent.class,
+                BatchResult.class, LLMsFreeApiChatResponseMetadata.class, LLMsFreeApiUsage.class }) {
+            hints.reflection().registerType(type, mcs);
+        }
+
+        // Runtime options merged into the requests.
+        hints.reflection().registerType(ChatOptions.class, mcs);
+        hints.reflection().registerType(FunctionCallingOptions.class, mcs);
+        for (var typeName : PORTABLE_OPTIONS) {
+            hints.reflection().registerType(TypeReference.of(typeName), mcs);
+        }
+    }
+
+    private static void registerTypeAndNestedTypes(RuntimeHints hints, Class<?> type, MemberCategory[] mcs) {
+        hints.reflection().registerType(type, mcs);
+        for (var nestedType : type.getDeclaredClasses()) {
+            registerTypeAndNestedTypes(hints, nestedType, mcs);
+        }
     }
 
 }
@@ -0,0 +1,15 @@
+package org.springframework.ai.llmsfreeapi.api;
+
+import org.springframework.ai.retry.NonTransientAiException;
+
+/**
+ * Thrown when the total deadline of a request has passed. Not retried, as there is no
+ * time left to retry in.
+ */
+public class DeadlineExceededException extends NonTransientAiException {
+
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+
+}
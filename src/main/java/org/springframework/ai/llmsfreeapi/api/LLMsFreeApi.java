@@ -4,24 +4,41 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.ai.llmsfreeapi.metrics.LLMsFreeApiMetrics;
 import org.springframework.ai.llmsfreeapi.util.ApiUtils;
 import org.springframework.ai.model.ModelOptionsUtils;
+import org.springframework.ai.retry.NonTransientAiException;
 import org.springframework.ai.retry.RetryUtils;
+import org.springframework.ai.retry.TransientAiException;
 import org.springframework.boot.context.properties.bind.ConstructorBinding;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
 import org.springframework.web.client.ResponseErrorHandler;
 import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 public class LLMsFreeApi {
 
@@ -29,9 +46,53 @@ public class LLMsFreeApi {
     private static final Predicate<String> SSE_DONE_PREDICATE = "[DONE]"::equals;
     private static final String REQUEST_BODY_NULL_ERROR = "The request body can not be null.";
 
-    private final RestClient restClient;
+    /**
+     * Whether the reactive client can be used, which requires spring-webflux and Reactor Netty.
+     */
+    public static final boolean REACTIVE_PRESENT = ClassUtils.isPresent(
+            "org.springframework.web.reactive.function.client.WebClient", LLMsFreeApi.class.getClassLoader())
+            && ClassUtils.isPresent("reactor.netty.http.client.HttpClient", LLMsFreeApi.class.getClassLoader());
+
+    /**
+     * The configured builder of the blocking client, built on first use.
+     */
+    private final RestClient.Builder restClientBuilder;
+
+    private volatile RestClient restClient;
+
+    /**
+     * Creates the request factory of the blocking client, which this client then owns.
+     */
+    private volatile Supplier<? extends ClientHttpRequestFactory> requestFactory;
+
+    /**
+     * The request factory created for the current blocking client, closed with it.
+     */
+    private ClientHttpRequestFactory ownedRequestFactory;
+
+    private final String baseUrl;
 
-    private final WebClient webClient;
+    private final Consumer<HttpHeaders> jsonContentHeaders;
+
+    /**
+     * The reactive client with the connections and event loops it owns, created on first
+     * use and discarded when the connections are closed.
+     */
+    private volatile ReactiveTransport transport;
+
+    private final Object lock = new Object();
+
+    private volatile boolean reactive = REACTIVE_PRESENT;
+
+    private volatile LLMsFreeApiCompression compression;
+
+    private volatile LLMsFreeApiRecording recording;
+
+    private volatile LLMsFreeApiFaultInjector faultInjector;
+
+    private final LLMsFreeApiMetrics metrics;
+
+    private final LLMsFreeApiTokenPool tokenPool;
 
     /**
      * Create a new client api with DEFAULT_BASE_URL
@@ -59,15 +120,330 @@ public class LLMsFreeApi {
      */
     public LLMsFreeApi(String baseUrl, String apiKey, RestClient.Builder restClientBuilder,
                        ResponseErrorHandler responseErrorHandler) {
+        this(baseUrl, apiKey, restClientBuilder, responseErrorHandler, new LLMsFreeApiMetrics());
+    }
 
-        Consumer<HttpHeaders> jsonContentHeaders = ApiUtils.getJsonContentHeaders(apiKey);
+    /**
+     * Create a new client api.
+     * @param baseUrl api base URL.
+     * @param apiKey LLMs Free API Key.
+     * @param restClientBuilder RestClient builder.
+     * @param responseErrorHandler Response error handler.
+     * @param metrics Operational counters.
+     */
+    public LLMsFreeApi(String baseUrl, String apiKey, RestClient.Builder restClientBuilder,
+                       ResponseErrorHandler responseErrorHandler, LLMsFreeApiMetrics metrics) {
+        this(baseUrl, LLMsFreeApiTokenPool.of(apiKey), restClientBuilder, responseErrorHandler, metrics);
+    }
+
+    /**
+     * Create a new client api.
+     * @param baseUrl api base URL.
+     * @param tokenPool LLMs Free API tokens.
+     * @param restClientBuilder RestClient builder.
+     * @param responseErrorHandler Response error handler.
+     * @param metrics Operational counters.
+     */
+    public LLMsFreeApi(String baseUrl, LLMsFreeApiTokenPool tokenPool, RestClient.Builder restClientBuilder,
+                       ResponseErrorHandler responseErrorHandler, LLMsFreeApiMetrics metrics) {
+
+        Assert.notNull(tokenPool, "LLMsFreeApiTokenPool must not be null");
+        Assert.notNull(metrics, "LLMsFreeApiMetrics must not be null");
+        this.metrics = metrics;
+        this.tokenPool = tokenPool;
 
-        this.restClient = restClientBuilder.baseUrl(baseUrl)
+        // The Authorization header is set per request, see #chatCompletionEntity(ChatCompletionRequest, String).
+        Consumer<HttpHeaders> jsonContentHeaders = ApiUtils.getJsonContentHeaders();
+
+        // Both clients are built on first use, an application may only ever need one of them.
+        this.restClientBuilder = restClientBuilder.baseUrl(baseUrl)
                 .defaultHeaders(jsonContentHeaders)
-                .defaultStatusHandler(responseErrorHandler)
-                .build();
+                .defaultStatusHandler(responseErrorHandler);
+
+        this.baseUrl = baseUrl;
+        this.jsonContentHeaders = jsonContentHeaders;
+    }
+
+    /**
+     * Choose whether the reactive client is used. Without it, streaming is not available and
+     * blocking calls with a deadline are only bounded when they start. By default it is used
+     * if spring-webflux and Reactor Netty are present.
+     * @param reactive whether to use the reactive client.
+     */
+    public void setReactive(boolean reactive) {
+        Assert.isTrue(!reactive || REACTIVE_PRESENT, "The reactive client requires spring-webflux and Reactor Netty");
+        this.reactive = reactive;
+    }
+
+    public boolean isReactive() {
+        return this.reactive;
+    }
+
+    /**
+     * Create the request factory of the blocking client with the given supplier, rather than
+     * use the one of the {@link RestClient.Builder}. The factory is owned by this client: a
+     * new one is created with the blocking client and it is closed by
+     * {@link #closeConnections(Duration)} if it is {@link AutoCloseable}. Applies to the
+     * clients created after, i.e. set it before the first request.
+     * @param requestFactory the supplier of the request factory, {@code null} to use the
+     * one of the builder.
+     */
+    public void setRequestFactory(Supplier<? extends ClientHttpRequestFactory> requestFactory) {
+        this.requestFactory = requestFactory;
+    }
+
+    /**
+     * Compress the chat request bodies and accept compressed responses. Response
+     * compression applies to the clients created after, i.e. set it before the first
+     * request.
+     * @param compression the compression, {@code null} to disable it.
+     */
+    public void setCompression(LLMsFreeApiCompression compression) {
+        this.compression = compression;
+    }
+
+    public LLMsFreeApiCompression getCompression() {
+        return this.compression;
+    }
+
+    /**
+     * Record the exchanges with the API, or replay recorded ones instead of sending the
+     * requests. Applies to the clients created after, i.e. set it before the first request.
+     * @param recording the recording, {@code null} to send the requests as usual.
+     */
+    public void setRecording(LLMsFreeApiRecording recording) {
+        this.recording = recording;
+    }
+
+    public LLMsFreeApiRecording getRecording() {
+        return this.recording;
+    }
+
+    /**
+     * Inject failures into the exchanges with the API, for resilience tests. Applies to the
+     * clients created after, i.e. set it before the first request.
+     * @param faultInjector the fault injector, {@code null} to inject none.
+     */
+    public void setFaultInjector(LLMsFreeApiFaultInjector faultInjector) {
+        this.faultInjector = faultInjector;
+    }
+
+    public LLMsFreeApiFaultInjector getFaultInjector() {
+        return this.faultInjector;
+    }
+
+    /**
+     * @return the operational counters of this client.
+     */
+    public LLMsFreeApiMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * @return the tokens this client sends requests with.
+     */
+    public LLMsFreeApiTokenPool getTokenPool() {
+        return this.tokenPool;
+    }
+
+    /**
+     * Prepare the client for its first requests: primes the JSON readers and writers of the
+     * chat types and opens connections to the API with concurrent {@code GET /ping} requests,
+     * which the streaming client keeps pooled. Best effort, connection failures are logged
+     * and the first requests then connect as usual.
+     * @param connections the number of streaming connections to open.
+     * @param timeout the maximum time to wait for the connections.
+     */
+    public void warmUp(int connections, Duration timeout) {
+        Assert.isTrue(connections >= 0, "connections must not be negative");
+        Assert.notNull(timeout, "timeout must not be null");
+
+        ModelOptionsUtils.toJsonString(new ChatCompletionRequest(ChatModel.KIMI.getValue(),
+                List.of(new ChatCompletionMessage("ping", ChatCompletionMessage.Role.USER)), false));
+        ModelOptionsUtils.jsonToObject("""
+                {"id":"0","object":"chat.completion","created":0,"model":"kimi","choices":[{"index":0,
+                "message":{"role":"assistant","content":"pong"},"finish_reason":"stop"}],
+                "usage":{"prompt_tokens":1,"completion_tokens":1,"total_tokens":2}}""", ChatCompletion.class);
+        ModelOptionsUtils.jsonToObject("""
+                {"id":"0","object":"chat.completion.chunk","created":0,"model":"kimi","choices":[{"index":0,
+                "delta":{"role":"assistant","content":"pong"},"finish_reason":null}]}""", ChatCompletionChunk.class);
+
+        try {
+            if (this.reactive) {
+                Flux.range(0, connections)
+                        .flatMap(i -> webClient().get().uri("/ping").retrieve().toBodilessEntity(), Math.max(connections, 1))
+                        .then()
+                        .block(timeout);
+            }
+            restClient().get().uri("/ping").retrieve().toBodilessEntity();
+        }
+        catch (RuntimeException ex) {
+            logger.warn("Could not open connections to the LLMs Free API during warm-up: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Close the pooled connections and the event loop threads of the reactive client, and
+     * discard the blocking client, closing its request factory if this client owns it, e.g.
+     * before a checkpoint of the JVM. The client is ready for new requests immediately,
+     * which open new connections. A request factory set on the {@link RestClient.Builder}
+     * belongs to the application and is left open.
+     * @param timeout the maximum time to wait for the connections to close.
+     * @see #setRequestFactory(Supplier)
+     */
+    public void closeConnections(Duration timeout) {
+        Assert.notNull(timeout, "timeout must not be null");
+        ReactiveTransport closed;
+        ClientHttpRequestFactory closedRequestFactory;
+        synchronized (this.lock) {
+            closed = this.transport;
+            this.transport = null;
+            this.restClient = null;
+            closedRequestFactory = this.ownedRequestFactory;
+            this.ownedRequestFactory = null;
+        }
+        if (closedRequestFactory instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            }
+            catch (Exception ex) {
+                logger.warn("Could not close the request factory of the LLMs Free API client: {}", ex.getMessage());
+            }
+        }
+        if (closed != null) {
+            closed.dispose(timeout);
+        }
+    }
+
+    private RestClient restClient() {
+        RestClient restClient = this.restClient;
+        if (restClient == null) {
+            synchronized (this.lock) {
+                restClient = this.restClient;
+                if (restClient == null) {
+                    var compression = this.compression;
+                    var recording = this.recording;
+                    var faultInjector = this.faultInjector;
+                    var requestFactory = this.requestFactory;
+                    var builder = this.restClientBuilder;
+                    if ((compression != null && compression.isResponses()) || recording != null || faultInjector != null
+                            || requestFactory != null) {
+                        builder = builder.clone();
+                        if (requestFactory != null) {
+                            this.ownedRequestFactory = requestFactory.get();
+                            builder.requestFactory(this.ownedRequestFactory);
+                        }
+                        if (faultInjector != null) {
+                            // First, to see the responses decompressed.
+                            builder.requestInterceptor(faultInjector.interceptor());
+                        }
+                        if (compression != null && compression.isResponses()) {
+                            builder.requestInterceptor(compression.responseInterceptor());
+                        }
+                        if (recording != null) {
+                            // Last, to see the exchanges as on the wire.
+                            builder.requestInterceptor(recording.interceptor());
+                        }
+                    }
+                    restClient = builder.build();
+                    this.restClient = restClient;
+                }
+            }
+        }
+        return restClient;
+    }
+
+    private WebClient webClient() {
+        Assert.state(this.reactive, "The reactive client is disabled, streaming requires spring-webflux and Reactor Netty");
+        ReactiveTransport transport = this.transport;
+        if (transport == null) {
+            synchronized (this.lock) {
+                transport = this.transport;
+                if (transport == null) {
+                    transport = ReactiveTransport.create(this.baseUrl, this.jsonContentHeaders, this.compression,
+                            this.recording, this.faultInjector);
+                    this.transport = transport;
+                }
+            }
+        }
+        return transport.webClient();
+    }
+
+    /**
+     * The Reactor Netty types are only referenced from here, so that this class loads
+     * without Reactor Netty.
+     */
+    private record ReactiveTransport(LoopResources loopResources, ConnectionProvider connectionProvider,
+                                     WebClient webClient) {
+
+        static ReactiveTransport create(String baseUrl, Consumer<HttpHeaders> headers,
+                                        LLMsFreeApiCompression compression, LLMsFreeApiRecording recording,
+                                        LLMsFreeApiFaultInjector faultInjector) {
+            // Not the shared Reactor Netty resources, so that the connections can be closed.
+            var loopResources = LoopResources.create("llmsfreeapi");
+            var connectionProvider = ConnectionProvider.create("llmsfreeapi");
+            var webClient = WebClient.builder()
+                    .baseUrl(baseUrl)
+                    .defaultHeaders(headers)
+                    .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connectionProvider)
+                            .runOn(loopResources)
+                            .compress(compression != null && compression.isResponses())));
+            if (faultInjector != null) {
+                webClient.filter(faultInjector.filter());
+            }
+            if (recording != null) {
+                webClient.filter(recording.filter());
+            }
+            return new ReactiveTransport(loopResources, connectionProvider, webClient.build());
+        }
+
+        void dispose(Duration timeout) {
+            this.connectionProvider.disposeLater()
+                    .then(this.loopResources.disposeLater())
+                    .block(timeout);
+        }
 
-        this.webClient = WebClient.builder().baseUrl(baseUrl).defaultHeaders(jsonContentHeaders).build();
+    }
+
+    // --------------------------------------------------------------------------
+    // Token Check
+    // --------------------------------------------------------------------------
+
+    /**
+     * Checks whether a refresh token is still live, with the {@code POST /token/check}
+     * endpoint of the free-api servers. The call is blocking.
+     * @param token The refresh token.
+     * @return Whether the token is live.
+     * @throws RuntimeException if the check failed, e.g. the server could not be reached
+     * or did not answer with a {@code live} flag, which says nothing about the token.
+     */
+    public boolean checkToken(String token) {
+        Assert.hasText(token, "token must not be empty");
+        TokenCheckResponse response = restClient().post()
+                .uri("/token/check")
+                .body(new TokenCheckRequest(token))
+                .retrieve()
+                .body(TokenCheckResponse.class);
+        if (response == null || response.live() == null) {
+            throw new IllegalStateException("The token check response has no live flag");
+        }
+        return response.live();
+    }
+
+    /**
+     * Request to check a refresh token.
+     *
+     * @param token The refresh token.
+     */
+    public record TokenCheckRequest(@JsonProperty("token") String token) {
+    }
+
+    /**
+     * Result of a token check.
+     *
+     * @param live Whether the token is live.
+     */
+    public record TokenCheckResponse(@JsonProperty("live") Boolean live) {
     }
 
     // --------------------------------------------------------------------------
@@ -139,18 +515,24 @@ public class LLMsFreeApi {
      * @param messages 调用语言模型时，将当前对话信息列表作为提示输入给模型， 按照 {"role": "user", "content": "你好"} 的json 数组形式进行传参； 可能的消息类型包括 System message、User message、Assistant message 和 Tool message。
      * @param stream 是否开启流式调用，默认false
      * @param useSearch 是否开启联网搜索，默认false
+     * @param conversationId 上游会话ID，传入时服务端在该会话中继续对话，只需发送新增的消息
      */
     @JsonInclude(JsonInclude.Include.NON_NULL)
     public record ChatCompletionRequest(
             @JsonProperty("model") String model,
             @JsonProperty("messages") List<ChatCompletionMessage> messages,
             @JsonProperty("stream") Boolean stream,
-            @JsonProperty("use_search") Boolean useSearch) {
+            @JsonProperty("use_search") Boolean useSearch,
+            @JsonProperty("conversation_id") String conversationId) {
 
         public ChatCompletionRequest(String model, List<ChatCompletionMessage> messages, Boolean stream) {
             this(model, messages, stream, false);
         }
 
+        public ChatCompletionRequest(String model, List<ChatCompletionMessage> messages, Boolean stream, Boolean useSearch) {
+            this(model, messages, stream, useSearch, null);
+        }
+
         /**
          * 用于控制模型是如何选择要调用的函数，仅当工具类型为function时补充。默认为auto，当前仅支持auto
          */
@@ -476,15 +858,163 @@ public class LLMsFreeApi {
      * and headers.
      */
     public ResponseEntity<LLMsFreeApi.ChatCompletion> chatCompletionEntity(LLMsFreeApi.ChatCompletionRequest chatRequest) {
+        return chatCompletionEntity(chatRequest, null);
+    }
+
+    /**
+     * Creates a model response for the given chat conversation, using the given token.
+     * @param chatRequest The chat completion request.
+     * @param token The token to send the request with, or {@code null} to take the next
+     * token of the {@link #getTokenPool() token pool}.
+     * @return Entity response with {@link LLMsFreeApi.ChatCompletion} as a body and HTTP status code
+     * and headers.
+     */
+    public ResponseEntity<LLMsFreeApi.ChatCompletion> chatCompletionEntity(LLMsFreeApi.ChatCompletionRequest chatRequest, String token) {
+        return chatCompletionEntity(chatRequest, token, RequestPriority.NORMAL);
+    }
+
+    /**
+     * Creates a model response for the given chat conversation, using the given token.
+     * @param chatRequest The chat completion request.
+     * @param token The token to send the request with, or {@code null} to take the next
+     * token of the {@link #getTokenPool() token pool}.
+     * @param priority The priority of the request while waiting for a token.
+     * @return Entity response with {@link LLMsFreeApi.ChatCompletion} as a body and HTTP status code
+     * and headers.
+     */
+    public ResponseEntity<LLMsFreeApi.ChatCompletion> chatCompletionEntity(LLMsFreeApi.ChatCompletionRequest chatRequest, String token,
+                                                                        RequestPriority priority) {
+        return chatCompletionEntity(chatRequest, token, priority, RequestDeadline.NONE);
+    }
+
+    /**
+     * Creates a model response for the given chat conversation, using the given token.
+     * <p>
+     * A request with a {@link RequestDeadline#isBounded() bounded} deadline is sent through
+     * the reactive client, which can abort the exchange and release the token once the
+     * deadline passes; its error responses are mapped to a {@link NonTransientAiException}
+     * for client errors and a {@link TransientAiException} otherwise, rather than by the
+     * configured {@link ResponseErrorHandler}.
+     * @param chatRequest The chat completion request.
+     * @param token The token to send the request with, or {@code null} to take the next
+     * token of the {@link #getTokenPool() token pool}.
+     * @param priority The priority of the request while waiting for a token.
+     * @param deadline The time limits of the request, the time waiting for a token included.
+     * @return Entity response with {@link LLMsFreeApi.ChatCompletion} as a body and HTTP status code
+     * and headers.
+     * @throws DeadlineExceededException if the deadline passes.
+     */
+    public ResponseEntity<LLMsFreeApi.ChatCompletion> chatCompletionEntity(LLMsFreeApi.ChatCompletionRequest chatRequest, String token,
+                                                                        RequestPriority priority, RequestDeadline deadline) {
 
         Assert.notNull(chatRequest, "The request body can not be null.");
         Assert.isTrue(!chatRequest.stream(), "Request must set the steam property to false.");
+        Assert.notNull(deadline, "RequestDeadline must not be null");
+
+        deadline.checkNotExpired();
+        var lease = this.tokenPool.acquire(token, priority, deadline.remaining());
+        String[] tags = requestTags(chatRequest, "chat", lease);
+        this.metrics.adjust(LLMsFreeApiMetrics.REQUESTS_ACTIVE, 1, tags);
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            ResponseEntity<ChatCompletion> response = doChatCompletionEntity(chatRequest, lease, deadline);
+            failed = false;
+            return response;
+        }
+        finally {
+            lease.release();
+            this.metrics.adjust(LLMsFreeApiMetrics.REQUESTS_ACTIVE, -1, tags);
+            this.metrics.record(LLMsFreeApiMetrics.REQUESTS_LATENCY, System.nanoTime() - start, failed, tags);
+        }
+    }
 
-        return this.restClient.post()
+    private ResponseEntity<ChatCompletion> doChatCompletionEntity(ChatCompletionRequest chatRequest,
+                                                                  LLMsFreeApiTokenPool.Lease lease, RequestDeadline deadline) {
+        // Blocking on the reactive client is not allowed on an event loop thread, e.g. for
+        // the tool call rounds of a stream; such requests are only bounded when they start,
+        // as are all requests without the reactive client.
+        if (!deadline.isBounded() || !this.reactive || Schedulers.isInNonBlockingThread()) {
+            RequestBody requestBody = requestBody(chatRequest);
+            return restClient().post()
+                    .uri("/v1/chat/completions")
+                    .headers(headers -> requestBody.headers(headers, lease.getToken()))
+                    .body(requestBody.content())
+                    .retrieve()
+                    .toEntity(LLMsFreeApi.ChatCompletion.class);
+        }
+        RequestBody requestBody = requestBody(chatRequest);
+        return webClient().post()
                 .uri("/v1/chat/completions")
-                .body(chatRequest)
+                .headers(headers -> requestBody.headers(headers, lease.getToken()))
+                .attributes(requestBody::attributes)
+                .bodyValue(requestBody.content())
                 .retrieve()
-                .toEntity(LLMsFreeApi.ChatCompletion.class);
+                .onStatus(HttpStatusCode::isError, LLMsFreeApi::toAiException)
+                .toEntity(LLMsFreeApi.ChatCompletion.class)
+                .timeout(deadline.remaining(), Mono.error(deadline::exceeded))
+                .block();
+    }
+
+    /**
+     * Map an error response of the reactive client as the default error handler of the
+     * blocking client does: a {@link NonTransientAiException} for client errors and a
+     * {@link TransientAiException} otherwise, with the status and the body as message.
+     */
+    private static Mono<? extends Throwable> toAiException(ClientResponse response) {
+        return response.bodyToMono(String.class)
+                .defaultIfEmpty("")
+                .map(body -> {
+                    String message = response.statusCode().value() + " - " + body;
+                    return (response.statusCode().is4xxClientError() ? new NonTransientAiException(message)
+                            : new TransientAiException(message));
+                });
+    }
+
+    /**
+     * The body of a chat request: the request itself, written by the message converters,
+     * or its JSON written here if compression is enabled, compressed if it pays off, or
+     * if the exchanges are recorded, so that both clients send the same bytes.
+     */
+    private RequestBody requestBody(ChatCompletionRequest chatRequest) {
+        var compression = this.compression;
+        var recording = this.recording;
+        if (compression == null && recording == null) {
+            return new RequestBody(chatRequest, null, null);
+        }
+        byte[] json = ModelOptionsUtils.toJsonString(chatRequest).getBytes(StandardCharsets.UTF_8);
+        String key = (recording != null ? LLMsFreeApiRecording.requestKey(json) : null);
+        byte[] compressed = (compression != null ? compression.compress(json) : null);
+        if (compressed == null) {
+            this.metrics.add(LLMsFreeApiMetrics.REQUEST_BYTES, json.length, "encoding", "identity");
+            return new RequestBody(json, null, key);
+        }
+        String encoding = compression.getAlgorithm().getEncoding();
+        this.metrics.add(LLMsFreeApiMetrics.REQUEST_BYTES, compressed.length, "encoding", encoding);
+        this.metrics.add(LLMsFreeApiMetrics.COMPRESSION_SAVED, json.length - compressed.length, "encoding", encoding);
+        return new RequestBody(compressed, encoding, key);
+    }
+
+    private record RequestBody(Object content, String contentEncoding, String recordingKey) {
+
+        void headers(HttpHeaders headers, String token) {
+            headers.setBearerAuth(token);
+            if (this.contentEncoding != null) {
+                headers.set(HttpHeaders.CONTENT_ENCODING, this.contentEncoding);
+            }
+        }
+
+        void attributes(Map<String, Object> attributes) {
+            if (this.recordingKey != null) {
+                attributes.put(LLMsFreeApiRecording.REQUEST_KEY_ATTRIBUTE, this.recordingKey);
+            }
+        }
+
+    }
+
+    private static String[] requestTags(ChatCompletionRequest chatRequest, String endpoint, LLMsFreeApiTokenPool.Lease lease) {
+        return new String[] { "model", Objects.toString(chatRequest.model(), "default"), "endpoint", endpoint,
+                "token", lease.getLabel() };
     }
 
     private LLMsFreeApiStreamFunctionCallingHelper chunkMerger = new LLMsFreeApiStreamFunctionCallingHelper();
@@ -496,17 +1026,100 @@ public class LLMsFreeApi {
      * @return Returns a {@link Flux} stream from chat completion chunks.
      */
     public Flux<ChatCompletionChunk> chatCompletionStream(ChatCompletionRequest chatRequest) {
+        return chatCompletionStream(chatRequest, null);
+    }
+
+    /**
+     * Creates a streaming chat response for the given chat conversation, using the given token.
+     * @param chatRequest The chat completion request. Must have the stream property set
+     * to true.
+     * @param token The token to send the request with, or {@code null} to take the next
+     * token of the {@link #getTokenPool() token pool}.
+     * @return Returns a {@link Flux} stream from chat completion chunks.
+     */
+    public Flux<ChatCompletionChunk> chatCompletionStream(ChatCompletionRequest chatRequest, String token) {
+        return chatCompletionStream(chatRequest, token, RequestPriority.NORMAL);
+    }
+
+    /**
+     * Creates a streaming chat response for the given chat conversation, using the given token.
+     * @param chatRequest The chat completion request. Must have the stream property set
+     * to true.
+     * @param token The token to send the request with, or {@code null} to take the next
+     * token of the {@link #getTokenPool() token pool}.
+     * @param priority The priority of the request while waiting for a token.
+     * @return Returns a {@link Flux} stream from chat completion chunks.
+     */
+    public Flux<ChatCompletionChunk> chatCompletionStream(ChatCompletionRequest chatRequest, String token,
+                                                         RequestPriority priority) {
+        return chatCompletionStream(chatRequest, token, priority, RequestDeadline.NONE);
+    }
+
+    /**
+     * Creates a streaming chat response for the given chat conversation, using the given token.
+     * @param chatRequest The chat completion request. Must have the stream property set
+     * to true.
+     * @param token The token to send the request with, or {@code null} to take the next
+     * token of the {@link #getTokenPool() token pool}.
+     * @param priority The priority of the request while waiting for a token.
+     * @param deadline The time limits of the request, combined with the one of the Reactor
+     * context under {@link RequestDeadline#CONTEXT_KEY} if any.
+     * @return Returns a {@link Flux} stream from chat completion chunks. An error response
+     * fails it with a {@link NonTransientAiException} for client errors and a
+     * {@link TransientAiException} otherwise, as for the blocking calls.
+     */
+    public Flux<ChatCompletionChunk> chatCompletionStream(ChatCompletionRequest chatRequest, String token,
+                                                         RequestPriority priority, RequestDeadline deadline) {
 
         Assert.notNull(chatRequest, "The request body can not be null.");
         Assert.isTrue(chatRequest.stream(), "Request must set the steam property to true.");
+        Assert.notNull(deadline, "RequestDeadline must not be null");
+        Assert.state(this.reactive, "The reactive client is disabled, streaming requires spring-webflux and Reactor Netty");
+
+        return Flux.deferContextual(context -> {
+            RequestDeadline effective = deadline.and(context.<RequestDeadline>getOrDefault(RequestDeadline.CONTEXT_KEY, null));
+            if (effective.isExpired()) {
+                return Flux.error(effective.exceeded());
+            }
+
+            Mono<LLMsFreeApiTokenPool.Lease> lease = Mono.fromCallable(
+                    () -> this.tokenPool.acquire(token, priority, effective.remaining()));
+            if (this.tokenPool.isLimited()) {
+                // Waiting for a token with capacity blocks, keep it off the event loop.
+                lease = lease.subscribeOn(Schedulers.boundedElastic());
+            }
+
+            return lease.doOnDiscard(LLMsFreeApiTokenPool.Lease.class, LLMsFreeApiTokenPool.Lease::release)
+                    .flatMapMany(acquired -> {
+                        String[] tags = requestTags(chatRequest, "chat.stream", acquired);
+                        this.metrics.adjust(LLMsFreeApiMetrics.REQUESTS_ACTIVE, 1, tags);
+                        long start = System.nanoTime();
+                        return doChatCompletionStream(chatRequest, acquired.getToken(), effective)
+                                .doFinally(signal -> {
+                                    acquired.release();
+                                    this.metrics.adjust(LLMsFreeApiMetrics.REQUESTS_ACTIVE, -1, tags);
+                                    this.metrics.record(LLMsFreeApiMetrics.REQUESTS_LATENCY, System.nanoTime() - start,
+                                            signal == SignalType.ON_ERROR, tags);
+                                });
+                    });
+        }).doOnCancel(() -> this.metrics.increment(LLMsFreeApiMetrics.STREAM_CANCELLED));
+    }
+
+    private Flux<ChatCompletionChunk> doChatCompletionStream(ChatCompletionRequest chatRequest, String token,
+                                                             RequestDeadline deadline) {
 
         AtomicBoolean isInsideTool = new AtomicBoolean(false);
 
-        return this.webClient.post()
+        // The time limits apply to the raw events, tool call deltas are merged further down.
+        RequestBody requestBody = requestBody(chatRequest);
+        return deadline.apply(webClient().post()
                 .uri("/v1/chat/completions")
-                .body(Mono.just(chatRequest), ChatCompletionRequest.class)
+                .headers(headers -> requestBody.headers(headers, token))
+                .attributes(requestBody::attributes)
+                .bodyValue(requestBody.content())
                 .retrieve()
-                .bodyToFlux(String.class)
+                .onStatus(HttpStatusCode::isError, LLMsFreeApi::toAiException)
+                .bodyToFlux(String.class))
                 .takeUntil(SSE_DONE_PREDICATE)
                 .filter(SSE_DONE_PREDICATE.negate())
                 .map(content -> ModelOptionsUtils.jsonToObject(content, ChatCompletionChunk.class))
@@ -523,12 +1136,11 @@ public class LLMsFreeApi {
                     }
                     return !isInsideTool.get();
                 })
-                .concatMapIterable(window -> {
-                    Mono<ChatCompletionChunk> mono1 = window.reduce(new ChatCompletionChunk(null, null, null, null, null,null),
-                            (previous, current) -> this.chunkMerger.merge(previous, current));
-                    return List.of(mono1);
-                })
-                .flatMap(mono -> mono);
+                // Reduce each window in order. concatMap subscribes to at most one window at a
+                // time and cancels both the active window and the upstream when the downstream
+                // cancels, so the SSE connection is closed instead of draining the generation.
+                .concatMap(window -> window.reduce(new ChatCompletionChunk(null, null, null, null, null, null),
+                        (previous, current) -> this.chunkMerger.merge(previous, current)));
     }
 
 
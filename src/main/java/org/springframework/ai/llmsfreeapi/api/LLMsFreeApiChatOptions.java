@@ -10,7 +10,11 @@ import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.model.function.FunctionCallback;
 import org.springframework.ai.model.function.FunctionCallingOptions;
 import org.springframework.boot.context.properties.NestedConfigurationProperty;
+import org.springframework.util.Assert;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -31,6 +35,48 @@ public class LLMsFreeApiChatOptions implements FunctionCallingOptions, ChatOptio
     @JsonProperty("use_search")
     private Boolean useSearch;
 
+    /**
+     * 上游会话ID，传入时在该会话中继续对话
+     */
+    @JsonProperty("conversation_id")
+    private String conversationId;
+
+    /**
+     * 客户端会话标识，开启会话复用时用于关联上游会话，不会发送给服务端
+     */
+    @JsonProperty("session_id")
+    private String sessionId;
+
+    /**
+     * 请求优先级，账号并发受限时决定排队请求的服务顺序，不会发送给服务端
+     */
+    @JsonProperty("priority")
+    private RequestPriority priority;
+
+    /**
+     * 租户标识，开启租户准入控制时用于配额与公平调度，不会发送给服务端
+     */
+    @JsonProperty("tenant_id")
+    private String tenantId;
+
+    /**
+     * 请求总超时时间，覆盖重试、回退与工具调用轮次，不会发送给服务端
+     */
+    @JsonIgnore
+    private Duration timeout;
+
+    /**
+     * 流式请求等待首个数据块的超时时间，不会发送给服务端
+     */
+    @JsonIgnore
+    private Duration firstChunkTimeout;
+
+    /**
+     * 流式请求两个数据块之间的最大间隔，不会发送给服务端
+     */
+    @JsonIgnore
+    private Duration idleTimeout;
+
     /**
      * 可供模型调用的工具列表,tools 字段会计算 tokens ，同样受到 tokens 长度的限制
      */
@@ -43,24 +89,38 @@ public class LLMsFreeApiChatOptions implements FunctionCallingOptions, ChatOptio
     @NestedConfigurationProperty
     private @JsonProperty("tool_choice") LLMsFreeApi.ChatCompletionRequest.ToolChoice toolChoice;
 
+    /**
+     * 可供模型调用的函数回调，会注册到客户端，不会发送给服务端
+     */
+    @NestedConfigurationProperty
+    @JsonIgnore
+    private List<FunctionCallback> functionCallbacks = new ArrayList<>();
+
+    /**
+     * 本次请求启用的函数名称，对应已注册的函数回调，不会发送给服务端
+     */
+    @NestedConfigurationProperty
+    @JsonIgnore
+    private Set<String> functions = new HashSet<>();
+
     @Override
     public List<FunctionCallback> getFunctionCallbacks() {
-        return null;
+        return this.functionCallbacks;
     }
 
     @Override
     public void setFunctionCallbacks(List<FunctionCallback> functionCallbacks) {
-
+        this.functionCallbacks = functionCallbacks;
     }
 
     @Override
     public Set<String> getFunctions() {
-        return null;
+        return this.functions;
     }
 
     @Override
     public void setFunctions(Set<String> functions) {
-
+        this.functions = functions;
     }
 
     public static Builder builder() {
@@ -81,6 +141,58 @@ public class LLMsFreeApiChatOptions implements FunctionCallingOptions, ChatOptio
             return this;
         }
 
+        public Builder withConversationId(String conversationId) {
+            this.options.setConversationId(conversationId);
+            return this;
+        }
+
+        public Builder withSessionId(String sessionId) {
+            this.options.setSessionId(sessionId);
+            return this;
+        }
+
+        public Builder withPriority(RequestPriority priority) {
+            this.options.setPriority(priority);
+            return this;
+        }
+
+        public Builder withTenantId(String tenantId) {
+            this.options.setTenantId(tenantId);
+            return this;
+        }
+
+        public Builder withTimeout(Duration timeout) {
+            this.options.setTimeout(timeout);
+            return this;
+        }
+
+        public Builder withFirstChunkTimeout(Duration firstChunkTimeout) {
+            this.options.setFirstChunkTimeout(firstChunkTimeout);
+            return this;
+        }
+
+        public Builder withIdleTimeout(Duration idleTimeout) {
+            this.options.setIdleTimeout(idleTimeout);
+            return this;
+        }
+
+        public Builder withFunctionCallbacks(List<FunctionCallback> functionCallbacks) {
+            this.options.functionCallbacks = functionCallbacks;
+            return this;
+        }
+
+        public Builder withFunctions(Set<String> functionNames) {
+            Assert.notNull(functionNames, "Function names must not be null");
+            this.options.functions = functionNames;
+            return this;
+        }
+
+        public Builder withFunction(String functionName) {
+            Assert.hasText(functionName, "Function name must not be empty");
+            this.options.functions.add(functionName);
+            return this;
+        }
+
         public Builder withTools(List<LLMsFreeApi.FunctionTool> tools) {
             this.options.setTools(tools);
             return this;
@@ -146,6 +258,62 @@ public class LLMsFreeApiChatOptions implements FunctionCallingOptions, ChatOptio
         this.useSearch = useSearch;
     }
 
+    public String getConversationId() {
+        return conversationId;
+    }
+
+    public void setConversationId(String conversationId) {
+        this.conversationId = conversationId;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public RequestPriority getPriority() {
+        return priority;
+    }
+
+    public void setPriority(RequestPriority priority) {
+        this.priority = priority;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public void setTenantId(String tenantId) {
+        this.tenantId = tenantId;
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    public Duration getFirstChunkTimeout() {
+        return firstChunkTimeout;
+    }
+
+    public void setFirstChunkTimeout(Duration firstChunkTimeout) {
+        this.firstChunkTimeout = firstChunkTimeout;
+    }
+
+    public Duration getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(Duration idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
     public List<LLMsFreeApi.FunctionTool> getTools() {
         return tools;
     }
@@ -0,0 +1,196 @@
+package org.springframework.ai.llmsfreeapi.api;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.Assert;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compression of the requests to and responses from the free-api servers, which inflate
+ * request bodies sent with a {@code Content-Encoding} of gzip or deflate.
+ * <p>
+ * Chat request bodies of at least the threshold size are compressed, unless compressing
+ * does not make them smaller, which pays off for long conversations with large system
+ * prompts and tool definitions. Compressed responses are accepted too: the
+ * reactive client decompresses them itself, and the blocking client through
+ * {@link #responseInterceptor()} unless its request factory already did.
+ */
+public class LLMsFreeApiCompression {
+
+    public static final int DEFAULT_THRESHOLD = 8 * 1024;
+
+    private final Algorithm algorithm;
+
+    private final int threshold;
+
+    private final boolean responses;
+
+    public LLMsFreeApiCompression() {
+        this(Algorithm.GZIP, DEFAULT_THRESHOLD, true);
+    }
+
+    /**
+     * @param algorithm the compression of the request bodies.
+     * @param threshold the minimum size in bytes of a request body to compress.
+     * @param responses whether to accept compressed responses.
+     */
+    public LLMsFreeApiCompression(Algorithm algorithm, int threshold, boolean responses) {
+        Assert.notNull(algorithm, "Algorithm must not be null");
+        Assert.isTrue(threshold >= 0, "threshold must not be negative");
+        this.algorithm = algorithm;
+        this.threshold = threshold;
+        this.responses = responses;
+    }
+
+    public Algorithm getAlgorithm() {
+        return this.algorithm;
+    }
+
+    public int getThreshold() {
+        return this.threshold;
+    }
+
+    public boolean isResponses() {
+        return this.responses;
+    }
+
+    /**
+     * Compress a request body if it reaches the threshold.
+     * @param body the request body.
+     * @return the compressed body, or {@code null} if it is below the threshold or does not
+     * get smaller.
+     */
+    public byte[] compress(byte[] body) {
+        if (body.length < this.threshold) {
+            return null;
+        }
+        var output = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (OutputStream compressor = this.algorithm.compressor(output)) {
+            compressor.write(body);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return (output.size() < body.length ? output.toByteArray() : null);
+    }
+
+    /**
+     * @return an interceptor for the blocking client which asks for compressed responses
+     * and decompresses them, or leaves them to the request factory if it decompressed them
+     * already.
+     */
+    public ClientHttpRequestInterceptor responseInterceptor() {
+        return new ResponseDecompressingInterceptor();
+    }
+
+    /**
+     * The compression of the request bodies.
+     */
+    public enum Algorithm {
+
+        GZIP("gzip"),
+
+        DEFLATE("deflate");
+
+        private final String encoding;
+
+        Algorithm(String encoding) {
+            this.encoding = encoding;
+        }
+
+        /**
+         * @return the {@code Content-Encoding} of the compressed bodies.
+         */
+        public String getEncoding() {
+            return this.encoding;
+        }
+
+        private OutputStream compressor(OutputStream output) throws IOException {
+            return (this == GZIP ? new GZIPOutputStream(output) : new DeflaterOutputStream(output));
+        }
+
+    }
+
+    private static final class ResponseDecompressingInterceptor implements ClientHttpRequestInterceptor {
+
+        @Override
+        public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+                throws IOException {
+            if (!request.getHeaders().containsKey(HttpHeaders.ACCEPT_ENCODING)) {
+                request.getHeaders().set(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+            }
+            ClientHttpResponse response = execution.execute(request, body);
+            String encoding = response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+            if ("gzip".equalsIgnoreCase(encoding) || "deflate".equalsIgnoreCase(encoding)) {
+                return new DecompressedResponse(response, "gzip".equalsIgnoreCase(encoding));
+            }
+            return response;
+        }
+
+    }
+
+    private static final class DecompressedResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse response;
+
+        private final boolean gzip;
+
+        private final HttpHeaders headers;
+
+        private InputStream body;
+
+        DecompressedResponse(ClientHttpResponse response, boolean gzip) {
+            this.response = response;
+            this.gzip = gzip;
+            var headers = new HttpHeaders();
+            headers.putAll(response.getHeaders());
+            headers.remove(HttpHeaders.CONTENT_ENCODING);
+            headers.remove(HttpHeaders.CONTENT_LENGTH);
+            this.headers = HttpHeaders.readOnlyHttpHeaders(headers);
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return this.response.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return this.response.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return this.headers;
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (this.body == null) {
+                InputStream compressed = this.response.getBody();
+                this.body = (this.gzip ? new GZIPInputStream(compressed) : new InflaterInputStream(compressed));
+            }
+            return this.body;
+        }
+
+        @Override
+        public void close() {
+            this.response.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,434 @@
+package org.springframework.ai.llmsfreeapi.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.ai.llmsfreeapi.metrics.LLMsFreeApiMetrics;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.StringDecoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.Assert;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Injects failures of the free-api servers into the exchanges at set rates, to test the
+ * retries, fallbacks, timeouts and limits of an application offline and under load, e.g.
+ * together with a replayed {@link LLMsFreeApiRecording}.
+ * <p>
+ * At most one {@link Fault} is injected per exchange, drawn at random with the rate of
+ * each, and counted once injected. Faults within a stream apply after its first
+ * server-sent event and before {@code data: [DONE]}, so that the stream fails after it
+ * started. Whole responses, e.g. of blocking calls, are rewritten instead: truncated, or
+ * given the finish reason of the fault. Nothing is injected unless set on the
+ * {@link LLMsFreeApi}, which then costs nothing.
+ */
+public class LLMsFreeApiFaultInjector {
+
+    public static final Duration DEFAULT_LATENCY = Duration.ofSeconds(5);
+
+    public static final Duration DEFAULT_STALL = Duration.ofSeconds(60);
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final String TOO_MANY_REQUESTS_BODY = "{\"message\":\"Too many requests (injected fault)\"}";
+
+    private static final String MALFORMED_EVENT = "data: {\"id\":\"fault\",\"object\":\"chat.completion.chunk\",\"choices\":[{\n\n";
+
+    /**
+     * Splits a stream into its server-sent events, keeping their delimiter.
+     */
+    private static final StringDecoder EVENT_DECODER = StringDecoder.allMimeTypes(List.of("\n\n"), false);
+
+    private final LLMsFreeApiMetrics metrics;
+
+    private volatile double[] rates = new double[Fault.values().length];
+
+    private volatile Duration latency = DEFAULT_LATENCY;
+
+    private volatile Duration stall = DEFAULT_STALL;
+
+    /**
+     * @param metrics the metrics to count the injected faults in.
+     */
+    public LLMsFreeApiFaultInjector(LLMsFreeApiMetrics metrics) {
+        Assert.notNull(metrics, "LLMsFreeApiMetrics must not be null");
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param fault the fault.
+     * @param rate the share of the exchanges to inject the fault into, from 0 to 1. The
+     * rates of all faults must not add up to more than 1.
+     */
+    public void setRate(Fault fault, double rate) {
+        Assert.notNull(fault, "Fault must not be null");
+        Assert.isTrue(rate >= 0 && rate <= 1, "rate must be between 0 and 1");
+        synchronized (this) {
+            double[] rates = this.rates.clone();
+            rates[fault.ordinal()] = rate;
+            Assert.isTrue(Arrays.stream(rates).sum() <= 1 + 1e-9, "The rates of all faults must not add up to more than 1");
+            this.rates = rates;
+        }
+    }
+
+    public double getRate(Fault fault) {
+        return this.rates[fault.ordinal()];
+    }
+
+    /**
+     * @param latency the delay added by a {@link Fault#LATENCY} fault.
+     */
+    public void setLatency(Duration latency) {
+        Assert.notNull(latency, "latency must not be null");
+        this.latency = latency;
+    }
+
+    /**
+     * @param stall the pause of a response body with a {@link Fault#STALL} fault.
+     */
+    public void setStall(Duration stall) {
+        Assert.notNull(stall, "stall must not be null");
+        this.stall = stall;
+    }
+
+    /**
+     * @return an interceptor for the blocking client, to be the first one so that the
+     * responses it modifies are decompressed already.
+     */
+    public ClientHttpRequestInterceptor interceptor() {
+        return this::intercept;
+    }
+
+    /**
+     * @return an exchange filter for the reactive client.
+     */
+    public ExchangeFilterFunction filter() {
+        return (request, next) -> {
+            Fault fault = draw();
+            if (fault == null) {
+                return next.exchange(request);
+            }
+            return switch (fault) {
+                case LATENCY -> Mono.delay(this.latency).doOnNext(delay -> count(fault)).then(next.exchange(request));
+                case TOO_MANY_REQUESTS -> Mono.fromSupplier(() -> {
+                    count(fault);
+                    return ClientResponse.create(HttpStatus.TOO_MANY_REQUESTS)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .header(HttpHeaders.RETRY_AFTER, "1")
+                            .body(TOO_MANY_REQUESTS_BODY)
+                            .build();
+                });
+                default -> next.exchange(request).map(response -> inject(fault, response));
+            };
+        };
+    }
+
+    private ClientResponse inject(Fault fault, ClientResponse response) {
+        boolean stream = response.headers().contentType().filter(MediaType.TEXT_EVENT_STREAM::isCompatibleWith).isPresent();
+        if (stream) {
+            return response.mutate().body(body -> injectEvents(fault, body)).build();
+        }
+        if (fault == Fault.STALL) {
+            return response.mutate()
+                    .body(body -> Mono.delay(this.stall).doOnNext(delay -> count(fault)).thenMany(body))
+                    .build();
+        }
+        // A whole response, e.g. of a blocking call with a deadline: as the blocking client does.
+        return response.mutate()
+                .headers(headers -> headers.remove(HttpHeaders.CONTENT_LENGTH))
+                .body(body -> DataBufferUtils.join(body)
+                        .map(buffer -> {
+                            byte[] content = new byte[buffer.readableByteCount()];
+                            buffer.read(content);
+                            DataBufferUtils.release(buffer);
+                            return content;
+                        })
+                        .flatMap(content -> Mono.fromCallable(() -> wrap(injectContent(fault, content))))
+                        .flux())
+                .build();
+    }
+
+    /**
+     * Inject a fault into a stream of server-sent events, after its first event and before
+     * the end of the stream, {@code data: [DONE]} or the end of the body.
+     */
+    private Flux<DataBuffer> injectEvents(Fault fault, Flux<DataBuffer> body) {
+        Flux<String> events = EVENT_DECODER.decode(body, ResolvableType.forClass(String.class), null, null);
+        AtomicBoolean started = new AtomicBoolean();
+        AtomicBoolean injected = new AtomicBoolean();
+        boolean ends = (fault == Fault.NETWORK_ERROR || fault == Fault.SENSITIVE);
+        return events.concatMap(event -> {
+                    if (injected.get()) {
+                        return (ends ? Flux.<String>empty() : Flux.just(event));
+                    }
+                    if (started.get() || isDone(event)) {
+                        injected.set(true);
+                        return injectBefore(fault, event);
+                    }
+                    started.set(true);
+                    return Flux.just(event);
+                })
+                .concatWith(Flux.defer(() -> (injected.getAndSet(true) ? Flux.<String>empty() : injectBefore(fault, null))))
+                .map(LLMsFreeApiFaultInjector::wrap);
+    }
+
+    /**
+     * @return the events replacing the next event, {@code null} at the end of the body.
+     */
+    private Flux<String> injectBefore(Fault fault, String next) {
+        Flux<String> rest = Mono.justOrEmpty(next).flux();
+        return switch (fault) {
+            case STALL -> Mono.delay(this.stall).doOnNext(delay -> count(fault)).thenMany(rest);
+            case DISCONNECT -> Flux.error(() -> {
+                count(fault);
+                return new IOException("Connection reset by peer (injected fault)");
+            });
+            case MALFORMED_CHUNK -> Flux.concat(Mono.fromSupplier(() -> {
+                count(fault);
+                return MALFORMED_EVENT;
+            }), rest);
+            default -> Mono.fromSupplier(() -> {
+                count(fault);
+                // Ends the stream, in place of the rest.
+                return finishEvent(fault);
+            }).flux();
+        };
+    }
+
+    private ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        Fault fault = draw();
+        if (fault == null) {
+            return execution.execute(request, body);
+        }
+        switch (fault) {
+            case LATENCY -> sleep(this.latency);
+            case STALL -> sleep(this.stall);
+            case TOO_MANY_REQUESTS -> {
+                count(fault);
+                var headers = new HttpHeaders();
+                headers.setContentType(MediaType.APPLICATION_JSON);
+                headers.set(HttpHeaders.RETRY_AFTER, "1");
+                return new InjectedResponse(HttpStatus.TOO_MANY_REQUESTS, headers,
+                        TOO_MANY_REQUESTS_BODY.getBytes(StandardCharsets.UTF_8));
+            }
+            default -> {
+            }
+        }
+        ClientHttpResponse response = execution.execute(request, body);
+        if (fault == Fault.LATENCY || fault == Fault.STALL) {
+            count(fault);
+            return response;
+        }
+        HttpStatusCode statusCode = response.getStatusCode();
+        var headers = new HttpHeaders();
+        headers.putAll(response.getHeaders());
+        headers.remove(HttpHeaders.CONTENT_LENGTH);
+        byte[] content;
+        try (response; InputStream input = response.getBody()) {
+            content = input.readAllBytes();
+        }
+        return new InjectedResponse(statusCode, headers, injectContent(fault, content));
+    }
+
+    /**
+     * Inject a fault into a whole response body, a chat completion.
+     */
+    private byte[] injectContent(Fault fault, byte[] content) throws IOException {
+        return switch (fault) {
+            case DISCONNECT -> {
+                count(fault);
+                throw new IOException("Connection reset by peer (injected fault)");
+            }
+            case MALFORMED_CHUNK -> {
+                count(fault);
+                yield Arrays.copyOf(content, content.length / 2);
+            }
+            default -> withFinishReason(content, fault);
+        };
+    }
+
+    /**
+     * Draw the fault to inject into an exchange, if any. It is counted once injected, a
+     * response may have nothing to inject it into.
+     */
+    private Fault draw() {
+        double draw = ThreadLocalRandom.current().nextDouble();
+        double cumulative = 0;
+        double[] rates = this.rates;
+        Fault[] faults = Fault.values();
+        for (int i = 0; i < faults.length; i++) {
+            cumulative += rates[i];
+            if (draw < cumulative) {
+                return faults[i];
+            }
+        }
+        return null;
+    }
+
+    private void count(Fault fault) {
+        this.metrics.increment(LLMsFreeApiMetrics.FAULTS_INJECTED, "fault", fault.getTag());
+    }
+
+    private byte[] withFinishReason(byte[] content, Fault fault) {
+        try {
+            JsonNode completion = OBJECT_MAPPER.readTree(content);
+            boolean rewritten = false;
+            for (JsonNode choice : completion.path("choices")) {
+                if (choice instanceof ObjectNode choiceNode) {
+                    choiceNode.put("finish_reason", fault.getTag());
+                    rewritten = true;
+                }
+            }
+            if (!rewritten) {
+                return content;
+            }
+            count(fault);
+            return OBJECT_MAPPER.writeValueAsBytes(completion);
+        }
+        catch (IOException ex) {
+            // Not a chat completion, e.g. an error response: left as it is.
+            return content;
+        }
+    }
+
+    private static String finishEvent(Fault fault) {
+        return "data: {\"id\":\"fault\",\"object\":\"chat.completion.chunk\",\"created\":0,\"model\":\"fault\","
+                + "\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":\"\"},\"finish_reason\":\""
+                + fault.getTag() + "\"}]}\n\ndata: [DONE]\n\n";
+    }
+
+    private static boolean isDone(String event) {
+        return event.strip().endsWith("[DONE]");
+    }
+
+    private static DataBuffer wrap(byte[] content) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(content);
+    }
+
+    private static DataBuffer wrap(String content) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void sleep(Duration duration) throws InterruptedIOException {
+        try {
+            Thread.sleep(duration.toMillis());
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while injecting a fault");
+        }
+    }
+
+    /**
+     * A failure of the free-api servers.
+     */
+    public enum Fault {
+
+        /**
+         * The response is delayed.
+         */
+        LATENCY,
+
+        /**
+         * The request is rejected with status 429, without being sent.
+         */
+        TOO_MANY_REQUESTS,
+
+        /**
+         * The response body pauses, or the whole response for the blocking client.
+         */
+        STALL,
+
+        /**
+         * The connection is closed before the end of the response body.
+         */
+        DISCONNECT,
+
+        /**
+         * The response body holds an invalid chunk.
+         */
+        MALFORMED_CHUNK,
+
+        /**
+         * The generation ends with the {@code network_error} finish reason.
+         */
+        NETWORK_ERROR,
+
+        /**
+         * The generation ends with the {@code sensitive} finish reason.
+         */
+        SENSITIVE;
+
+        String getTag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+    }
+
+    private static final class InjectedResponse implements ClientHttpResponse {
+
+        private final HttpStatusCode statusCode;
+
+        private final HttpHeaders headers;
+
+        private final byte[] content;
+
+        InjectedResponse(HttpStatusCode statusCode, HttpHeaders headers, byte[] content) {
+            this.statusCode = statusCode;
+            this.headers = headers;
+            this.content = content;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() {
+            return this.statusCode;
+        }
+
+        @Override
+        public String getStatusText() {
+            return "";
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return this.headers;
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(this.content);
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+}
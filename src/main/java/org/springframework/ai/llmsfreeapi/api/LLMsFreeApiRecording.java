@@ -0,0 +1,446 @@
+package org.springframework.ai.llmsfreeapi.api;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.Assert;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Records the exchanges with the free-api servers to a JSON lines file, or replays them
+ * from one instead of sending the requests, e.g. to compare the throughput and latency of
+ * versions of the client on production traffic without a free-api account.
+ * <p>
+ * Each line holds one exchange: the method, the path, a digest of the request body, the
+ * response status and headers, the time to the response headers and the response body as
+ * the chunks it arrived in, each with the time it arrived, so that a replayed stream
+ * keeps the pace of the recorded one. Replay serves the exchange recorded for the same
+ * method, path and request body, or else the next one recorded for the same method and
+ * path, at the recorded speed or scaled by a factor; once all are served, they are served
+ * again. The bearer tokens are not recorded, nor are streams cancelled before their end.
+ */
+public class LLMsFreeApiRecording implements Closeable {
+
+    /**
+     * The request attribute of the reactive client holding the {@link #requestKey(byte[])
+     * digest} of the request body, which an exchange filter cannot read.
+     */
+    public static final String REQUEST_KEY_ATTRIBUTE = LLMsFreeApiRecording.class.getName() + ".requestKey";
+
+    private static final Set<String> SKIPPED_HEADERS = Set.of(HttpHeaders.SET_COOKIE.toLowerCase(Locale.ROOT),
+            HttpHeaders.TRANSFER_ENCODING.toLowerCase(Locale.ROOT), HttpHeaders.CONNECTION.toLowerCase(Locale.ROOT));
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final Mode mode;
+
+    private final double speed;
+
+    private final BufferedWriter writer;
+
+    /**
+     * Guards the writer; not a monitor, which would pin a virtual thread during the I/O.
+     */
+    private final ReentrantLock writerLock = new ReentrantLock();
+
+    private final List<Exchange> recorded;
+
+    private final LinkedList<Exchange> remaining;
+
+    private LLMsFreeApiRecording(Mode mode, double speed, BufferedWriter writer, List<Exchange> recorded) {
+        this.mode = mode;
+        this.speed = speed;
+        this.writer = writer;
+        this.recorded = recorded;
+        this.remaining = new LinkedList<>(recorded);
+    }
+
+    /**
+     * Record the exchanges, appended to a file.
+     * @param path the file.
+     * @return the recording.
+     */
+    public static LLMsFreeApiRecording record(Path path) {
+        Assert.notNull(path, "path must not be null");
+        try {
+            BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+            return new LLMsFreeApiRecording(Mode.RECORD, 1.0, writer, List.of());
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Replay the exchanges recorded in a file.
+     * @param path the file.
+     * @param speed the factor the recorded times are divided by, 1 for the recorded speed,
+     * {@link Double#POSITIVE_INFINITY} to replay without delays.
+     * @return the recording.
+     */
+    public static LLMsFreeApiRecording replay(Path path, double speed) {
+        Assert.notNull(path, "path must not be null");
+        Assert.isTrue(speed > 0, "speed must be positive");
+        List<Exchange> exchanges = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) {
+                    exchanges.add(OBJECT_MAPPER.readValue(line, Exchange.class));
+                }
+            }
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return new LLMsFreeApiRecording(Mode.REPLAY, speed, null, List.copyOf(exchanges));
+    }
+
+    public Mode getMode() {
+        return this.mode;
+    }
+
+    /**
+     * @return the number of exchanges replayed from, 0 when recording.
+     */
+    public int size() {
+        return this.recorded.size();
+    }
+
+    /**
+     * @return an interceptor for the blocking client, to be the last one so that it sees
+     * the requests and responses as sent and received.
+     */
+    public ClientHttpRequestInterceptor interceptor() {
+        return this::intercept;
+    }
+
+    /**
+     * @return an exchange filter for the reactive client, to be the last one so that it
+     * sees the requests and responses as sent and received.
+     */
+    public ExchangeFilterFunction filter() {
+        return (request, next) -> {
+            String method = request.method().name();
+            String path = path(request.url());
+            String key = (String) request.attribute(REQUEST_KEY_ATTRIBUTE).orElseGet(() -> requestKey(new byte[0]));
+            if (this.mode == Mode.REPLAY) {
+                return Mono.fromCallable(() -> take(method, path, key)).flatMap(exchange -> Mono
+                        .delay(scaled(exchange.latency()))
+                        .thenReturn(ClientResponse.create(HttpStatusCode.valueOf(exchange.status()))
+                                .headers(headers -> headers.putAll(exchange.headers()))
+                                .body(replayBody(exchange))
+                                .build()));
+            }
+            long start = System.nanoTime();
+            return next.exchange(request).map(response -> {
+                long latency = micros(start);
+                List<Chunk> chunks = new ArrayList<>();
+                return response.mutate()
+                        .body(body -> body.doOnNext(buffer -> chunks.add(new Chunk(micros(start), bytes(buffer))))
+                                .doOnComplete(() -> write(new Exchange(method, path, key, response.statusCode().value(),
+                                        headers(response.headers().asHttpHeaders()), latency, chunks))))
+                        .build();
+            });
+        };
+    }
+
+    private ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        String method = request.getMethod().name();
+        String path = path(request.getURI());
+        String key = requestKey(decoded(body, request.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)));
+        if (this.mode == Mode.REPLAY) {
+            Exchange exchange = take(method, path, key);
+            var content = new ByteArrayOutputStream();
+            long end = exchange.latency();
+            for (Chunk chunk : exchange.chunks()) {
+                content.write(chunk.data());
+                end = chunk.at();
+            }
+            sleep(scaled(end));
+            return new BufferedResponse(exchange, content.toByteArray());
+        }
+        long start = System.nanoTime();
+        ClientHttpResponse response = execution.execute(request, body);
+        long latency = micros(start);
+        // Read at once: the blocking client only receives whole responses.
+        byte[] content;
+        try (InputStream input = response.getBody()) {
+            content = input.readAllBytes();
+        }
+        var exchange = new Exchange(method, path, key, response.getStatusCode().value(), headers(response.getHeaders()),
+                latency, List.of(new Chunk(micros(start), content)));
+        write(exchange);
+        response.close();
+        return new BufferedResponse(exchange, content);
+    }
+
+    /**
+     * Take the exchange to replay for a request, preferably one recorded for the same
+     * request body.
+     */
+    private Exchange take(String method, String path, String key) {
+        synchronized (this.remaining) {
+            if (this.remaining.isEmpty()) {
+                this.remaining.addAll(this.recorded);
+            }
+            Exchange sameRoute = null;
+            for (Iterator<Exchange> iterator = this.remaining.iterator(); iterator.hasNext();) {
+                Exchange exchange = iterator.next();
+                if (exchange.method().equals(method) && exchange.path().equals(path)) {
+                    if (exchange.requestKey().equals(key)) {
+                        iterator.remove();
+                        return exchange;
+                    }
+                    if (sameRoute == null) {
+                        sameRoute = exchange;
+                    }
+                }
+            }
+            if (sameRoute != null) {
+                this.remaining.remove(sameRoute);
+                return sameRoute;
+            }
+        }
+        // All of the route served already: start over with the recorded ones.
+        return this.recorded.stream()
+                .filter(exchange -> exchange.method().equals(method) && exchange.path().equals(path))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("No recorded exchange for " + method + " " + path));
+    }
+
+    private Flux<DataBuffer> replayBody(Exchange exchange) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime() - scaled(exchange.latency()).toNanos();
+            return Flux.fromIterable(exchange.chunks())
+                    .concatMap(chunk -> {
+                        long delay = scaled(chunk.at()).toNanos() - (System.nanoTime() - start);
+                        Mono<DataBuffer> buffer = Mono.fromSupplier(
+                                () -> DefaultDataBufferFactory.sharedInstance.wrap(chunk.data()));
+                        return (delay > 0 ? Mono.delay(Duration.ofNanos(delay)).then(buffer) : buffer);
+                    });
+        });
+    }
+
+    private void write(Exchange exchange) {
+        try {
+            String line = OBJECT_MAPPER.writeValueAsString(exchange);
+            this.writerLock.lock();
+            try {
+                this.writer.write(line);
+                this.writer.newLine();
+                this.writer.flush();
+            }
+            finally {
+                this.writerLock.unlock();
+            }
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private Duration scaled(long micros) {
+        return (Double.isInfinite(this.speed) ? Duration.ZERO : Duration.ofNanos((long) (micros * 1000 / this.speed)));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.writer != null) {
+            this.writerLock.lock();
+            try {
+                this.writer.close();
+            }
+            finally {
+                this.writerLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * The digest identifying a request body when replaying.
+     * @param body the request body, uncompressed.
+     * @return the hex encoded SHA-256 of the body.
+     */
+    public static String requestKey(byte[] body) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+        }
+        catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static byte[] decoded(byte[] body, String contentEncoding) throws IOException {
+        if ("gzip".equalsIgnoreCase(contentEncoding)) {
+            try (InputStream input = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                return input.readAllBytes();
+            }
+        }
+        if ("deflate".equalsIgnoreCase(contentEncoding)) {
+            try (InputStream input = new InflaterInputStream(new ByteArrayInputStream(body))) {
+                return input.readAllBytes();
+            }
+        }
+        return body;
+    }
+
+    private static String path(URI uri) {
+        return (uri.getRawQuery() != null ? uri.getRawPath() + "?" + uri.getRawQuery() : uri.getRawPath());
+    }
+
+    private static Map<String, List<String>> headers(HttpHeaders headers) {
+        Map<String, List<String>> recorded = new LinkedHashMap<>();
+        headers.forEach((name, values) -> {
+            if (!SKIPPED_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                recorded.put(name, values);
+            }
+        });
+        return recorded;
+    }
+
+    private static byte[] bytes(DataBuffer buffer) {
+        byte[] bytes = new byte[buffer.readableByteCount()];
+        buffer.toByteBuffer(buffer.readPosition(), ByteBuffer.wrap(bytes), 0, bytes.length);
+        return bytes;
+    }
+
+    private static long micros(long start) {
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+    }
+
+    private static void sleep(Duration duration) throws InterruptedIOException {
+        if (duration.isZero()) {
+            return;
+        }
+        try {
+            Thread.sleep(duration.toMillis(), (int) (duration.toNanos() % 1_000_000));
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while replaying an exchange");
+        }
+    }
+
+    /**
+     * Whether the exchanges are recorded or replayed.
+     */
+    public enum Mode {
+
+        RECORD,
+
+        REPLAY
+
+    }
+
+    /**
+     * An exchange with the free-api servers.
+     *
+     * @param method The method of the request.
+     * @param path The path and query of the request.
+     * @param requestKey The {@link #requestKey(byte[]) digest} of the request body.
+     * @param status The status of the response.
+     * @param headers The headers of the response.
+     * @param latency The time to the response headers, in microseconds.
+     * @param chunks The response body as the chunks it arrived in.
+     */
+    public record Exchange(@JsonProperty("method") String method, @JsonProperty("path") String path,
+                           @JsonProperty("request_key") String requestKey, @JsonProperty("status") int status,
+                           @JsonProperty("headers") Map<String, List<String>> headers,
+                           @JsonProperty("latency_us") long latency, @JsonProperty("chunks") List<Chunk> chunks) {
+    }
+
+    /**
+     * A chunk of a response body.
+     *
+     * @param at The time the chunk arrived after the request was sent, in microseconds.
+     * @param data The chunk, base64 encoded in the file.
+     */
+    public record Chunk(@JsonProperty("at_us") long at, @JsonProperty("data") byte[] data) {
+    }
+
+    private static final class BufferedResponse implements ClientHttpResponse {
+
+        private final Exchange exchange;
+
+        private final byte[] content;
+
+        private final HttpHeaders headers = new HttpHeaders();
+
+        BufferedResponse(Exchange exchange, byte[] content) {
+            this.exchange = exchange;
+            this.content = content;
+            this.headers.putAll(exchange.headers());
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() {
+            return HttpStatusCode.valueOf(this.exchange.status());
+        }
+
+        @Override
+        public String getStatusText() {
+            return "";
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return this.headers;
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(this.content);
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+}
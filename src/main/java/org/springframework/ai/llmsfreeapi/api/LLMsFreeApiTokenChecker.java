@@ -0,0 +1,196 @@
+package org.springframework.ai.llmsfreeapi.api;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the tokens of a {@link LLMsFreeApi} in the background, with the token check
+ * endpoint of the free-api servers, and takes the dead ones out of rotation of the
+ * {@link LLMsFreeApiTokenPool} before requests fail with them. A dead token is checked
+ * again on the same schedule and put back into rotation once live, e.g. after it was
+ * replaced upstream.
+ * <p>
+ * Each token is checked on its own schedule, the interval varied at random by the jitter
+ * so that the checks of several tokens and instances spread out. The last result of each
+ * token is kept for {@link #getStatuses()}, which does not call the API. A check which
+ * fails, e.g. because the server is unreachable, leaves the token in or out of rotation
+ * as it was.
+ */
+public class LLMsFreeApiTokenChecker implements SmartLifecycle {
+
+    public static final Duration DEFAULT_INTERVAL = Duration.ofMinutes(5);
+
+    public static final double DEFAULT_JITTER = 0.2;
+
+    private static final Logger logger = LoggerFactory.getLogger(LLMsFreeApiTokenChecker.class);
+
+    private final LLMsFreeApi llmsFreeApi;
+
+    private final Map<String, TokenStatus> statuses = new ConcurrentHashMap<>();
+
+    private Duration interval = DEFAULT_INTERVAL;
+
+    private double jitter = DEFAULT_JITTER;
+
+    private volatile ScheduledExecutorService executor;
+
+    public LLMsFreeApiTokenChecker(LLMsFreeApi llmsFreeApi) {
+        Assert.notNull(llmsFreeApi, "LLMsFreeApi must not be null");
+        this.llmsFreeApi = llmsFreeApi;
+        var tokenPool = llmsFreeApi.getTokenPool();
+        for (String token : tokenPool.getTokens()) {
+            this.statuses.put(token, new TokenStatus(tokenPool.getLabel(token), State.UNKNOWN, null, null));
+        }
+    }
+
+    /**
+     * @param interval the time between two checks of a token.
+     */
+    public void setInterval(Duration interval) {
+        Assert.notNull(interval, "interval must not be null");
+        Assert.isTrue(!interval.isNegative() && !interval.isZero(), "interval must be positive");
+        this.interval = interval;
+    }
+
+    /**
+     * @param jitter the share of the interval it is varied by at random, between 0 and 1.
+     */
+    public void setJitter(double jitter) {
+        Assert.isTrue(jitter >= 0 && jitter <= 1, "jitter must be between 0 and 1");
+        this.jitter = jitter;
+    }
+
+    /**
+     * @return the last result of the check of each token, in the order of the pool.
+     */
+    public List<TokenStatus> getStatuses() {
+        return this.llmsFreeApi.getTokenPool().getTokens().stream().map(this.statuses::get).toList();
+    }
+
+    @Override
+    public void start() {
+        if (this.executor != null) {
+            return;
+        }
+        var threadFactory = new CustomizableThreadFactory("llmsfreeapi-token-check-");
+        threadFactory.setDaemon(true);
+        var executor = new ScheduledThreadPoolExecutor(1, threadFactory);
+        executor.setRemoveOnCancelPolicy(true);
+        this.executor = executor;
+        for (String token : this.llmsFreeApi.getTokenPool().getTokens()) {
+            // The first checks spread over the jitter only, so dead tokens go early.
+            schedule(executor, token, (long) (ThreadLocalRandom.current().nextDouble()
+                    * this.jitter * this.interval.toMillis()));
+        }
+    }
+
+    @Override
+    public void stop() {
+        ScheduledExecutorService executor = this.executor;
+        this.executor = null;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return this.executor != null;
+    }
+
+    /**
+     * Check a token now and update its status and rotation.
+     * @param token a token of the pool.
+     * @return the status of the token.
+     */
+    public TokenStatus check(String token) {
+        var tokenPool = this.llmsFreeApi.getTokenPool();
+        String label = tokenPool.getLabel(token);
+        TokenStatus status;
+        try {
+            boolean live = this.llmsFreeApi.checkToken(token);
+            status = new TokenStatus(label, (live ? State.LIVE : State.DEAD), Instant.now(), null);
+            if (tokenPool.setAvailable(token, live)) {
+                if (live) {
+                    logger.info("LLMs Free API {} is live again, put back into rotation", label);
+                }
+                else {
+                    logger.warn("LLMs Free API {} is dead, taken out of rotation", label);
+                }
+            }
+        }
+        catch (RuntimeException ex) {
+            status = new TokenStatus(label, State.UNREACHABLE, Instant.now(), ex.getMessage());
+            logger.debug("Could not check LLMs Free API {}: {}", label, ex.getMessage());
+        }
+        this.statuses.put(token, status);
+        return status;
+    }
+
+    private void schedule(ScheduledExecutorService executor, String token, long delayMillis) {
+        executor.schedule(() -> {
+            check(token);
+            if (this.executor == executor) {
+                schedule(executor, token, nextDelay());
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private long nextDelay() {
+        double factor = 1 + this.jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        return Math.max(1, (long) (this.interval.toMillis() * factor));
+    }
+
+    /**
+     * The result of the check of a token.
+     */
+    public enum State {
+
+        /**
+         * Not checked yet.
+         */
+        UNKNOWN,
+
+        /**
+         * The token is live.
+         */
+        LIVE,
+
+        /**
+         * The token is dead and out of rotation.
+         */
+        DEAD,
+
+        /**
+         * The check failed, e.g. the server could not be reached or its answer could not
+         * be read. The token stays in or out of rotation as it was.
+         */
+        UNREACHABLE
+
+    }
+
+    /**
+     * The last result of the check of a token.
+     *
+     * @param token The label of the token.
+     * @param state The result of the check.
+     * @param checkedAt When the token was checked, {@code null} if not yet.
+     * @param error Why the check failed, if it did.
+     */
+    public record TokenStatus(String token, State state, Instant checkedAt, String error) {
+    }
+
+}
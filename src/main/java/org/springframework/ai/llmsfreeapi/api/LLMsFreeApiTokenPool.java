@@ -0,0 +1,543 @@
+package org.springframework.ai.llmsfreeapi.api;
+
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The refresh tokens of the free-api accounts a {@link LLMsFreeApi} sends requests with.
+ * <p>
+ * The free-api servers accept several comma separated tokens and pick one at random. The
+ * pool splits them and selects the token on the client side instead, so that a request
+ * can be pinned to the account which owns an upstream conversation, and so that the
+ * number of concurrent requests per account can be limited. Requests take a
+ * {@link Lease} on a token, which is the least loaded one unless pinned, and release it
+ * when done; with a limit set, acquiring waits until a token has capacity.
+ * <p>
+ * Waiting requests are served according to their {@link RequestPriority}, by weighted
+ * fair queuing across the priority classes. A request which has waited longer than the
+ * starvation threshold is served before any request which has not, so background
+ * requests still make progress under a steady interactive load.
+ * <p>
+ * A token found dead, e.g. by a {@link LLMsFreeApiTokenChecker}, can be taken out of
+ * rotation: it is no longer selected for requests which are not pinned to it, unless all
+ * tokens are out of rotation.
+ */
+public class LLMsFreeApiTokenPool {
+
+    public static final Duration DEFAULT_ACQUIRE_TIMEOUT = Duration.ofSeconds(60);
+
+    public static final Duration DEFAULT_STARVATION_THRESHOLD = Duration.ofSeconds(10);
+
+    private static final long STRIDE = 1L << 20;
+
+    private final List<String> tokens;
+
+    private final int maxConcurrencyPerToken;
+
+    private final Duration acquireTimeout;
+
+    private final AtomicIntegerArray inFlight;
+
+    /**
+     * 1 for the tokens taken out of rotation.
+     */
+    private final AtomicIntegerArray unavailable;
+
+    private final AtomicInteger unavailableCount = new AtomicInteger();
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * The number of waiting requests per priority class, readable without the lock.
+     */
+    private final AtomicIntegerArray waiting = new AtomicIntegerArray(RequestPriority.values().length);
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * The requests waiting for capacity, per priority class, in arrival order.
+     */
+    private final Map<RequestPriority, Deque<Waiter>> queues = new EnumMap<>(RequestPriority.class);
+
+    /**
+     * The virtual time at which each priority class is next served.
+     */
+    private final Map<RequestPriority, Long> pass = new EnumMap<>(RequestPriority.class);
+
+    private long virtualTime;
+
+    private volatile Duration starvationThreshold = DEFAULT_STARVATION_THRESHOLD;
+
+    public LLMsFreeApiTokenPool(List<String> tokens) {
+        this(tokens, 0, DEFAULT_ACQUIRE_TIMEOUT);
+    }
+
+    /**
+     * @param tokens the tokens.
+     * @param maxConcurrencyPerToken the maximum number of concurrent requests per token,
+     * 0 for no limit.
+     * @param acquireTimeout the maximum time to wait for a token with capacity.
+     */
+    public LLMsFreeApiTokenPool(List<String> tokens, int maxConcurrencyPerToken, Duration acquireTimeout) {
+        Assert.notEmpty(tokens, "At least one token must be set");
+        Assert.isTrue(maxConcurrencyPerToken >= 0, "maxConcurrencyPerToken must not be negative");
+        Assert.notNull(acquireTimeout, "acquireTimeout must not be null");
+        this.tokens = List.copyOf(tokens);
+        this.maxConcurrencyPerToken = maxConcurrencyPerToken;
+        this.acquireTimeout = acquireTimeout;
+        this.inFlight = new AtomicIntegerArray(this.tokens.size());
+        this.unavailable = new AtomicIntegerArray(this.tokens.size());
+        for (RequestPriority priority : RequestPriority.values()) {
+            this.queues.put(priority, new ArrayDeque<>());
+            this.pass.put(priority, 0L);
+        }
+    }
+
+    /**
+     * Create a pool from an API key holding one or more comma separated tokens.
+     * @param apiKey the API key.
+     * @return the token pool.
+     */
+    public static LLMsFreeApiTokenPool of(String apiKey) {
+        return of(apiKey, 0, DEFAULT_ACQUIRE_TIMEOUT);
+    }
+
+    /**
+     * Create a pool from an API key holding one or more comma separated tokens.
+     * @param apiKey the API key.
+     * @param maxConcurrencyPerToken the maximum number of concurrent requests per token,
+     * 0 for no limit.
+     * @param acquireTimeout the maximum time to wait for a token with capacity.
+     * @return the token pool.
+     */
+    public static LLMsFreeApiTokenPool of(String apiKey, int maxConcurrencyPerToken, Duration acquireTimeout) {
+        Assert.hasText(apiKey, "LLMs Free API key must be set");
+        return new LLMsFreeApiTokenPool(Arrays.stream(StringUtils.commaDelimitedListToStringArray(apiKey))
+                .map(String::trim)
+                .filter(StringUtils::hasText)
+                .toList(), maxConcurrencyPerToken, acquireTimeout);
+    }
+
+    /**
+     * Set how long a request may wait before it is served ahead of the requests of higher
+     * priority classes.
+     * @param starvationThreshold the starvation threshold.
+     */
+    public void setStarvationThreshold(Duration starvationThreshold) {
+        Assert.notNull(starvationThreshold, "starvationThreshold must not be null");
+        this.starvationThreshold = starvationThreshold;
+    }
+
+    /**
+     * @return the next token in rotation, in round-robin order.
+     */
+    public String next() {
+        return this.tokens.get(nextIndex());
+    }
+
+    /**
+     * @return all tokens of the pool.
+     */
+    public List<String> getTokens() {
+        return this.tokens;
+    }
+
+    /**
+     * @return whether acquiring a token may wait for capacity.
+     */
+    public boolean isLimited() {
+        return this.maxConcurrencyPerToken > 0;
+    }
+
+    /**
+     * @return the maximum number of concurrent requests per token, 0 for no limit.
+     */
+    public int getMaxConcurrencyPerToken() {
+        return this.maxConcurrencyPerToken;
+    }
+
+    /**
+     * @return the total number of concurrent requests the pool admits, or
+     * {@link Integer#MAX_VALUE} if it is not limited.
+     */
+    public int getCapacity() {
+        return (isLimited() ? this.maxConcurrencyPerToken * this.tokens.size() : Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param token a token of the pool.
+     * @return the number of requests currently in flight with the token.
+     */
+    public int getInFlight(String token) {
+        int index = this.tokens.indexOf(token);
+        return (index >= 0 ? this.inFlight.get(index) : 0);
+    }
+
+    /**
+     * @param token a token of the pool.
+     * @return a label of the token which does not disclose it, e.g. for metrics.
+     */
+    public String getLabel(String token) {
+        return label(this.tokens.indexOf(token));
+    }
+
+    /**
+     * @param token a token of the pool.
+     * @return whether the token is in rotation.
+     */
+    public boolean isAvailable(String token) {
+        int index = this.tokens.indexOf(token);
+        return (index >= 0 && this.unavailable.get(index) == 0);
+    }
+
+    /**
+     * Put a token into or take it out of rotation. Requests pinned to the token, e.g. to
+     * continue an upstream conversation, still use it.
+     * @param token a token of the pool.
+     * @param available whether the token is in rotation.
+     * @return whether the availability of the token changed.
+     */
+    public boolean setAvailable(String token, boolean available) {
+        int index = this.tokens.indexOf(token);
+        Assert.isTrue(index >= 0, "Not a token of the pool");
+        if (!this.unavailable.compareAndSet(index, (available ? 1 : 0), (available ? 0 : 1))) {
+            return false;
+        }
+        this.unavailableCount.addAndGet(available ? -1 : 1);
+        if (isLimited()) {
+            // The waiting requests may now be served by other tokens.
+            this.lock.lock();
+            try {
+                dispatch();
+            }
+            finally {
+                this.lock.unlock();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param priority a priority class.
+     * @return the number of requests of the class waiting for capacity.
+     */
+    public int getWaiting(RequestPriority priority) {
+        return this.waiting.get(priority.ordinal());
+    }
+
+    /**
+     * Forget the scheduling history of the waiting requests, e.g. before a checkpoint of the
+     * JVM, so that the restored instances do not start with the credit of the priority
+     * classes of the instance the checkpoint was taken from. Leases in flight are kept.
+     * @return whether the history was reset, which it is not while requests are waiting.
+     */
+    public boolean reset() {
+        this.lock.lock();
+        try {
+            if (this.queues.values().stream().anyMatch(queue -> !queue.isEmpty())) {
+                return false;
+            }
+            this.virtualTime = 0;
+            this.pass.replaceAll((priority, pass) -> 0L);
+            this.next.set(0);
+            return true;
+        }
+        finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Take a lease on a token, waiting for capacity if the pool is limited.
+     * @param token the token to use, or {@code null} for the least loaded one.
+     * @return the lease, to be released when the request is done.
+     * @throws IllegalStateException if no capacity became available in time.
+     */
+    public Lease acquire(String token) {
+        return acquire(token, RequestPriority.NORMAL);
+    }
+
+    /**
+     * Take a lease on a token, waiting for capacity if the pool is limited.
+     * @param token the token to use, or {@code null} for the least loaded one.
+     * @param priority the priority among the requests waiting for capacity.
+     * @return the lease, to be released when the request is done.
+     * @throws IllegalStateException if no capacity became available in time.
+     */
+    public Lease acquire(String token, RequestPriority priority) {
+        return acquire(token, priority, null);
+    }
+
+    /**
+     * Take a lease on a token, waiting for capacity if the pool is limited.
+     * @param token the token to use, or {@code null} for the least loaded one.
+     * @param priority the priority among the requests waiting for capacity.
+     * @param maxWait the maximum time to wait if shorter than the acquire timeout, e.g. the
+     * time left before the deadline of the request, or {@code null}.
+     * @return the lease, to be released when the request is done.
+     * @throws IllegalStateException if no capacity became available within the acquire
+     * timeout.
+     * @throws DeadlineExceededException if no capacity became available within the
+     * shorter {@code maxWait}.
+     */
+    public Lease acquire(String token, RequestPriority priority, Duration maxWait) {
+        Assert.notNull(priority, "RequestPriority must not be null");
+        int pinned = -1;
+        if (token != null) {
+            pinned = this.tokens.indexOf(token);
+            if (pinned < 0) {
+                // Not a pooled token, e.g. passed explicitly by the caller: nothing to account.
+                return new Lease(token, -1);
+            }
+        }
+        if (!isLimited()) {
+            int index = (pinned >= 0 ? pinned : nextIndex());
+            this.inFlight.incrementAndGet(index);
+            return new Lease(this.tokens.get(index), index);
+        }
+
+        this.lock.lock();
+        try {
+            // Queue up even if there is capacity, the dispatch decides who is served first.
+            var waiter = new Waiter(priority, pinned, System.nanoTime(), this.lock.newCondition());
+            enqueue(waiter);
+            dispatch();
+            boolean deadlineBound = (maxWait != null && maxWait.compareTo(this.acquireTimeout) < 0);
+            Duration timeout = (deadlineBound ? maxWait : this.acquireTimeout);
+            long remaining = timeout.toNanos();
+            try {
+                while (waiter.index < 0) {
+                    if (remaining <= 0) {
+                        if (deadlineBound) {
+                            // The request ran out of time, not the pool out of capacity.
+                            throw new DeadlineExceededException(
+                                    "Request deadline exceeded while waiting for a LLMs Free API token");
+                        }
+                        throw new IllegalStateException("No LLMs Free API token became available within " + timeout);
+                    }
+                    remaining = waiter.granted.awaitNanos(remaining);
+                }
+            }
+            catch (InterruptedException ex) {
+                if (waiter.index >= 0) {
+                    // Granted just before the interrupt, hand the capacity on.
+                    release(waiter.index);
+                    waiter.index = -1;
+                }
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a LLMs Free API token", ex);
+            }
+            finally {
+                if (waiter.index < 0 && this.queues.get(priority).remove(waiter)) {
+                    this.waiting.decrementAndGet(priority.ordinal());
+                }
+            }
+            return new Lease(this.tokens.get(waiter.index), waiter.index);
+        }
+        finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void enqueue(Waiter waiter) {
+        var queue = this.queues.get(waiter.priority);
+        if (queue.isEmpty()) {
+            // A class which was idle does not get credit for the time it was not waiting.
+            this.pass.put(waiter.priority, Math.max(this.pass.get(waiter.priority), this.virtualTime));
+        }
+        queue.add(waiter);
+        this.waiting.incrementAndGet(waiter.priority.ordinal());
+    }
+
+    /**
+     * Hand the free capacity to the waiting requests. Requests which waited longer than
+     * the starvation threshold come first, oldest first; the others are served by stride
+     * scheduling, the class with the lowest pass first and each class in arrival order.
+     * Must be called with the lock held.
+     */
+    private void dispatch() {
+        while (true) {
+            long now = System.nanoTime();
+            Waiter selected = null;
+            int selectedIndex = -1;
+            for (var queue : this.queues.values()) {
+                for (var waiter : queue) {
+                    if (now - waiter.enqueuedAt < this.starvationThreshold.toNanos()) {
+                        // Arrival order: the others in this queue waited less.
+                        break;
+                    }
+                    int index = available(waiter.pinned);
+                    if (index >= 0 && (selected == null || waiter.enqueuedAt < selected.enqueuedAt)) {
+                        selected = waiter;
+                        selectedIndex = index;
+                    }
+                }
+            }
+            if (selected == null) {
+                for (var entry : this.queues.entrySet()) {
+                    if (selected != null && this.pass.get(entry.getKey()) >= this.pass.get(selected.priority)) {
+                        continue;
+                    }
+                    for (var waiter : entry.getValue()) {
+                        int index = available(waiter.pinned);
+                        if (index >= 0) {
+                            selected = waiter;
+                            selectedIndex = index;
+                            break;
+                        }
+                    }
+                }
+            }
+            if (selected == null) {
+                return;
+            }
+            long selectedPass = this.pass.get(selected.priority);
+            this.virtualTime = Math.max(this.virtualTime, selectedPass);
+            this.pass.put(selected.priority, selectedPass + STRIDE / selected.priority.getWeight());
+            this.queues.get(selected.priority).remove(selected);
+            this.waiting.decrementAndGet(selected.priority.ordinal());
+            this.inFlight.incrementAndGet(selectedIndex);
+            selected.index = selectedIndex;
+            selected.granted.signal();
+        }
+    }
+
+    private static String label(int index) {
+        return (index >= 0 ? "token-" + index : "external");
+    }
+
+    private int available(int pinned) {
+        if (pinned >= 0) {
+            return (this.inFlight.get(pinned) < this.maxConcurrencyPerToken ? pinned : -1);
+        }
+        return leastLoaded();
+    }
+
+    private int nextIndex() {
+        int start = Math.floorMod(this.next.getAndIncrement(), this.tokens.size());
+        for (int i = 0; i < this.tokens.size(); i++) {
+            int index = (start + i) % this.tokens.size();
+            if (inRotation(index)) {
+                return index;
+            }
+        }
+        return start;
+    }
+
+    private boolean inRotation(int index) {
+        // With all tokens out of rotation, use them all rather than fail every request.
+        return (this.unavailable.get(index) == 0 || this.unavailableCount.get() >= this.tokens.size());
+    }
+
+    private int leastLoaded() {
+        int start = Math.floorMod(this.next.getAndIncrement(), this.tokens.size());
+        int best = -1;
+        int bestLoad = this.maxConcurrencyPerToken;
+        for (int i = 0; i < this.tokens.size(); i++) {
+            int index = (start + i) % this.tokens.size();
+            if (!inRotation(index)) {
+                continue;
+            }
+            int load = this.inFlight.get(index);
+            if (load < bestLoad) {
+                best = index;
+                bestLoad = load;
+            }
+        }
+        return best;
+    }
+
+    private void release(int index) {
+        if (!isLimited()) {
+            this.inFlight.decrementAndGet(index);
+            return;
+        }
+        this.lock.lock();
+        try {
+            this.inFlight.decrementAndGet(index);
+            dispatch();
+        }
+        finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * A request waiting for capacity.
+     */
+    private static final class Waiter {
+
+        private final RequestPriority priority;
+
+        private final int pinned;
+
+        private final long enqueuedAt;
+
+        private final Condition granted;
+
+        /**
+         * The index of the token granted to the request, -1 while waiting.
+         */
+        private int index = -1;
+
+        Waiter(RequestPriority priority, int pinned, long enqueuedAt, Condition granted) {
+            this.priority = priority;
+            this.pinned = pinned;
+            this.enqueuedAt = enqueuedAt;
+            this.granted = granted;
+        }
+
+    }
+
+    /**
+     * A token taken from the pool for the duration of a request.
+     */
+    public final class Lease {
+
+        private final String token;
+
+        private final int index;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(String token, int index) {
+            this.token = token;
+            this.index = index;
+        }
+
+        public String getToken() {
+            return this.token;
+        }
+
+        /**
+         * @return a label of the token which does not disclose it, e.g. for metrics.
+         */
+        public String getLabel() {
+            return label(this.index);
+        }
+
+        /**
+         * Return the token to the pool. Calling this more than once has no effect.
+         */
+        public void release() {
+            if (this.index >= 0 && this.released.compareAndSet(false, true)) {
+                LLMsFreeApiTokenPool.this.release(this.index);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,130 @@
+package org.springframework.ai.llmsfreeapi.api;
+
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.util.Assert;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+/**
+ * Parts running the blocking work of the clients on virtual threads, on Java 21 or later,
+ * so that thousands of blocking chats do not need as many platform threads.
+ * <p>
+ * The blocking calls of platform threads can run on the {@link #scheduler() scheduler}:
+ * the exchanges, the waits for a token of the {@link LLMsFreeApiTokenPool}, the retry
+ * back-off sleeps and the tool callbacks then park a virtual thread instead of holding a
+ * platform one. The locks held during such waits are not monitors, which would pin the
+ * virtual thread to its carrier. The {@link #requestFactory(Duration) request factory}
+ * replaces the one of the application, and is only used when asked for.
+ */
+public final class LLMsFreeApiVirtualThreads {
+
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+
+    private static final String THREAD_NAME_PREFIX = "llmsfreeapi-";
+
+    /**
+     * {@code Thread#isVirtual()}, {@code null} before Java 21.
+     */
+    private static final MethodHandle IS_VIRTUAL = isVirtualHandle();
+
+    private LLMsFreeApiVirtualThreads() {
+    }
+
+    /**
+     * @return whether virtual threads are available, i.e. on Java 21 or later.
+     */
+    public static boolean isAvailable() {
+        return Runtime.version().feature() >= 21;
+    }
+
+    /**
+     * @return whether the current thread is a virtual one.
+     */
+    public static boolean isVirtualThread() {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(Thread.currentThread());
+        }
+        catch (Throwable ex) {
+            return false;
+        }
+    }
+
+    private static MethodHandle isVirtualHandle() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        }
+        catch (ReflectiveOperationException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Create a request factory for the blocking client, on a JDK {@link HttpClient} running
+     * its asynchronous work on virtual threads. The read timeout is left unset, the time
+     * limits of a call are those of its {@link RequestDeadline}. Closing the factory closes
+     * the connections of its {@link HttpClient}, see
+     * {@link LLMsFreeApi#setRequestFactory(java.util.function.Supplier)}.
+     * @param connectTimeout the maximum time to establish a connection.
+     * @return the request factory.
+     */
+    public static VirtualThreadRequestFactory requestFactory(Duration connectTimeout) {
+        Assert.notNull(connectTimeout, "connectTimeout must not be null");
+        var httpClient = HttpClient.newBuilder()
+                .executor(executor())
+                .connectTimeout(connectTimeout)
+                // The free-api servers speak HTTP/1.1, an h2c upgrade attempt is wasted.
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+        return new VirtualThreadRequestFactory(httpClient);
+    }
+
+    /**
+     * Create a scheduler running each task on a new virtual thread, e.g. for the blocking
+     * calls and the tool call rounds of streams. Disposing it rejects the later tasks.
+     * @return the scheduler.
+     */
+    public static Scheduler scheduler() {
+        return Schedulers.fromExecutor(executor());
+    }
+
+    private static VirtualThreadTaskExecutor executor() {
+        Assert.state(isAvailable(), "Virtual threads require Java 21 or later");
+        return new VirtualThreadTaskExecutor(THREAD_NAME_PREFIX);
+    }
+
+    /**
+     * Request factory owning its {@link HttpClient}.
+     */
+    public static final class VirtualThreadRequestFactory extends JdkClientHttpRequestFactory implements AutoCloseable {
+
+        private final HttpClient httpClient;
+
+        private VirtualThreadRequestFactory(HttpClient httpClient) {
+            super(httpClient);
+            this.httpClient = httpClient;
+        }
+
+        /**
+         * Close the {@link HttpClient}, waiting for its exchanges in flight. The client is
+         * {@link AutoCloseable} from Java 21 on, which virtual threads require anyway.
+         */
+        @Override
+        public void close() throws Exception {
+            if (this.httpClient instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,185 @@
+package org.springframework.ai.llmsfreeapi.api;
+
+import org.springframework.ai.retry.TransientAiException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The time limits of a request: an absolute deadline for its total duration, and for
+ * streams, the time to the first chunk and the maximum gap between two chunks.
+ * <p>
+ * The deadline is fixed when the instance is created, so that passing the same instance
+ * to the retries, fallbacks and tool-call rounds of a chat call makes them share the
+ * remaining budget. Streams also honor a deadline put into the Reactor context under
+ * {@link #CONTEXT_KEY}; the earlier of both applies.
+ */
+public final class RequestDeadline {
+
+    /**
+     * Key of the {@link RequestDeadline} in the Reactor context of a stream.
+     */
+    public static final String CONTEXT_KEY = RequestDeadline.class.getName();
+
+    /**
+     * No time limits.
+     */
+    public static final RequestDeadline NONE = new RequestDeadline(false, 0, null, null);
+
+    private final boolean bounded;
+
+    private final long deadlineNanos;
+
+    private final Duration firstChunkTimeout;
+
+    private final Duration idleTimeout;
+
+    private RequestDeadline(boolean bounded, long deadlineNanos, Duration firstChunkTimeout, Duration idleTimeout) {
+        this.bounded = bounded;
+        this.deadlineNanos = deadlineNanos;
+        this.firstChunkTimeout = firstChunkTimeout;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Create a deadline starting now.
+     * @param timeout the maximum total duration, or {@code null} for none.
+     * @param firstChunkTimeout the maximum time to the first chunk of a stream, or
+     * {@code null} for none.
+     * @param idleTimeout the maximum gap between two chunks of a stream, or {@code null}
+     * for none.
+     * @return the deadline.
+     */
+    public static RequestDeadline of(Duration timeout, Duration firstChunkTimeout, Duration idleTimeout) {
+        if (timeout == null && firstChunkTimeout == null && idleTimeout == null) {
+            return NONE;
+        }
+        return new RequestDeadline(timeout != null, (timeout != null ? System.nanoTime() + timeout.toNanos() : 0),
+                firstChunkTimeout, idleTimeout);
+    }
+
+    /**
+     * Create a deadline for the total duration, starting now.
+     * @param timeout the maximum total duration.
+     * @return the deadline.
+     */
+    public static RequestDeadline after(Duration timeout) {
+        return of(timeout, null, null);
+    }
+
+    /**
+     * @return whether the total duration is limited.
+     */
+    public boolean isBounded() {
+        return this.bounded;
+    }
+
+    /**
+     * @return whether any time limit is set.
+     */
+    public boolean hasTimeouts() {
+        return this.bounded || this.firstChunkTimeout != null || this.idleTimeout != null;
+    }
+
+    /**
+     * @return the time left, or {@code null} if the total duration is not limited.
+     */
+    public Duration remaining() {
+        return (this.bounded ? Duration.ofNanos(Math.max(0, this.deadlineNanos - System.nanoTime())) : null);
+    }
+
+    public boolean isExpired() {
+        return this.bounded && this.deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * @throws DeadlineExceededException if the deadline has passed.
+     */
+    public void checkNotExpired() {
+        if (isExpired()) {
+            throw exceeded();
+        }
+    }
+
+    /**
+     * @return the time left for the first chunk of a stream, or {@code null} if not limited.
+     */
+    public Duration firstChunkTimeout() {
+        return min(this.firstChunkTimeout, remaining());
+    }
+
+    /**
+     * @return the time left for the next chunk of a stream, or {@code null} if not limited.
+     */
+    public Duration idleTimeout() {
+        return min(this.idleTimeout, remaining());
+    }
+
+    /**
+     * Combine with another deadline, keeping the tighter of each limit.
+     * @param other the other deadline.
+     * @return the combined deadline.
+     */
+    public RequestDeadline and(RequestDeadline other) {
+        if (other == null || other == NONE || other == this) {
+            return this;
+        }
+        if (this == NONE) {
+            return other;
+        }
+        boolean bounded = this.bounded || other.bounded;
+        long deadlineNanos = (!this.bounded ? other.deadlineNanos : !other.bounded ? this.deadlineNanos
+                : (this.deadlineNanos - other.deadlineNanos <= 0 ? this.deadlineNanos : other.deadlineNanos));
+        return new RequestDeadline(bounded, deadlineNanos, min(this.firstChunkTimeout, other.firstChunkTimeout),
+                min(this.idleTimeout, other.idleTimeout));
+    }
+
+    /**
+     * Apply the limits to a stream of chunks: it fails when the first chunk, any next
+     * chunk or its completion is late. A late chunk of a request with time left fails
+     * with a {@link TransientAiException}, which the chat client retries as long as no
+     * chunk was received yet; past the deadline
+     * it fails with a {@link DeadlineExceededException}. Either way the stream is
+     * cancelled upstream.
+     * @param chunks the stream.
+     * @param <T> the type of the chunks.
+     * @return the stream with the limits applied.
+     */
+    public <T> Flux<T> apply(Flux<T> chunks) {
+        if (!hasTimeouts()) {
+            return chunks;
+        }
+        return Flux.defer(() -> {
+            AtomicBoolean received = new AtomicBoolean();
+            return chunks.doOnNext(chunk -> received.set(true))
+                    .timeout(delay(firstChunkTimeout()), chunk -> delay(idleTimeout()), Flux.defer(() -> Flux.error(
+                            isExpired() ? exceeded() : new TransientAiException(received.get()
+                                    ? "No chunk received within the idle timeout of " + this.idleTimeout
+                                    : "No chunk received within the first chunk timeout of " + this.firstChunkTimeout))));
+        });
+    }
+
+    /**
+     * @return the exception signalling that the deadline has passed.
+     */
+    public DeadlineExceededException exceeded() {
+        return new DeadlineExceededException("Request deadline exceeded");
+    }
+
+    private static Mono<Long> delay(Duration timeout) {
+        return (timeout != null ? Mono.delay(timeout) : Mono.never());
+    }
+
+    private static Duration min(Duration first, Duration second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        return (first.compareTo(second) <= 0 ? first : second);
+    }
+
+}
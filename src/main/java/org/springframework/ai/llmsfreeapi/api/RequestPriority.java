@@ -0,0 +1,46 @@
+package org.springframework.ai.llmsfreeapi.api;
+
+/**
+ * Priority class of a request waiting for a token of a limited {@link LLMsFreeApiTokenPool}.
+ * <p>
+ * Waiting requests are served by weighted fair queuing: while several classes are waiting,
+ * each class gets a share of the freed capacity proportional to its weight, and requests
+ * of the same class are served in arrival order.
+ */
+public enum RequestPriority {
+
+    /**
+     * Requests a user is waiting for, e.g. a chat.
+     */
+    INTERACTIVE(8),
+
+    /**
+     * Requests with no explicit priority.
+     */
+    NORMAL(4),
+
+    /**
+     * Requests nobody is waiting for, e.g. offline batches.
+     */
+    BACKGROUND(1);
+
+    /**
+     * Name of the request attribute holding the priority of the chat calls made while
+     * handling a web request, either a {@link RequestPriority} or its name.
+     */
+    public static final String REQUEST_ATTRIBUTE = RequestPriority.class.getName();
+
+    private final int weight;
+
+    RequestPriority(int weight) {
+        this.weight = weight;
+    }
+
+    /**
+     * @return the share of the capacity relative to the other classes.
+     */
+    public int getWeight() {
+        return this.weight;
+    }
+
+}
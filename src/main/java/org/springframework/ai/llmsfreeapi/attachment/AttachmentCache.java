@@ -0,0 +1,219 @@
+package org.springframework.ai.llmsfreeapi.attachment;
+
+import org.springframework.ai.llmsfreeapi.metrics.LLMsFreeApiMetrics;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+import org.springframework.util.MimeType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Encodes the files of image and document messages as data URIs, which the free-api
+ * servers accept instead of URLs, and caches the encodings by content.
+ * <p>
+ * The content is streamed from the {@link Resource#readableChannel() channel} of the
+ * resource into the Base64 encoder. The encodings are kept in a least recently used cache
+ * keyed by the SHA-256 hash of the content and the media type, bounded by their total
+ * size, so that a file sent again on every turn of a conversation is encoded once and
+ * identical files share one copy. Local files are also remembered by path, size and
+ * modification time and not read at all while unchanged; other resources are hashed
+ * before they are encoded, unless they can only be read once.
+ */
+public class AttachmentCache {
+
+    public static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+
+    private static final int MAX_FILES = 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final long maxSize;
+
+    private final LLMsFreeApiMetrics metrics;
+
+    private final LinkedHashMap<String, String> encodings = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LinkedHashMap<FileKey, String> files = new LinkedHashMap<>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<FileKey, String> eldest) {
+            return size() > MAX_FILES;
+        }
+
+    };
+
+    private long size;
+
+    public AttachmentCache(LLMsFreeApiMetrics metrics) {
+        this(DEFAULT_MAX_SIZE, metrics);
+    }
+
+    /**
+     * @param maxSize the maximum total size of the cached encodings in bytes, 0 to disable
+     * caching.
+     * @param metrics the metrics to record the cache lookups in.
+     */
+    public AttachmentCache(long maxSize, LLMsFreeApiMetrics metrics) {
+        Assert.isTrue(maxSize >= 0, "maxSize must not be negative");
+        Assert.notNull(metrics, "LLMsFreeApiMetrics must not be null");
+        this.maxSize = maxSize;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Encode a file as a data URI, reusing the cached encoding of the same content.
+     * @param resource the file.
+     * @param mimeType the media type of the file.
+     * @return the data URI.
+     * @throws UncheckedIOException if the file could not be read.
+     */
+    public String toDataUri(Resource resource, MimeType mimeType) {
+        Assert.notNull(resource, "Resource must not be null");
+        Assert.notNull(mimeType, "MimeType must not be null");
+        try {
+            FileKey fileKey = fileKey(resource);
+            if (fileKey != null) {
+                String dataUri = get(fileKey);
+                if (dataUri != null) {
+                    this.metrics.increment(LLMsFreeApiMetrics.ATTACHMENT_CACHE, "result", "hit");
+                    return dataUri;
+                }
+            }
+
+            String key;
+            String encoded = null;
+            if (resource.isOpen()) {
+                // Can only be read once: hash while encoding.
+                MessageDigest digest = sha256();
+                encoded = encode(resource, mimeType, digest);
+                key = key(mimeType, digest);
+            }
+            else {
+                key = key(mimeType, hash(resource));
+            }
+            String dataUri = get(key);
+            boolean hit = (dataUri != null);
+            if (!hit) {
+                dataUri = (encoded != null ? encoded : encode(resource, mimeType, null));
+            }
+            this.metrics.increment(LLMsFreeApiMetrics.ATTACHMENT_CACHE, "result", (hit ? "hit" : "miss"));
+            put(key, dataUri, fileKey);
+            return dataUri;
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException("Could not read " + resource.getDescription(), ex);
+        }
+    }
+
+    /**
+     * @return the number of encodings cached.
+     */
+    public synchronized int size() {
+        return this.encodings.size();
+    }
+
+    private synchronized String get(FileKey fileKey) {
+        String key = this.files.get(fileKey);
+        return (key != null ? this.encodings.get(key) : null);
+    }
+
+    private synchronized String get(String key) {
+        return this.encodings.get(key);
+    }
+
+    private synchronized void put(String key, String dataUri, FileKey fileKey) {
+        // Data URIs are ASCII: one byte per character.
+        if (dataUri.length() > this.maxSize) {
+            return;
+        }
+        String previous = this.encodings.put(key, dataUri);
+        this.size += dataUri.length() - (previous != null ? previous.length() : 0);
+        Iterator<String> eldest = this.encodings.values().iterator();
+        while (this.size > this.maxSize) {
+            this.size -= eldest.next().length();
+            eldest.remove();
+        }
+        if (fileKey != null) {
+            this.files.put(fileKey, key);
+        }
+    }
+
+    private static FileKey fileKey(Resource resource) throws IOException {
+        if (!resource.isFile()) {
+            return null;
+        }
+        Path path = resource.getFile().toPath().toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        return new FileKey(path, attributes.size(), attributes.lastModifiedTime());
+    }
+
+    private static MessageDigest hash(Resource resource) throws IOException {
+        MessageDigest digest = sha256();
+        try (ReadableByteChannel channel = resource.readableChannel()) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return digest;
+    }
+
+    private static String encode(Resource resource, MimeType mimeType, MessageDigest digest) throws IOException {
+        byte[] prefix = ("data:" + mimeType + ";base64,").getBytes(StandardCharsets.US_ASCII);
+        long length = (resource.isFile() || resource instanceof ByteArrayResource ? resource.contentLength() : -1);
+        int capacity = (length >= 0 ? (int) Math.min(prefix.length + (length + 2) / 3 * 4, Integer.MAX_VALUE - 8)
+                : BUFFER_SIZE);
+        var output = new ByteArrayOutputStream(capacity);
+        output.write(prefix);
+        try (ReadableByteChannel channel = resource.readableChannel();
+             OutputStream encoder = Base64.getEncoder().wrap(output)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                if (digest != null) {
+                    digest.update(buffer.array(), 0, buffer.limit());
+                }
+                encoder.write(buffer.array(), 0, buffer.limit());
+                buffer.clear();
+            }
+        }
+        return output.toString(StandardCharsets.US_ASCII);
+    }
+
+    private static String key(MimeType mimeType, MessageDigest digest) {
+        return mimeType + ":" + HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private record FileKey(Path path, long size, FileTime lastModified) {
+    }
+
+}
@@ -0,0 +1,428 @@
+package org.springframework.ai.llmsfreeapi.attachment;
+
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.MimeType;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Checks the URLs of the image and document messages of a prompt before the request is
+ * sent, so that a broken link fails the call at once instead of after the free-api server
+ * tried to fetch it.
+ * <p>
+ * The URLs of a prompt are checked concurrently with {@code HEAD} requests, which must
+ * succeed and report a size within the limit and an accepted content type; a size or type
+ * which is not reported is not checked. The results are kept in a small cache for a time to
+ * live, so the attachments of a conversation are not checked again on every turn; a failed
+ * check is kept for a short time only, and one which did not reach the host not at all.
+ * <p>
+ * The URLs come from the prompts, i.e. from the users: a host resolving to a loopback,
+ * link-local, private or multicast address is rejected, so that the prefetcher cannot be
+ * used to probe the internal network, unless private networks are allowed. Redirects are
+ * followed by hand, each hop checked the same way, and the hosts can be restricted to an
+ * allowlist. A {@link RestClient} passed to the constructor must not follow redirects
+ * itself.
+ * Optionally the files are also downloaded and sent inline as data URIs through the
+ * {@link AttachmentCache}, e.g. when the server cannot reach the URLs. The blocking
+ * requests run on a {@link Scheduler}, by default {@link Schedulers#boundedElastic()},
+ * which uses virtual threads on JDK 21 when
+ * {@code reactor.schedulers.defaultBoundedElasticOnVirtualThreads} is set.
+ */
+public class AttachmentPrefetcher {
+
+    public static final long DEFAULT_MAX_SIZE = 20L * 1024 * 1024;
+
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(5);
+
+    public static final Duration DEFAULT_CACHE_TTL = Duration.ofMinutes(5);
+
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    /**
+     * Time a check which got an error status is reused for, at most the cache time to live.
+     */
+    public static final Duration FAILURE_CACHE_TTL = Duration.ofSeconds(10);
+
+    private static final int MAX_REDIRECTS = 3;
+
+    public static final List<MimeType> DEFAULT_IMAGE_TYPES = List.of(MimeType.valueOf("image/*"));
+
+    public static final List<MimeType> DEFAULT_DOCUMENT_TYPES = List.of(MimeType.valueOf("application/*"),
+            MimeType.valueOf("text/plain"), MimeType.valueOf("text/markdown"), MimeType.valueOf("text/csv"));
+
+    private static final int CACHE_SIZE = 256;
+
+    private final RestClient restClient;
+
+    private final AttachmentCache attachmentCache;
+
+    private final LinkedHashMap<String, Head> heads = new LinkedHashMap<>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Head> eldest) {
+            return size() > CACHE_SIZE;
+        }
+
+    };
+
+    private long maxSize = DEFAULT_MAX_SIZE;
+
+    private List<MimeType> imageTypes = DEFAULT_IMAGE_TYPES;
+
+    private List<MimeType> documentTypes = DEFAULT_DOCUMENT_TYPES;
+
+    private Duration cacheTtl = DEFAULT_CACHE_TTL;
+
+    private boolean inline = false;
+
+    private int parallelism = DEFAULT_PARALLELISM;
+
+    private Scheduler scheduler = Schedulers.boundedElastic();
+
+    private Set<String> allowedHosts = Set.of();
+
+    private boolean allowPrivateNetworks = false;
+
+    /**
+     * @param attachmentCache the cache encoding the files sent inline.
+     * @param timeout the connect and read timeout of the requests to the URLs.
+     */
+    public AttachmentPrefetcher(AttachmentCache attachmentCache, Duration timeout) {
+        this(RestClient.builder().requestFactory(requestFactory(timeout)).build(), attachmentCache);
+    }
+
+    /**
+     * @param restClient the client sending the requests to the URLs.
+     * @param attachmentCache the cache encoding the files sent inline.
+     */
+    public AttachmentPrefetcher(RestClient restClient, AttachmentCache attachmentCache) {
+        Assert.notNull(restClient, "RestClient must not be null");
+        Assert.notNull(attachmentCache, "AttachmentCache must not be null");
+        this.restClient = restClient;
+        this.attachmentCache = attachmentCache;
+    }
+
+    /**
+     * @param maxSize the maximum size of a file in bytes.
+     */
+    public void setMaxSize(long maxSize) {
+        Assert.isTrue(maxSize > 0, "maxSize must be positive");
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param imageTypes the content types accepted for images.
+     */
+    public void setImageTypes(List<MimeType> imageTypes) {
+        Assert.notEmpty(imageTypes, "imageTypes must not be empty");
+        this.imageTypes = List.copyOf(imageTypes);
+    }
+
+    /**
+     * @param documentTypes the content types accepted for documents.
+     */
+    public void setDocumentTypes(List<MimeType> documentTypes) {
+        Assert.notEmpty(documentTypes, "documentTypes must not be empty");
+        this.documentTypes = List.copyOf(documentTypes);
+    }
+
+    /**
+     * @param cacheTtl the time the result of a check is reused for.
+     */
+    public void setCacheTtl(Duration cacheTtl) {
+        Assert.notNull(cacheTtl, "cacheTtl must not be null");
+        this.cacheTtl = cacheTtl;
+    }
+
+    /**
+     * @param inline whether to download the files and send them inline as data URIs.
+     */
+    public void setInline(boolean inline) {
+        this.inline = inline;
+    }
+
+    /**
+     * @param parallelism the maximum number of URLs of a prompt checked at the same time.
+     */
+    public void setParallelism(int parallelism) {
+        Assert.isTrue(parallelism > 0, "parallelism must be positive");
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @param allowedHosts the hosts the URLs may point to, a {@code *.} prefix matching the
+     * subdomains of a domain; empty for any host.
+     */
+    public void setAllowedHosts(Collection<String> allowedHosts) {
+        Assert.notNull(allowedHosts, "allowedHosts must not be null");
+        this.allowedHosts = allowedHosts.stream().map(host -> host.toLowerCase(Locale.ROOT)).collect(Collectors.toSet());
+    }
+
+    /**
+     * @param allowPrivateNetworks whether the URLs may point to loopback, link-local, private
+     * and multicast addresses, e.g. for files served on an internal network.
+     */
+    public void setAllowPrivateNetworks(boolean allowPrivateNetworks) {
+        this.allowPrivateNetworks = allowPrivateNetworks;
+    }
+
+    /**
+     * @param scheduler the scheduler running the blocking requests.
+     */
+    public void setScheduler(Scheduler scheduler) {
+        Assert.notNull(scheduler, "Scheduler must not be null");
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Check the URLs of the attachments of a prompt, and download them if sent inline.
+     * URLs which are not HTTP(S), e.g. data URIs, are left as they are.
+     * @param attachments the attachments.
+     * @return the URL to send for each attachment URL, a data URI if sent inline.
+     * @throws InvalidAttachmentException if an attachment is invalid.
+     */
+    public Map<String, String> prefetch(List<Attachment> attachments) {
+        List<Attachment> remote = attachments.stream().filter(attachment -> isHttp(attachment.url())).distinct().toList();
+        if (remote.isEmpty()) {
+            return Map.of();
+        }
+        if (remote.size() == 1) {
+            Attachment attachment = remote.get(0);
+            return Map.of(attachment.url(), resolve(attachment));
+        }
+        // Fails on the first invalid attachment, cancelling the others.
+        return Flux.fromIterable(remote)
+                .flatMap(attachment -> Mono.fromCallable(() -> Map.entry(attachment.url(), resolve(attachment)))
+                        .subscribeOn(this.scheduler), this.parallelism)
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                .block();
+    }
+
+    private String resolve(Attachment attachment) {
+        String url = attachment.url();
+        Head head = head(url);
+        if (head.error() != null) {
+            throw new InvalidAttachmentException(url, head.error());
+        }
+        if (head.contentLength() > this.maxSize) {
+            throw new InvalidAttachmentException(url, "size of " + head.contentLength() + " bytes exceeds the limit of "
+                    + this.maxSize + " bytes");
+        }
+        List<MimeType> accepted = (attachment.kind() == Kind.IMAGE ? this.imageTypes : this.documentTypes);
+        if (head.contentType() != null && accepted.stream().noneMatch(type -> type.includes(head.contentType()))) {
+            throw new InvalidAttachmentException(url, "content type " + head.contentType() + " is not accepted for "
+                    + attachment.kind().name().toLowerCase(Locale.ROOT) + "s");
+        }
+        if (!this.inline) {
+            return url;
+        }
+        byte[] content = download(url, head.location());
+        MimeType mimeType = (head.contentType() != null ? head.contentType()
+                : MediaTypeFactory.getMediaType(head.location().getPath()).orElse(MediaType.APPLICATION_OCTET_STREAM));
+        return this.attachmentCache.toDataUri(new ByteArrayResource(content), mimeType);
+    }
+
+    private Head head(String url) {
+        long now = System.nanoTime();
+        synchronized (this.heads) {
+            Head head = this.heads.get(url);
+            if (head != null && now - head.expiresAt() < 0) {
+                return head;
+            }
+        }
+        long expiresAt = now + this.cacheTtl.toNanos();
+        long failureExpiresAt = now + Math.min(this.cacheTtl.toNanos(), FAILURE_CACHE_TTL.toNanos());
+        Head head;
+        try {
+            URI location = URI.create(url);
+            for (int redirects = 0; ; redirects++) {
+                String error = checkHost(location);
+                if (error != null) {
+                    // Not cached, the check does not reach the host.
+                    return new Head(location, null, -1, error, now);
+                }
+                URI current = location;
+                head = this.restClient.head().uri(current).exchange((request, response) -> {
+                    int status = response.getStatusCode().value();
+                    if (response.getStatusCode().is3xxRedirection() && response.getHeaders().getLocation() != null) {
+                        return new Head(current.resolve(response.getHeaders().getLocation()), null, -1, null, -1);
+                    }
+                    if (status == 405 || status == 501) {
+                        // HEAD not supported: nothing known, let the server fetch it.
+                        return new Head(current, null, -1, null, expiresAt);
+                    }
+                    if (response.getStatusCode().isError()) {
+                        return new Head(current, null, -1, "HTTP status " + status, failureExpiresAt);
+                    }
+                    var headers = response.getHeaders();
+                    return new Head(current, headers.getContentType(), headers.getContentLength(), null, expiresAt);
+                });
+                if (head.expiresAt() != -1) {
+                    break;
+                }
+                if (redirects == MAX_REDIRECTS) {
+                    head = new Head(location, null, -1, "more than " + MAX_REDIRECTS + " redirects", failureExpiresAt);
+                    break;
+                }
+                location = head.location();
+            }
+        }
+        catch (RestClientException | IllegalArgumentException ex) {
+            // Not cached, the host may be back in a moment.
+            return new Head(null, null, -1, "not reachable, " + ex.getMessage(), now);
+        }
+        synchronized (this.heads) {
+            this.heads.put(url, head);
+        }
+        return head;
+    }
+
+    private byte[] download(String url, URI location) {
+        String error = checkHost(location);
+        if (error != null) {
+            throw new InvalidAttachmentException(url, error);
+        }
+        try {
+            return this.restClient.get().uri(location).exchange((request, response) -> {
+                if (!response.getStatusCode().is2xxSuccessful()) {
+                    // Also a redirect, which the check of the URL did not get.
+                    throw new InvalidAttachmentException(url, "HTTP status " + response.getStatusCode().value());
+                }
+                try (InputStream body = response.getBody()) {
+                    byte[] content = body.readNBytes((int) Math.min(this.maxSize + 1, Integer.MAX_VALUE - 8));
+                    if (content.length > this.maxSize) {
+                        throw new InvalidAttachmentException(url, "size exceeds the limit of " + this.maxSize + " bytes");
+                    }
+                    return content;
+                }
+            });
+        }
+        catch (RestClientException ex) {
+            throw new InvalidAttachmentException(url, "not reachable, " + ex.getMessage());
+        }
+    }
+
+    /**
+     * @return why the URL must not be fetched, or {@code null} if it may be.
+     */
+    private String checkHost(URI location) {
+        if (!isHttp(location.toString())) {
+            return "not an HTTP(S) URL";
+        }
+        String host = location.getHost();
+        if (host == null) {
+            return "no host";
+        }
+        host = host.toLowerCase(Locale.ROOT);
+        if (!this.allowedHosts.isEmpty() && !isAllowed(host)) {
+            return "host " + host + " is not allowed";
+        }
+        if (this.allowPrivateNetworks) {
+            return null;
+        }
+        InetAddress[] addresses;
+        try {
+            addresses = InetAddress.getAllByName(host);
+        }
+        catch (UnknownHostException ex) {
+            return "unknown host " + host;
+        }
+        for (InetAddress address : addresses) {
+            if (isPrivate(address)) {
+                return "host " + host + " resolves to the private address " + address.getHostAddress();
+            }
+        }
+        return null;
+    }
+
+    private boolean isAllowed(String host) {
+        for (String allowed : this.allowedHosts) {
+            if (allowed.startsWith("*.") ? host.endsWith(allowed.substring(1)) : host.equals(allowed)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isPrivate(InetAddress address) {
+        return address.isLoopbackAddress() || address.isLinkLocalAddress() || address.isSiteLocalAddress()
+                || address.isAnyLocalAddress() || address.isMulticastAddress()
+                // IPv6 unique local addresses, fc00::/7, which isSiteLocalAddress does not cover.
+                || (address instanceof Inet6Address && (address.getAddress()[0] & 0xfe) == 0xfc);
+    }
+
+    private static boolean isHttp(String url) {
+        return (url != null && (url.startsWith("http://") || url.startsWith("https://")));
+    }
+
+    private static SimpleClientHttpRequestFactory requestFactory(Duration timeout) {
+        Assert.notNull(timeout, "timeout must not be null");
+        var requestFactory = new SimpleClientHttpRequestFactory() {
+
+            @Override
+            protected void prepareConnection(HttpURLConnection connection, String httpMethod) throws IOException {
+                super.prepareConnection(connection, httpMethod);
+                // Followed by hand, so that each hop is checked.
+                connection.setInstanceFollowRedirects(false);
+            }
+
+        };
+        requestFactory.setConnectTimeout(timeout);
+        requestFactory.setReadTimeout(timeout);
+        return requestFactory;
+    }
+
+    /**
+     * The kind of an attachment, which determines the content types accepted.
+     */
+    public enum Kind {
+
+        IMAGE,
+
+        DOCUMENT
+
+    }
+
+    /**
+     * The file of an image or document message.
+     *
+     * @param url The URL of the file.
+     * @param kind The kind of the file.
+     */
+    public record Attachment(String url, Kind kind) {
+    }
+
+    /**
+     * The result of the check of a URL.
+     *
+     * @param location The URL after the redirects.
+     * @param expiresAt When the result is stale, -1 for a redirect.
+     */
+    private record Head(URI location, MimeType contentType, long contentLength, String error, long expiresAt) {
+    }
+
+}
@@ -0,0 +1,20 @@
+package org.springframework.ai.llmsfreeapi.attachment;
+
+/**
+ * Thrown when the URL of an image or document message is broken, too large or of a type
+ * the model does not accept, found before the request is sent.
+ */
+public class InvalidAttachmentException extends IllegalArgumentException {
+
+    private final String url;
+
+    public InvalidAttachmentException(String url, String reason) {
+        super("Invalid attachment " + url + ": " + reason);
+        this.url = url;
+    }
+
+    public String getUrl() {
+        return this.url;
+    }
+
+}
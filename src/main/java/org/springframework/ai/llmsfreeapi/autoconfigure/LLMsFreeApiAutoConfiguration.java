@@ -1,24 +1,61 @@
 package org.springframework.ai.llmsfreeapi.autoconfigure;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.ai.autoconfigure.retry.SpringAiRetryAutoConfiguration;
 import org.springframework.ai.llmsfreeapi.LLMsFreeApiChatClient;
+import org.springframework.ai.llmsfreeapi.LLMsFreeApiWarmupRunner;
+import org.springframework.ai.llmsfreeapi.actuate.LLMsFreeApiEndpoint;
+import org.springframework.ai.llmsfreeapi.actuate.LLMsFreeApiHealthIndicator;
 import org.springframework.ai.llmsfreeapi.api.LLMsFreeApi;
+import org.springframework.ai.llmsfreeapi.api.LLMsFreeApiCompression;
+import org.springframework.ai.llmsfreeapi.api.LLMsFreeApiFaultInjector;
+import org.springframework.ai.llmsfreeapi.api.LLMsFreeApiRecording;
+import org.springframework.ai.llmsfreeapi.api.LLMsFreeApiTokenChecker;
+import org.springframework.ai.llmsfreeapi.api.LLMsFreeApiTokenPool;
+import org.springframework.ai.llmsfreeapi.api.LLMsFreeApiVirtualThreads;
+import org.springframework.ai.llmsfreeapi.attachment.AttachmentCache;
+import org.springframework.ai.llmsfreeapi.attachment.AttachmentPrefetcher;
+import org.springframework.ai.llmsfreeapi.batch.LLMsFreeApiBatchClient;
+import org.springframework.ai.llmsfreeapi.batch.LLMsFreeApiBatchRunner;
+import org.springframework.ai.llmsfreeapi.conversation.ConversationAffinityRegistry;
+import org.springframework.ai.llmsfreeapi.crac.LLMsFreeApiCheckpointLifecycle;
+import org.springframework.ai.llmsfreeapi.function.FunctionResultCache;
+import org.springframework.ai.llmsfreeapi.metrics.LLMsFreeApiMeterBinder;
+import org.springframework.ai.llmsfreeapi.metrics.LLMsFreeApiMetrics;
+import org.springframework.ai.llmsfreeapi.stream.ResumableStreamRegistry;
+import org.springframework.ai.llmsfreeapi.stream.SharedStreamRegistry;
+import org.springframework.ai.llmsfreeapi.tenant.TenantAdmissionController;
 import org.springframework.ai.model.function.FunctionCallback;
 import org.springframework.ai.model.function.FunctionCallbackContext;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.actuate.autoconfigure.endpoint.condition.ConditionalOnAvailableEndpoint;
+import org.springframework.boot.actuate.autoconfigure.health.ConditionalOnEnabledHealthIndicator;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.health.HealthIndicator;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.AnyNestedCondition;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
 import org.springframework.boot.autoconfigure.web.client.RestClientAutoConfiguration;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.thread.Threading;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.context.annotation.Configuration;
 import org.springframework.retry.support.RetryTemplate;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 import org.springframework.web.client.ResponseErrorHandler;
 import org.springframework.web.client.RestClient;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
+import java.nio.file.Path;
 import java.util.List;
 
 /**
@@ -29,14 +66,103 @@ import java.util.List;
 @ConditionalOnClass(LLMsFreeApi.class)
 public class LLMsFreeApiAutoConfiguration {
 
+    public static final String VIRTUAL_THREAD_SCHEDULER = "llmsFreeApiVirtualThreadScheduler";
+
     @Bean
     @ConditionalOnMissingBean
-    public LLMsFreeApi llmsFreeApi(LLMsFreeApiConnectionProperties properties, RestClient.Builder restClientBuilder, ResponseErrorHandler responseErrorHandler) {
+    public LLMsFreeApiMetrics llmsFreeApiMetrics() {
+        return new LLMsFreeApiMetrics();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public LLMsFreeApiTokenPool llmsFreeApiTokenPool(LLMsFreeApiConnectionProperties properties) {
 
         Assert.hasText(properties.getApiKey(), "LLMs Free API key must be set");
+
+        var tokenPool = LLMsFreeApiTokenPool.of(properties.getApiKey(), properties.getMaxConcurrencyPerToken(),
+                properties.getTokenAcquireTimeout());
+        tokenPool.setStarvationThreshold(properties.getStarvationThreshold());
+        return tokenPool;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = LLMsFreeApiConnectionProperties.CONFIG_PREFIX + ".recording", name = "mode")
+    public LLMsFreeApiRecording llmsFreeApiRecording(LLMsFreeApiConnectionProperties properties) {
+        var recording = properties.getRecording();
+        Assert.hasText(recording.getPath(), "LLMs Free API recording path must be set");
+        return (recording.getMode() == LLMsFreeApiRecording.Mode.REPLAY
+                ? LLMsFreeApiRecording.replay(Path.of(recording.getPath()), recording.getSpeed())
+                : LLMsFreeApiRecording.record(Path.of(recording.getPath())));
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = LLMsFreeApiConnectionProperties.CONFIG_PREFIX + ".faults", name = "enabled", havingValue = "true")
+    public LLMsFreeApiFaultInjector llmsFreeApiFaultInjector(LLMsFreeApiConnectionProperties properties,
+                                                             LLMsFreeApiMetrics metrics) {
+        var faults = properties.getFaults();
+        var faultInjector = new LLMsFreeApiFaultInjector(metrics);
+        faults.getRates().forEach(faultInjector::setRate);
+        faultInjector.setLatency(faults.getLatency());
+        faultInjector.setStall(faults.getStall());
+        return faultInjector;
+    }
+
+    /**
+     * The client without the reactive transport, when spring-webflux or Reactor Netty is
+     * missing, see {@link LLMsFreeApiReactiveConfiguration}.
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public LLMsFreeApi llmsFreeApi(LLMsFreeApiConnectionProperties properties, LLMsFreeApiTokenPool tokenPool,
+                                   RestClient.Builder restClientBuilder, ResponseErrorHandler responseErrorHandler,
+                                   LLMsFreeApiMetrics metrics, ObjectProvider<LLMsFreeApiRecording> recording,
+                                   ObjectProvider<LLMsFreeApiFaultInjector> faultInjector) {
+
+        Assert.state(!Boolean.TRUE.equals(properties.getReactive()),
+                "The LLMs Free API reactive client requires spring-webflux and Reactor Netty");
+        return createLlmsFreeApi(properties, tokenPool, restClientBuilder, responseErrorHandler, metrics, recording,
+                faultInjector, false);
+    }
+
+    private static LLMsFreeApi createLlmsFreeApi(LLMsFreeApiConnectionProperties properties, LLMsFreeApiTokenPool tokenPool,
+                                                 RestClient.Builder restClientBuilder, ResponseErrorHandler responseErrorHandler,
+                                                 LLMsFreeApiMetrics metrics, ObjectProvider<LLMsFreeApiRecording> recording,
+                                                 ObjectProvider<LLMsFreeApiFaultInjector> faultInjector,
+                                                 boolean reactive) {
+
         Assert.hasText(properties.getBaseUrl(), "LLMs Free API base URL must be set");
 
-        return new LLMsFreeApi(properties.getBaseUrl(), properties.getApiKey(), restClientBuilder, responseErrorHandler);
+        var llmsFreeApi = new LLMsFreeApi(properties.getBaseUrl(), tokenPool, restClientBuilder, responseErrorHandler, metrics);
+        if (Boolean.TRUE.equals(properties.getVirtualThreads())) {
+            // Only if asked for, not to replace the request factory of the application.
+            // Owned by the client, which closes it with its connections.
+            Assert.state(LLMsFreeApiVirtualThreads.isAvailable(), "LLMs Free API virtual threads require Java 21 or later");
+            llmsFreeApi.setRequestFactory(
+                    () -> LLMsFreeApiVirtualThreads.requestFactory(LLMsFreeApiVirtualThreads.DEFAULT_CONNECT_TIMEOUT));
+        }
+        llmsFreeApi.setReactive(reactive);
+        var compression = properties.getCompression();
+        if (compression.isEnabled()) {
+            llmsFreeApi.setCompression(new LLMsFreeApiCompression(compression.getAlgorithm(),
+                    Math.toIntExact(compression.getThreshold().toBytes()), compression.isResponses()));
+        }
+        recording.ifAvailable(llmsFreeApi::setRecording);
+        faultInjector.ifAvailable(llmsFreeApi::setFaultInjector);
+        return llmsFreeApi;
+    }
+
+    /**
+     * The virtual threads of the blocking calls, of the tool call rounds of streams and of
+     * the batches, no longer accepting tasks once the context is closed.
+     */
+    @Bean(name = VIRTUAL_THREAD_SCHEDULER, destroyMethod = "dispose")
+    @ConditionalOnMissingBean(name = VIRTUAL_THREAD_SCHEDULER)
+    @Conditional(OnVirtualThreadsCondition.class)
+    public Scheduler llmsFreeApiVirtualThreadScheduler() {
+        return LLMsFreeApiVirtualThreads.scheduler();
     }
 
     @Bean
@@ -46,11 +172,178 @@ public class LLMsFreeApiAutoConfiguration {
                                                    LLMsFreeApiChatProperties chatProperties,
                                                    List<FunctionCallback> toolFunctionCallbacks,
                                                    FunctionCallbackContext functionCallbackContext,
-                                                   RetryTemplate retryTemplate) {
+                                                   RetryTemplate retryTemplate,
+                                                   ResumableStreamRegistry resumableStreamRegistry,
+                                                   SharedStreamRegistry sharedStreamRegistry,
+                                                   ObjectProvider<ConversationAffinityRegistry> conversationAffinityRegistry,
+                                                   ObjectProvider<TenantAdmissionController> tenantAdmissionController,
+                                                   FunctionResultCache functionResultCache,
+                                                   AttachmentCache attachmentCache,
+                                                   ObjectProvider<AttachmentPrefetcher> attachmentPrefetcher,
+                                                   LLMsFreeApiConnectionProperties properties,
+                                                   @Qualifier(VIRTUAL_THREAD_SCHEDULER) ObjectProvider<Scheduler> virtualThreadScheduler) {
         if (!CollectionUtils.isEmpty(toolFunctionCallbacks)) {
             chatProperties.getOptions().getFunctionCallbacks().addAll(toolFunctionCallbacks);
         }
-        return new LLMsFreeApiChatClient(llmsFreeApi, chatProperties.getOptions(), functionCallbackContext, retryTemplate);
+        var chatClient = new LLMsFreeApiChatClient(llmsFreeApi, chatProperties.getOptions(), functionCallbackContext, retryTemplate);
+        chatClient.setResumableStreamRegistry(resumableStreamRegistry);
+        chatClient.setSharedStreamRegistry(sharedStreamRegistry);
+        chatClient.setPromptTokenBudget(chatProperties.getBudget().getMaxPromptTokens(), chatProperties.getBudget().getTrimStrategy());
+        conversationAffinityRegistry.ifAvailable(chatClient::setConversationAffinityRegistry);
+        tenantAdmissionController.ifAvailable(chatClient::setTenantAdmissionController);
+        chatClient.setFunctionResultCache(functionResultCache);
+        chatClient.setAttachmentCache(attachmentCache);
+        attachmentPrefetcher.ifAvailable(chatClient::setAttachmentPrefetcher);
+        chatClient.setToolLoopLimits(chatProperties.getToolLoop().toLimits());
+        virtualThreadScheduler.ifAvailable(scheduler -> {
+            chatClient.setToolScheduler(scheduler);
+            if (Boolean.TRUE.equals(properties.getVirtualThreads())) {
+                // Only if asked for, the request threads may be virtual already.
+                chatClient.setCallScheduler(scheduler);
+            }
+        });
+        return chatClient;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = LLMsFreeApiChatProperties.CONFIG_PREFIX + ".conversation", name = "enabled", havingValue = "true")
+    public ConversationAffinityRegistry llmsFreeApiConversationAffinityRegistry(LLMsFreeApiChatProperties chatProperties) {
+        var conversation = chatProperties.getConversation();
+        return new ConversationAffinityRegistry(conversation.getMaxSessions(), conversation.getTtl());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = LLMsFreeApiChatProperties.CONFIG_PREFIX + ".tenant", name = "enabled", havingValue = "true")
+    public TenantAdmissionController llmsFreeApiTenantAdmissionController(LLMsFreeApiChatProperties chatProperties,
+                                                                          LLMsFreeApiTokenPool tokenPool,
+                                                                          LLMsFreeApiMetrics metrics) {
+        var tenant = chatProperties.getTenant();
+        int maxConcurrency = tenant.getMaxConcurrency();
+        if (maxConcurrency == 0 && tokenPool.isLimited()) {
+            // Queue at the tenant level, where waiting calls are scheduled fairly.
+            maxConcurrency = tokenPool.getCapacity();
+        }
+        var controller = new TenantAdmissionController(tenant.getQuota().toQuota(), maxConcurrency,
+                tenant.getQueueTimeout(), tenant.getMaxTenants(), metrics);
+        tenant.getQuotas().forEach((tenantId, quota) -> controller.setQuota(tenantId, quota.toQuota()));
+        return controller;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = LLMsFreeApiChatProperties.CONFIG_PREFIX, name = "enabled", havingValue = "true", matchIfMissing = true)
+    public LLMsFreeApiBatchClient llmsFreeApiBatchClient(LLMsFreeApiChatClient chatClient, LLMsFreeApiChatProperties chatProperties,
+                                                         @Qualifier(VIRTUAL_THREAD_SCHEDULER) ObjectProvider<Scheduler> virtualThreadScheduler) {
+        Scheduler scheduler = virtualThreadScheduler.getIfAvailable(Schedulers::boundedElastic);
+        return new LLMsFreeApiBatchClient(chatClient, chatProperties.getBatch().getParallelism(), scheduler);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = LLMsFreeApiChatProperties.CONFIG_PREFIX + ".batch", name = "input")
+    public LLMsFreeApiBatchRunner llmsFreeApiBatchRunner(LLMsFreeApiBatchClient batchClient, LLMsFreeApiChatProperties chatProperties) {
+        var batch = chatProperties.getBatch();
+        var runner = new LLMsFreeApiBatchRunner(batchClient);
+        runner.setInput(batch.getInput());
+        runner.setOutput(batch.getOutput());
+        runner.setCheckpoint(batch.getCheckpoint());
+        runner.setCheckpointInterval(batch.getCheckpointInterval());
+        runner.setFailFast(batch.isFailFast());
+        return runner;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = LLMsFreeApiChatProperties.CONFIG_PREFIX + ".warmup", name = "enabled", havingValue = "true")
+    public LLMsFreeApiWarmupRunner llmsFreeApiWarmupRunner(LLMsFreeApi llmsFreeApi, LLMsFreeApiChatProperties chatProperties,
+                                                       ObjectProvider<LLMsFreeApiChatClient> chatClient,
+                                                       ObjectProvider<ObjectMapper> objectMapper) {
+        var warmup = chatProperties.getWarmup();
+        var runner = new LLMsFreeApiWarmupRunner(llmsFreeApi);
+        chatClient.ifAvailable(runner::setChatClient);
+        objectMapper.ifAvailable(runner::setObjectMapper);
+        runner.setConnections(warmup.getConnections());
+        runner.setTimeout(warmup.getTimeout());
+        return runner;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = LLMsFreeApiChatProperties.CONFIG_PREFIX + ".token-check", name = "enabled", havingValue = "true")
+    public LLMsFreeApiTokenChecker llmsFreeApiTokenChecker(LLMsFreeApi llmsFreeApi, LLMsFreeApiChatProperties chatProperties) {
+        var tokenCheck = chatProperties.getTokenCheck();
+        var tokenChecker = new LLMsFreeApiTokenChecker(llmsFreeApi);
+        tokenChecker.setInterval(tokenCheck.getInterval());
+        tokenChecker.setJitter(tokenCheck.getJitter());
+        return tokenChecker;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public AttachmentCache llmsFreeApiAttachmentCache(LLMsFreeApiChatProperties chatProperties,
+                                                      LLMsFreeApiMetrics metrics) {
+        return new AttachmentCache(chatProperties.getAttachment().getMaxCacheSize().toBytes(), metrics);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = LLMsFreeApiChatProperties.CONFIG_PREFIX + ".attachment.prefetch", name = "enabled", havingValue = "true")
+    public AttachmentPrefetcher llmsFreeApiAttachmentPrefetcher(LLMsFreeApiChatProperties chatProperties,
+                                                                AttachmentCache attachmentCache) {
+        var prefetch = chatProperties.getAttachment().getPrefetch();
+        var prefetcher = new AttachmentPrefetcher(attachmentCache, prefetch.getTimeout());
+        prefetcher.setInline(prefetch.isInline());
+        prefetcher.setMaxSize(prefetch.getMaxSize().toBytes());
+        prefetcher.setImageTypes(prefetch.getImageTypes());
+        prefetcher.setDocumentTypes(prefetch.getDocumentTypes());
+        prefetcher.setCacheTtl(prefetch.getCacheTtl());
+        prefetcher.setParallelism(prefetch.getParallelism());
+        prefetcher.setAllowedHosts(prefetch.getAllowedHosts());
+        prefetcher.setAllowPrivateNetworks(prefetch.isAllowPrivateNetworks());
+        return prefetcher;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public ResumableStreamRegistry llmsFreeApiResumableStreamRegistry(LLMsFreeApiChatProperties chatProperties,
+                                                                      LLMsFreeApiMetrics metrics) {
+        var resumable = chatProperties.getResumable();
+        return new ResumableStreamRegistry(resumable.getMaxStreams(), resumable.getBufferSize(), resumable.getTtl(),
+                resumable.getGracePeriod(), metrics);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public SharedStreamRegistry llmsFreeApiSharedStreamRegistry(LLMsFreeApiChatProperties chatProperties,
+                                                                LLMsFreeApiMetrics metrics) {
+        var shared = chatProperties.getShared();
+        var registry = new SharedStreamRegistry(shared.getMaxStreams(), shared.getBufferSize(), shared.getTtl(),
+                shared.getGracePeriod(), metrics);
+        registry.setMaxLag(shared.getMaxLag());
+        registry.setOverflow(shared.getOverflow());
+        return registry;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public FunctionResultCache llmsFreeApiFunctionResultCache(LLMsFreeApiChatProperties chatProperties,
+                                                              LLMsFreeApiMetrics metrics) {
+        var cache = new FunctionResultCache(metrics);
+        chatProperties.getFunctionCache().forEach((functionName, function) ->
+                cache.cache(functionName, function.getTtl(), function.getMaxSize()));
+        return cache;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public LLMsFreeApiCheckpointLifecycle llmsFreeApiCheckpointLifecycle(LLMsFreeApi llmsFreeApi,
+                                                                         LLMsFreeApiChatProperties chatProperties) {
+        var warmup = chatProperties.getWarmup();
+        var lifecycle = new LLMsFreeApiCheckpointLifecycle(llmsFreeApi, warmup.getConnections());
+        lifecycle.setTimeout(warmup.getTimeout());
+        return lifecycle;
     }
 
     @Bean
@@ -61,4 +354,100 @@ public class LLMsFreeApiAutoConfiguration {
         return manager;
     }
 
+    /**
+     * The client with the reactive transport, needed for streaming. Registered ahead of the
+     * fallback of the enclosing configuration, as member classes are processed first.
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = { "org.springframework.web.reactive.function.client.WebClient",
+            "reactor.netty.http.client.HttpClient" })
+    static class LLMsFreeApiReactiveConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean
+        public LLMsFreeApi llmsFreeApi(LLMsFreeApiConnectionProperties properties, LLMsFreeApiTokenPool tokenPool,
+                                       RestClient.Builder restClientBuilder, ResponseErrorHandler responseErrorHandler,
+                                       LLMsFreeApiMetrics metrics, ObjectProvider<LLMsFreeApiRecording> recording,
+                                       ObjectProvider<LLMsFreeApiFaultInjector> faultInjector) {
+            return createLlmsFreeApi(properties, tokenPool, restClientBuilder, responseErrorHandler, metrics, recording,
+                    faultInjector, !Boolean.FALSE.equals(properties.getReactive()));
+        }
+
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(HealthIndicator.class)
+    @ConditionalOnProperty(prefix = LLMsFreeApiChatProperties.CONFIG_PREFIX + ".token-check", name = "enabled", havingValue = "true")
+    static class LLMsFreeApiHealthConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean(name = "llmsFreeApiHealthIndicator")
+        @ConditionalOnEnabledHealthIndicator("llmsfreeapi")
+        public LLMsFreeApiHealthIndicator llmsFreeApiHealthIndicator(LLMsFreeApiTokenChecker tokenChecker) {
+            return new LLMsFreeApiHealthIndicator(tokenChecker);
+        }
+
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(Endpoint.class)
+    static class LLMsFreeApiEndpointConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean
+        @ConditionalOnAvailableEndpoint
+        public LLMsFreeApiEndpoint llmsFreeApiEndpoint(LLMsFreeApi llmsFreeApi,
+                                                       ResumableStreamRegistry resumableStreamRegistry,
+                                                       SharedStreamRegistry sharedStreamRegistry,
+                                                       FunctionResultCache functionResultCache,
+                                                       AttachmentCache attachmentCache,
+                                                       ObjectProvider<ConversationAffinityRegistry> conversationAffinityRegistry,
+                                                       ObjectProvider<TenantAdmissionController> tenantAdmissionController) {
+            var endpoint = new LLMsFreeApiEndpoint(llmsFreeApi);
+            endpoint.setResumableStreamRegistry(resumableStreamRegistry);
+            endpoint.setSharedStreamRegistry(sharedStreamRegistry);
+            endpoint.setFunctionResultCache(functionResultCache);
+            endpoint.setAttachmentCache(attachmentCache);
+            conversationAffinityRegistry.ifAvailable(endpoint::setConversationAffinityRegistry);
+            tenantAdmissionController.ifAvailable(endpoint::setTenantAdmissionController);
+            return endpoint;
+        }
+
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(MeterRegistry.class)
+    static class LLMsFreeApiMetricsConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean
+        public LLMsFreeApiMeterBinder llmsFreeApiMeterBinder(LLMsFreeApiMetrics metrics) {
+            return new LLMsFreeApiMeterBinder(metrics);
+        }
+
+    }
+
+    /**
+     * Whether the blocking calls run on virtual threads: as configured, or else along with
+     * the request threads of the application.
+     */
+    static class OnVirtualThreadsCondition extends AnyNestedCondition {
+
+        OnVirtualThreadsCondition() {
+            super(ConfigurationPhase.REGISTER_BEAN);
+        }
+
+        @ConditionalOnProperty(prefix = LLMsFreeApiConnectionProperties.CONFIG_PREFIX, name = "virtual-threads", havingValue = "true")
+        static class Configured {
+
+        }
+
+        @ConditionalOnThreading(Threading.VIRTUAL)
+        @ConditionalOnProperty(prefix = LLMsFreeApiConnectionProperties.CONFIG_PREFIX, name = "virtual-threads", havingValue = "true", matchIfMissing = true)
+        static class ApplicationThreads {
+
+        }
+
+    }
+
 }
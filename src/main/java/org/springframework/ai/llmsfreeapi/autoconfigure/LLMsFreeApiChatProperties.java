@@ -1,8 +1,30 @@
 package org.springframework.ai.llmsfreeapi.autoconfigure;
 
+import org.springframework.ai.llmsfreeapi.LLMsFreeApiWarmupRunner;
 import org.springframework.ai.llmsfreeapi.api.LLMsFreeApiChatOptions;
+import org.springframework.ai.llmsfreeapi.api.LLMsFreeApiTokenChecker;
+import org.springframework.ai.llmsfreeapi.attachment.AttachmentCache;
+import org.springframework.ai.llmsfreeapi.attachment.AttachmentPrefetcher;
+import org.springframework.ai.llmsfreeapi.batch.LLMsFreeApiBatchClient;
+import org.springframework.ai.llmsfreeapi.batch.LLMsFreeApiBatchRunner;
+import org.springframework.ai.llmsfreeapi.conversation.ConversationAffinityRegistry;
+import org.springframework.ai.llmsfreeapi.function.FunctionResultCache;
+import org.springframework.ai.llmsfreeapi.function.ToolLoopLimits;
+import org.springframework.ai.llmsfreeapi.stream.ResumableStreamRegistry;
+import org.springframework.ai.llmsfreeapi.stream.SharedStreamRegistry;
+import org.springframework.ai.llmsfreeapi.tenant.TenantAdmissionController;
+import org.springframework.ai.llmsfreeapi.tokenizer.HistoryTrimStrategy;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.NestedConfigurationProperty;
+import org.springframework.util.MimeType;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 @ConfigurationProperties(LLMsFreeApiChatProperties.CONFIG_PREFIX)
 public class LLMsFreeApiChatProperties {
@@ -24,6 +46,61 @@ public class LLMsFreeApiChatProperties {
     private LLMsFreeApiChatOptions options = LLMsFreeApiChatOptions.builder()
             .build();
 
+    /**
+     * Replay buffer of resumable streams.
+     */
+    private final Resumable resumable = new Resumable();
+
+    /**
+     * Streams shared by the subscribers of a request id.
+     */
+    private final Shared shared = new Shared();
+
+    /**
+     * Server-side conversation reuse.
+     */
+    private final Conversation conversation = new Conversation();
+
+    /**
+     * Prompt token budget of the requests.
+     */
+    private final Budget budget = new Budget();
+
+    /**
+     * Batch processing of prompts.
+     */
+    private final Batch batch = new Batch();
+
+    /**
+     * Admission control of the calls of many tenants.
+     */
+    private final Tenant tenant = new Tenant();
+
+    /**
+     * Caching of function results, by function name. Only the functions listed are cached.
+     */
+    private final Map<String, FunctionCache> functionCache = new LinkedHashMap<>();
+
+    /**
+     * Limits of the tool-calling loop.
+     */
+    private final ToolLoop toolLoop = new ToolLoop();
+
+    /**
+     * Warm-up of the client at startup.
+     */
+    private final Warmup warmup = new Warmup();
+
+    /**
+     * Background checks of the tokens.
+     */
+    private final TokenCheck tokenCheck = new TokenCheck();
+
+    /**
+     * Encoding of the local and in-memory files of image and document messages.
+     */
+    private final Attachment attachment = new Attachment();
+
     public LLMsFreeApiChatOptions getOptions() {
         return this.options;
     }
@@ -40,4 +117,791 @@ public class LLMsFreeApiChatProperties {
         this.enabled = enabled;
     }
 
+    public Resumable getResumable() {
+        return this.resumable;
+    }
+
+    public Shared getShared() {
+        return this.shared;
+    }
+
+    public Conversation getConversation() {
+        return this.conversation;
+    }
+
+    public Budget getBudget() {
+        return this.budget;
+    }
+
+    public Batch getBatch() {
+        return this.batch;
+    }
+
+    public Tenant getTenant() {
+        return this.tenant;
+    }
+
+    public Map<String, FunctionCache> getFunctionCache() {
+        return this.functionCache;
+    }
+
+    public ToolLoop getToolLoop() {
+        return this.toolLoop;
+    }
+
+    public Warmup getWarmup() {
+        return this.warmup;
+    }
+
+    public TokenCheck getTokenCheck() {
+        return this.tokenCheck;
+    }
+
+    public Attachment getAttachment() {
+        return this.attachment;
+    }
+
+    public static class Resumable {
+
+        /**
+         * Maximum number of streams retained at the same time.
+         */
+        private int maxStreams = ResumableStreamRegistry.DEFAULT_MAX_STREAMS;
+
+        /**
+         * Maximum number of deltas buffered per stream.
+         */
+        private int bufferSize = ResumableStreamRegistry.DEFAULT_BUFFER_SIZE;
+
+        /**
+         * Time a finished stream can still be resumed.
+         */
+        private Duration ttl = ResumableStreamRegistry.DEFAULT_TTL;
+
+        /**
+         * Time the upstream generation is kept alive while no client is attached.
+         */
+        private Duration gracePeriod = ResumableStreamRegistry.DEFAULT_GRACE_PERIOD;
+
+        public int getMaxStreams() {
+            return this.maxStreams;
+        }
+
+        public void setMaxStreams(int maxStreams) {
+            this.maxStreams = maxStreams;
+        }
+
+        public int getBufferSize() {
+            return this.bufferSize;
+        }
+
+        public void setBufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+        }
+
+        public Duration getTtl() {
+            return this.ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+
+        public Duration getGracePeriod() {
+            return this.gracePeriod;
+        }
+
+        public void setGracePeriod(Duration gracePeriod) {
+            this.gracePeriod = gracePeriod;
+        }
+
+    }
+
+    public static class Shared {
+
+        /**
+         * Maximum number of streams retained at the same time.
+         */
+        private int maxStreams = SharedStreamRegistry.DEFAULT_MAX_STREAMS;
+
+        /**
+         * Maximum number of deltas buffered per stream for late subscribers.
+         */
+        private int bufferSize = SharedStreamRegistry.DEFAULT_BUFFER_SIZE;
+
+        /**
+         * Maximum number of deltas a subscriber may fall behind the upstream generation.
+         */
+        private int maxLag = SharedStreamRegistry.DEFAULT_MAX_LAG;
+
+        /**
+         * What happens to a subscriber falling further behind.
+         */
+        private SharedStreamRegistry.Overflow overflow = SharedStreamRegistry.Overflow.DISCONNECT;
+
+        /**
+         * Time a finished stream can still be subscribed to.
+         */
+        private Duration ttl = SharedStreamRegistry.DEFAULT_TTL;
+
+        /**
+         * Time the upstream generation is kept alive while no client is subscribed.
+         */
+        private Duration gracePeriod = SharedStreamRegistry.DEFAULT_GRACE_PERIOD;
+
+        public int getMaxStreams() {
+            return this.maxStreams;
+        }
+
+        public void setMaxStreams(int maxStreams) {
+            this.maxStreams = maxStreams;
+        }
+
+        public int getBufferSize() {
+            return this.bufferSize;
+        }
+
+        public void setBufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+        }
+
+        public int getMaxLag() {
+            return this.maxLag;
+        }
+
+        public void setMaxLag(int maxLag) {
+            this.maxLag = maxLag;
+        }
+
+        public SharedStreamRegistry.Overflow getOverflow() {
+            return this.overflow;
+        }
+
+        public void setOverflow(SharedStreamRegistry.Overflow overflow) {
+            this.overflow = overflow;
+        }
+
+        public Duration getTtl() {
+            return this.ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+
+        public Duration getGracePeriod() {
+            return this.gracePeriod;
+        }
+
+        public void setGracePeriod(Duration gracePeriod) {
+            this.gracePeriod = gracePeriod;
+        }
+
+    }
+
+    public static class Conversation {
+
+        /**
+         * Continue the upstream conversation of a chat session instead of resending the
+         * full history. Sessions are identified by the session id chat option.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Maximum number of sessions tracked at the same time.
+         */
+        private int maxSessions = ConversationAffinityRegistry.DEFAULT_MAX_SESSIONS;
+
+        /**
+         * Time after which an idle session starts a new upstream conversation.
+         */
+        private Duration ttl = ConversationAffinityRegistry.DEFAULT_TTL;
+
+        public boolean isEnabled() {
+            return this.enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxSessions() {
+            return this.maxSessions;
+        }
+
+        public void setMaxSessions(int maxSessions) {
+            this.maxSessions = maxSessions;
+        }
+
+        public Duration getTtl() {
+            return this.ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+
+    }
+
+    public static class Budget {
+
+        /**
+         * Estimated prompt tokens a request may have, 0 for no limit.
+         */
+        private int maxPromptTokens = 0;
+
+        /**
+         * How a conversation history exceeding the budget is handled.
+         */
+        private HistoryTrimStrategy trimStrategy = HistoryTrimStrategy.DROP_OLDEST;
+
+        public int getMaxPromptTokens() {
+            return this.maxPromptTokens;
+        }
+
+        public void setMaxPromptTokens(int maxPromptTokens) {
+            this.maxPromptTokens = maxPromptTokens;
+        }
+
+        public HistoryTrimStrategy getTrimStrategy() {
+            return this.trimStrategy;
+        }
+
+        public void setTrimStrategy(HistoryTrimStrategy trimStrategy) {
+            this.trimStrategy = trimStrategy;
+        }
+
+    }
+
+    public static class Batch {
+
+        /**
+         * Maximum number of prompts of a batch running at the same time.
+         */
+        private int parallelism = LLMsFreeApiBatchClient.DEFAULT_PARALLELISM;
+
+        /**
+         * JSONL file of prompts to run at startup, no batch is run if not set.
+         */
+        private Path input;
+
+        /**
+         * JSONL file the results of the startup batch are written to.
+         */
+        private Path output;
+
+        /**
+         * Checkpoint file of the startup batch, by default next to the output file. Deleted
+         * once the whole input is done.
+         */
+        private Path checkpoint;
+
+        /**
+         * Number of results between two checkpoints.
+         */
+        private int checkpointInterval = LLMsFreeApiBatchRunner.DEFAULT_CHECKPOINT_INTERVAL;
+
+        /**
+         * Whether to stop the batch at the first failed prompt, so that it is retried on
+         * the next run, rather than writing it as an error result.
+         */
+        private boolean failFast = false;
+
+        public int getParallelism() {
+            return this.parallelism;
+        }
+
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        public Path getInput() {
+            return this.input;
+        }
+
+        public void setInput(Path input) {
+            this.input = input;
+        }
+
+        public Path getOutput() {
+            return this.output;
+        }
+
+        public void setOutput(Path output) {
+            this.output = output;
+        }
+
+        public Path getCheckpoint() {
+            return this.checkpoint;
+        }
+
+        public void setCheckpoint(Path checkpoint) {
+            this.checkpoint = checkpoint;
+        }
+
+        public int getCheckpointInterval() {
+            return this.checkpointInterval;
+        }
+
+        public void setCheckpointInterval(int checkpointInterval) {
+            this.checkpointInterval = checkpointInterval;
+        }
+
+        public boolean isFailFast() {
+            return this.failFast;
+        }
+
+        public void setFailFast(boolean failFast) {
+            this.failFast = failFast;
+        }
+
+    }
+
+    public static class Tenant {
+
+        /**
+         * Whether calls with a tenant id are subject to tenant admission control.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Quota of the tenants with no quota of their own.
+         */
+        private final Quota quota = new Quota();
+
+        /**
+         * Quotas of specific tenants, by tenant id.
+         */
+        private final Map<String, Quota> quotas = new LinkedHashMap<>();
+
+        /**
+         * Total number of concurrent calls of all tenants, 0 for the capacity of the token
+         * pool.
+         */
+        private int maxConcurrency = 0;
+
+        /**
+         * Maximum time an admitted call waits for capacity.
+         */
+        private Duration queueTimeout = TenantAdmissionController.DEFAULT_QUEUE_TIMEOUT;
+
+        /**
+         * Maximum number of tenants tracked at the same time.
+         */
+        private int maxTenants = TenantAdmissionController.DEFAULT_MAX_TENANTS;
+
+        public boolean isEnabled() {
+            return this.enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Quota getQuota() {
+            return this.quota;
+        }
+
+        public Map<String, Quota> getQuotas() {
+            return this.quotas;
+        }
+
+        public int getMaxConcurrency() {
+            return this.maxConcurrency;
+        }
+
+        public void setMaxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+        }
+
+        public Duration getQueueTimeout() {
+            return this.queueTimeout;
+        }
+
+        public void setQueueTimeout(Duration queueTimeout) {
+            this.queueTimeout = queueTimeout;
+        }
+
+        public int getMaxTenants() {
+            return this.maxTenants;
+        }
+
+        public void setMaxTenants(int maxTenants) {
+            this.maxTenants = maxTenants;
+        }
+
+    }
+
+    public static class Quota {
+
+        /**
+         * Calls per second a tenant may make, 0 for no rate limit.
+         */
+        private double ratePerSecond = 0;
+
+        /**
+         * Calls a tenant may make at once before the rate limit applies.
+         */
+        private int burst = 10;
+
+        /**
+         * Concurrent calls of a tenant, admitted or waiting, 0 for no limit.
+         */
+        private int maxConcurrency = 4;
+
+        public double getRatePerSecond() {
+            return this.ratePerSecond;
+        }
+
+        public void setRatePerSecond(double ratePerSecond) {
+            this.ratePerSecond = ratePerSecond;
+        }
+
+        public int getBurst() {
+            return this.burst;
+        }
+
+        public void setBurst(int burst) {
+            this.burst = burst;
+        }
+
+        public int getMaxConcurrency() {
+            return this.maxConcurrency;
+        }
+
+        public void setMaxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+        }
+
+        TenantAdmissionController.Quota toQuota() {
+            return new TenantAdmissionController.Quota(this.ratePerSecond, this.burst, this.maxConcurrency);
+        }
+
+    }
+
+    public static class FunctionCache {
+
+        /**
+         * Time a result of the function is reused for.
+         */
+        private Duration ttl = FunctionResultCache.DEFAULT_TTL;
+
+        /**
+         * Maximum number of results of the function kept.
+         */
+        private int maxSize = FunctionResultCache.DEFAULT_MAX_SIZE;
+
+        public Duration getTtl() {
+            return this.ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+
+        public int getMaxSize() {
+            return this.maxSize;
+        }
+
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+    }
+
+    public static class ToolLoop {
+
+        /**
+         * Maximum number of tool-call rounds of a chat call, 0 for no limit.
+         */
+        private int maxRounds = ToolLoopLimits.DEFAULT_MAX_ROUNDS;
+
+        /**
+         * Maximum size of the conversation history sent back to the model, 0 for no limit.
+         */
+        private DataSize maxHistorySize = DataSize.ofBytes(ToolLoopLimits.DEFAULT_MAX_HISTORY_BYTES);
+
+        /**
+         * Maximum total time spent in the functions of a chat call, no limit if not set.
+         */
+        private Duration maxToolTime;
+
+        public int getMaxRounds() {
+            return this.maxRounds;
+        }
+
+        public void setMaxRounds(int maxRounds) {
+            this.maxRounds = maxRounds;
+        }
+
+        public DataSize getMaxHistorySize() {
+            return this.maxHistorySize;
+        }
+
+        public void setMaxHistorySize(DataSize maxHistorySize) {
+            this.maxHistorySize = maxHistorySize;
+        }
+
+        public Duration getMaxToolTime() {
+            return this.maxToolTime;
+        }
+
+        public void setMaxToolTime(Duration maxToolTime) {
+            this.maxToolTime = maxToolTime;
+        }
+
+        ToolLoopLimits toLimits() {
+            return new ToolLoopLimits(this.maxRounds, this.maxHistorySize.toBytes(), this.maxToolTime);
+        }
+
+    }
+
+    public static class Warmup {
+
+        /**
+         * Whether to warm the client up before the application reports readiness.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Number of streaming connections opened to the API.
+         */
+        private int connections = LLMsFreeApiWarmupRunner.DEFAULT_CONNECTIONS;
+
+        /**
+         * Maximum time to wait for the connections.
+         */
+        private Duration timeout = LLMsFreeApiWarmupRunner.DEFAULT_TIMEOUT;
+
+        public boolean isEnabled() {
+            return this.enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getConnections() {
+            return this.connections;
+        }
+
+        public void setConnections(int connections) {
+            this.connections = connections;
+        }
+
+        public Duration getTimeout() {
+            return this.timeout;
+        }
+
+        public void setTimeout(Duration timeout) {
+            this.timeout = timeout;
+        }
+
+    }
+
+    public static class TokenCheck {
+
+        /**
+         * Whether to check the tokens in the background and take the dead ones out of
+         * rotation.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Time between two checks of a token.
+         */
+        private Duration interval = LLMsFreeApiTokenChecker.DEFAULT_INTERVAL;
+
+        /**
+         * Share of the interval it is varied by at random, between 0 and 1.
+         */
+        private double jitter = LLMsFreeApiTokenChecker.DEFAULT_JITTER;
+
+        public boolean isEnabled() {
+            return this.enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getInterval() {
+            return this.interval;
+        }
+
+        public void setInterval(Duration interval) {
+            this.interval = interval;
+        }
+
+        public double getJitter() {
+            return this.jitter;
+        }
+
+        public void setJitter(double jitter) {
+            this.jitter = jitter;
+        }
+
+    }
+
+    public static class Attachment {
+
+        /**
+         * Maximum total size of the encoded files kept for reuse, 0 to disable caching.
+         */
+        private DataSize maxCacheSize = DataSize.ofBytes(AttachmentCache.DEFAULT_MAX_SIZE);
+
+        /**
+         * Checks of the attachment URLs before the requests are sent.
+         */
+        private final Prefetch prefetch = new Prefetch();
+
+        public DataSize getMaxCacheSize() {
+            return this.maxCacheSize;
+        }
+
+        public void setMaxCacheSize(DataSize maxCacheSize) {
+            this.maxCacheSize = maxCacheSize;
+        }
+
+        public Prefetch getPrefetch() {
+            return this.prefetch;
+        }
+
+    }
+
+    public static class Prefetch {
+
+        /**
+         * Whether to check the attachment URLs before the requests are sent.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Whether to download the files and send them inline as data URIs.
+         */
+        private boolean inline = false;
+
+        /**
+         * Maximum size of a file.
+         */
+        private DataSize maxSize = DataSize.ofBytes(AttachmentPrefetcher.DEFAULT_MAX_SIZE);
+
+        /**
+         * Content types accepted for images.
+         */
+        private List<MimeType> imageTypes = new ArrayList<>(AttachmentPrefetcher.DEFAULT_IMAGE_TYPES);
+
+        /**
+         * Content types accepted for documents.
+         */
+        private List<MimeType> documentTypes = new ArrayList<>(AttachmentPrefetcher.DEFAULT_DOCUMENT_TYPES);
+
+        /**
+         * Connect and read timeout of the requests to the URLs.
+         */
+        private Duration timeout = AttachmentPrefetcher.DEFAULT_TIMEOUT;
+
+        /**
+         * Time the result of a check is reused for.
+         */
+        private Duration cacheTtl = AttachmentPrefetcher.DEFAULT_CACHE_TTL;
+
+        /**
+         * Maximum number of URLs of a prompt checked at the same time.
+         */
+        private int parallelism = AttachmentPrefetcher.DEFAULT_PARALLELISM;
+
+        /**
+         * Hosts the URLs may point to, a "*." prefix matching the subdomains of a domain.
+         * Empty for any host.
+         */
+        private List<String> allowedHosts = new ArrayList<>();
+
+        /**
+         * Whether the URLs may point to loopback, link-local, private and multicast addresses.
+         */
+        private boolean allowPrivateNetworks = false;
+
+        public boolean isEnabled() {
+            return this.enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public boolean isInline() {
+            return this.inline;
+        }
+
+        public void setInline(boolean inline) {
+            this.inline = inline;
+        }
+
+        public DataSize getMaxSize() {
+            return this.maxSize;
+        }
+
+        public void setMaxSize(DataSize maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public List<MimeType> getImageTypes() {
+            return this.imageTypes;
+        }
+
+        public void setImageTypes(List<MimeType> imageTypes) {
+            this.imageTypes = imageTypes;
+        }
+
+        public List<MimeType> getDocumentTypes() {
+            return this.documentTypes;
+        }
+
+        public void setDocumentTypes(List<MimeType> documentTypes) {
+            this.documentTypes = documentTypes;
+        }
+
+        public Duration getTimeout() {
+            return this.timeout;
+        }
+
+        public void setTimeout(Duration timeout) {
+            this.timeout = timeout;
+        }
+
+        public Duration getCacheTtl() {
+            return this.cacheTtl;
+        }
+
+        public void setCacheTtl(Duration cacheTtl) {
+            this.cacheTtl = cacheTtl;
+        }
+
+        public int getParallelism() {
+            return this.parallelism;
+        }
+
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        public List<String> getAllowedHosts() {
+            return this.allowedHosts;
+        }
+
+        public void setAllowedHosts(List<String> allowedHosts) {
+            this.allowedHosts = allowedHosts;
+        }
+
+        public boolean isAllowPrivateNetworks() {
+            return this.allowPrivateNetworks;
+        }
+
+        public void setAllowPrivateNetworks(boolean allowPrivateNetworks) {
+            this.allowPrivateNetworks = allowPrivateNetworks;
+        }
+
+    }
+
 }
@@ -1,7 +1,16 @@
 package org.springframework.ai.llmsfreeapi.autoconfigure;
 
+import org.springframework.ai.llmsfreeapi.api.LLMsFreeApiCompression;
+import org.springframework.ai.llmsfreeapi.api.LLMsFreeApiFaultInjector;
+import org.springframework.ai.llmsfreeapi.api.LLMsFreeApiRecording;
+import org.springframework.ai.llmsfreeapi.api.LLMsFreeApiTokenPool;
 import org.springframework.ai.llmsfreeapi.util.ApiUtils;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
 
 @ConfigurationProperties(LLMsFreeApiConnectionProperties.CONFIG_PREFIX)
 public class LLMsFreeApiConnectionProperties {
@@ -13,8 +22,58 @@ public class LLMsFreeApiConnectionProperties {
      */
     private String baseUrl = ApiUtils.DEFAULT_BASE_URL;
 
+    /**
+     * Refresh token(s) of the free-api accounts, comma separated.
+     */
     private String apiKey;
 
+    /**
+     * Maximum number of concurrent requests per token, 0 for no limit.
+     */
+    private int maxConcurrencyPerToken = 0;
+
+    /**
+     * Maximum time a request waits for a token with capacity.
+     */
+    private Duration tokenAcquireTimeout = LLMsFreeApiTokenPool.DEFAULT_ACQUIRE_TIMEOUT;
+
+    /**
+     * Time after which a request waiting for a token is served ahead of requests of
+     * higher priority.
+     */
+    private Duration starvationThreshold = LLMsFreeApiTokenPool.DEFAULT_STARVATION_THRESHOLD;
+
+    /**
+     * Whether to use the reactive client, needed for streaming. By default it is used if
+     * spring-webflux and Reactor Netty, an optional dependency, are present; enabling it
+     * without them fails the startup.
+     */
+    private Boolean reactive;
+
+    /**
+     * Whether to run the blocking calls on virtual threads. By default they are if
+     * spring.threads.virtual.enabled is set, on Java 21 or later. Set to true, the blocking
+     * calls of platform threads also move to virtual threads, and the blocking client gets
+     * a JDK HttpClient on virtual threads in place of the request factory of the
+     * application.
+     */
+    private Boolean virtualThreads;
+
+    /**
+     * Compression of the requests and responses.
+     */
+    private final Compression compression = new Compression();
+
+    /**
+     * Recording or replay of the exchanges with the API.
+     */
+    private final Recording recording = new Recording();
+
+    /**
+     * Failures injected into the exchanges with the API, for resilience tests.
+     */
+    private final Faults faults = new Faults();
+
     public String getApiKey() {
         return this.apiKey;
     }
@@ -31,4 +90,212 @@ public class LLMsFreeApiConnectionProperties {
         this.baseUrl = baseUrl;
     }
 
+    public int getMaxConcurrencyPerToken() {
+        return maxConcurrencyPerToken;
+    }
+
+    public void setMaxConcurrencyPerToken(int maxConcurrencyPerToken) {
+        this.maxConcurrencyPerToken = maxConcurrencyPerToken;
+    }
+
+    public Duration getTokenAcquireTimeout() {
+        return tokenAcquireTimeout;
+    }
+
+    public void setTokenAcquireTimeout(Duration tokenAcquireTimeout) {
+        this.tokenAcquireTimeout = tokenAcquireTimeout;
+    }
+
+    public Duration getStarvationThreshold() {
+        return starvationThreshold;
+    }
+
+    public void setStarvationThreshold(Duration starvationThreshold) {
+        this.starvationThreshold = starvationThreshold;
+    }
+
+    public Boolean getReactive() {
+        return this.reactive;
+    }
+
+    public void setReactive(Boolean reactive) {
+        this.reactive = reactive;
+    }
+
+    public Boolean getVirtualThreads() {
+        return this.virtualThreads;
+    }
+
+    public void setVirtualThreads(Boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    public Compression getCompression() {
+        return this.compression;
+    }
+
+    public Recording getRecording() {
+        return this.recording;
+    }
+
+    public Faults getFaults() {
+        return this.faults;
+    }
+
+    public static class Compression {
+
+        /**
+         * Whether to compress the chat request bodies.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Compression of the request bodies.
+         */
+        private LLMsFreeApiCompression.Algorithm algorithm = LLMsFreeApiCompression.Algorithm.GZIP;
+
+        /**
+         * Minimum size of a request body to compress.
+         */
+        private DataSize threshold = DataSize.ofBytes(LLMsFreeApiCompression.DEFAULT_THRESHOLD);
+
+        /**
+         * Whether to accept compressed responses.
+         */
+        private boolean responses = true;
+
+        public boolean isEnabled() {
+            return this.enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public LLMsFreeApiCompression.Algorithm getAlgorithm() {
+            return this.algorithm;
+        }
+
+        public void setAlgorithm(LLMsFreeApiCompression.Algorithm algorithm) {
+            this.algorithm = algorithm;
+        }
+
+        public DataSize getThreshold() {
+            return this.threshold;
+        }
+
+        public void setThreshold(DataSize threshold) {
+            this.threshold = threshold;
+        }
+
+        public boolean isResponses() {
+            return this.responses;
+        }
+
+        public void setResponses(boolean responses) {
+            this.responses = responses;
+        }
+
+    }
+
+    public static class Recording {
+
+        /**
+         * Whether to record the exchanges or replay recorded ones instead of sending the
+         * requests, neither if not set.
+         */
+        private LLMsFreeApiRecording.Mode mode;
+
+        /**
+         * File of the exchanges, in JSON lines.
+         */
+        private String path = "llmsfreeapi-recording.jsonl";
+
+        /**
+         * Factor the recorded times are divided by when replaying.
+         */
+        private double speed = 1.0;
+
+        public LLMsFreeApiRecording.Mode getMode() {
+            return this.mode;
+        }
+
+        public void setMode(LLMsFreeApiRecording.Mode mode) {
+            this.mode = mode;
+        }
+
+        public String getPath() {
+            return this.path;
+        }
+
+        public void setPath(String path) {
+            this.path = path;
+        }
+
+        public double getSpeed() {
+            return this.speed;
+        }
+
+        public void setSpeed(double speed) {
+            this.speed = speed;
+        }
+
+    }
+
+    public static class Faults {
+
+        /**
+         * Whether to inject failures.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Share of the exchanges to inject each fault into, from 0 to 1.
+         */
+        private Map<LLMsFreeApiFaultInjector.Fault, Double> rates = new EnumMap<>(LLMsFreeApiFaultInjector.Fault.class);
+
+        /**
+         * Delay added by a latency fault.
+         */
+        private Duration latency = LLMsFreeApiFaultInjector.DEFAULT_LATENCY;
+
+        /**
+         * Pause of a response body with a stall fault.
+         */
+        private Duration stall = LLMsFreeApiFaultInjector.DEFAULT_STALL;
+
+        public boolean isEnabled() {
+            return this.enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Map<LLMsFreeApiFaultInjector.Fault, Double> getRates() {
+            return this.rates;
+        }
+
+        public void setRates(Map<LLMsFreeApiFaultInjector.Fault, Double> rates) {
+            this.rates = rates;
+        }
+
+        public Duration getLatency() {
+            return this.latency;
+        }
+
+        public void setLatency(Duration latency) {
+            this.latency = latency;
+        }
+
+        public Duration getStall() {
+            return this.stall;
+        }
+
+        public void setStall(Duration stall) {
+            this.stall = stall;
+        }
+
+    }
+
 }
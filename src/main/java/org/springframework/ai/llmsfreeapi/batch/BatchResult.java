@@ -0,0 +1,31 @@
+package org.springframework.ai.llmsfreeapi.batch;
+
+import org.springframework.ai.chat.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+
+/**
+ * The outcome of a single prompt of a batch.
+ *
+ * @param index The position of the prompt in the batch, starting at 0.
+ * @param prompt The prompt.
+ * @param response The chat response, {@code null} if the prompt failed.
+ * @param error The failure, {@code null} if the prompt succeeded.
+ */
+public record BatchResult(long index, Prompt prompt, ChatResponse response, Throwable error) {
+
+    public static BatchResult success(long index, Prompt prompt, ChatResponse response) {
+        return new BatchResult(index, prompt, response, null);
+    }
+
+    public static BatchResult failure(long index, Prompt prompt, Throwable error) {
+        return new BatchResult(index, prompt, null, error);
+    }
+
+    /**
+     * @return whether the prompt succeeded.
+     */
+    public boolean isSuccess() {
+        return this.error == null;
+    }
+
+}
@@ -0,0 +1,101 @@
+package org.springframework.ai.llmsfreeapi.batch;
+
+import org.springframework.ai.chat.ChatClient;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+
+/**
+ * Runs many prompts through a {@link ChatClient} with bounded parallelism.
+ * <p>
+ * Every prompt produces a {@link BatchResult}; a failing prompt is reported as such and
+ * does not fail the batch. The blocking calls run on a {@link Scheduler}, by default
+ * {@link Schedulers#boundedElastic()}, which uses virtual threads on JDK 21 when
+ * {@code reactor.schedulers.defaultBoundedElasticOnVirtualThreads} is set. How the calls
+ * are spread across the accounts, and how many run per account, is governed by the
+ * {@link org.springframework.ai.llmsfreeapi.api.LLMsFreeApiTokenPool token pool}; the
+ * parallelism should not exceed its capacity.
+ */
+public class LLMsFreeApiBatchClient {
+
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    private final ChatClient chatClient;
+
+    private final int parallelism;
+
+    private final Scheduler scheduler;
+
+    public LLMsFreeApiBatchClient(ChatClient chatClient) {
+        this(chatClient, DEFAULT_PARALLELISM, Schedulers.boundedElastic());
+    }
+
+    /**
+     * @param chatClient the chat client running the prompts.
+     * @param parallelism the maximum number of prompts running at the same time.
+     * @param scheduler the scheduler running the blocking calls.
+     */
+    public LLMsFreeApiBatchClient(ChatClient chatClient, int parallelism, Scheduler scheduler) {
+        Assert.notNull(chatClient, "ChatClient must not be null");
+        Assert.isTrue(parallelism > 0, "parallelism must be positive");
+        Assert.notNull(scheduler, "Scheduler must not be null");
+        this.chatClient = chatClient;
+        this.parallelism = parallelism;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Run the prompts and wait for all of them.
+     * @param prompts the prompts.
+     * @return the results, in the order of the prompts.
+     */
+    public List<BatchResult> call(List<Prompt> prompts) {
+        return callOrdered(Flux.fromIterable(prompts)).collectList().block();
+    }
+
+    /**
+     * Run the prompts, emitting the results in the order of the prompts.
+     * @param prompts the prompts.
+     * @return the results.
+     */
+    public Flux<BatchResult> callOrdered(Flux<Prompt> prompts) {
+        return prompts.index()
+                .flatMapSequential(indexed -> execute(indexed.getT1(), indexed.getT2()), this.parallelism);
+    }
+
+    /**
+     * Run the prompts, emitting the results as soon as they complete.
+     * @param prompts the prompts.
+     * @return the results, see {@link BatchResult#index()} for the prompt they belong to.
+     */
+    public Flux<BatchResult> callAsCompleted(Flux<Prompt> prompts) {
+        return prompts.index()
+                .flatMap(indexed -> execute(indexed.getT1(), indexed.getT2()), this.parallelism);
+    }
+
+    /**
+     * @return the maximum number of prompts running at the same time.
+     */
+    public int getParallelism() {
+        return this.parallelism;
+    }
+
+    /**
+     * Run a single prompt of a batch.
+     * @param index the position of the prompt in the batch.
+     * @param prompt the prompt.
+     * @return the result, never an error signal.
+     */
+    public Mono<BatchResult> execute(long index, Prompt prompt) {
+        return Mono.fromCallable(() -> this.chatClient.call(prompt))
+                .subscribeOn(this.scheduler)
+                .map(response -> BatchResult.success(index, prompt, response))
+                .onErrorResume(ex -> Mono.just(BatchResult.failure(index, prompt, ex)));
+    }
+
+}
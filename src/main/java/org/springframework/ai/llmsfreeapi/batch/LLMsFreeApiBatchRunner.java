@@ -0,0 +1,470 @@
+package org.springframework.ai.llmsfreeapi.batch;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.ChatResponse;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.llmsfreeapi.api.LLMsFreeApiChatOptions;
+import org.springframework.ai.llmsfreeapi.api.RequestPriority;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs an offline batch of prompts read from a JSONL file and writes one JSONL result per
+ * prompt, in input order.
+ * <p>
+ * Each input line is either {@code {"id": "...", "prompt": "..."}} or
+ * {@code {"id": "...", "messages": [{"role": "user", "content": "..."}]}}, optionally with
+ * a {@code "model"}. The input is read lazily and the results are written through a
+ * buffered {@link FileChannel}, so memory use does not depend on the size of the file.
+ * <p>
+ * Every {@code checkpointInterval} results the output is flushed to disk and a checkpoint
+ * holding the number of input lines done, the output length and the path, size and
+ * modification time of the input is written next to it. A run which finds a checkpoint of
+ * the same input truncates the output to the recorded length and skips the lines already
+ * done, so a crashed or rate-limited job resumes where it stopped; a checkpoint of another
+ * input is refused. The checkpoint is deleted once the whole input is done, so that the
+ * next run starts over. With
+ * {@code failFast}, the first failed prompt stops the run before its result is written,
+ * so that it is retried on the next run; otherwise failures are written as error results.
+ */
+public class LLMsFreeApiBatchRunner implements ApplicationRunner {
+
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 100;
+
+    private static final Logger logger = LoggerFactory.getLogger(LLMsFreeApiBatchRunner.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final byte NEW_LINE = '\n';
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final LLMsFreeApiBatchClient batchClient;
+
+    private Path input;
+
+    private Path output;
+
+    private Path checkpoint;
+
+    private int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+
+    private boolean failFast;
+
+    public LLMsFreeApiBatchRunner(LLMsFreeApiBatchClient batchClient) {
+        Assert.notNull(batchClient, "LLMsFreeApiBatchClient must not be null");
+        this.batchClient = batchClient;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Assert.state(this.input != null, "The batch input file must be set");
+        Assert.state(this.output != null, "The batch output file must be set");
+        var summary = run(this.input, this.output,
+                (this.checkpoint != null ? this.checkpoint : defaultCheckpoint(this.output)));
+        logger.info("LLMs Free API batch finished: {}", summary);
+    }
+
+    /**
+     * Run the prompts of the input file, resuming from the checkpoint if there is one.
+     * @param input the JSONL file to read the prompts from.
+     * @param output the JSONL file to write the results to.
+     * @param checkpoint the file to keep the progress in.
+     * @return what this run did.
+     */
+    public Summary run(Path input, Path output, Path checkpoint) {
+        Assert.notNull(input, "input must not be null");
+        Assert.notNull(output, "output must not be null");
+        Assert.notNull(checkpoint, "checkpoint must not be null");
+
+        InputFingerprint fingerprint = InputFingerprint.of(input);
+        Checkpoint start = readCheckpoint(checkpoint, fingerprint);
+        var succeeded = new AtomicLong();
+        var failed = new AtomicLong();
+
+        try (var writer = new ResultWriter(output, checkpoint, start, fingerprint)) {
+            Flux.using(() -> Files.newBufferedReader(input, StandardCharsets.UTF_8), this::lines, this::closeQuietly)
+                    .index()
+                    .skip(start.line())
+                    .filter(line -> StringUtils.hasText(line.getT2()))
+                    .flatMapSequential(line -> execute(line.getT1(), line.getT2()), this.batchClient.getParallelism())
+                    .doOnNext(result -> {
+                        (result.result().isSuccess() ? succeeded : failed).incrementAndGet();
+                        writer.write(result);
+                    })
+                    .then()
+                    .block();
+            writer.finish();
+            return new Summary(start.line(), succeeded.get(), failed.get());
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private Flux<String> lines(BufferedReader reader) {
+        return Flux.generate(sink -> {
+            try {
+                String line = reader.readLine();
+                if (line != null) {
+                    sink.next(line);
+                }
+                else {
+                    sink.complete();
+                }
+            }
+            catch (IOException ex) {
+                sink.error(new UncheckedIOException(ex));
+            }
+        });
+    }
+
+    private Mono<LineResult> execute(long line, String json) {
+        BatchRequest request;
+        Prompt prompt;
+        try {
+            request = this.objectMapper.readValue(json, BatchRequest.class);
+            prompt = toPrompt(request);
+        }
+        catch (JsonProcessingException | IllegalArgumentException ex) {
+            return Mono.just(new LineResult(line, null, BatchResult.failure(line, null, ex)));
+        }
+        return this.batchClient.execute(line, prompt)
+                .flatMap(result -> {
+                    if (this.failFast && !result.isSuccess()) {
+                        return Mono.error(new IllegalStateException("Prompt on line " + (line + 1) + " failed", result.error()));
+                    }
+                    return Mono.just(new LineResult(line, request.id(), result));
+                });
+    }
+
+    private Prompt toPrompt(BatchRequest request) {
+        List<Message> messages;
+        if (request.messages() != null && !request.messages().isEmpty()) {
+            messages = request.messages().stream().map(this::toMessage).toList();
+        }
+        else {
+            Assert.hasText(request.prompt(), "Either prompt or messages must be set");
+            messages = List.of(new UserMessage(request.prompt()));
+        }
+        // Offline work yields to the interactive calls sharing the accounts.
+        var options = LLMsFreeApiChatOptions.builder().withPriority(RequestPriority.BACKGROUND);
+        if (StringUtils.hasText(request.model())) {
+            options.withModel(request.model());
+        }
+        return new Prompt(messages, options.build());
+    }
+
+    private Message toMessage(BatchMessage message) {
+        Assert.hasText(message.role(), "Message role must be set");
+        return switch (message.role()) {
+            case "system" -> new SystemMessage(message.content());
+            case "user" -> new UserMessage(message.content());
+            case "assistant" -> new AssistantMessage(message.content());
+            default -> throw new IllegalArgumentException("Unsupported message role: " + message.role());
+        };
+    }
+
+    private Checkpoint readCheckpoint(Path checkpoint, InputFingerprint fingerprint) {
+        if (!Files.exists(checkpoint)) {
+            return new Checkpoint(0, 0, fingerprint);
+        }
+        Checkpoint value;
+        try {
+            value = this.objectMapper.readValue(checkpoint.toFile(), Checkpoint.class);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException("Unreadable batch checkpoint " + checkpoint, ex);
+        }
+        if (value.input() == null) {
+            logger.warn("Batch checkpoint {} does not record its input, assuming it is {}", checkpoint, fingerprint.path());
+        }
+        else if (!value.input().equals(fingerprint)) {
+            throw new IllegalStateException("Batch checkpoint " + checkpoint + " belongs to another input than "
+                    + fingerprint.path() + " or to an earlier version of it; delete it to start over");
+        }
+        logger.info("Resuming LLMs Free API batch after line {}", value.line());
+        return value;
+    }
+
+    private void closeQuietly(BufferedReader reader) {
+        try {
+            reader.close();
+        }
+        catch (IOException ex) {
+            logger.debug("Failed to close the batch input", ex);
+        }
+    }
+
+    private static Path defaultCheckpoint(Path output) {
+        return output.resolveSibling(output.getFileName() + ".checkpoint");
+    }
+
+    public void setInput(Path input) {
+        this.input = input;
+    }
+
+    public void setOutput(Path output) {
+        this.output = output;
+    }
+
+    /**
+     * @param checkpoint the checkpoint file, by default the output file name with a
+     * {@code .checkpoint} suffix.
+     */
+    public void setCheckpoint(Path checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    public void setCheckpointInterval(int checkpointInterval) {
+        Assert.isTrue(checkpointInterval > 0, "checkpointInterval must be positive");
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public void setFailFast(boolean failFast) {
+        this.failFast = failFast;
+    }
+
+    /**
+     * What a run did.
+     *
+     * @param skipped The number of input lines done by previous runs.
+     * @param succeeded The number of prompts which succeeded.
+     * @param failed The number of prompts which failed, including unreadable lines.
+     */
+    public record Summary(long skipped, long succeeded, long failed) {
+    }
+
+    /**
+     * An input line.
+     *
+     * @param id The caller's identifier, copied to the result.
+     * @param prompt A single user message.
+     * @param messages The messages, used instead of the prompt if set.
+     * @param model The model, the default one if not set.
+     */
+    record BatchRequest(
+            @JsonProperty("id") String id,
+            @JsonProperty("prompt") String prompt,
+            @JsonProperty("messages") List<BatchMessage> messages,
+            @JsonProperty("model") String model) {
+    }
+
+    record BatchMessage(
+            @JsonProperty("role") String role,
+            @JsonProperty("content") String content) {
+    }
+
+    /**
+     * An output line.
+     *
+     * @param line The input line number, starting at 1.
+     * @param id The identifier of the input line.
+     * @param content The reply.
+     * @param promptTokens The prompt tokens used.
+     * @param completionTokens The completion tokens used.
+     * @param error The failure message.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record BatchOutput(
+            @JsonProperty("line") long line,
+            @JsonProperty("id") String id,
+            @JsonProperty("content") String content,
+            @JsonProperty("prompt_tokens") Long promptTokens,
+            @JsonProperty("completion_tokens") Long completionTokens,
+            @JsonProperty("error") String error) {
+    }
+
+    /**
+     * The progress of a batch.
+     *
+     * @param line The number of input lines done.
+     * @param position The length of the output holding their results.
+     * @param input The input the lines are read from.
+     */
+    record Checkpoint(
+            @JsonProperty("line") long line,
+            @JsonProperty("position") long position,
+            @JsonProperty("input") InputFingerprint input) {
+    }
+
+    /**
+     * What identifies an input file, without reading it.
+     *
+     * @param path The absolute path.
+     * @param size The size in bytes.
+     * @param lastModified The modification time, in milliseconds since the epoch.
+     */
+    record InputFingerprint(
+            @JsonProperty("path") String path,
+            @JsonProperty("size") long size,
+            @JsonProperty("last_modified") long lastModified) {
+
+        static InputFingerprint of(Path input) {
+            try {
+                return new InputFingerprint(input.toAbsolutePath().normalize().toString(), Files.size(input),
+                        Files.getLastModifiedTime(input).toMillis());
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException("Unreadable batch input " + input, ex);
+            }
+        }
+
+    }
+
+    private record LineResult(long line, String id, BatchResult result) {
+    }
+
+    /**
+     * Appends results to the output and checkpoints them. Results arrive serialized, in
+     * input order.
+     */
+    private final class ResultWriter implements AutoCloseable {
+
+        private final FileChannel channel;
+
+        private final Path checkpoint;
+
+        private final InputFingerprint input;
+
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        private long line;
+
+        private int pending;
+
+        private boolean finished;
+
+        ResultWriter(Path output, Path checkpoint, Checkpoint start, InputFingerprint input) throws IOException {
+            this.channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            this.checkpoint = checkpoint;
+            this.input = input;
+            this.line = start.line();
+            // Drop results written after the last checkpoint, they are produced again.
+            this.channel.truncate(start.position());
+            this.channel.position(start.position());
+        }
+
+        void write(LineResult result) {
+            try {
+                byte[] bytes = objectMapper.writeValueAsBytes(toOutput(result));
+                if (bytes.length + 1 > this.buffer.remaining()) {
+                    flush();
+                }
+                if (bytes.length + 1 > this.buffer.capacity()) {
+                    writeFully(ByteBuffer.wrap(bytes));
+                    writeFully(ByteBuffer.wrap(new byte[] { NEW_LINE }));
+                }
+                else {
+                    this.buffer.put(bytes).put(NEW_LINE);
+                }
+                // Lines skipped as blank before this one are done as well.
+                this.line = result.line() + 1;
+                if (++this.pending >= checkpointInterval) {
+                    checkpoint();
+                }
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        private BatchOutput toOutput(LineResult result) {
+            BatchResult batchResult = result.result();
+            if (!batchResult.isSuccess()) {
+                Throwable error = batchResult.error();
+                return new BatchOutput(result.line() + 1, result.id(), null, null, null,
+                        (error.getMessage() != null ? error.getMessage() : error.getClass().getName()));
+            }
+            ChatResponse response = batchResult.response();
+            Usage usage = (response.getMetadata() != null ? response.getMetadata().getUsage() : null);
+            String content = (response.getResult() != null ? response.getResult().getOutput().getContent() : null);
+            return new BatchOutput(result.line() + 1, result.id(), content,
+                    (usage != null ? usage.getPromptTokens() : null),
+                    (usage != null ? usage.getGenerationTokens() : null), null);
+        }
+
+        private void checkpoint() throws IOException {
+            flush();
+            this.channel.force(false);
+            var tmp = tmpCheckpoint();
+            Files.write(tmp, objectMapper.writeValueAsBytes(new Checkpoint(this.line, this.channel.position(), this.input)));
+            Files.move(tmp, this.checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            this.pending = 0;
+        }
+
+        /**
+         * The whole input is done: the results are kept, the checkpoint is not needed
+         * anymore.
+         */
+        void finish() throws IOException {
+            flush();
+            this.channel.force(false);
+            this.finished = true;
+        }
+
+        private Path tmpCheckpoint() {
+            return this.checkpoint.resolveSibling(this.checkpoint.getFileName() + ".tmp");
+        }
+
+        private void flush() throws IOException {
+            this.buffer.flip();
+            writeFully(this.buffer);
+            this.buffer.clear();
+        }
+
+        private void writeFully(ByteBuffer source) throws IOException {
+            while (source.hasRemaining()) {
+                this.channel.write(source);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (this.finished) {
+                    Files.deleteIfExists(this.checkpoint);
+                    Files.deleteIfExists(tmpCheckpoint());
+                }
+                else {
+                    // Also keeps what was completed before a failure.
+                    checkpoint();
+                }
+            }
+            finally {
+                this.channel.close();
+            }
+        }
+
+    }
+
+}
@@ -2,6 +2,11 @@ package org.springframework.ai.llmsfreeapi.chat.messages;
 
 import org.springframework.ai.chat.messages.ChatMessage;
 import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.MimeType;
 
 import java.util.Map;
 
@@ -9,6 +14,10 @@ public class ImageChatMessage extends ChatMessage {
 
    private String imageUrl;
 
+    private Resource resource;
+
+    private MimeType mimeType;
+
     public ImageChatMessage(String role, String imageUrl, String content) {
         super(MessageType.valueOf(role), content);
         this.imageUrl = imageUrl;
@@ -29,8 +38,48 @@ public class ImageChatMessage extends ChatMessage {
         this.imageUrl = imageUrl;
     }
 
+    /**
+     * Create a message with a local file or in-memory content, sent inline as a data URI.
+     * @param messageType the message type.
+     * @param image the image, e.g. a {@link org.springframework.core.io.FileSystemResource} or a
+     * {@link org.springframework.core.io.ByteArrayResource}.
+     * @param mimeType the media type of the image, or {@code null} to derive it from the file name.
+     * @param content the text of the message.
+     */
+    public ImageChatMessage(MessageType messageType, Resource image, MimeType mimeType, String content) {
+        super(messageType, content);
+        setResource(image, mimeType);
+    }
+
+    public ImageChatMessage(MessageType messageType, Resource image, MimeType mimeType, String content,
+                            Map<String, Object> properties) {
+        super(messageType, content, properties);
+        setResource(image, mimeType);
+    }
+
+    private void setResource(Resource resource, MimeType mimeType) {
+        Assert.notNull(resource, "Resource must not be null");
+        this.resource = resource;
+        this.mimeType = (mimeType != null ? mimeType
+                : MediaTypeFactory.getMediaType(resource).orElse(MediaType.APPLICATION_OCTET_STREAM));
+    }
+
+    /**
+     * @return the URL of the image, {@code null} if the message has a {@link #getResource() resource}.
+     */
     public String getFileUrl() {
         return imageUrl;
     }
 
+    /**
+     * @return the local or in-memory image, {@code null} if the message has a URL.
+     */
+    public Resource getResource() {
+        return this.resource;
+    }
+
+    public MimeType getMimeType() {
+        return this.mimeType;
+    }
+
 }
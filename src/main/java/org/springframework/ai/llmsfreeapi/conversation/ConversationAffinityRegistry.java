@@ -0,0 +1,226 @@
+package org.springframework.ai.llmsfreeapi.conversation;
+
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.llmsfreeapi.api.DeadlineExceededException;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Tracks the upstream conversation of every chat session.
+ * <p>
+ * The free-api servers continue a conversation by its id, so after the first turn only the
+ * messages added since the previous turn have to be sent. A conversation belongs to the
+ * account that created it, therefore the session is pinned to the token of that account.
+ * A session is only continued while the prompt history still starts with the messages
+ * already known upstream; otherwise the full history is sent again.
+ * <p>
+ * The sessions are kept in access order, so that the idle and the least recently used
+ * ones are evicted from the head without scanning all of them.
+ */
+public class ConversationAffinityRegistry {
+
+    public static final int DEFAULT_MAX_SESSIONS = 10000;
+
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(30);
+
+    /**
+     * The message of an error response, as mapped by the clients: the status and the body.
+     */
+    private static final Pattern ERROR_RESPONSE = Pattern.compile("^(\\d{3}) - (.*)$", Pattern.DOTALL);
+
+    /**
+     * An error body telling that the conversation is unknown or has expired, e.g.
+     * {@code chat.not_found} or {@code 会话不存在}.
+     */
+    private static final Pattern CONVERSATION_GONE = Pattern.compile(
+            "(conversation|conv_?id|chat|session|会话|对话).{0,40}(not.?found|not.?exist|expired|invalid|不存在|已过期|已失效|已删除)",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private final LinkedHashMap<String, Session> sessions = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Map<String, String> tokensByConversation = new ConcurrentHashMap<>();
+
+    private final int maxSessions;
+
+    private final Duration ttl;
+
+    private final Object lock = new Object();
+
+    public ConversationAffinityRegistry() {
+        this(DEFAULT_MAX_SESSIONS, DEFAULT_TTL);
+    }
+
+    /**
+     * @param maxSessions maximum number of sessions tracked at the same time.
+     * @param ttl time after which an idle session is forgotten.
+     */
+    public ConversationAffinityRegistry(int maxSessions, Duration ttl) {
+        Assert.isTrue(maxSessions > 0, "maxSessions must be positive");
+        Assert.notNull(ttl, "ttl must not be null");
+        this.maxSessions = maxSessions;
+        this.ttl = ttl;
+    }
+
+    /**
+     * @return the number of sessions currently tracked.
+     */
+    public int size() {
+        synchronized (this.lock) {
+            return this.sessions.size();
+        }
+    }
+
+    /**
+     * Look up the session to continue for the given prompt history.
+     * @param sessionId the client session id.
+     * @param history the prompt history of the current turn.
+     * @return the session, or {@code null} if there is none, it has expired or the
+     * history does not extend the upstream conversation.
+     */
+    public Session get(String sessionId, List<Message> history) {
+        synchronized (this.lock) {
+            Session session = this.sessions.get(sessionId);
+            if (session == null) {
+                return null;
+            }
+            long now = System.nanoTime();
+            if (now - session.lastAccess() > this.ttl.toNanos()
+                    || history.size() <= session.messageCount()
+                    || hash(history.subList(0, session.messageCount()), null) != session.historyHash()) {
+                remove(sessionId);
+                return null;
+            }
+            // An active session is not idle, even while its turn is in flight.
+            Session accessed = new Session(session.conversationId(), session.token(), session.messageCount(),
+                    session.historyHash(), now);
+            this.sessions.put(sessionId, accessed);
+            return accessed;
+        }
+    }
+
+    /**
+     * Record the upstream conversation of a session after a successful turn.
+     * @param sessionId the client session id.
+     * @param conversationId the upstream conversation id.
+     * @param token the token of the account owning the conversation.
+     * @param history the prompt history of the turn.
+     * @param reply the assistant reply of the turn.
+     */
+    public void update(String sessionId, String conversationId, String token, List<Message> history, String reply) {
+        int historyHash = hash(history, reply);
+        synchronized (this.lock) {
+            long now = System.nanoTime();
+            evict(sessionId, now);
+            Session previous = this.sessions.put(sessionId, new Session(conversationId, token, history.size() + 1,
+                    historyHash, now));
+            if (previous != null && !previous.conversationId().equals(conversationId)) {
+                this.tokensByConversation.remove(previous.conversationId());
+            }
+            this.tokensByConversation.put(conversationId, token);
+        }
+    }
+
+    /**
+     * Forget a session, so that its next turn sends the full history.
+     * @param sessionId the client session id.
+     */
+    public void invalidate(String sessionId) {
+        synchronized (this.lock) {
+            remove(sessionId);
+        }
+    }
+
+    private void remove(String sessionId) {
+        Session session = this.sessions.remove(sessionId);
+        if (session != null) {
+            this.tokensByConversation.remove(session.conversationId());
+        }
+    }
+
+    /**
+     * @param conversationId the upstream conversation id, may be {@code null}.
+     * @return the token of the account owning the conversation, or {@code null} if unknown.
+     */
+    public String getToken(String conversationId) {
+        return (conversationId != null ? this.tokensByConversation.get(conversationId) : null);
+    }
+
+    /**
+     * Whether a request continuing a conversation failed because the upstream conversation
+     * is unknown or has expired, so that resending the full history can succeed: the
+     * response is a 404 or 410, or its body tells so. Any other failure, e.g. a rate limit,
+     * an expired deadline or a token not available in time, is not.
+     * @param ex the failure of the request.
+     * @return whether the conversation is gone.
+     */
+    public static boolean isConversationGone(Throwable ex) {
+        if (ex instanceof DeadlineExceededException
+                || !(ex instanceof NonTransientAiException || ex instanceof TransientAiException)
+                || ex.getMessage() == null) {
+            return false;
+        }
+        Matcher matcher = ERROR_RESPONSE.matcher(ex.getMessage());
+        if (!matcher.matches()) {
+            return false;
+        }
+        int status = Integer.parseInt(matcher.group(1));
+        return (status == 404 || status == 410
+                || (status != 429 && CONVERSATION_GONE.matcher(matcher.group(2)).find()));
+    }
+
+    /**
+     * Evict the idle sessions, and the least recently used ones to make room for a new
+     * session, from the head of the access order.
+     * @param sessionId the session about to be updated, which needs no room.
+     * @param now the current {@link System#nanoTime()}.
+     */
+    private void evict(String sessionId, long now) {
+        boolean adding = !this.sessions.containsKey(sessionId);
+        Iterator<Session> iterator = this.sessions.values().iterator();
+        while (iterator.hasNext()) {
+            Session eldest = iterator.next();
+            if (now - eldest.lastAccess() <= this.ttl.toNanos()
+                    && (!adding || this.sessions.size() < this.maxSessions)) {
+                break;
+            }
+            iterator.remove();
+            this.tokensByConversation.remove(eldest.conversationId());
+        }
+    }
+
+    private static int hash(List<Message> history, String reply) {
+        int hash = 1;
+        for (Message message : history) {
+            hash = 31 * hash + Objects.hash(message.getMessageType(), message.getContent());
+        }
+        if (reply != null) {
+            hash = 31 * hash + Objects.hash(MessageType.ASSISTANT, reply);
+        }
+        return hash;
+    }
+
+    /**
+     * The upstream conversation of a chat session.
+     *
+     * @param conversationId the upstream conversation id.
+     * @param token the token of the account owning the conversation.
+     * @param messageCount the number of prompt messages already known upstream.
+     * @param historyHash the hash of these messages.
+     * @param lastAccess the {@link System#nanoTime()} of the last turn or lookup.
+     */
+    public record Session(String conversationId, String token, int messageCount, int historyHash, long lastAccess) {
+    }
+
+}
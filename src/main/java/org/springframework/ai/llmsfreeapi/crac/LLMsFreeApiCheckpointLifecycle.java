@@ -0,0 +1,109 @@
+package org.springframework.ai.llmsfreeapi.crac;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.llmsfreeapi.api.LLMsFreeApi;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+
+/**
+ * Prepares a {@link LLMsFreeApi} for a Coordinated Restore at Checkpoint of the JVM.
+ * <p>
+ * Spring stops the lifecycle beans before the checkpoint and starts them again after the
+ * restore. On stop, the pooled connections and event loop threads of the client are
+ * closed, so that no socket is saved in the checkpoint and reused by the restored
+ * instances, and the scheduling history of the token pool is reset. On a start after a
+ * stop the client is warmed up again, opening new connections before the first requests;
+ * the first start leaves the warm-up to the startup. The connections are also closed when
+ * the application context is.
+ * <p>
+ * Its phase is below the one of the web server, so that the connections are closed after
+ * the server stopped taking requests, and reopened before it takes them again.
+ */
+public class LLMsFreeApiCheckpointLifecycle implements SmartLifecycle {
+
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+
+    /**
+     * Below the phases of the web server lifecycles of Spring Boot.
+     */
+    public static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+
+    private static final Logger logger = LoggerFactory.getLogger(LLMsFreeApiCheckpointLifecycle.class);
+
+    private final LLMsFreeApi llmsFreeApi;
+
+    private final int connections;
+
+    private Duration timeout = DEFAULT_TIMEOUT;
+
+    private final Object lock = new Object();
+
+    private volatile boolean running;
+
+    private boolean stopped;
+
+    /**
+     * @param llmsFreeApi the client.
+     * @param connections the number of streaming connections opened after the restore.
+     */
+    public LLMsFreeApiCheckpointLifecycle(LLMsFreeApi llmsFreeApi, int connections) {
+        Assert.notNull(llmsFreeApi, "LLMsFreeApi must not be null");
+        Assert.isTrue(connections >= 0, "connections must not be negative");
+        this.llmsFreeApi = llmsFreeApi;
+        this.connections = connections;
+    }
+
+    /**
+     * @param timeout the maximum time to wait for the connections to close or open.
+     */
+    public void setTimeout(Duration timeout) {
+        Assert.notNull(timeout, "timeout must not be null");
+        this.timeout = timeout;
+    }
+
+    @Override
+    public void start() {
+        synchronized (this.lock) {
+            if (this.running) {
+                return;
+            }
+            if (this.stopped) {
+                this.llmsFreeApi.warmUp(this.connections, this.timeout);
+                logger.info("Reopened the LLMs Free API connections after the restart");
+            }
+            this.running = true;
+        }
+    }
+
+    @Override
+    public void stop() {
+        synchronized (this.lock) {
+            if (!this.running) {
+                return;
+            }
+            var tokenPool = this.llmsFreeApi.getTokenPool();
+            int inFlight = tokenPool.getTokens().stream().mapToInt(tokenPool::getInFlight).sum();
+            if (inFlight > 0 || !tokenPool.reset()) {
+                logger.warn("LLMs Free API connections closed with {} requests in flight or waiting", inFlight);
+            }
+            this.llmsFreeApi.closeConnections(this.timeout);
+            this.running = false;
+            this.stopped = true;
+            logger.info("Closed the LLMs Free API connections");
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+}
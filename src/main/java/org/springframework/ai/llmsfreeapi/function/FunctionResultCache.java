@@ -0,0 +1,177 @@
+package org.springframework.ai.llmsfreeapi.function;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.ai.llmsfreeapi.metrics.LLMsFreeApiMetrics;
+import org.springframework.ai.model.function.FunctionCallback;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Memoizes the results of idempotent {@link FunctionCallback functions} called by the model.
+ * <p>
+ * Caching is opt-in per function, see {@link #cache(String, Duration, int)}; the results of
+ * other functions are never cached. Results are keyed by the normalized JSON arguments, so
+ * that arguments differing only in key order or whitespace share an entry, and are kept
+ * for a time to live in a least recently used cache of bounded size. Concurrent calls with
+ * the same arguments wait for the first one instead of calling the function again. Failed
+ * calls are not cached.
+ */
+public class FunctionResultCache {
+
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(5);
+
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    private final Map<String, Results> results = new ConcurrentHashMap<>();
+
+    private final LLMsFreeApiMetrics metrics;
+
+    public FunctionResultCache(LLMsFreeApiMetrics metrics) {
+        Assert.notNull(metrics, "LLMsFreeApiMetrics must not be null");
+        this.metrics = metrics;
+    }
+
+    /**
+     * Cache the results of a function.
+     * @param functionName the name of the function.
+     * @param ttl the time a result is reused for.
+     * @param maxSize the maximum number of results kept.
+     */
+    public void cache(String functionName, Duration ttl, int maxSize) {
+        Assert.hasText(functionName, "functionName must not be empty");
+        Assert.isTrue(ttl != null && !ttl.isNegative() && !ttl.isZero(), "ttl must be positive");
+        Assert.isTrue(maxSize > 0, "maxSize must be positive");
+        this.results.put(functionName, new Results(ttl, maxSize));
+    }
+
+    /**
+     * @param functionName the name of a function.
+     * @return whether the results of the function are cached.
+     */
+    public boolean isCached(String functionName) {
+        return this.results.containsKey(functionName);
+    }
+
+    /**
+     * Call a function, reusing a cached result if its results are cached.
+     * @param functionCallback the function.
+     * @param arguments the JSON arguments.
+     * @return the result.
+     */
+    public String call(FunctionCallback functionCallback, String arguments) {
+        Results cache = this.results.get(functionCallback.getName());
+        if (cache == null) {
+            return functionCallback.call(arguments);
+        }
+
+        String key = normalize(arguments);
+        long now = System.nanoTime();
+        Entry entry;
+        boolean owner = false;
+        synchronized (cache) {
+            entry = cache.entries.get(key);
+            if (entry == null || now - entry.expiresAt() >= 0) {
+                entry = new Entry(new CompletableFuture<>(), now + cache.ttl.toNanos());
+                cache.entries.put(key, entry);
+                owner = true;
+            }
+        }
+        CompletableFuture<String> result = entry.result();
+        this.metrics.increment(LLMsFreeApiMetrics.FUNCTION_CACHE, "function", functionCallback.getName(),
+                "result", (owner ? "miss" : "hit"));
+
+        if (owner) {
+            try {
+                result.complete(functionCallback.call(arguments));
+            }
+            catch (RuntimeException | Error ex) {
+                synchronized (cache) {
+                    cache.entries.remove(key, entry);
+                }
+                result.completeExceptionally(ex);
+                throw ex;
+            }
+        }
+        try {
+            return result.join();
+        }
+        catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Forget the cached results of a function, e.g. after the data it reads changed.
+     * @param functionName the name of the function.
+     */
+    public void evict(String functionName) {
+        Results cache = this.results.get(functionName);
+        if (cache != null) {
+            synchronized (cache) {
+                cache.entries.clear();
+            }
+        }
+    }
+
+    /**
+     * @return the number of results cached per function, read without locking so possibly
+     * slightly stale.
+     */
+    public Map<String, Integer> getSizes() {
+        Map<String, Integer> sizes = new TreeMap<>();
+        this.results.forEach((functionName, cache) -> sizes.put(functionName, cache.entries.size()));
+        return sizes;
+    }
+
+    private String normalize(String arguments) {
+        if (arguments == null) {
+            return "";
+        }
+        try {
+            // Maps are written with sorted keys, the tree is read into maps first.
+            return this.objectMapper.writeValueAsString(this.objectMapper.readValue(arguments, Object.class));
+        }
+        catch (JsonProcessingException ex) {
+            return arguments.trim();
+        }
+    }
+
+    private static final class Results {
+
+        private final Duration ttl;
+
+        private final LinkedHashMap<String, Entry> entries;
+
+        Results(Duration ttl, int maxSize) {
+            this.ttl = ttl;
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > maxSize;
+                }
+
+            };
+        }
+
+    }
+
+    private record Entry(CompletableFuture<String> result, long expiresAt) {
+    }
+
+}
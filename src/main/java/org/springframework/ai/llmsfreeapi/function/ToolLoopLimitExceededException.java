@@ -0,0 +1,55 @@
+package org.springframework.ai.llmsfreeapi.function;
+
+import org.springframework.ai.retry.NonTransientAiException;
+
+/**
+ * Thrown when the tool-calling loop of a chat call is stopped by one of its
+ * {@link ToolLoopLimits}. Not retried, as a retry would run into the same limit.
+ */
+public class ToolLoopLimitExceededException extends NonTransientAiException {
+
+    private final Limit limit;
+
+    private final int rounds;
+
+    public ToolLoopLimitExceededException(Limit limit, int rounds, String detail) {
+        super("Tool calling stopped after " + rounds + " rounds: " + limit.getDescription() + " (" + detail + ")");
+        this.limit = limit;
+        this.rounds = rounds;
+    }
+
+    /**
+     * @return the limit which stopped the loop.
+     */
+    public Limit getLimit() {
+        return this.limit;
+    }
+
+    /**
+     * @return the tool-call rounds completed before the loop was stopped.
+     */
+    public int getRounds() {
+        return this.rounds;
+    }
+
+    public enum Limit {
+
+        MAX_ROUNDS("too many tool-call rounds"),
+
+        MAX_HISTORY_BYTES("conversation history too large"),
+
+        MAX_TOOL_TIME("tool time budget exhausted");
+
+        private final String description;
+
+        Limit(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return this.description;
+        }
+
+    }
+
+}
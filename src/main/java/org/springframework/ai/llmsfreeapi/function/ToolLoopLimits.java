@@ -0,0 +1,32 @@
+package org.springframework.ai.llmsfreeapi.function;
+
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+
+/**
+ * Limits of the tool-calling loop of a chat call, which otherwise resends a growing
+ * history to the model for as long as it keeps calling functions.
+ *
+ * @param maxRounds The maximum number of tool-call rounds, 0 for no limit.
+ * @param maxHistoryBytes The maximum size of the conversation history sent back to the
+ * model, 0 for no limit.
+ * @param maxToolTime The maximum total time spent in the functions, {@code null} for no
+ * limit.
+ */
+public record ToolLoopLimits(int maxRounds, long maxHistoryBytes, Duration maxToolTime) {
+
+    public static final int DEFAULT_MAX_ROUNDS = 10;
+
+    public static final long DEFAULT_MAX_HISTORY_BYTES = 1024 * 1024;
+
+    public static final ToolLoopLimits DEFAULT = new ToolLoopLimits(DEFAULT_MAX_ROUNDS, DEFAULT_MAX_HISTORY_BYTES, null);
+
+    public static final ToolLoopLimits UNLIMITED = new ToolLoopLimits(0, 0, null);
+
+    public ToolLoopLimits {
+        Assert.isTrue(maxRounds >= 0, "maxRounds must not be negative");
+        Assert.isTrue(maxHistoryBytes >= 0, "maxHistoryBytes must not be negative");
+    }
+
+}
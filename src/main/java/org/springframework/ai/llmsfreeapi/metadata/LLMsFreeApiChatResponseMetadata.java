@@ -0,0 +1,31 @@
+package org.springframework.ai.llmsfreeapi.metadata;
+
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.Usage;
+
+/**
+ * {@link ChatResponseMetadata} of a LLMs Free API chat completion.
+ */
+public class LLMsFreeApiChatResponseMetadata implements ChatResponseMetadata {
+
+    private final Usage usage;
+
+    protected LLMsFreeApiChatResponseMetadata(Usage usage) {
+        this.usage = usage;
+    }
+
+    public static LLMsFreeApiChatResponseMetadata from(Usage usage) {
+        return new LLMsFreeApiChatResponseMetadata(usage);
+    }
+
+    @Override
+    public Usage getUsage() {
+        return this.usage;
+    }
+
+    @Override
+    public String toString() {
+        return "LLMsFreeApiChatResponseMetadata{usage=" + this.usage + "}";
+    }
+
+}
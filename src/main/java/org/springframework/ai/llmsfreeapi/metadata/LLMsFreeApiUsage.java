@@ -0,0 +1,59 @@
+package org.springframework.ai.llmsfreeapi.metadata;
+
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.llmsfreeapi.api.LLMsFreeApi;
+
+/**
+ * {@link Usage} of a LLMs Free API chat completion, either as reported by the server or,
+ * for streamed responses which carry no usage, as estimated locally.
+ */
+public class LLMsFreeApiUsage implements Usage {
+
+    private final Long promptTokens;
+
+    private final Long generationTokens;
+
+    private final boolean estimated;
+
+    protected LLMsFreeApiUsage(Long promptTokens, Long generationTokens, boolean estimated) {
+        this.promptTokens = promptTokens;
+        this.generationTokens = generationTokens;
+        this.estimated = estimated;
+    }
+
+    public static LLMsFreeApiUsage from(LLMsFreeApi.Usage usage) {
+        return new LLMsFreeApiUsage(toLong(usage.promptTokens()), toLong(usage.completionTokens()), false);
+    }
+
+    public static LLMsFreeApiUsage estimated(long promptTokens, long generationTokens) {
+        return new LLMsFreeApiUsage(promptTokens, generationTokens, true);
+    }
+
+    @Override
+    public Long getPromptTokens() {
+        return this.promptTokens;
+    }
+
+    @Override
+    public Long getGenerationTokens() {
+        return this.generationTokens;
+    }
+
+    /**
+     * @return whether the token counts are local estimates.
+     */
+    public boolean isEstimated() {
+        return this.estimated;
+    }
+
+    @Override
+    public String toString() {
+        return "LLMsFreeApiUsage{promptTokens=" + this.promptTokens + ", generationTokens=" + this.generationTokens
+                + ", estimated=" + this.estimated + "}";
+    }
+
+    private static Long toLong(Integer value) {
+        return (value != null ? value.longValue() : 0L);
+    }
+
+}
@@ -0,0 +1,183 @@
+package org.springframework.ai.llmsfreeapi.metrics;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram over a rolling time window, so that its percentiles reflect
+ * the recent requests only.
+ * <p>
+ * The window is split into slots; each records into the slot of the current time, and a
+ * slot is cleared when the window comes round to it again. Latencies are counted in
+ * logarithmic buckets, four per power of two of microseconds, so that a percentile is
+ * accurate to within 25%. Recording is a few atomic increments; a slot reused during a
+ * concurrent record may lose that record, which does not matter for the statistics.
+ * <p>
+ * Values other than latencies, e.g. the tool-call rounds of a chat call, are recorded with
+ * {@link #recordValue(long)} into the same buckets as if they were microseconds; values up
+ * to 7 are exact. Their percentiles are read back with {@link Snapshot#value(Duration)}.
+ */
+public class DecayingHistogram {
+
+    public static final Duration DEFAULT_WINDOW = Duration.ofMinutes(1);
+
+    private static final int SLOTS = 6;
+
+    private static final int SUB_BUCKET_BITS = 2;
+
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS;
+
+    private final long slotNanos;
+
+    private final Slot[] slots = new Slot[SLOTS];
+
+    public DecayingHistogram() {
+        this(DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param window the time the recorded latencies are kept for.
+     */
+    public DecayingHistogram(Duration window) {
+        this.slotNanos = Math.max(1, window.toNanos() / SLOTS);
+        for (int i = 0; i < SLOTS; i++) {
+            this.slots[i] = new Slot();
+        }
+    }
+
+    /**
+     * Record the latency of a request.
+     * @param nanos the latency.
+     * @param error whether the request failed.
+     */
+    public void record(long nanos, boolean error) {
+        recordMicros(Math.max(1, nanos / 1000), error);
+    }
+
+    /**
+     * Record a value which is not a latency.
+     * @param value the value, at least 0.
+     */
+    public void recordValue(long value) {
+        recordMicros(Math.max(0, value), false);
+    }
+
+    private void recordMicros(long micros, boolean error) {
+        Slot slot = currentSlot(System.nanoTime());
+        slot.buckets.incrementAndGet(bucket(micros));
+        if (error) {
+            slot.errors.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the statistics of the latencies recorded within the window.
+     */
+    public Snapshot snapshot() {
+        long epoch = System.nanoTime() / this.slotNanos;
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        long errors = 0;
+        for (Slot slot : this.slots) {
+            if (slot.epoch.get() <= epoch - SLOTS) {
+                continue;
+            }
+            for (int i = 0; i < BUCKETS; i++) {
+                long bucketCount = slot.buckets.get(i);
+                counts[i] += bucketCount;
+                count += bucketCount;
+            }
+            errors += slot.errors.get();
+        }
+        return new Snapshot(count, errors, percentile(counts, count, 0.5), percentile(counts, count, 0.9),
+                percentile(counts, count, 0.99));
+    }
+
+    private Slot currentSlot(long now) {
+        long epoch = now / this.slotNanos;
+        Slot slot = this.slots[(int) Math.floorMod(epoch, (long) SLOTS)];
+        long slotEpoch = slot.epoch.get();
+        if (slotEpoch != epoch && slot.epoch.compareAndSet(slotEpoch, epoch)) {
+            for (int i = 0; i < BUCKETS; i++) {
+                slot.buckets.set(i, 0);
+            }
+            slot.errors.set(0);
+        }
+        return slot;
+    }
+
+    private static int bucket(long micros) {
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent < SUB_BUCKET_BITS) {
+            return (int) micros;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & ((1 << SUB_BUCKET_BITS) - 1);
+        return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    private static long upperBoundMicros(int bucket) {
+        if (bucket < (1 << SUB_BUCKET_BITS)) {
+            return bucket;
+        }
+        int exponent = (bucket >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket & ((1 << SUB_BUCKET_BITS) - 1);
+        // The largest value of the bucket, one below the smallest of the next.
+        return (((1L << SUB_BUCKET_BITS) + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    private static Duration percentile(long[] counts, long count, double quantile) {
+        if (count == 0) {
+            return Duration.ZERO;
+        }
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Duration.ofNanos(upperBoundMicros(i) * 1000);
+            }
+        }
+        return Duration.ofNanos(upperBoundMicros(counts.length - 1) * 1000);
+    }
+
+    private static final class Slot {
+
+        private final AtomicLong epoch = new AtomicLong(Long.MIN_VALUE);
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        private final AtomicLong errors = new AtomicLong();
+
+    }
+
+    /**
+     * Statistics of the latencies recorded within the window.
+     *
+     * @param count the number of requests.
+     * @param errors the number of failed requests.
+     * @param p50 the median latency.
+     * @param p90 the 90th percentile latency.
+     * @param p99 the 99th percentile latency.
+     */
+    public record Snapshot(long count, long errors, Duration p50, Duration p90, Duration p99) {
+
+        /**
+         * @return the share of failed requests, 0 if there were none.
+         */
+        public double errorRate() {
+            return (this.count > 0 ? (double) this.errors / this.count : 0);
+        }
+
+        /**
+         * @param percentile a percentile of a histogram recorded with
+         * {@link DecayingHistogram#recordValue(long)}.
+         * @return the value it stands for.
+         */
+        public static long value(Duration percentile) {
+            return percentile.toNanos() / 1000;
+        }
+
+    }
+
+}
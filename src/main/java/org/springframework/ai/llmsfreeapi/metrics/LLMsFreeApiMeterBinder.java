@@ -0,0 +1,33 @@
+package org.springframework.ai.llmsfreeapi.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link MeterBinder} which exposes the {@link LLMsFreeApiMetrics} counters and gauges to Micrometer.
+ */
+public class LLMsFreeApiMeterBinder implements MeterBinder {
+
+    private final LLMsFreeApiMetrics metrics;
+
+    public LLMsFreeApiMeterBinder(LLMsFreeApiMetrics metrics) {
+        Assert.notNull(metrics, "LLMsFreeApiMetrics must not be null");
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.metrics.onNewCounter((id, adder) -> FunctionCounter.builder(id.name(), adder, LongAdder::sum)
+                .tags(id.tags().toArray(String[]::new))
+                .register(registry));
+        this.metrics.onNewGauge((id, adder) -> Gauge.builder(id.name(), adder, LongAdder::sum)
+                .tags(id.tags().toArray(String[]::new))
+                .register(registry));
+    }
+
+}
@@ -0,0 +1,271 @@
+package org.springframework.ai.llmsfreeapi.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Lock-free operational counters of the LLMs Free API client.
+ * <p>
+ * Counters are identified by a name and an optional list of tag key/value pairs, and are
+ * backed by {@link LongAdder} so that recording is cheap on the request path. Use
+ * {@link #onNewCounter(BiConsumer)} to bridge them into a monitoring system. Gauges, such
+ * as the requests in flight, go up and down the same way, and latencies are recorded into
+ * {@link DecayingHistogram decaying histograms} of the recent requests.
+ */
+public class LLMsFreeApiMetrics {
+
+    /**
+     * Number of streaming chat completions cancelled by the downstream subscriber.
+     */
+    public static final String STREAM_CANCELLED = "llmsfreeapi.stream.cancelled";
+
+    /**
+     * Number of resumable streams resumed by a reconnecting client.
+     */
+    public static final String STREAM_RESUMED = "llmsfreeapi.stream.resumed";
+
+    /**
+     * Subscribers of shared streams which fell too far behind, tagged by action (drop or
+     * disconnect).
+     */
+    public static final String STREAM_SLOW_SUBSCRIBERS = "llmsfreeapi.stream.slow.subscribers";
+
+    /**
+     * Prompt tokens sent, as reported by the server or estimated, tagged by model.
+     */
+    public static final String PROMPT_TOKENS = "llmsfreeapi.tokens.prompt";
+
+    /**
+     * Completion tokens received, as reported by the server or estimated, tagged by model.
+     */
+    public static final String COMPLETION_TOKENS = "llmsfreeapi.tokens.completion";
+
+    /**
+     * Chat calls submitted to the tenant admission control, tagged by tenant and outcome.
+     */
+    public static final String TENANT_REQUESTS = "llmsfreeapi.tenant.requests";
+
+    /**
+     * Prompt and completion tokens used, tagged by tenant.
+     */
+    public static final String TENANT_TOKENS = "llmsfreeapi.tenant.tokens";
+
+    /**
+     * Lookups of cached function results, tagged by function and result (hit or miss).
+     */
+    public static final String FUNCTION_CACHE = "llmsfreeapi.function.cache";
+
+    /**
+     * Lookups of encoded message attachments, tagged by result (hit or miss).
+     */
+    public static final String ATTACHMENT_CACHE = "llmsfreeapi.attachment.cache";
+
+    /**
+     * Chat calls which went through at least one tool-call round.
+     */
+    public static final String TOOL_CALLS = "llmsfreeapi.tool.calls";
+
+    /**
+     * Tool-call rounds of the chat calls, divided by {@link #TOOL_CALLS} the mean rounds per call.
+     */
+    public static final String TOOL_ROUNDS = "llmsfreeapi.tool.rounds";
+
+    /**
+     * Histogram of the tool-call rounds per chat call which went through at least one, for
+     * their percentiles.
+     */
+    public static final String TOOL_ROUNDS_PER_CALL = "llmsfreeapi.tool.rounds.per.call";
+
+    /**
+     * Tool-calling loops stopped by a limit, tagged by limit.
+     */
+    public static final String TOOL_LOOP_STOPPED = "llmsfreeapi.tool.loop.stopped";
+
+    /**
+     * Requests to the API in flight, tagged by model, endpoint and token.
+     */
+    public static final String REQUESTS_ACTIVE = "llmsfreeapi.requests.active";
+
+    /**
+     * Latency and errors of the requests to the API, tagged by model, endpoint and token.
+     */
+    public static final String REQUESTS_LATENCY = "llmsfreeapi.requests.latency";
+
+    /**
+     * Bytes of the chat request bodies sent with compression enabled, tagged by encoding.
+     */
+    public static final String REQUEST_BYTES = "llmsfreeapi.requests.bytes";
+
+    /**
+     * Bytes saved by compressing the chat request bodies, tagged by encoding.
+     */
+    public static final String COMPRESSION_SAVED = "llmsfreeapi.compression.saved";
+
+    /**
+     * Failures injected into the exchanges with the API, tagged by fault.
+     */
+    public static final String FAULTS_INJECTED = "llmsfreeapi.faults.injected";
+
+    private final Map<Id, LongAdder> counters = new ConcurrentHashMap<>();
+
+    private final List<BiConsumer<Id, LongAdder>> listeners = new CopyOnWriteArrayList<>();
+
+    private final Map<Id, LongAdder> gauges = new ConcurrentHashMap<>();
+
+    private final List<BiConsumer<Id, LongAdder>> gaugeListeners = new CopyOnWriteArrayList<>();
+
+    private final Map<Id, DecayingHistogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * Increment the counter with the given name and tags by one.
+     * @param name the counter name.
+     * @param tags the tag key/value pairs.
+     */
+    public void increment(String name, String... tags) {
+        add(name, 1L, tags);
+    }
+
+    /**
+     * Add the given amount to the counter with the given name and tags.
+     * @param name the counter name.
+     * @param amount the amount to add.
+     * @param tags the tag key/value pairs.
+     */
+    public void add(String name, long amount, String... tags) {
+        counter(new Id(name, List.of(tags))).add(amount);
+    }
+
+    /**
+     * @param name the counter name.
+     * @param tags the tag key/value pairs.
+     * @return the current value of the counter, 0 if it has never been recorded.
+     */
+    public long count(String name, String... tags) {
+        LongAdder adder = this.counters.get(new Id(name, List.of(tags)));
+        return (adder != null ? adder.sum() : 0L);
+    }
+
+    /**
+     * @return a point-in-time copy of all counters.
+     */
+    public Map<Id, Long> snapshot() {
+        Map<Id, Long> snapshot = new LinkedHashMap<>();
+        this.counters.forEach((id, adder) -> snapshot.put(id, adder.sum()));
+        return snapshot;
+    }
+
+    /**
+     * Register a listener which is called for every existing and every future counter.
+     * @param listener the listener.
+     */
+    public void onNewCounter(BiConsumer<Id, LongAdder> listener) {
+        this.listeners.add(listener);
+        this.counters.forEach(listener);
+    }
+
+    /**
+     * Add the given amount, which may be negative, to the gauge with the given name and tags.
+     * @param name the gauge name.
+     * @param amount the amount to add.
+     * @param tags the tag key/value pairs.
+     */
+    public void adjust(String name, long amount, String... tags) {
+        register(this.gauges, this.gaugeListeners, new Id(name, List.of(tags))).add(amount);
+    }
+
+    /**
+     * @return a point-in-time copy of all gauges.
+     */
+    public Map<Id, Long> gaugeSnapshot() {
+        Map<Id, Long> snapshot = new LinkedHashMap<>();
+        this.gauges.forEach((id, adder) -> snapshot.put(id, adder.sum()));
+        return snapshot;
+    }
+
+    /**
+     * Register a listener which is called for every existing and every future gauge.
+     * @param listener the listener.
+     */
+    public void onNewGauge(BiConsumer<Id, LongAdder> listener) {
+        this.gaugeListeners.add(listener);
+        this.gauges.forEach(listener);
+    }
+
+    /**
+     * Record a latency into the histogram with the given name and tags.
+     * @param name the histogram name.
+     * @param nanos the latency.
+     * @param error whether the request failed.
+     * @param tags the tag key/value pairs.
+     */
+    public void record(String name, long nanos, boolean error, String... tags) {
+        this.histograms.computeIfAbsent(new Id(name, List.of(tags)), id -> new DecayingHistogram()).record(nanos, error);
+    }
+
+    /**
+     * Record a value which is not a latency into the histogram with the given name and tags.
+     * @param name the histogram name.
+     * @param value the value.
+     * @param tags the tag key/value pairs.
+     * @see DecayingHistogram#recordValue(long)
+     */
+    public void recordValue(String name, long value, String... tags) {
+        this.histograms.computeIfAbsent(new Id(name, List.of(tags)), id -> new DecayingHistogram()).recordValue(value);
+    }
+
+    /**
+     * @return the statistics of all histograms over their window.
+     */
+    public Map<Id, DecayingHistogram.Snapshot> histogramSnapshot() {
+        Map<Id, DecayingHistogram.Snapshot> snapshot = new LinkedHashMap<>();
+        this.histograms.forEach((id, histogram) -> snapshot.put(id, histogram.snapshot()));
+        return snapshot;
+    }
+
+    private LongAdder counter(Id id) {
+        return register(this.counters, this.listeners, id);
+    }
+
+    private static LongAdder register(Map<Id, LongAdder> adders, List<BiConsumer<Id, LongAdder>> listeners, Id id) {
+        LongAdder adder = adders.get(id);
+        if (adder != null) {
+            return adder;
+        }
+        LongAdder created = new LongAdder();
+        LongAdder existing = adders.putIfAbsent(id, created);
+        if (existing != null) {
+            return existing;
+        }
+        listeners.forEach(listener -> listener.accept(id, created));
+        return created;
+    }
+
+    /**
+     * Counter identifier.
+     *
+     * @param name the counter name.
+     * @param tags the tag key/value pairs.
+     */
+    public record Id(String name, List<String> tags) {
+
+        /**
+         * @param key a tag key.
+         * @return the value of the tag, or {@code null} if not set.
+         */
+        public String tag(String key) {
+            for (int i = 0; i + 1 < this.tags.size(); i += 2) {
+                if (this.tags.get(i).equals(key)) {
+                    return this.tags.get(i + 1);
+                }
+            }
+            return null;
+        }
+
+    }
+
+}
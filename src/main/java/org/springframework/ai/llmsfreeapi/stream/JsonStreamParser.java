@@ -0,0 +1,244 @@
+package org.springframework.ai.llmsfreeapi.stream;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the JSON a model answers with while it is streamed, with the non-blocking parser
+ * of Jackson fed with the content deltas as they arrive.
+ * <p>
+ * Text before the JSON, e.g. an opening markdown code fence, and everything after it,
+ * e.g. the closing fence, are skipped. Two modes are supported:
+ * <ul>
+ * <li>{@link #elements(ObjectMapper, Class) elements}: each element of a top level array is
+ * emitted as soon as it is complete; a top level object is emitted once complete.</li>
+ * <li>{@link #partial(ObjectMapper, Class) partial}: the top level object is emitted each
+ * time one of its fields is complete, with the fields complete so far; a top level array is
+ * streamed element by element as above.</li>
+ * </ul>
+ * A parser is not thread-safe, it parses one stream.
+ *
+ * @param <T> the type emitted.
+ */
+public class JsonStreamParser<T> {
+
+    private final ObjectMapper objectMapper;
+
+    private final Class<T> type;
+
+    private final boolean partial;
+
+    private final JsonParser parser;
+
+    private final ByteArrayFeeder feeder;
+
+    private boolean started;
+
+    private boolean completed;
+
+    private int depth;
+
+    private boolean arrayRoot;
+
+    /**
+     * The top level value being read: the current array element, the current field value of
+     * a partial object, or the whole object.
+     */
+    private TokenBuffer value;
+
+    private String fieldName;
+
+    private ObjectNode fields;
+
+    private JsonStreamParser(ObjectMapper objectMapper, Class<T> type, boolean partial) {
+        Assert.notNull(objectMapper, "ObjectMapper must not be null");
+        Assert.notNull(type, "type must not be null");
+        this.objectMapper = objectMapper;
+        this.type = type;
+        this.partial = partial;
+        try {
+            this.parser = objectMapper.getFactory().createNonBlockingByteArrayParser();
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        this.feeder = (ByteArrayFeeder) this.parser.getNonBlockingInputFeeder();
+    }
+
+    /**
+     * Create a parser emitting the elements of a top level array.
+     * @param objectMapper the mapper reading the elements.
+     * @param elementType the type of the elements.
+     * @param <T> the type of the elements.
+     * @return the parser.
+     */
+    public static <T> JsonStreamParser<T> elements(ObjectMapper objectMapper, Class<T> elementType) {
+        return new JsonStreamParser<>(objectMapper, elementType, false);
+    }
+
+    /**
+     * Create a parser emitting a top level object each time one of its fields is complete.
+     * @param objectMapper the mapper reading the object.
+     * @param type the type of the object.
+     * @param <T> the type of the object.
+     * @return the parser.
+     */
+    public static <T> JsonStreamParser<T> partial(ObjectMapper objectMapper, Class<T> type) {
+        return new JsonStreamParser<>(objectMapper, type, true);
+    }
+
+    /**
+     * Parse the next content delta.
+     * @param content the delta.
+     * @return the values completed by the delta, possibly none.
+     * @throws UncheckedIOException if the content is not valid JSON.
+     */
+    public List<T> feed(String content) {
+        if (this.completed || content == null || content.isEmpty()) {
+            return List.of();
+        }
+        if (!this.started) {
+            int start = indexOfStart(content);
+            if (start < 0) {
+                return List.of();
+            }
+            this.started = true;
+            content = content.substring(start);
+        }
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        try {
+            this.feeder.feedInput(bytes, 0, bytes.length);
+            return parse();
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Signal the end of the content.
+     * @return the values completed at the end, possibly none.
+     * @throws IllegalStateException if the content ended within the JSON.
+     */
+    public List<T> complete() {
+        if (this.completed) {
+            return List.of();
+        }
+        Assert.state(this.started, "The model output contains no JSON");
+        try {
+            this.feeder.endOfInput();
+            List<T> values = parse();
+            Assert.state(this.completed, "The model output ended within the JSON");
+            return values;
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private List<T> parse() throws IOException {
+        List<T> values = new ArrayList<>();
+        JsonToken token;
+        while (!this.completed && (token = this.parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            if (this.depth == 0) {
+                startRoot(token);
+            }
+            else if (this.depth == 1) {
+                if (token == JsonToken.END_ARRAY || token == JsonToken.END_OBJECT) {
+                    endRoot(values);
+                }
+                else if (token == JsonToken.FIELD_NAME && this.fields != null) {
+                    this.fieldName = this.parser.currentName();
+                }
+                else {
+                    this.value = (this.fields != null || this.arrayRoot ? new TokenBuffer(this.parser) : this.value);
+                    this.value.copyCurrentEvent(this.parser);
+                    if (token.isStructStart()) {
+                        this.depth++;
+                    }
+                    else {
+                        endValue(values);
+                    }
+                }
+            }
+            else {
+                this.value.copyCurrentEvent(this.parser);
+                if (token.isStructStart()) {
+                    this.depth++;
+                }
+                else if (token.isStructEnd() && --this.depth == 1) {
+                    endValue(values);
+                }
+            }
+        }
+        return values;
+    }
+
+    private void startRoot(JsonToken token) throws IOException {
+        // The input starts at the first '[' or '{'.
+        this.depth = 1;
+        if (token == JsonToken.START_ARRAY) {
+            this.arrayRoot = true;
+        }
+        else if (this.partial) {
+            this.fields = this.objectMapper.createObjectNode();
+        }
+        else {
+            this.value = new TokenBuffer(this.parser);
+            this.value.copyCurrentEvent(this.parser);
+        }
+    }
+
+    private void endValue(List<T> values) throws IOException {
+        if (this.arrayRoot) {
+            values.add(read(this.value));
+        }
+        else if (this.fields != null) {
+            this.fields.set(this.fieldName, readTree(this.value));
+            values.add(this.objectMapper.treeToValue(this.fields, this.type));
+        }
+        // Otherwise a field of a whole object, read at its end.
+    }
+
+    private void endRoot(List<T> values) throws IOException {
+        if (!this.arrayRoot && this.fields == null) {
+            this.value.copyCurrentEvent(this.parser);
+            values.add(read(this.value));
+        }
+        this.depth = 0;
+        this.completed = true;
+    }
+
+    private T read(TokenBuffer buffer) throws IOException {
+        return this.objectMapper.treeToValue(readTree(buffer), this.type);
+    }
+
+    private JsonNode readTree(TokenBuffer buffer) throws IOException {
+        try (JsonParser bufferParser = buffer.asParser(this.objectMapper)) {
+            return this.objectMapper.readTree(bufferParser);
+        }
+    }
+
+    private static int indexOfStart(String content) {
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            if (c == '{' || c == '[') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
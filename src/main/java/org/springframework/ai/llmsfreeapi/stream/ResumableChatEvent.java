@@ -0,0 +1,27 @@
+package org.springframework.ai.llmsfreeapi.stream;
+
+import org.springframework.ai.chat.ChatResponse;
+
+/**
+ * A streamed chat delta of a resumable stream.
+ *
+ * @param streamId The id assigned to the stream.
+ * @param sequence The position of the delta within the stream, starting at 1.
+ * @param response The chat delta.
+ */
+public record ResumableChatEvent(String streamId, long sequence, ChatResponse response) {
+
+    /**
+     * Separator between the stream id and the sequence in an event id.
+     */
+    public static final char EVENT_ID_SEPARATOR = ':';
+
+    /**
+     * @return the event id to be sent to the client, for example as the SSE {@code id}
+     * field. The client sends it back as {@code Last-Event-ID} to resume the stream.
+     */
+    public String eventId() {
+        return this.streamId + EVENT_ID_SEPARATOR + this.sequence;
+    }
+
+}
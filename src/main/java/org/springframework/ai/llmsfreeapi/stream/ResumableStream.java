@@ -0,0 +1,166 @@
+package org.springframework.ai.llmsfreeapi.stream;
+
+import org.springframework.ai.chat.ChatResponse;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single upstream generation whose deltas are kept in a bounded replay buffer.
+ * <p>
+ * The upstream is subscribed once. Subscribers come and go; when the last one leaves,
+ * the upstream is kept alive for a grace period so that a reconnecting client can attach
+ * to it, and is cancelled afterwards.
+ */
+class ResumableStream {
+
+    private final String id;
+
+    private final Duration gracePeriod;
+
+    private final Sinks.Many<ResumableChatEvent> sink;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final AtomicInteger subscribers = new AtomicInteger();
+
+    private final AtomicBoolean terminated = new AtomicBoolean();
+
+    private final long createdAt = System.nanoTime();
+
+    private volatile long terminatedAt;
+
+    private volatile Disposable upstream;
+
+    private volatile Disposable pendingCancel;
+
+    ResumableStream(String id, int bufferSize, Duration gracePeriod) {
+        this.id = id;
+        this.gracePeriod = gracePeriod;
+        this.sink = Sinks.many().replay().limit(bufferSize);
+    }
+
+    String getId() {
+        return this.id;
+    }
+
+    long getCreatedAt() {
+        return this.createdAt;
+    }
+
+    /**
+     * @return whether the upstream has completed, failed or been cancelled.
+     */
+    boolean isTerminated() {
+        return this.terminated.get();
+    }
+
+    /**
+     * @return whether a client is attached to the stream.
+     */
+    boolean hasSubscribers() {
+        return this.subscribers.get() > 0;
+    }
+
+    /**
+     * @param ttl time to keep a terminated stream around.
+     * @param now the current {@link System#nanoTime()}.
+     * @return whether the stream has terminated more than {@code ttl} ago.
+     */
+    boolean isExpired(Duration ttl, long now) {
+        return this.terminated.get() && now - this.terminatedAt > ttl.toNanos();
+    }
+
+    void connect(Flux<ChatResponse> source) {
+        this.upstream = source
+                .map(response -> new ResumableChatEvent(this.id, this.sequence.incrementAndGet(), response))
+                .subscribe(this.sink::tryEmitNext,
+                        error -> {
+                            markTerminated();
+                            this.sink.tryEmitError(error);
+                        },
+                        () -> {
+                            markTerminated();
+                            this.sink.tryEmitComplete();
+                        });
+        scheduleIdleCancel();
+    }
+
+    /**
+     * Replay the buffered deltas after the given sequence, then follow the live upstream.
+     * @param afterSequence the last sequence the client received, 0 for all.
+     * @return the deltas.
+     */
+    Flux<ResumableChatEvent> replay(long afterSequence) {
+        return Flux.defer(() -> {
+            AtomicBoolean first = new AtomicBoolean(true);
+            return this.sink.asFlux()
+                    .filter(event -> event.sequence() > afterSequence)
+                    .<ResumableChatEvent>handle((event, downstream) -> {
+                        if (first.compareAndSet(true, false) && event.sequence() != afterSequence + 1) {
+                            downstream.error(new IllegalStateException("Stream " + this.id
+                                    + " no longer buffers the deltas after sequence " + afterSequence));
+                            return;
+                        }
+                        downstream.next(event);
+                    })
+                    .doOnSubscribe(subscription -> attach())
+                    .doFinally(signal -> detach());
+        });
+    }
+
+    /**
+     * Cancel the upstream generation, if still running.
+     */
+    void dispose() {
+        Disposable current = this.upstream;
+        if (current != null && !current.isDisposed()) {
+            current.dispose();
+        }
+        if (markTerminated()) {
+            this.sink.tryEmitError(new CancellationException("Stream " + this.id + " has been cancelled"));
+        }
+    }
+
+    private void attach() {
+        this.subscribers.incrementAndGet();
+        Disposable pending = this.pendingCancel;
+        if (pending != null) {
+            pending.dispose();
+        }
+    }
+
+    private void detach() {
+        if (this.subscribers.decrementAndGet() == 0) {
+            scheduleIdleCancel();
+        }
+    }
+
+    private void scheduleIdleCancel() {
+        if (this.terminated.get()) {
+            return;
+        }
+        this.pendingCancel = Schedulers.parallel().schedule(() -> {
+            if (this.subscribers.get() == 0 && !this.terminated.get()) {
+                dispose();
+            }
+        }, this.gracePeriod.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private boolean markTerminated() {
+        if (this.terminated.compareAndSet(false, true)) {
+            this.terminatedAt = System.nanoTime();
+            return true;
+        }
+        return false;
+    }
+
+}
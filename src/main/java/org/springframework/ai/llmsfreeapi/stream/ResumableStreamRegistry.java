@@ -0,0 +1,159 @@
+package org.springframework.ai.llmsfreeapi.stream;
+
+import org.springframework.ai.chat.ChatResponse;
+import org.springframework.ai.llmsfreeapi.metrics.LLMsFreeApiMetrics;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of resumable chat streams.
+ * <p>
+ * Each registered stream gets an id and keeps its emitted deltas in a bounded replay
+ * buffer. A client which lost its connection resumes with the last event id it received
+ * and gets the missed deltas followed by the live upstream, without a second generation.
+ * Terminated streams are evicted after a TTL, and the number of retained streams is
+ * bounded: at the bound, a terminated stream or one no client is attached to makes room
+ * for a new one, and a new stream is rejected if all of them are live.
+ */
+public class ResumableStreamRegistry {
+
+    public static final int DEFAULT_MAX_STREAMS = 1000;
+
+    public static final int DEFAULT_BUFFER_SIZE = 2048;
+
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(5);
+
+    public static final Duration DEFAULT_GRACE_PERIOD = Duration.ofSeconds(30);
+
+    private final Map<String, ResumableStream> streams = new ConcurrentHashMap<>();
+
+    private final int maxStreams;
+
+    private final int bufferSize;
+
+    private final Duration ttl;
+
+    private final Duration gracePeriod;
+
+    private final LLMsFreeApiMetrics metrics;
+
+    /**
+     * Guards the eviction and the registration of a stream, so that concurrent
+     * registrations do not evict more streams than they need room for.
+     */
+    private final Object lock = new Object();
+
+    public ResumableStreamRegistry() {
+        this(DEFAULT_MAX_STREAMS, DEFAULT_BUFFER_SIZE, DEFAULT_TTL, DEFAULT_GRACE_PERIOD, new LLMsFreeApiMetrics());
+    }
+
+    /**
+     * @param maxStreams maximum number of streams retained at the same time.
+     * @param bufferSize maximum number of deltas buffered per stream.
+     * @param ttl time a terminated stream can still be resumed.
+     * @param gracePeriod time the upstream is kept alive without any subscriber.
+     * @param metrics operational counters.
+     */
+    public ResumableStreamRegistry(int maxStreams, int bufferSize, Duration ttl, Duration gracePeriod,
+                                   LLMsFreeApiMetrics metrics) {
+        Assert.isTrue(maxStreams > 0, "maxStreams must be positive");
+        Assert.isTrue(bufferSize > 0, "bufferSize must be positive");
+        Assert.notNull(ttl, "ttl must not be null");
+        Assert.notNull(gracePeriod, "gracePeriod must not be null");
+        Assert.notNull(metrics, "LLMsFreeApiMetrics must not be null");
+        this.maxStreams = maxStreams;
+        this.bufferSize = bufferSize;
+        this.ttl = ttl;
+        this.gracePeriod = gracePeriod;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Start a new resumable stream. The source is subscribed immediately and only once.
+     * @param source the upstream chat deltas.
+     * @return the deltas, tagged with the stream id and their sequence, or an
+     * {@link IllegalStateException} if the maximum number of streams are all live.
+     */
+    public Flux<ResumableChatEvent> register(Flux<ChatResponse> source) {
+        var stream = new ResumableStream(UUID.randomUUID().toString(), this.bufferSize, this.gracePeriod);
+        ResumableStream evicted = null;
+        synchronized (this.lock) {
+            evictExpired();
+            if (this.streams.size() >= this.maxStreams) {
+                evicted = evictable();
+                if (evicted == null) {
+                    return Flux.error(new IllegalStateException("All " + this.maxStreams
+                            + " resumable streams are live, none can be evicted for a new one"));
+                }
+                this.streams.remove(evicted.getId(), evicted);
+            }
+            this.streams.put(stream.getId(), stream);
+        }
+        if (evicted != null) {
+            evicted.dispose();
+        }
+        stream.connect(source);
+        return stream.replay(0L);
+    }
+
+    /**
+     * Resume a stream from the last event id received by the client.
+     * @param lastEventId the {@link ResumableChatEvent#eventId()} of the last event received.
+     * @return the missed deltas followed by the live deltas, or an error if the stream is
+     * unknown, expired or no longer buffers the missed deltas.
+     */
+    public Flux<ResumableChatEvent> resume(String lastEventId) {
+        Assert.hasText(lastEventId, "lastEventId must not be empty");
+        int separator = lastEventId.lastIndexOf(ResumableChatEvent.EVENT_ID_SEPARATOR);
+        if (separator < 0) {
+            return Flux.error(new IllegalArgumentException("Invalid event id: " + lastEventId));
+        }
+        long afterSequence;
+        try {
+            afterSequence = Long.parseLong(lastEventId.substring(separator + 1));
+        }
+        catch (NumberFormatException ex) {
+            return Flux.error(new IllegalArgumentException("Invalid event id: " + lastEventId, ex));
+        }
+        evictExpired();
+        String streamId = lastEventId.substring(0, separator);
+        var stream = this.streams.get(streamId);
+        if (stream == null) {
+            return Flux.error(new IllegalStateException("Stream " + streamId + " is unknown or has expired"));
+        }
+        this.metrics.increment(LLMsFreeApiMetrics.STREAM_RESUMED);
+        return stream.replay(afterSequence);
+    }
+
+    /**
+     * @return the number of streams currently retained.
+     */
+    public int size() {
+        return this.streams.size();
+    }
+
+    private void evictExpired() {
+        long now = System.nanoTime();
+        this.streams.values().removeIf(stream -> stream.isExpired(this.ttl, now));
+    }
+
+    /**
+     * @return the oldest terminated stream, or else the oldest one no client is attached
+     * to, {@code null} if all streams are live with clients.
+     */
+    private ResumableStream evictable() {
+        return this.streams.values()
+                .stream()
+                .filter(stream -> stream.isTerminated() || !stream.hasSubscribers())
+                .min(Comparator.comparing((ResumableStream stream) -> !stream.isTerminated())
+                        .thenComparingLong(ResumableStream::getCreatedAt))
+                .orElse(null);
+    }
+
+}
@@ -0,0 +1,234 @@
+package org.springframework.ai.llmsfreeapi.stream;
+
+import org.springframework.ai.chat.ChatResponse;
+import org.springframework.ai.llmsfreeapi.metrics.LLMsFreeApiMetrics;
+import reactor.core.Disposable;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single upstream generation shared by any number of subscribers, e.g. the viewers of
+ * a live room, obtained from {@link SharedStreamRegistry#share}.
+ * <p>
+ * The upstream is subscribed once and never waits for the subscribers: its deltas go into
+ * a bounded replay buffer, from which each subscriber is served at its own demand, starting
+ * with the first delta retained. A subscriber falling more than the maximum lag behind the
+ * upstream is disconnected with an overflow error, or skips the deltas it missed, so that
+ * no delta is held for a slow subscriber only. When the last subscriber leaves, the
+ * upstream is kept alive for a grace period and cancelled afterwards.
+ */
+public class SharedChatStream {
+
+    private final String id;
+
+    private final int maxLag;
+
+    private final SharedStreamRegistry.Overflow overflow;
+
+    private final Duration gracePeriod;
+
+    private final LLMsFreeApiMetrics metrics;
+
+    private final Sinks.Many<Delta> sink;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    private final AtomicBoolean terminated = new AtomicBoolean();
+
+    private final long createdAt = System.nanoTime();
+
+    private volatile long terminatedAt;
+
+    private volatile Disposable upstream;
+
+    private volatile Disposable pendingCancel;
+
+    SharedChatStream(String id, int bufferSize, int maxLag, SharedStreamRegistry.Overflow overflow,
+                     Duration gracePeriod, LLMsFreeApiMetrics metrics) {
+        this.id = id;
+        this.maxLag = maxLag;
+        this.overflow = overflow;
+        this.gracePeriod = gracePeriod;
+        this.metrics = metrics;
+        this.sink = Sinks.many().replay().limit(bufferSize);
+    }
+
+    public String getId() {
+        return this.id;
+    }
+
+    /**
+     * @return the number of deltas received from the upstream so far.
+     */
+    public long getDeltas() {
+        return this.sequence.get();
+    }
+
+    /**
+     * @return the number of subscribers currently attached.
+     */
+    public int getSubscribers() {
+        return this.subscribers.size();
+    }
+
+    /**
+     * @return whether the upstream has completed, failed or been cancelled.
+     */
+    public boolean isTerminated() {
+        return this.terminated.get();
+    }
+
+    /**
+     * Subscribe to the deltas, from the first one retained, i.e. from the start unless the
+     * generation has more deltas than the buffer size, then follow the upstream.
+     * @return the deltas.
+     */
+    public Flux<ChatResponse> subscribe() {
+        return Flux.defer(() -> {
+            // The deltas buffered already are behind, but were not missed.
+            var subscriber = new Subscriber(this.sequence.get());
+            return this.sink.asFlux()
+                    .takeUntilOther(subscriber.disconnected.asMono())
+                    .concatWith(Mono.defer(() -> (subscriber.overflowed ? Mono.<Delta>error(Exceptions.failWithOverflow(
+                            "Subscriber of stream " + this.id + " fell more than " + this.maxLag + " deltas behind"))
+                            : Mono.<Delta>empty())))
+                    .filter(delta -> delta.sequence() > subscriber.skipped)
+                    .doOnNext(delta -> subscriber.received = delta.sequence())
+                    .map(Delta::response)
+                    .doOnSubscribe(subscription -> attach(subscriber))
+                    .doFinally(signal -> detach(subscriber));
+        });
+    }
+
+    long getCreatedAt() {
+        return this.createdAt;
+    }
+
+    /**
+     * @param ttl time to keep a terminated stream around.
+     * @param now the current {@link System#nanoTime()}.
+     * @return whether the stream has terminated more than {@code ttl} ago.
+     */
+    boolean isExpired(Duration ttl, long now) {
+        return this.terminated.get() && now - this.terminatedAt > ttl.toNanos();
+    }
+
+    void connect(Flux<ChatResponse> source) {
+        this.upstream = source.subscribe(response -> {
+                    long sequence = this.sequence.incrementAndGet();
+                    this.sink.tryEmitNext(new Delta(sequence, response));
+                    checkLag(sequence);
+                },
+                error -> {
+                    markTerminated();
+                    this.sink.tryEmitError(error);
+                },
+                () -> {
+                    markTerminated();
+                    this.sink.tryEmitComplete();
+                });
+        scheduleIdleCancel();
+    }
+
+    /**
+     * Cancel the upstream generation, if still running.
+     */
+    void dispose() {
+        Disposable current = this.upstream;
+        if (current != null && !current.isDisposed()) {
+            current.dispose();
+        }
+        if (markTerminated()) {
+            this.sink.tryEmitError(new CancellationException("Stream " + this.id + " has been cancelled"));
+        }
+    }
+
+    private void checkLag(long sequence) {
+        for (Subscriber subscriber : this.subscribers) {
+            long position = Math.max(subscriber.received, Math.max(subscriber.skipped, subscriber.subscribedAt));
+            if (sequence - position <= this.maxLag || subscriber.overflowed) {
+                continue;
+            }
+            if (this.overflow == SharedStreamRegistry.Overflow.DROP) {
+                subscriber.skipped = sequence - 1;
+                this.metrics.increment(LLMsFreeApiMetrics.STREAM_SLOW_SUBSCRIBERS, "action", "drop");
+            }
+            else {
+                subscriber.overflowed = true;
+                subscriber.disconnected.tryEmitEmpty();
+                this.metrics.increment(LLMsFreeApiMetrics.STREAM_SLOW_SUBSCRIBERS, "action", "disconnect");
+            }
+        }
+    }
+
+    private void attach(Subscriber subscriber) {
+        this.subscribers.add(subscriber);
+        Disposable pending = this.pendingCancel;
+        if (pending != null) {
+            pending.dispose();
+        }
+    }
+
+    private void detach(Subscriber subscriber) {
+        if (this.subscribers.remove(subscriber) && this.subscribers.isEmpty()) {
+            scheduleIdleCancel();
+        }
+    }
+
+    private void scheduleIdleCancel() {
+        if (this.terminated.get()) {
+            return;
+        }
+        this.pendingCancel = Schedulers.parallel().schedule(() -> {
+            if (this.subscribers.isEmpty() && !this.terminated.get()) {
+                dispose();
+            }
+        }, this.gracePeriod.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private boolean markTerminated() {
+        if (this.terminated.compareAndSet(false, true)) {
+            this.terminatedAt = System.nanoTime();
+            return true;
+        }
+        return false;
+    }
+
+    private record Delta(long sequence, ChatResponse response) {
+    }
+
+    /**
+     * The position of a subscriber in the stream.
+     */
+    private static final class Subscriber {
+
+        private final long subscribedAt;
+
+        private final Sinks.Empty<Void> disconnected = Sinks.empty();
+
+        private volatile long received;
+
+        private volatile long skipped;
+
+        private volatile boolean overflowed;
+
+        Subscriber(long subscribedAt) {
+            this.subscribedAt = subscribedAt;
+        }
+
+    }
+
+}
@@ -0,0 +1,200 @@
+package org.springframework.ai.llmsfreeapi.stream;
+
+import org.springframework.ai.chat.ChatResponse;
+import org.springframework.ai.llmsfreeapi.metrics.LLMsFreeApiMetrics;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Registry of shared chat streams, by request id.
+ * <p>
+ * The first {@link #share(String, Supplier) share} of a request id starts the upstream
+ * generation; the later ones, e.g. of viewers joining a live room, get the same
+ * {@link SharedChatStream} instead of starting another one. Terminated streams are evicted
+ * after a TTL, after which the request id starts a new generation, and the number of
+ * retained streams is bounded: a terminated stream, or else one without subscribers, is
+ * evicted for a new one, and a new stream is rejected if all of them are live.
+ */
+public class SharedStreamRegistry {
+
+    public static final int DEFAULT_MAX_STREAMS = 1000;
+
+    public static final int DEFAULT_BUFFER_SIZE = 4096;
+
+    public static final int DEFAULT_MAX_LAG = 256;
+
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(5);
+
+    public static final Duration DEFAULT_GRACE_PERIOD = Duration.ofSeconds(30);
+
+    private final Map<String, SharedChatStream> streams = new ConcurrentHashMap<>();
+
+    private final int maxStreams;
+
+    private final int bufferSize;
+
+    private final Duration ttl;
+
+    private final Duration gracePeriod;
+
+    private final LLMsFreeApiMetrics metrics;
+
+    /**
+     * Guards the eviction and the registration of a stream, so that concurrent shares
+     * neither evict more streams than they need room for nor exceed the maximum.
+     */
+    private final Object lock = new Object();
+
+    private int maxLag = DEFAULT_MAX_LAG;
+
+    private Overflow overflow = Overflow.DISCONNECT;
+
+    public SharedStreamRegistry() {
+        this(DEFAULT_MAX_STREAMS, DEFAULT_BUFFER_SIZE, DEFAULT_TTL, DEFAULT_GRACE_PERIOD, new LLMsFreeApiMetrics());
+    }
+
+    /**
+     * @param maxStreams maximum number of streams retained at the same time.
+     * @param bufferSize maximum number of deltas buffered per stream for late subscribers.
+     * @param ttl time a terminated stream can still be subscribed to.
+     * @param gracePeriod time the upstream is kept alive without any subscriber.
+     * @param metrics operational counters.
+     */
+    public SharedStreamRegistry(int maxStreams, int bufferSize, Duration ttl, Duration gracePeriod,
+                                LLMsFreeApiMetrics metrics) {
+        Assert.isTrue(maxStreams > 0, "maxStreams must be positive");
+        Assert.isTrue(bufferSize > 0, "bufferSize must be positive");
+        Assert.notNull(ttl, "ttl must not be null");
+        Assert.notNull(gracePeriod, "gracePeriod must not be null");
+        Assert.notNull(metrics, "LLMsFreeApiMetrics must not be null");
+        this.maxStreams = maxStreams;
+        this.bufferSize = bufferSize;
+        this.ttl = ttl;
+        this.gracePeriod = gracePeriod;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param maxLag maximum number of deltas a subscriber may fall behind the upstream.
+     */
+    public void setMaxLag(int maxLag) {
+        Assert.isTrue(maxLag > 0, "maxLag must be positive");
+        this.maxLag = maxLag;
+    }
+
+    /**
+     * @param overflow what happens to a subscriber falling behind more than the maximum lag.
+     */
+    public void setOverflow(Overflow overflow) {
+        Assert.notNull(overflow, "Overflow must not be null");
+        this.overflow = overflow;
+    }
+
+    /**
+     * Get the shared stream of a request id, starting it if there is none. The source is
+     * subscribed immediately and only once per stream.
+     * @param requestId the id of the request, e.g. of the answer broadcast to a live room.
+     * @param source the upstream chat deltas, only obtained if the stream is started.
+     * @return the shared stream.
+     * @throws IllegalStateException if the stream is to be started but the maximum number
+     * of streams are all live.
+     */
+    public SharedChatStream share(String requestId, Supplier<Flux<ChatResponse>> source) {
+        Assert.hasText(requestId, "requestId must not be empty");
+        Assert.notNull(source, "source must not be null");
+        SharedChatStream stream;
+        SharedChatStream evicted = null;
+        boolean created = false;
+        synchronized (this.lock) {
+            evictExpired();
+            stream = this.streams.get(requestId);
+            if (stream == null) {
+                if (this.streams.size() >= this.maxStreams) {
+                    evicted = evictable();
+                    if (evicted == null) {
+                        throw new IllegalStateException("All " + this.maxStreams
+                                + " shared streams are live, none can be evicted for a new one");
+                    }
+                    this.streams.remove(evicted.getId(), evicted);
+                }
+                stream = new SharedChatStream(requestId, this.bufferSize, this.maxLag, this.overflow,
+                        this.gracePeriod, this.metrics);
+                this.streams.put(requestId, stream);
+                created = true;
+            }
+        }
+        if (evicted != null) {
+            evicted.dispose();
+        }
+        if (created) {
+            // Outside of the lock, obtaining the source may take a while.
+            try {
+                stream.connect(source.get());
+            }
+            catch (RuntimeException ex) {
+                this.streams.remove(requestId, stream);
+                stream.dispose();
+                throw ex;
+            }
+        }
+        return stream;
+    }
+
+    /**
+     * @param requestId the id of the request.
+     * @return the shared stream of the request id, {@code null} if there is none.
+     */
+    public SharedChatStream get(String requestId) {
+        var stream = this.streams.get(requestId);
+        return (stream != null && !stream.isExpired(this.ttl, System.nanoTime()) ? stream : null);
+    }
+
+    /**
+     * @return the number of streams currently retained.
+     */
+    public int size() {
+        return this.streams.size();
+    }
+
+    private void evictExpired() {
+        long now = System.nanoTime();
+        this.streams.values().removeIf(stream -> stream.isExpired(this.ttl, now));
+    }
+
+    /**
+     * @return the oldest terminated stream, or else the oldest one without subscribers,
+     * {@code null} if all streams are live with subscribers.
+     */
+    private SharedChatStream evictable() {
+        return this.streams.values()
+                .stream()
+                .filter(stream -> stream.isTerminated() || stream.getSubscribers() == 0)
+                .min(Comparator.comparing((SharedChatStream stream) -> !stream.isTerminated())
+                        .thenComparingLong(SharedChatStream::getCreatedAt))
+                .orElse(null);
+    }
+
+    /**
+     * What happens to a subscriber falling behind more than the maximum lag.
+     */
+    public enum Overflow {
+
+        /**
+         * The subscriber gets an overflow error.
+         */
+        DISCONNECT,
+
+        /**
+         * The subscriber skips the deltas it missed and continues with the latest one.
+         */
+        DROP
+
+    }
+
+}
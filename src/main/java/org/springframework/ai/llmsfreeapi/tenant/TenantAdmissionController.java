@@ -0,0 +1,446 @@
+package org.springframework.ai.llmsfreeapi.tenant;
+
+import org.springframework.ai.llmsfreeapi.metrics.LLMsFreeApiMetrics;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission control of the chat calls of many tenants sharing one client.
+ * <p>
+ * Every tenant has a {@link Quota}: a token bucket limiting its rate of calls, and a cap
+ * on its concurrent calls, counting the calls waiting for capacity. A call exceeding
+ * either is rejected at once with a {@link TenantQuotaExceededException}. Admitted calls
+ * share a total concurrency; while it is exhausted they wait, and the freed capacity is
+ * handed out by deficit round robin over the waiting tenants, each call costing its
+ * estimated prompt tokens, so that a tenant sending large prompts does not crowd out the
+ * others. A call which cannot be scheduled within the queue timeout is rejected as well.
+ * <p>
+ * The state of at most {@code maxTenants} tenants is kept; the least recently seen idle
+ * tenant, with no calls and a full bucket, is forgotten to make room, so that a tenant
+ * cannot reset its rate limit by crowding itself out. Calls of a new tenant are rejected if
+ * no tenant is idle. Metrics are tagged with at most {@code maxTenants} distinct tenants, the others
+ * are reported as {@value #OTHER_TENANTS}.
+ */
+public class TenantAdmissionController {
+
+    /**
+     * Name of the request attribute holding the tenant of the chat calls made while handling
+     * a web request.
+     */
+    public static final String TENANT_ATTRIBUTE = TenantAdmissionController.class.getName() + ".tenant";
+
+    public static final int DEFAULT_MAX_TENANTS = 1000;
+
+    public static final Duration DEFAULT_QUEUE_TIMEOUT = Duration.ofSeconds(30);
+
+    /**
+     * Estimated prompt tokens a waiting tenant may send per round.
+     */
+    public static final long QUANTUM = 4096;
+
+    static final String OTHER_TENANTS = "other";
+
+    private final Quota defaultQuota;
+
+    private final Map<String, Quota> quotas = new ConcurrentHashMap<>();
+
+    private final int maxConcurrency;
+
+    private final Duration queueTimeout;
+
+    private final int maxTenants;
+
+    private final LLMsFreeApiMetrics metrics;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * The known tenants, least recently seen first.
+     */
+    private final LinkedHashMap<String, Tenant> tenants = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The tenants with waiting calls, in round-robin order.
+     */
+    private final Deque<Tenant> active = new ArrayDeque<>();
+
+    private final Set<String> taggedTenants = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Admitted and waiting calls, written with the lock held and readable without it.
+     */
+    private volatile int inFlight;
+
+    private volatile int queued;
+
+    /**
+     * @param defaultQuota the quota of the tenants with no quota of their own.
+     * @param maxConcurrency the total number of concurrent calls, 0 for no limit.
+     * @param queueTimeout the maximum time an admitted call waits for capacity.
+     * @param maxTenants the maximum number of tenants tracked at the same time.
+     * @param metrics the metrics to record the admissions and usage in.
+     */
+    public TenantAdmissionController(Quota defaultQuota, int maxConcurrency, Duration queueTimeout, int maxTenants,
+                                     LLMsFreeApiMetrics metrics) {
+        Assert.notNull(defaultQuota, "defaultQuota must not be null");
+        Assert.isTrue(maxConcurrency >= 0, "maxConcurrency must not be negative");
+        Assert.notNull(queueTimeout, "queueTimeout must not be null");
+        Assert.isTrue(maxTenants > 0, "maxTenants must be positive");
+        Assert.notNull(metrics, "LLMsFreeApiMetrics must not be null");
+        this.defaultQuota = defaultQuota;
+        this.maxConcurrency = maxConcurrency;
+        this.queueTimeout = queueTimeout;
+        this.maxTenants = maxTenants;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Set the quota of a tenant, replacing the default quota. Applies to the calls the
+     * tenant makes after it is next seen.
+     * @param tenantId the tenant.
+     * @param quota the quota.
+     */
+    public void setQuota(String tenantId, Quota quota) {
+        Assert.hasText(tenantId, "tenantId must not be empty");
+        Assert.notNull(quota, "quota must not be null");
+        this.quotas.put(tenantId, quota);
+    }
+
+    /**
+     * @return whether {@link #acquire(String, long)} may wait for capacity.
+     */
+    public boolean isLimited() {
+        return this.maxConcurrency > 0;
+    }
+
+    /**
+     * Admit a call of a tenant, waiting for capacity if the total concurrency is exhausted.
+     * @param tenantId the tenant.
+     * @param cost the estimated prompt tokens of the call.
+     * @return the permit, to be released when the call is done.
+     * @throws TenantQuotaExceededException if the call is not admitted.
+     */
+    public Permit acquire(String tenantId, long cost) {
+        Assert.hasText(tenantId, "tenantId must not be empty");
+        this.lock.lock();
+        try {
+            Tenant tenant = this.tenants.get(tenantId);
+            if (tenant == null) {
+                tenant = register(tenantId);
+            }
+            Quota quota = tenant.quota;
+            long now = System.nanoTime();
+            if (quota.isRateLimited()) {
+                tenant.refill(now);
+                if (tenant.tokens < 1) {
+                    long waitNanos = (long) ((1 - tenant.tokens) / quota.ratePerSecond() * 1_000_000_000L);
+                    throw reject(tenantId, TenantQuotaExceededException.Reason.RATE_LIMITED, Duration.ofNanos(waitNanos));
+                }
+            }
+            if (quota.maxConcurrency() > 0 && tenant.inFlight + tenant.queue.size() >= quota.maxConcurrency()) {
+                throw reject(tenantId, TenantQuotaExceededException.Reason.CONCURRENCY_LIMITED, null);
+            }
+            if (quota.isRateLimited()) {
+                tenant.tokens -= 1;
+            }
+            if (!isLimited()) {
+                tenant.inFlight++;
+                this.inFlight++;
+                this.metrics.increment(LLMsFreeApiMetrics.TENANT_REQUESTS, "tenant", tag(tenantId), "outcome", "admitted");
+                return new Permit(tenant);
+            }
+
+            var waiter = new Waiter(tenant, Math.max(1, cost), this.lock.newCondition());
+            if (tenant.queue.isEmpty()) {
+                tenant.deficit = 0;
+                tenant.visited = false;
+                this.active.addLast(tenant);
+            }
+            tenant.queue.addLast(waiter);
+            this.queued++;
+            dispatch();
+
+            long remaining = this.queueTimeout.toNanos();
+            try {
+                while (!waiter.admitted) {
+                    if (remaining <= 0) {
+                        throw reject(tenantId, TenantQuotaExceededException.Reason.QUEUE_TIMEOUT, null);
+                    }
+                    remaining = waiter.granted.awaitNanos(remaining);
+                }
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                if (waiter.admitted) {
+                    release(tenant);
+                    waiter.admitted = false;
+                }
+                throw new IllegalStateException("Interrupted while waiting for admission of tenant '" + tenantId + "'", ex);
+            }
+            finally {
+                if (!waiter.admitted) {
+                    dequeue(waiter);
+                }
+            }
+            this.metrics.increment(LLMsFreeApiMetrics.TENANT_REQUESTS, "tenant", tag(tenantId), "outcome", "admitted");
+            return new Permit(tenant);
+        }
+        finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Record the tokens used by a call of a tenant.
+     * @param tenantId the tenant.
+     * @param tokens the prompt and completion tokens.
+     */
+    public void recordUsage(String tenantId, long tokens) {
+        this.metrics.add(LLMsFreeApiMetrics.TENANT_TOKENS, tokens, "tenant", tag(tenantId));
+    }
+
+    /**
+     * @return the number of admitted calls in flight.
+     */
+    public int getInFlight() {
+        return this.inFlight;
+    }
+
+    /**
+     * @return the number of calls waiting for admission.
+     */
+    public int getQueued() {
+        return this.queued;
+    }
+
+    /**
+     * @return the number of tenants currently tracked.
+     */
+    public int getTenantCount() {
+        this.lock.lock();
+        try {
+            return this.tenants.size();
+        }
+        finally {
+            this.lock.unlock();
+        }
+    }
+
+    private Tenant register(String tenantId) {
+        if (this.tenants.size() >= this.maxTenants) {
+            long now = System.nanoTime();
+            Iterator<Tenant> iterator = this.tenants.values().iterator();
+            boolean evicted = false;
+            while (iterator.hasNext() && !evicted) {
+                Tenant candidate = iterator.next();
+                if (candidate.isIdle(now)) {
+                    iterator.remove();
+                    evicted = true;
+                }
+            }
+            if (!evicted) {
+                throw reject(tenantId, TenantQuotaExceededException.Reason.TOO_MANY_TENANTS, null);
+            }
+        }
+        Quota quota = this.quotas.getOrDefault(tenantId, this.defaultQuota);
+        Tenant tenant = new Tenant(tenantId, quota, System.nanoTime());
+        this.tenants.put(tenantId, tenant);
+        return tenant;
+    }
+
+    /**
+     * Hand the free capacity to the waiting calls by deficit round robin. Must be called
+     * with the lock held.
+     */
+    private void dispatch() {
+        while (!this.active.isEmpty() && this.inFlight < this.maxConcurrency) {
+            Tenant tenant = this.active.peekFirst();
+            if (!tenant.visited) {
+                tenant.deficit += QUANTUM;
+                tenant.visited = true;
+            }
+            Waiter head = tenant.queue.peekFirst();
+            if (head.cost <= tenant.deficit) {
+                tenant.deficit -= head.cost;
+                tenant.queue.pollFirst();
+                this.queued--;
+                tenant.inFlight++;
+                this.inFlight++;
+                head.admitted = true;
+                head.granted.signal();
+                if (tenant.queue.isEmpty()) {
+                    this.active.pollFirst();
+                }
+            }
+            else {
+                // Its turn is over, the deficit carries over to the next round.
+                tenant.visited = false;
+                this.active.addLast(this.active.pollFirst());
+            }
+        }
+    }
+
+    private void dequeue(Waiter waiter) {
+        Tenant tenant = waiter.tenant;
+        if (tenant.queue.remove(waiter)) {
+            this.queued--;
+            if (tenant.queue.isEmpty()) {
+                this.active.remove(tenant);
+            }
+        }
+    }
+
+    private void release(Tenant tenant) {
+        this.lock.lock();
+        try {
+            tenant.inFlight--;
+            this.inFlight--;
+            dispatch();
+        }
+        finally {
+            this.lock.unlock();
+        }
+    }
+
+    private TenantQuotaExceededException reject(String tenantId, TenantQuotaExceededException.Reason reason,
+                                                Duration retryAfter) {
+        this.metrics.increment(LLMsFreeApiMetrics.TENANT_REQUESTS, "tenant", tag(tenantId),
+                "outcome", reason.name().toLowerCase(Locale.ROOT));
+        return new TenantQuotaExceededException(tenantId, reason, retryAfter);
+    }
+
+    private String tag(String tenantId) {
+        if (!this.taggedTenants.contains(tenantId) && this.taggedTenants.size() < this.maxTenants) {
+            this.taggedTenants.add(tenantId);
+        }
+        return (this.taggedTenants.contains(tenantId) ? tenantId : OTHER_TENANTS);
+    }
+
+    /**
+     * The limits of a tenant.
+     *
+     * @param ratePerSecond The calls per second the bucket refills with, 0 for no rate limit.
+     * @param burst The calls the bucket holds.
+     * @param maxConcurrency The concurrent calls, admitted or waiting, 0 for no limit.
+     */
+    public record Quota(double ratePerSecond, int burst, int maxConcurrency) {
+
+        public Quota {
+            Assert.isTrue(ratePerSecond >= 0, "ratePerSecond must not be negative");
+            Assert.isTrue(burst > 0 || ratePerSecond == 0, "burst must be positive when rate limited");
+            Assert.isTrue(maxConcurrency >= 0, "maxConcurrency must not be negative");
+        }
+
+        boolean isRateLimited() {
+            return this.ratePerSecond > 0;
+        }
+
+    }
+
+    /**
+     * The admission of a call.
+     */
+    public final class Permit {
+
+        private final Tenant tenant;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Tenant tenant) {
+            this.tenant = tenant;
+        }
+
+        public String getTenantId() {
+            return this.tenant.id;
+        }
+
+        /**
+         * Release the capacity held by the call. Calling this more than once has no effect.
+         */
+        public void release() {
+            if (this.released.compareAndSet(false, true)) {
+                TenantAdmissionController.this.release(this.tenant);
+            }
+        }
+
+    }
+
+    private static final class Tenant {
+
+        private final String id;
+
+        private final Quota quota;
+
+        private final Deque<Waiter> queue = new ArrayDeque<>();
+
+        private double tokens;
+
+        private long refilledAt;
+
+        private int inFlight;
+
+        private long deficit;
+
+        private boolean visited;
+
+        Tenant(String id, Quota quota, long now) {
+            this.id = id;
+            this.quota = quota;
+            this.tokens = quota.burst();
+            this.refilledAt = now;
+        }
+
+        void refill(long now) {
+            double refill = (now - this.refilledAt) / 1_000_000_000.0 * this.quota.ratePerSecond();
+            this.tokens = Math.min(this.quota.burst(), this.tokens + refill);
+            this.refilledAt = now;
+        }
+
+        /**
+         * Whether forgetting the tenant loses nothing: it has no calls and its bucket is
+         * full again, so that it starts over with the same state when next seen.
+         */
+        boolean isIdle(long now) {
+            if (this.inFlight > 0 || !this.queue.isEmpty()) {
+                return false;
+            }
+            if (this.quota.isRateLimited()) {
+                refill(now);
+                return this.tokens >= this.quota.burst();
+            }
+            return true;
+        }
+
+    }
+
+    private static final class Waiter {
+
+        private final Tenant tenant;
+
+        private final long cost;
+
+        private final Condition granted;
+
+        private boolean admitted;
+
+        Waiter(Tenant tenant, long cost, Condition granted) {
+            this.tenant = tenant;
+            this.cost = cost;
+            this.granted = granted;
+        }
+
+    }
+
+}
@@ -0,0 +1,62 @@
+package org.springframework.ai.llmsfreeapi.tenant;
+
+import java.time.Duration;
+
+/**
+ * Thrown when a chat call is not admitted because its tenant exceeded a quota, or because
+ * it could not be scheduled in time.
+ */
+public class TenantQuotaExceededException extends IllegalStateException {
+
+    private final String tenantId;
+
+    private final Reason reason;
+
+    private final Duration retryAfter;
+
+    public TenantQuotaExceededException(String tenantId, Reason reason, Duration retryAfter) {
+        super("Request of tenant '" + tenantId + "' rejected: " + reason.getDescription()
+                + (retryAfter != null ? ", retry after " + retryAfter.toMillis() + "ms" : ""));
+        this.tenantId = tenantId;
+        this.reason = reason;
+        this.retryAfter = retryAfter;
+    }
+
+    public String getTenantId() {
+        return this.tenantId;
+    }
+
+    public Reason getReason() {
+        return this.reason;
+    }
+
+    /**
+     * @return the time after which the call may succeed, or {@code null} if unknown.
+     */
+    public Duration getRetryAfter() {
+        return this.retryAfter;
+    }
+
+    public enum Reason {
+
+        RATE_LIMITED("rate limit exceeded"),
+
+        CONCURRENCY_LIMITED("too many concurrent requests"),
+
+        QUEUE_TIMEOUT("no capacity became available in time"),
+
+        TOO_MANY_TENANTS("too many active tenants");
+
+        private final String description;
+
+        Reason(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return this.description;
+        }
+
+    }
+
+}
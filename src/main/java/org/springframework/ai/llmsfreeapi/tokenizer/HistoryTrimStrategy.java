@@ -0,0 +1,97 @@
+package org.springframework.ai.llmsfreeapi.tokenizer;
+
+import org.springframework.ai.llmsfreeapi.api.LLMsFreeApi;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * How a conversation history exceeding the prompt token budget is handled.
+ */
+public enum HistoryTrimStrategy {
+
+    /**
+     * Send the history as is.
+     */
+    NONE {
+        @Override
+        public List<LLMsFreeApi.ChatCompletionMessage> trim(List<LLMsFreeApi.ChatCompletionMessage> messages,
+                                                            int maxTokens, TokenEstimator estimator) {
+            return messages;
+        }
+    },
+
+    /**
+     * Reject the request before it is sent.
+     */
+    FAIL {
+        @Override
+        public List<LLMsFreeApi.ChatCompletionMessage> trim(List<LLMsFreeApi.ChatCompletionMessage> messages,
+                                                            int maxTokens, TokenEstimator estimator) {
+            int tokens = estimator.estimate(messages);
+            if (tokens > maxTokens) {
+                throw new PromptTooLargeException(tokens, maxTokens);
+            }
+            return messages;
+        }
+    },
+
+    /**
+     * Drop the oldest messages, keeping the system messages and the latest message, and
+     * reject the request if that is not enough. Tool responses are dropped together with
+     * the tool call they answer.
+     */
+    DROP_OLDEST {
+        @Override
+        public List<LLMsFreeApi.ChatCompletionMessage> trim(List<LLMsFreeApi.ChatCompletionMessage> messages,
+                                                            int maxTokens, TokenEstimator estimator) {
+            int size = messages.size();
+            int[] estimates = new int[size];
+            int tokens = TokenEstimator.REQUEST_OVERHEAD;
+            for (int i = 0; i < size; i++) {
+                estimates[i] = estimator.estimate(messages.get(i));
+                tokens += estimates[i];
+            }
+            if (tokens <= maxTokens) {
+                return messages;
+            }
+
+            boolean[] dropped = new boolean[size];
+            for (int i = 0; i < size - 1 && tokens > maxTokens; i++) {
+                if (messages.get(i).role() == LLMsFreeApi.ChatCompletionMessage.Role.SYSTEM) {
+                    continue;
+                }
+                dropped[i] = true;
+                tokens -= estimates[i];
+                // Do not leave tool responses without the tool call they belong to.
+                while (i + 1 < size - 1 && messages.get(i + 1).role() == LLMsFreeApi.ChatCompletionMessage.Role.TOOL) {
+                    i++;
+                    dropped[i] = true;
+                    tokens -= estimates[i];
+                }
+            }
+            if (tokens > maxTokens) {
+                throw new PromptTooLargeException(tokens, maxTokens);
+            }
+
+            List<LLMsFreeApi.ChatCompletionMessage> trimmed = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                if (!dropped[i]) {
+                    trimmed.add(messages.get(i));
+                }
+            }
+            return trimmed;
+        }
+    };
+
+    /**
+     * @param messages the conversation history.
+     * @param maxTokens the prompt token budget.
+     * @param estimator the token estimator of the model.
+     * @return the history to send.
+     * @throws PromptTooLargeException if the history cannot be made to fit the budget.
+     */
+    public abstract List<LLMsFreeApi.ChatCompletionMessage> trim(List<LLMsFreeApi.ChatCompletionMessage> messages,
+                                                                 int maxTokens, TokenEstimator estimator);
+
+}
@@ -0,0 +1,26 @@
+package org.springframework.ai.llmsfreeapi.tokenizer;
+
+/**
+ * Thrown when a prompt exceeds the prompt token budget and cannot be trimmed to fit it.
+ */
+public class PromptTooLargeException extends IllegalArgumentException {
+
+    private final int estimatedTokens;
+
+    private final int maxTokens;
+
+    public PromptTooLargeException(int estimatedTokens, int maxTokens) {
+        super("Prompt of about " + estimatedTokens + " tokens exceeds the budget of " + maxTokens + " tokens");
+        this.estimatedTokens = estimatedTokens;
+        this.maxTokens = maxTokens;
+    }
+
+    public int getEstimatedTokens() {
+        return this.estimatedTokens;
+    }
+
+    public int getMaxTokens() {
+        return this.maxTokens;
+    }
+
+}
@@ -0,0 +1,176 @@
+package org.springframework.ai.llmsfreeapi.tokenizer;
+
+import org.springframework.ai.llmsfreeapi.api.LLMsFreeApi;
+
+import java.util.List;
+
+/**
+ * Fast, allocation free token count estimation.
+ * <p>
+ * The free-api servers do not expose their tokenizers, so tokens are estimated from the
+ * character classes of the text: runs of ASCII letters and digits count one token per four
+ * characters, ASCII punctuation one token per character, and CJK characters a per model
+ * family ratio. The estimates are slightly conservative, which is what a budget needs.
+ */
+public class TokenEstimator {
+
+    /**
+     * Tokens added for the role and framing of every message.
+     */
+    public static final int MESSAGE_OVERHEAD = 4;
+
+    /**
+     * Tokens added once per request.
+     */
+    public static final int REQUEST_OVERHEAD = 3;
+
+    /**
+     * Tokens counted for a file sent inline as a data URI, like a URL: its encoded content
+     * is not read by the model as text.
+     */
+    public static final int DATA_URI_TOKENS = 16;
+
+    private static final int ASCII_CHARS_PER_TOKEN = 4;
+
+    private static final double OTHER_TOKENS_PER_CHAR = 0.5;
+
+    private static final TokenEstimator KIMI = new TokenEstimator(0.6);
+
+    private static final TokenEstimator GLM = new TokenEstimator(0.6);
+
+    private static final TokenEstimator QWEN = new TokenEstimator(0.7);
+
+    private static final TokenEstimator DEFAULT = new TokenEstimator(1.0);
+
+    private final double cjkTokensPerChar;
+
+    /**
+     * @param cjkTokensPerChar tokens per CJK character.
+     */
+    public TokenEstimator(double cjkTokensPerChar) {
+        this.cjkTokensPerChar = cjkTokensPerChar;
+    }
+
+    /**
+     * @param model the model name, may be {@code null}.
+     * @return the estimator of the model family.
+     */
+    public static TokenEstimator forModel(String model) {
+        if (model == null) {
+            return DEFAULT;
+        }
+        if (model.startsWith(LLMsFreeApi.ChatModel.KIMI.getValue())) {
+            return KIMI;
+        }
+        if (model.startsWith("glm")) {
+            return GLM;
+        }
+        if (model.startsWith(LLMsFreeApi.ChatModel.QWEN.getValue())) {
+            return QWEN;
+        }
+        return DEFAULT;
+    }
+
+    /**
+     * @param text the text, may be {@code null}.
+     * @return the estimated number of tokens of the text.
+     */
+    public int estimate(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+        double tokens = 0;
+        int run = 0;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80 && Character.isLetterOrDigit(c)) {
+                run++;
+                continue;
+            }
+            tokens += runTokens(run);
+            run = 0;
+            if (c < 0x80) {
+                if (!Character.isWhitespace(c)) {
+                    tokens += 1;
+                }
+            }
+            else if (isCjk(c)) {
+                tokens += this.cjkTokensPerChar;
+            }
+            else if (!Character.isLowSurrogate(c)) {
+                tokens += OTHER_TOKENS_PER_CHAR;
+            }
+        }
+        tokens += runTokens(run);
+        return (int) Math.ceil(tokens);
+    }
+
+    /**
+     * @param message the message.
+     * @return the estimated number of tokens of the message, including its framing.
+     */
+    public int estimate(LLMsFreeApi.ChatCompletionMessage message) {
+        int tokens = MESSAGE_OVERHEAD + estimateContent(message.content());
+        if (message.name() != null) {
+            tokens += estimate(message.name());
+        }
+        if (message.toolCalls() != null) {
+            for (LLMsFreeApi.ChatCompletionMessage.ToolCall toolCall : message.toolCalls()) {
+                if (toolCall.function() != null) {
+                    tokens += estimate(toolCall.function().name()) + estimate(toolCall.function().arguments());
+                }
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * @param messages the messages of a request.
+     * @return the estimated number of prompt tokens of the request.
+     */
+    public int estimate(List<LLMsFreeApi.ChatCompletionMessage> messages) {
+        int tokens = REQUEST_OVERHEAD;
+        for (LLMsFreeApi.ChatCompletionMessage message : messages) {
+            tokens += estimate(message);
+        }
+        return tokens;
+    }
+
+    private int estimateContent(Object content) {
+        if (content instanceof CharSequence text) {
+            return estimate(text);
+        }
+        if (content instanceof List<?> parts) {
+            int tokens = 0;
+            for (Object part : parts) {
+                if (part instanceof LLMsFreeApi.ChatCompletionMessage.DocumentContent document) {
+                    tokens += estimate(document.text())
+                            + (document.fileUrl() != null ? estimateUrl(document.fileUrl().url()) : 0);
+                }
+                else if (part instanceof LLMsFreeApi.ChatCompletionMessage.ImageContent image) {
+                    tokens += estimate(image.text())
+                            + (image.imageUrl() != null ? estimateUrl(image.imageUrl().url()) : 0);
+                }
+            }
+            return tokens;
+        }
+        return 0;
+    }
+
+    private int estimateUrl(String url) {
+        return (url != null && url.startsWith("data:") ? DATA_URI_TOKENS : estimate(url));
+    }
+
+    private static int runTokens(int run) {
+        return (run + ASCII_CHARS_PER_TOKEN - 1) / ASCII_CHARS_PER_TOKEN;
+    }
+
+    private static boolean isCjk(char c) {
+        return (c >= 0x4E00 && c <= 0x9FFF) // CJK Unified Ideographs
+                || (c >= 0x3400 && c <= 0x4DBF) // CJK Extension A
+                || (c >= 0x3000 && c <= 0x30FF) // CJK punctuation, Hiragana, Katakana
+                || (c >= 0xAC00 && c <= 0xD7AF) // Hangul syllables
+                || (c >= 0xFF00 && c <= 0xFFEF); // Full width forms
+    }
+
+}
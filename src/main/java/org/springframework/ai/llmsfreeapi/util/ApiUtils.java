@@ -14,6 +14,10 @@ public class ApiUtils {
 
     public static final Float DEFAULT_TOP_P = 0.7f;
 
+    public static Consumer<HttpHeaders> getJsonContentHeaders() {
+        return (headers) -> headers.setContentType(MediaType.APPLICATION_JSON);
+    }
+
     public static Consumer<HttpHeaders> getJsonContentHeaders(String apiKey) {
         return (headers) -> {
             headers.setBearerAuth(apiKey);
@@ -0,0 +1,164 @@
+package org.springframework.ai.llmsfreeapi;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.llmsfreeapi.api.LLMsFreeApi;
+import org.springframework.ai.llmsfreeapi.api.LLMsFreeApiTokenPool;
+import org.springframework.ai.llmsfreeapi.metrics.LLMsFreeApiMetrics;
+import org.springframework.ai.llmsfreeapi.tenant.TenantAdmissionController;
+import org.springframework.ai.retry.RetryUtils;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Threads of {@link LLMsFreeApiChatClient#call(Prompt)}.
+ */
+class LLMsFreeApiChatClientCallTest {
+
+    private static final String COMPLETION = "{\"id\":\"1\",\"object\":\"chat.completion\",\"created\":0,"
+            + "\"model\":\"kimi\",\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"hi\"},"
+            + "\"finish_reason\":\"stop\"}]}";
+
+    private final List<String> exchangeThreads = new CopyOnWriteArrayList<>();
+
+    private DisposableServer server;
+
+    private LLMsFreeApi llmsFreeApi;
+
+    @BeforeEach
+    void startServer() {
+        this.server = HttpServer.create()
+                .port(0)
+                .route(routes -> routes.post("/v1/chat/completions", (request, response) -> response
+                        .header(HttpHeaderNames.CONTENT_TYPE, "application/json")
+                        .sendString(Mono.just(COMPLETION))))
+                .bindNow();
+        var restClientBuilder = RestClient.builder().requestInterceptor((request, body, execution) -> {
+            this.exchangeThreads.add(Thread.currentThread().getName());
+            return execution.execute(request, body);
+        });
+        this.llmsFreeApi = new LLMsFreeApi("http://localhost:" + this.server.port(), LLMsFreeApiTokenPool.of("token"),
+                restClientBuilder, RetryUtils.DEFAULT_RESPONSE_ERROR_HANDLER, new LLMsFreeApiMetrics());
+        this.llmsFreeApi.setReactive(false);
+    }
+
+    @AfterEach
+    void stopServer() {
+        this.llmsFreeApi.closeConnections(Duration.ofSeconds(5));
+        this.server.disposeNow();
+    }
+
+    @Test
+    void callsOnTheCallingThreadByDefault() {
+        var chatClient = new LLMsFreeApiChatClient(this.llmsFreeApi);
+
+        assertThat(chatClient.call(new Prompt("hello")).getResult().getOutput().getContent()).isEqualTo("hi");
+        assertThat(this.exchangeThreads).containsExactly(Thread.currentThread().getName());
+    }
+
+    @Test
+    void callsOnTheCallScheduler() {
+        Scheduler scheduler = Schedulers.newSingle("llmsfreeapi-call");
+        try {
+            var chatClient = new LLMsFreeApiChatClient(this.llmsFreeApi);
+            chatClient.setCallScheduler(scheduler);
+
+            assertThat(chatClient.call(new Prompt("hello")).getResult().getOutput().getContent()).isEqualTo("hi");
+            assertThat(this.exchangeThreads).singleElement().asString().startsWith("llmsfreeapi-call");
+        }
+        finally {
+            scheduler.dispose();
+        }
+    }
+
+    @Test
+    void resolvesTheRequestAttributesOnTheCallingThread() {
+        Scheduler scheduler = Schedulers.newSingle("llmsfreeapi-call");
+        var attributes = new MapRequestAttributes();
+        attributes.setAttribute(TenantAdmissionController.TENANT_ATTRIBUTE, "tenant", RequestAttributes.SCOPE_REQUEST);
+        RequestContextHolder.setRequestAttributes(attributes);
+        try {
+            var controller = new TenantAdmissionController(new TenantAdmissionController.Quota(0, 0, 0), 0,
+                    TenantAdmissionController.DEFAULT_QUEUE_TIMEOUT, TenantAdmissionController.DEFAULT_MAX_TENANTS,
+                    new LLMsFreeApiMetrics());
+            var chatClient = new LLMsFreeApiChatClient(this.llmsFreeApi);
+            chatClient.setTenantAdmissionController(controller);
+            chatClient.setCallScheduler(scheduler);
+
+            chatClient.call(new Prompt("hello"));
+
+            assertThat(this.exchangeThreads).singleElement().asString().startsWith("llmsfreeapi-call");
+            assertThat(controller.getTenantCount()).isEqualTo(1);
+        }
+        finally {
+            RequestContextHolder.resetRequestAttributes();
+            scheduler.dispose();
+        }
+    }
+
+    /**
+     * The attributes of a web request, without a servlet container.
+     */
+    private static final class MapRequestAttributes implements RequestAttributes {
+
+        private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+
+        @Override
+        public Object getAttribute(String name, int scope) {
+            return this.attributes.get(name);
+        }
+
+        @Override
+        public void setAttribute(String name, Object value, int scope) {
+            this.attributes.put(name, value);
+        }
+
+        @Override
+        public void removeAttribute(String name, int scope) {
+            this.attributes.remove(name);
+        }
+
+        @Override
+        public String[] getAttributeNames(int scope) {
+            return this.attributes.keySet().toArray(new String[0]);
+        }
+
+        @Override
+        public void registerDestructionCallback(String name, Runnable callback, int scope) {
+        }
+
+        @Override
+        public Object resolveReference(String key) {
+            return null;
+        }
+
+        @Override
+        public String getSessionId() {
+            return "session";
+        }
+
+        @Override
+        public Object getSessionMutex() {
+            return this;
+        }
+
+    }
+
+}
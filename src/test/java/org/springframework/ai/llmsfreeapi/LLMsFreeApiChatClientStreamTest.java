@@ -0,0 +1,102 @@
+package org.springframework.ai.llmsfreeapi;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.llmsfreeapi.api.LLMsFreeApi;
+import org.springframework.ai.llmsfreeapi.api.LLMsFreeApiChatOptions;
+import org.springframework.ai.retry.TransientAiException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * Time limits and retries of {@link LLMsFreeApiChatClient#stream(Prompt)}.
+ */
+class LLMsFreeApiChatClientStreamTest {
+
+    private static final String CHUNK = "data: {\"id\":\"1\",\"object\":\"chat.completion.chunk\",\"created\":0,"
+            + "\"model\":\"kimi\",\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":\"x\"},"
+            + "\"finish_reason\":null}]}\n\n";
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    private DisposableServer server;
+
+    private LLMsFreeApi llmsFreeApi;
+
+    @AfterEach
+    void stopServer() {
+        this.llmsFreeApi.closeConnections(Duration.ofSeconds(5));
+        this.server.disposeNow();
+    }
+
+    @Test
+    void retriesAStreamFailingBeforeItsFirstChunk() {
+        start(2, Flux.just(CHUNK, "data: [DONE]\n\n"));
+        var chatClient = new LLMsFreeApiChatClient(this.llmsFreeApi);
+
+        ChatResponse response = chatClient.stream(new Prompt("hello")).blockLast(TIMEOUT);
+
+        assertThat(response.getResult().getOutput().getContent()).isEqualTo("x");
+        assertThat(this.attempts).hasValue(3);
+    }
+
+    @Test
+    void doesNotRetryAStreamFailingAfterItsFirstChunk() {
+        start(0, Flux.just(CHUNK).concatWith(Flux.never()));
+        var chatClient = new LLMsFreeApiChatClient(this.llmsFreeApi,
+                options().withIdleTimeout(Duration.ofMillis(200)).build());
+
+        assertThatExceptionOfType(TransientAiException.class)
+                .isThrownBy(() -> chatClient.stream(new Prompt("hello")).blockLast(TIMEOUT))
+                .withMessageContaining("idle timeout");
+        assertThat(this.attempts).hasValue(1);
+    }
+
+    @Test
+    void deadlineStartsWhenTheStreamIsSubscribed() throws InterruptedException {
+        start(0, Flux.just(CHUNK, "data: [DONE]\n\n"));
+        var chatClient = new LLMsFreeApiChatClient(this.llmsFreeApi,
+                options().withTimeout(Duration.ofMillis(500)).build());
+
+        Flux<ChatResponse> stream = chatClient.stream(new Prompt("hello"));
+        Thread.sleep(700);
+
+        assertThat(stream.blockLast(TIMEOUT).getResult().getOutput().getContent()).isEqualTo("x");
+    }
+
+    private static LLMsFreeApiChatOptions.Builder options() {
+        return LLMsFreeApiChatOptions.builder().withModel(LLMsFreeApi.ChatModel.KIMI.getValue());
+    }
+
+    /**
+     * Start an upstream failing the first requests with a 500, then streaming the events.
+     */
+    private void start(int failures, Flux<String> events) {
+        this.server = HttpServer.create()
+                .port(0)
+                .route(routes -> routes.post("/v1/chat/completions", (request, response) -> {
+                    if (this.attempts.incrementAndGet() <= failures) {
+                        return response.status(HttpResponseStatus.INTERNAL_SERVER_ERROR)
+                                .sendString(Mono.just("{\"message\":\"busy\"}"));
+                    }
+                    return response.header(HttpHeaderNames.CONTENT_TYPE, "text/event-stream").sendString(events);
+                }))
+                .bindNow();
+        this.llmsFreeApi = new LLMsFreeApi("http://localhost:" + this.server.port(), "token");
+    }
+
+}
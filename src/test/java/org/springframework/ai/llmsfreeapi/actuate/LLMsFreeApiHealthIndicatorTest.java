@@ -0,0 +1,97 @@
+package org.springframework.ai.llmsfreeapi.actuate;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.llmsfreeapi.api.LLMsFreeApi;
+import org.springframework.ai.llmsfreeapi.api.LLMsFreeApiTokenChecker;
+import org.springframework.ai.llmsfreeapi.api.LLMsFreeApiTokenPool;
+import org.springframework.ai.llmsfreeapi.metrics.LLMsFreeApiMetrics;
+import org.springframework.ai.retry.RetryUtils;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.web.client.RestClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LLMsFreeApiHealthIndicatorTest {
+
+    /**
+     * The answers of the token check endpoint, per token.
+     */
+    private static final Map<String, String> ANSWERS = Map.of("live", "{\"live\":true}", "dead", "{\"live\":false}",
+            "empty", "{}", "garbage", "<html>");
+
+    private DisposableServer server;
+
+    @BeforeEach
+    void startServer() {
+        this.server = HttpServer.create()
+                .port(0)
+                .route(routes -> routes.post("/token/check", (request, response) -> response
+                        .header(HttpHeaderNames.CONTENT_TYPE, "application/json")
+                        .sendString(request.receive().aggregate().asString().map(body -> ANSWERS.entrySet().stream()
+                                .filter(answer -> body.contains("\"" + answer.getKey() + "\""))
+                                .map(Map.Entry::getValue)
+                                .findFirst()
+                                .orElse("{}")))))
+                .bindNow();
+    }
+
+    @AfterEach
+    void stopServer() {
+        this.server.disposeNow();
+    }
+
+    @Test
+    void upWhileATokenIsLive() {
+        assertThat(checkAll("live", "dead", "empty").getStatus()).isEqualTo(Status.UP);
+    }
+
+    @Test
+    void downOnlyOnceEveryTokenIsConfirmedDead() {
+        assertThat(checkAll("dead").getStatus()).isEqualTo(Status.DOWN);
+    }
+
+    @Test
+    void outOfServiceWhenTheChecksFailWithoutALiveToken() {
+        var tokenPool = LLMsFreeApiTokenPool.of("dead,empty,garbage");
+        var checker = checker(tokenPool);
+        tokenPool.getTokens().forEach(checker::check);
+
+        assertThat(checker.getStatuses()).extracting(LLMsFreeApiTokenChecker.TokenStatus::state).containsExactly(
+                LLMsFreeApiTokenChecker.State.DEAD, LLMsFreeApiTokenChecker.State.UNREACHABLE,
+                LLMsFreeApiTokenChecker.State.UNREACHABLE);
+        // An unanswered check takes no token out of rotation.
+        assertThat(tokenPool.isAvailable("empty")).isTrue();
+        assertThat(tokenPool.isAvailable("garbage")).isTrue();
+        assertThat(new LLMsFreeApiHealthIndicator(checker).health().getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+    }
+
+    @Test
+    void unknownUntilTheTokensAreChecked() {
+        var checker = checker(LLMsFreeApiTokenPool.of("live"));
+
+        assertThat(new LLMsFreeApiHealthIndicator(checker).health().getStatus()).isEqualTo(Status.UNKNOWN);
+    }
+
+    private Health checkAll(String... tokens) {
+        var tokenPool = LLMsFreeApiTokenPool.of(String.join(",", tokens));
+        var checker = checker(tokenPool);
+        tokenPool.getTokens().forEach(checker::check);
+        return new LLMsFreeApiHealthIndicator(checker).health();
+    }
+
+    private LLMsFreeApiTokenChecker checker(LLMsFreeApiTokenPool tokenPool) {
+        var llmsFreeApi = new LLMsFreeApi("http://localhost:" + this.server.port(), tokenPool, RestClient.builder(),
+                RetryUtils.DEFAULT_RESPONSE_ERROR_HANDLER, new LLMsFreeApiMetrics());
+        return new LLMsFreeApiTokenChecker(llmsFreeApi);
+    }
+
+}
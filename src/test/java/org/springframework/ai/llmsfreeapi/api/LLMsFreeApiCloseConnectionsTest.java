@@ -0,0 +1,102 @@
+package org.springframework.ai.llmsfreeapi.api;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.llmsfreeapi.crac.LLMsFreeApiCheckpointLifecycle;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LLMsFreeApiCloseConnectionsTest {
+
+    private static final String COMPLETION = "{\"id\":\"1\",\"object\":\"chat.completion\",\"created\":0,\"model\":\"kimi\","
+            + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"pong\"},"
+            + "\"finish_reason\":\"stop\"}],\"usage\":{\"prompt_tokens\":1,\"completion_tokens\":1,\"total_tokens\":2}}";
+
+    private final AtomicInteger created = new AtomicInteger();
+
+    private final AtomicInteger closed = new AtomicInteger();
+
+    private DisposableServer server;
+
+    private LLMsFreeApi llmsFreeApi;
+
+    @BeforeEach
+    void startServer() {
+        this.server = HttpServer.create()
+                .port(0)
+                .route(routes -> routes
+                        .post("/v1/chat/completions", (request, response) -> response
+                                .header(HttpHeaderNames.CONTENT_TYPE, "application/json")
+                                .sendString(Mono.just(COMPLETION)))
+                        .get("/ping", (request, response) -> response.send()))
+                .bindNow();
+        this.llmsFreeApi = new LLMsFreeApi("http://localhost:" + this.server.port(), "token");
+        this.llmsFreeApi.setRequestFactory(() -> {
+            this.created.incrementAndGet();
+            return new ClosingRequestFactory();
+        });
+    }
+
+    @AfterEach
+    void stopServer() {
+        this.llmsFreeApi.closeConnections(Duration.ofSeconds(5));
+        this.server.disposeNow();
+    }
+
+    @Test
+    void closeConnectionsClosesTheOwnedRequestFactory() {
+        call();
+        call();
+        assertThat(this.created).hasValue(1);
+
+        this.llmsFreeApi.closeConnections(Duration.ofSeconds(5));
+
+        assertThat(this.closed).hasValue(1);
+        call();
+        assertThat(this.created).hasValue(2);
+    }
+
+    @Test
+    void lifecycleClosesTheConnectionsOnStopAndReopensThemOnRestart() {
+        var lifecycle = new LLMsFreeApiCheckpointLifecycle(this.llmsFreeApi, 0);
+        lifecycle.start();
+        assertThat(this.created).hasValue(0);
+        call();
+
+        lifecycle.stop();
+        assertThat(lifecycle.isRunning()).isFalse();
+        assertThat(this.closed).hasValue(1);
+
+        lifecycle.start();
+        assertThat(lifecycle.isRunning()).isTrue();
+        // Warmed up again with a new blocking client.
+        assertThat(this.created).hasValue(2);
+    }
+
+    private void call() {
+        var request = new LLMsFreeApi.ChatCompletionRequest(LLMsFreeApi.ChatModel.KIMI.getValue(),
+                List.of(new LLMsFreeApi.ChatCompletionMessage("ping", LLMsFreeApi.ChatCompletionMessage.Role.USER)),
+                false);
+        assertThat(this.llmsFreeApi.chatCompletionEntity(request).getBody().choices()).hasSize(1);
+    }
+
+    private class ClosingRequestFactory extends SimpleClientHttpRequestFactory implements AutoCloseable {
+
+        @Override
+        public void close() {
+            LLMsFreeApiCloseConnectionsTest.this.closed.incrementAndGet();
+        }
+
+    }
+
+}
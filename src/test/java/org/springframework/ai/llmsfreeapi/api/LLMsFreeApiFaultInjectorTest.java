@@ -0,0 +1,116 @@
+package org.springframework.ai.llmsfreeapi.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.llmsfreeapi.metrics.LLMsFreeApiMetrics;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LLMsFreeApiFaultInjectorTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private static final String COMPLETION = "{\"id\":\"1\",\"object\":\"chat.completion\",\"created\":0,"
+            + "\"model\":\"kimi\",\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"hi\"},"
+            + "\"finish_reason\":\"stop\"}]}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final LLMsFreeApiMetrics metrics = new LLMsFreeApiMetrics();
+
+    private final LLMsFreeApiFaultInjector faultInjector = new LLMsFreeApiFaultInjector(this.metrics);
+
+    private DisposableServer server;
+
+    @AfterEach
+    void stopServer() {
+        if (this.server != null) {
+            this.server.disposeNow();
+        }
+    }
+
+    @Test
+    void endsAStreamBeforeItsDoneEvent() {
+        // The whole stream in one write, so in one buffer.
+        serve(200, "text/event-stream", "data: a\n\ndata: b\n\ndata: [DONE]\n\n");
+        this.faultInjector.setRate(LLMsFreeApiFaultInjector.Fault.NETWORK_ERROR, 1);
+
+        String body = exchange();
+
+        assertThat(body).startsWith("data: a\n\ndata: {").doesNotContain("data: b").endsWith("}\n\ndata: [DONE]\n\n");
+        assertThat(body).contains("\"finish_reason\":\"network_error\"");
+        assertThat(body.indexOf("[DONE]")).isEqualTo(body.lastIndexOf("[DONE]"));
+        assertThat(this.metrics.count(LLMsFreeApiMetrics.FAULTS_INJECTED, "fault", "network_error")).isEqualTo(1);
+    }
+
+    @Test
+    void insertsAMalformedChunkBeforeTheDoneEventOfAShortStream() {
+        serve(200, "text/event-stream", "data: a\n\ndata: [DONE]\n\n");
+        this.faultInjector.setRate(LLMsFreeApiFaultInjector.Fault.MALFORMED_CHUNK, 1);
+
+        String body = exchange();
+
+        assertThat(body).startsWith("data: a\n\ndata: {\"id\":\"fault\"").endsWith("\n\ndata: [DONE]\n\n");
+    }
+
+    @Test
+    void rewritesTheFinishReasonOfAWholeResponse() throws Exception {
+        serve(200, "application/json", COMPLETION);
+        this.faultInjector.setRate(LLMsFreeApiFaultInjector.Fault.SENSITIVE, 1);
+
+        String body = exchange();
+
+        assertThat(this.objectMapper.readTree(body).at("/choices/0/finish_reason").asText()).isEqualTo("sensitive");
+        assertThat(this.objectMapper.readTree(body).at("/choices/0/message/content").asText()).isEqualTo("hi");
+        assertThat(this.metrics.count(LLMsFreeApiMetrics.FAULTS_INJECTED, "fault", "sensitive")).isEqualTo(1);
+    }
+
+    @Test
+    void truncatesAWholeResponseWithAMalformedChunk() {
+        serve(200, "application/json", COMPLETION);
+        this.faultInjector.setRate(LLMsFreeApiFaultInjector.Fault.MALFORMED_CHUNK, 1);
+
+        assertThat(exchange()).isEqualTo(COMPLETION.substring(0, COMPLETION.length() / 2));
+    }
+
+    @Test
+    void leavesAnErrorResponseAsItIsAndCountsNothing() {
+        String error = "{\"code\":-2000,\"message\":\"Internal error\"}";
+        serve(500, "application/json", error);
+        this.faultInjector.setRate(LLMsFreeApiFaultInjector.Fault.NETWORK_ERROR, 1);
+
+        assertThat(exchange()).isEqualTo(error);
+        assertThat(this.metrics.count(LLMsFreeApiMetrics.FAULTS_INJECTED, "fault", "network_error")).isZero();
+    }
+
+    private void serve(int status, String contentType, String body) {
+        this.server = HttpServer.create()
+                .port(0)
+                .route(routes -> routes.post("/v1/chat/completions", (request, response) -> response
+                        .status(HttpResponseStatus.valueOf(status))
+                        .header(HttpHeaderNames.CONTENT_TYPE, contentType)
+                        .sendString(Mono.just(body))))
+                .bindNow();
+    }
+
+    private String exchange() {
+        return WebClient.builder()
+                .baseUrl("http://localhost:" + this.server.port())
+                .filter(this.faultInjector.filter())
+                .build()
+                .post()
+                .uri("/v1/chat/completions")
+                .exchangeToMono(response -> response.bodyToMono(String.class))
+                .block(TIMEOUT);
+    }
+
+}
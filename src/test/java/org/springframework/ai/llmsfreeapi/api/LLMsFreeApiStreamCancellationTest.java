@@ -0,0 +1,100 @@
+package org.springframework.ai.llmsfreeapi.api;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.llmsfreeapi.LLMsFreeApiChatClient;
+import org.springframework.ai.llmsfreeapi.metrics.LLMsFreeApiMetrics;
+import reactor.core.publisher.Flux;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Streams cancelled by their subscriber, e.g. a browser closing mid-answer, must close
+ * their upstream connection and leave nothing subscribed.
+ */
+class LLMsFreeApiStreamCancellationTest {
+
+    private static final String CHUNK = "data: {\"id\":\"1\",\"object\":\"chat.completion.chunk\",\"created\":0,"
+            + "\"model\":\"kimi\",\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":\"x\"},"
+            + "\"finish_reason\":null}]}\n\n";
+
+    private static final int STREAMS = 200;
+
+    private final AtomicInteger openConnections = new AtomicInteger();
+
+    private final AtomicInteger activeGenerations = new AtomicInteger();
+
+    private DisposableServer server;
+
+    private LLMsFreeApi llmsFreeApi;
+
+    @BeforeEach
+    void startServer() {
+        // A generation which never ends on its own, as long as the connection is open.
+        this.server = HttpServer.create()
+                .port(0)
+                .doOnConnection(connection -> {
+                    this.openConnections.incrementAndGet();
+                    connection.onDispose(this.openConnections::decrementAndGet);
+                })
+                .route(routes -> routes.post("/v1/chat/completions", (request, response) -> response
+                        .header(HttpHeaderNames.CONTENT_TYPE, "text/event-stream")
+                        .sendString(Flux.interval(Duration.ofMillis(5))
+                                .map(i -> CHUNK)
+                                .doOnSubscribe(subscription -> this.activeGenerations.incrementAndGet())
+                                .doFinally(signal -> this.activeGenerations.decrementAndGet()))))
+                .bindNow();
+        this.llmsFreeApi = new LLMsFreeApi("http://localhost:" + this.server.port(), "token");
+    }
+
+    @AfterEach
+    void stopServer() {
+        this.llmsFreeApi.closeConnections(Duration.ofSeconds(5));
+        this.server.disposeNow();
+    }
+
+    @Test
+    void cancelledStreamsCloseTheirConnections() {
+        var request = new LLMsFreeApi.ChatCompletionRequest(LLMsFreeApi.ChatModel.KIMI.getValue(),
+                List.of(new LLMsFreeApi.ChatCompletionMessage("hello", LLMsFreeApi.ChatCompletionMessage.Role.USER)),
+                true);
+
+        Flux.range(0, STREAMS)
+                .flatMap(i -> this.llmsFreeApi.chatCompletionStream(request).take(3), 20)
+                .blockLast(Duration.ofSeconds(30));
+
+        assertNoLeaks();
+    }
+
+    @Test
+    void cancelledChatStreamsCloseTheirConnections() {
+        var chatClient = new LLMsFreeApiChatClient(this.llmsFreeApi);
+
+        Flux.range(0, STREAMS)
+                .flatMap(i -> chatClient.stream(new Prompt("hello")).take(3), 20)
+                .blockLast(Duration.ofSeconds(30));
+
+        assertNoLeaks();
+    }
+
+    private void assertNoLeaks() {
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() -> {
+            assertThat(this.activeGenerations).hasValue(0);
+            assertThat(this.openConnections).hasValue(0);
+        });
+        var metrics = this.llmsFreeApi.getMetrics();
+        assertThat(metrics.count(LLMsFreeApiMetrics.STREAM_CANCELLED)).isEqualTo(STREAMS);
+        assertThat(metrics.gaugeSnapshot()).allSatisfy((id, value) -> assertThat(value).isZero());
+    }
+
+}
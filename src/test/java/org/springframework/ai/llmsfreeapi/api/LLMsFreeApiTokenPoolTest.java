@@ -0,0 +1,115 @@
+package org.springframework.ai.llmsfreeapi.api;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+import static org.awaitility.Awaitility.await;
+
+class LLMsFreeApiTokenPoolTest {
+
+    @Test
+    void splitsTheApiKeyIntoTokens() {
+        var pool = LLMsFreeApiTokenPool.of(" a, b ,,c ");
+
+        assertThat(pool.getTokens()).containsExactly("a", "b", "c");
+        assertThat(pool.isLimited()).isFalse();
+        assertThat(pool.getCapacity()).isEqualTo(Integer.MAX_VALUE);
+    }
+
+    @Test
+    void spreadsTheRequestsAcrossTheTokens() {
+        var pool = new LLMsFreeApiTokenPool(List.of("a", "b"), 2, Duration.ofSeconds(1));
+
+        var first = pool.acquire(null);
+        var second = pool.acquire(null);
+
+        assertThat(List.of(first.getToken(), second.getToken())).containsExactlyInAnyOrder("a", "b");
+        assertThat(pool.getInFlight("a")).isEqualTo(1);
+        assertThat(pool.getInFlight("b")).isEqualTo(1);
+        first.release();
+        first.release();
+        assertThat(pool.getInFlight(first.getToken())).isZero();
+    }
+
+    @Test
+    void waitsForCapacityUntilTheAcquireTimeout() {
+        var pool = new LLMsFreeApiTokenPool(List.of("a"), 1, Duration.ofMillis(100));
+        var lease = pool.acquire(null);
+
+        assertThatIllegalStateException().isThrownBy(() -> pool.acquire(null))
+                .withMessageContaining("No LLMs Free API token became available");
+        assertThat(pool.getWaiting(RequestPriority.NORMAL)).isZero();
+
+        lease.release();
+        assertThat(pool.acquire(null).getToken()).isEqualTo("a");
+    }
+
+    @Test
+    void failsWithTheDeadlineWhenItCutsTheWaitShort() {
+        var pool = new LLMsFreeApiTokenPool(List.of("a"), 1, Duration.ofSeconds(10));
+        pool.acquire(null);
+
+        assertThatExceptionOfType(DeadlineExceededException.class)
+                .isThrownBy(() -> pool.acquire(null, RequestPriority.NORMAL, Duration.ofMillis(100)));
+        assertThat(pool.getWaiting(RequestPriority.NORMAL)).isZero();
+    }
+
+    @Test
+    void keepsPinnedRequestsOnTheirToken() {
+        var pool = new LLMsFreeApiTokenPool(List.of("a", "b"), 2, Duration.ofSeconds(1));
+        pool.setAvailable("a", false);
+
+        assertThat(pool.acquire("a").getToken()).isEqualTo("a");
+        assertThat(pool.acquire(null).getToken()).isEqualTo("b");
+        assertThat(pool.acquire(null).getToken()).isEqualTo("b");
+        assertThat(pool.acquire("external").getLabel()).isEqualTo("external");
+    }
+
+    @Test
+    void servesTheWaitingRequestsByWeightedFairQueuing() throws Exception {
+        var pool = new LLMsFreeApiTokenPool(List.of("a"), 1, Duration.ofSeconds(10));
+        var held = pool.acquire(null);
+        BlockingQueue<Grant> grants = new LinkedBlockingQueue<>();
+        ExecutorService executor = Executors.newFixedThreadPool(18);
+        try {
+            for (int i = 0; i < 9; i++) {
+                for (RequestPriority priority : List.of(RequestPriority.INTERACTIVE, RequestPriority.BACKGROUND)) {
+                    executor.execute(() -> grants.add(new Grant(priority, pool.acquire(null, priority))));
+                }
+            }
+            await().atMost(Duration.ofSeconds(5)).until(() -> pool.getWaiting(RequestPriority.INTERACTIVE) == 9
+                    && pool.getWaiting(RequestPriority.BACKGROUND) == 9);
+
+            held.release();
+            List<RequestPriority> order = new ArrayList<>();
+            for (int i = 0; i < 18; i++) {
+                Grant grant = grants.poll(5, TimeUnit.SECONDS);
+                assertThat(grant).isNotNull();
+                order.add(grant.priority());
+                grant.lease().release();
+            }
+
+            // INTERACTIVE has 8 times the weight of BACKGROUND, which is not starved either.
+            assertThat(order.subList(0, 9)).filteredOn(RequestPriority.BACKGROUND::equals).hasSize(1);
+            assertThat(order).filteredOn(RequestPriority.BACKGROUND::equals).hasSize(9);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private record Grant(RequestPriority priority, LLMsFreeApiTokenPool.Lease lease) {
+    }
+
+}
@@ -0,0 +1,111 @@
+package org.springframework.ai.llmsfreeapi.attachment;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.llmsfreeapi.metrics.LLMsFreeApiMetrics;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+class AttachmentPrefetcherTest {
+
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private DisposableServer server;
+
+    @AfterEach
+    void stopServer() {
+        if (this.server != null) {
+            this.server.disposeNow();
+        }
+    }
+
+    @Test
+    void rejectsAUrlOfTheLocalNetwork() {
+        start(0);
+        var prefetcher = new AttachmentPrefetcher(new AttachmentCache(new LLMsFreeApiMetrics()), Duration.ofSeconds(5));
+
+        assertThatExceptionOfType(InvalidAttachmentException.class)
+                .isThrownBy(() -> prefetch(prefetcher, url("localhost", "/image.png")))
+                .withMessageContaining("private address");
+        assertThat(this.connections).hasValue(0);
+    }
+
+    @Test
+    void checksEveryHopOfARedirect() {
+        start(0);
+        var prefetcher = prefetcher();
+        prefetcher.setAllowedHosts(List.of("localhost"));
+
+        assertThatExceptionOfType(InvalidAttachmentException.class)
+                .isThrownBy(() -> prefetch(prefetcher, url("localhost", "/redirect")))
+                .withMessageContaining("host 127.0.0.1 is not allowed");
+        assertThat(this.connections).hasValue(1);
+    }
+
+    @Test
+    void followsTheRedirectsAndDownloadsTheTarget() {
+        start(0);
+        var prefetcher = prefetcher();
+        prefetcher.setInline(true);
+
+        String resolved = prefetch(prefetcher, url("localhost", "/redirect"));
+
+        assertThat(resolved).startsWith("data:image/png;base64,");
+    }
+
+    @Test
+    void doesNotCacheAnUnreachableUrl() {
+        start(0);
+        int port = this.server.port();
+        this.server.disposeNow();
+        var prefetcher = prefetcher();
+        String url = "http://localhost:" + port + "/image.png";
+
+        assertThatExceptionOfType(InvalidAttachmentException.class).isThrownBy(() -> prefetch(prefetcher, url))
+                .withMessageContaining("not reachable");
+
+        start(port);
+        assertThat(prefetch(prefetcher, url)).isEqualTo(url);
+    }
+
+    private AttachmentPrefetcher prefetcher() {
+        var prefetcher = new AttachmentPrefetcher(new AttachmentCache(new LLMsFreeApiMetrics()), Duration.ofSeconds(5));
+        prefetcher.setAllowPrivateNetworks(true);
+        return prefetcher;
+    }
+
+    private static String prefetch(AttachmentPrefetcher prefetcher, String url) {
+        return prefetcher.prefetch(List.of(new AttachmentPrefetcher.Attachment(url, AttachmentPrefetcher.Kind.IMAGE)))
+                .get(url);
+    }
+
+    private String url(String host, String path) {
+        return "http://" + host + ":" + this.server.port() + path;
+    }
+
+    private void start(int port) {
+        this.server = HttpServer.create()
+                .port(port)
+                .doOnConnection(connection -> this.connections.incrementAndGet())
+                .route(routes -> routes
+                        .route(request -> request.uri().equals("/redirect"), (request, response) -> response
+                                .status(HttpResponseStatus.FOUND)
+                                .header(HttpHeaderNames.LOCATION, url("127.0.0.1", "/image.png"))
+                                .send())
+                        .route(request -> request.uri().equals("/image.png"), (request, response) -> response
+                                .header(HttpHeaderNames.CONTENT_TYPE, "image/png")
+                                .sendByteArray(Mono.just(new byte[] { (byte) 0x89, 'P', 'N', 'G' }))))
+                .bindNow();
+    }
+
+}
@@ -0,0 +1,133 @@
+package org.springframework.ai.llmsfreeapi.batch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.ChatClient;
+import org.springframework.ai.chat.ChatResponse;
+import org.springframework.ai.chat.Generation;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+class LLMsFreeApiBatchRunnerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void writesOneResultPerLineInInputOrder() throws IOException {
+        Path input = input("one", "two", "fail", "four");
+        Path output = this.directory.resolve("output.jsonl");
+        var runner = new LLMsFreeApiBatchRunner(new LLMsFreeApiBatchClient(echo(new AtomicBoolean(true)), 3,
+                Schedulers.boundedElastic()));
+
+        var summary = runner.run(input, output, this.directory.resolve("checkpoint"));
+
+        assertThat(summary).isEqualTo(new LLMsFreeApiBatchRunner.Summary(0, 3, 1));
+        List<JsonNode> results = read(output);
+        assertThat(results).extracting(result -> result.get("line").asLong()).containsExactly(1L, 2L, 3L, 4L);
+        assertThat(results).extracting(result -> result.get("id").asText())
+                .containsExactly("id-one", "id-two", "id-fail", "id-four");
+        assertThat(results.get(0).get("content").asText()).isEqualTo("one");
+        assertThat(results.get(2).get("error").asText()).isEqualTo("failed: fail");
+    }
+
+    @Test
+    void resumesAfterTheLastCheckpoint() throws IOException {
+        Path input = input("one", "two", "fail", "four", "five");
+        Path output = this.directory.resolve("output.jsonl");
+        Path checkpoint = this.directory.resolve("checkpoint");
+        var failing = new AtomicBoolean(true);
+        var runner = new LLMsFreeApiBatchRunner(new LLMsFreeApiBatchClient(echo(failing), 1, Schedulers.immediate()));
+        runner.setFailFast(true);
+        runner.setCheckpointInterval(1);
+
+        assertThatIllegalStateException().isThrownBy(() -> runner.run(input, output, checkpoint))
+                .withMessageContaining("line 3");
+        assertThat(read(output)).extracting(result -> result.get("content").asText()).containsExactly("one", "two");
+
+        failing.set(false);
+        var summary = runner.run(input, output, checkpoint);
+
+        assertThat(summary).isEqualTo(new LLMsFreeApiBatchRunner.Summary(2, 3, 0));
+        assertThat(read(output)).extracting(result -> result.get("content").asText())
+                .containsExactly("one", "two", "fail", "four", "five");
+        assertThat(checkpoint).doesNotExist();
+    }
+
+    @Test
+    void startsOverOnceTheInputIsDone() throws IOException {
+        Path input = input("one", "two");
+        Path output = this.directory.resolve("output.jsonl");
+        Path checkpoint = this.directory.resolve("checkpoint");
+        var runner = new LLMsFreeApiBatchRunner(new LLMsFreeApiBatchClient(echo(new AtomicBoolean()), 1,
+                Schedulers.immediate()));
+
+        runner.run(input, output, checkpoint);
+        var summary = runner.run(input, output, checkpoint);
+
+        assertThat(summary).isEqualTo(new LLMsFreeApiBatchRunner.Summary(0, 2, 0));
+        assertThat(read(output)).extracting(result -> result.get("content").asText()).containsExactly("one", "two");
+        assertThat(checkpoint).doesNotExist();
+        assertThat(this.directory.resolve("checkpoint.tmp")).doesNotExist();
+    }
+
+    @Test
+    void refusesTheCheckpointOfAnotherInput() throws IOException {
+        Path output = this.directory.resolve("output.jsonl");
+        Path checkpoint = this.directory.resolve("checkpoint");
+        var runner = new LLMsFreeApiBatchRunner(new LLMsFreeApiBatchClient(echo(new AtomicBoolean(true)), 1,
+                Schedulers.immediate()));
+        runner.setFailFast(true);
+        runner.setCheckpointInterval(1);
+        assertThatIllegalStateException().isThrownBy(() -> runner.run(input("one", "fail"), output, checkpoint));
+
+        Path other = input("other", "input", "file");
+
+        assertThatIllegalStateException().isThrownBy(() -> runner.run(other, output, checkpoint))
+                .withMessageContaining("another input");
+        assertThat(read(output)).extracting(result -> result.get("content").asText()).containsExactly("one");
+    }
+
+    private Path input(String... prompts) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (String prompt : prompts) {
+            lines.add("{\"id\":\"id-" + prompt + "\",\"prompt\":\"" + prompt + "\"}");
+        }
+        return Files.write(this.directory.resolve("input.jsonl"), lines);
+    }
+
+    private List<JsonNode> read(Path output) throws IOException {
+        List<JsonNode> results = new ArrayList<>();
+        for (String line : Files.readAllLines(output)) {
+            results.add(this.objectMapper.readTree(line));
+        }
+        return results;
+    }
+
+    /**
+     * A chat client answering with the prompt, and failing on "fail" while failing is set.
+     */
+    private static ChatClient echo(AtomicBoolean failing) {
+        return prompt -> {
+            String content = prompt.getInstructions().get(0).getContent();
+            if (failing.get() && content.equals("fail")) {
+                throw new IllegalStateException("failed: " + content);
+            }
+            return new ChatResponse(List.of(new Generation(content)));
+        };
+    }
+
+}
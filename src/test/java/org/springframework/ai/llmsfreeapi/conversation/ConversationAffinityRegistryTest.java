@@ -0,0 +1,102 @@
+package org.springframework.ai.llmsfreeapi.conversation;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.llmsfreeapi.api.DeadlineExceededException;
+import org.springframework.ai.llmsfreeapi.tenant.TenantQuotaExceededException;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConversationAffinityRegistryTest {
+
+    @Test
+    void continuesASessionWhoseHistoryExtendsTheConversation() {
+        var registry = new ConversationAffinityRegistry();
+        List<Message> history = List.of(new UserMessage("hello"));
+        registry.update("session", "conversation", "token", history, "hi");
+
+        var session = registry.get("session", List.of(new UserMessage("hello"), new AssistantMessage("hi"),
+                new UserMessage("how are you?")));
+
+        assertThat(session).isNotNull();
+        assertThat(session.conversationId()).isEqualTo("conversation");
+        assertThat(session.token()).isEqualTo("token");
+        assertThat(registry.getToken("conversation")).isEqualTo("token");
+    }
+
+    @Test
+    void forgetsASessionWhoseHistoryWasEdited() {
+        var registry = new ConversationAffinityRegistry();
+        registry.update("session", "conversation", "token", List.of(new UserMessage("hello")), "hi");
+
+        var session = registry.get("session", List.of(new UserMessage("hello"), new AssistantMessage("edited"),
+                new UserMessage("how are you?")));
+
+        assertThat(session).isNull();
+        assertThat(registry.size()).isZero();
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedSession() {
+        var registry = new ConversationAffinityRegistry(2, ConversationAffinityRegistry.DEFAULT_TTL);
+        List<Message> history = List.of(new UserMessage("hello"));
+        registry.update("a", "conversation-a", "token", history, "hi");
+        registry.update("b", "conversation-b", "token", history, "hi");
+        assertThat(registry.get("a", next(history))).isNotNull();
+
+        registry.update("c", "conversation-c", "token", history, "hi");
+
+        assertThat(registry.size()).isEqualTo(2);
+        assertThat(registry.get("a", next(history))).isNotNull();
+        assertThat(registry.get("b", next(history))).isNull();
+        assertThat(registry.getToken("conversation-b")).isNull();
+    }
+
+    @Test
+    void keepsASessionAccessedWithinTheTtl() throws InterruptedException {
+        var registry = new ConversationAffinityRegistry(10, Duration.ofMillis(500));
+        List<Message> history = List.of(new UserMessage("hello"));
+        registry.update("session", "conversation", "token", history, "hi");
+
+        Thread.sleep(300);
+        assertThat(registry.get("session", next(history))).isNotNull();
+        Thread.sleep(300);
+
+        assertThat(registry.get("session", next(history))).isNotNull();
+    }
+
+    @Test
+    void conversationIsGoneOnlyWhenTheUpstreamSaysSo() {
+        assertThat(ConversationAffinityRegistry.isConversationGone(new NonTransientAiException("404 - Not Found")))
+                .isTrue();
+        assertThat(ConversationAffinityRegistry.isConversationGone(new TransientAiException(
+                "500 - {\"code\":-2001,\"message\":\"[请求kimi失败]: chat.not_found\"}"))).isTrue();
+        assertThat(ConversationAffinityRegistry.isConversationGone(new TransientAiException(
+                "500 - {\"code\":-2000,\"message\":\"会话不存在\"}"))).isTrue();
+
+        assertThat(ConversationAffinityRegistry.isConversationGone(new NonTransientAiException(
+                "429 - {\"message\":\"Too many requests, chat session expired\"}"))).isFalse();
+        assertThat(ConversationAffinityRegistry.isConversationGone(new TransientAiException("502 - Bad Gateway")))
+                .isFalse();
+        assertThat(ConversationAffinityRegistry.isConversationGone(new DeadlineExceededException(
+                "Request deadline exceeded"))).isFalse();
+        assertThat(ConversationAffinityRegistry.isConversationGone(new TransientAiException(
+                "No chunk received within the idle timeout of PT10S"))).isFalse();
+        assertThat(ConversationAffinityRegistry.isConversationGone(new TenantQuotaExceededException(
+                "tenant", TenantQuotaExceededException.Reason.RATE_LIMITED, Duration.ofSeconds(1)))).isFalse();
+        assertThat(ConversationAffinityRegistry.isConversationGone(new IllegalStateException(
+                "No LLMs Free API token became available within PT30S"))).isFalse();
+    }
+
+    private static List<Message> next(List<Message> history) {
+        return List.of(history.get(0), new AssistantMessage("hi"), new UserMessage("next"));
+    }
+
+}
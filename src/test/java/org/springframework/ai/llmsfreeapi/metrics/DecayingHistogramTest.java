@@ -0,0 +1,87 @@
+package org.springframework.ai.llmsfreeapi.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DecayingHistogramTest {
+
+    @Test
+    void reportsTheLatencyPercentilesWithinAQuarter() {
+        var histogram = new DecayingHistogram();
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(Duration.ofMillis(millis).toNanos(), millis > 95);
+        }
+
+        var snapshot = histogram.snapshot();
+
+        assertThat(snapshot.count()).isEqualTo(100);
+        assertThat(snapshot.errorRate()).isEqualTo(0.05);
+        assertThat(snapshot.p50().toNanos()).isBetween(Duration.ofMillis(50).toNanos(), Duration.ofMillis(63).toNanos());
+        assertThat(snapshot.p90().toNanos()).isBetween(Duration.ofMillis(90).toNanos(), Duration.ofMillis(113).toNanos());
+        assertThat(snapshot.p99().toNanos()).isBetween(Duration.ofMillis(99).toNanos(), Duration.ofMillis(124).toNanos());
+    }
+
+    @Test
+    void forgetsTheRecordsOlderThanTheWindow() throws InterruptedException {
+        var histogram = new DecayingHistogram(Duration.ofMillis(300));
+        histogram.record(Duration.ofSeconds(5).toNanos(), true);
+        assertThat(histogram.snapshot().count()).isEqualTo(1);
+
+        Thread.sleep(500);
+        histogram.record(Duration.ofMillis(1).toNanos(), false);
+
+        var snapshot = histogram.snapshot();
+        assertThat(snapshot.count()).isEqualTo(1);
+        assertThat(snapshot.errors()).isZero();
+        assertThat(snapshot.p99()).isLessThan(Duration.ofMillis(2));
+    }
+
+    @Test
+    void reportsNothingWhenEmpty() {
+        var snapshot = new DecayingHistogram().snapshot();
+
+        assertThat(snapshot.count()).isZero();
+        assertThat(snapshot.errorRate()).isZero();
+        assertThat(snapshot.p50()).isEqualTo(Duration.ZERO);
+    }
+
+    @Test
+    void recordsSmallValuesExactly() {
+        var histogram = new DecayingHistogram();
+        for (int i = 0; i < 50; i++) {
+            histogram.recordValue(1);
+        }
+        for (int i = 0; i < 45; i++) {
+            histogram.recordValue(4);
+        }
+        for (int i = 0; i < 5; i++) {
+            histogram.recordValue(7);
+        }
+
+        var snapshot = histogram.snapshot();
+
+        assertThat(snapshot.count()).isEqualTo(100);
+        assertThat(DecayingHistogram.Snapshot.value(snapshot.p50())).isEqualTo(1);
+        assertThat(DecayingHistogram.Snapshot.value(snapshot.p90())).isEqualTo(4);
+        assertThat(DecayingHistogram.Snapshot.value(snapshot.p99())).isEqualTo(7);
+    }
+
+    @Test
+    void metricsRecordTheToolRoundsPerCall() {
+        var metrics = new LLMsFreeApiMetrics();
+        metrics.recordValue(LLMsFreeApiMetrics.TOOL_ROUNDS_PER_CALL, 2);
+        metrics.recordValue(LLMsFreeApiMetrics.TOOL_ROUNDS_PER_CALL, 3);
+
+        var snapshot = metrics.histogramSnapshot()
+                .get(new LLMsFreeApiMetrics.Id(LLMsFreeApiMetrics.TOOL_ROUNDS_PER_CALL, List.of()));
+
+        assertThat(snapshot.count()).isEqualTo(2);
+        assertThat(DecayingHistogram.Snapshot.value(snapshot.p50())).isEqualTo(2);
+        assertThat(DecayingHistogram.Snapshot.value(snapshot.p99())).isEqualTo(3);
+    }
+
+}
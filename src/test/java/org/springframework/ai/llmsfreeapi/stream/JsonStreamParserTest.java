@@ -0,0 +1,68 @@
+package org.springframework.ai.llmsfreeapi.stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+class JsonStreamParserTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void emitsEachElementAsSoonAsItIsComplete() {
+        var parser = JsonStreamParser.elements(this.objectMapper, Item.class);
+
+        assertThat(parser.feed("Here you go:\n```json\n[{\"name\":\"a\",")).isEmpty();
+        assertThat(parser.feed("\"count\":1},{\"na")).containsExactly(new Item("a", 1));
+        assertThat(parser.feed("me\":\"b\",\"count\":2,\"tags\":[\"x\"]}]\n```"))
+                .containsExactly(new Item("b", 2, List.of("x")));
+        assertThat(parser.feed("That is all.")).isEmpty();
+        assertThat(parser.complete()).isEmpty();
+    }
+
+    @Test
+    void emitsATopLevelObjectOnceComplete() {
+        var parser = JsonStreamParser.elements(this.objectMapper, Item.class);
+
+        assertThat(parser.feed("{\"name\":\"a\",\"tags\":[")).isEmpty();
+        assertThat(parser.feed("\"x\"],\"count\":3}")).containsExactly(new Item("a", 3, List.of("x")));
+    }
+
+    @Test
+    void emitsThePartialObjectWithEachCompleteField() {
+        var parser = JsonStreamParser.partial(this.objectMapper, Item.class);
+
+        assertThat(parser.feed("{\"name\":\"a\",\"cou")).containsExactly(new Item("a", null));
+        assertThat(parser.feed("nt\":4}")).containsExactly(new Item("a", 4));
+        assertThat(parser.complete()).isEmpty();
+    }
+
+    @Test
+    void failsWhenTheContentEndsWithinTheJson() {
+        var parser = JsonStreamParser.elements(this.objectMapper, Item.class);
+        parser.feed("[{\"name\":\"a\"}, {\"name\":");
+
+        assertThatIllegalStateException().isThrownBy(parser::complete).withMessageContaining("ended within the JSON");
+    }
+
+    @Test
+    void failsWhenTheContentHasNoJson() {
+        var parser = JsonStreamParser.elements(this.objectMapper, Item.class);
+        parser.feed("Sorry, I cannot help with that.");
+
+        assertThatIllegalStateException().isThrownBy(parser::complete).withMessageContaining("no JSON");
+    }
+
+    record Item(String name, Integer count, List<String> tags) {
+
+        Item(String name, Integer count) {
+            this(name, count, null);
+        }
+
+    }
+
+}
@@ -0,0 +1,93 @@
+package org.springframework.ai.llmsfreeapi.stream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.ChatResponse;
+import org.springframework.ai.chat.Generation;
+import org.springframework.ai.llmsfreeapi.metrics.LLMsFreeApiMetrics;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+class ResumableStreamRegistryTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private final LLMsFreeApiMetrics metrics = new LLMsFreeApiMetrics();
+
+    @Test
+    void resumeReplaysTheMissedDeltas() {
+        var registry = registry(10);
+        List<ResumableChatEvent> events = registry.register(Flux.just(response("a"), response("b"), response("c")))
+                .collectList()
+                .block(TIMEOUT);
+
+        List<ResumableChatEvent> resumed = registry.resume(events.get(0).eventId()).collectList().block(TIMEOUT);
+
+        assertThat(resumed).extracting(ResumableChatEvent::sequence).containsExactly(2L, 3L);
+        assertThat(resumed).extracting(event -> event.response().getResult().getOutput().getContent())
+                .containsExactly("b", "c");
+        assertThat(this.metrics.count(LLMsFreeApiMetrics.STREAM_RESUMED)).isEqualTo(1);
+    }
+
+    @Test
+    void resumeFailsForAnUnknownStream() {
+        var registry = new ResumableStreamRegistry();
+
+        assertThatIllegalStateException().isThrownBy(() -> registry.resume("unknown:1").blockLast(TIMEOUT));
+    }
+
+    @Test
+    void rejectsANewStreamWhenAllAreLive() {
+        var registry = registry(2);
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        registry.register(Flux.never()).subscribe(event -> { }, errors::add);
+        registry.register(Flux.never()).subscribe(event -> { }, errors::add);
+
+        assertThatIllegalStateException().isThrownBy(() -> registry.register(Flux.never()).blockFirst(TIMEOUT))
+                .withMessageContaining("are live");
+        assertThat(registry.size()).isEqualTo(2);
+        assertThat(errors).isEmpty();
+    }
+
+    @Test
+    void evictsAStreamWithoutSubscribersRatherThanALiveOne() {
+        var registry = registry(2);
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        registry.register(Flux.never()).subscribe(event -> { }, errors::add);
+        // Registered, but its client never attached.
+        registry.register(Flux.never());
+
+        registry.register(Flux.never()).subscribe(event -> { }, errors::add);
+
+        assertThat(registry.size()).isEqualTo(2);
+        assertThat(errors).isEmpty();
+    }
+
+    @Test
+    void evictsATerminatedStreamRatherThanALiveOne() {
+        var registry = registry(2);
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        registry.register(Flux.never()).subscribe(event -> { }, errors::add);
+        registry.register(Flux.just(response("done"))).blockLast(TIMEOUT);
+
+        registry.register(Flux.never()).subscribe(event -> { }, errors::add);
+
+        assertThat(registry.size()).isEqualTo(2);
+        assertThat(errors).isEmpty();
+    }
+
+    private ResumableStreamRegistry registry(int maxStreams) {
+        return new ResumableStreamRegistry(maxStreams, ResumableStreamRegistry.DEFAULT_BUFFER_SIZE,
+                ResumableStreamRegistry.DEFAULT_TTL, ResumableStreamRegistry.DEFAULT_GRACE_PERIOD, this.metrics);
+    }
+
+    private static ChatResponse response(String content) {
+        return new ChatResponse(List.of(new Generation(content)));
+    }
+
+}
@@ -0,0 +1,127 @@
+package org.springframework.ai.llmsfreeapi.stream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.ChatResponse;
+import org.springframework.ai.chat.Generation;
+import org.springframework.ai.llmsfreeapi.metrics.LLMsFreeApiMetrics;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+class SharedStreamRegistryTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    @Test
+    void sharesOneGenerationPerRequestId() {
+        var registry = registry(10);
+        var sources = new AtomicInteger();
+
+        var first = registry.share("room", () -> {
+            sources.incrementAndGet();
+            return Flux.just(response("a"), response("b"));
+        });
+        var second = registry.share("room", () -> {
+            sources.incrementAndGet();
+            return Flux.just(response("c"));
+        });
+
+        assertThat(second).isSameAs(first);
+        assertThat(sources).hasValue(1);
+        assertThat(second.subscribe().map(response -> response.getResult().getOutput().getContent())
+                .collectList()
+                .block(TIMEOUT)).containsExactly("a", "b");
+    }
+
+    @Test
+    void rejectsANewStreamWhenAllAreLive() {
+        var registry = registry(2);
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        registry.share("a", Flux::never).subscribe().subscribe(response -> { }, errors::add);
+        registry.share("b", Flux::never).subscribe().subscribe(response -> { }, errors::add);
+
+        assertThatIllegalStateException().isThrownBy(() -> registry.share("c", Flux::never))
+                .withMessageContaining("are live");
+        assertThat(registry.size()).isEqualTo(2);
+        assertThat(registry.get("c")).isNull();
+        assertThat(errors).isEmpty();
+    }
+
+    @Test
+    void evictsAStreamWithoutSubscribersRatherThanALiveOne() {
+        var registry = registry(2);
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        registry.share("a", Flux::never).subscribe().subscribe(response -> { }, errors::add);
+        // Started, but nobody subscribed to it.
+        registry.share("b", Flux::never);
+
+        registry.share("c", Flux::never);
+
+        assertThat(registry.get("a")).isNotNull();
+        assertThat(registry.get("b")).isNull();
+        assertThat(registry.get("c")).isNotNull();
+        assertThat(errors).isEmpty();
+    }
+
+    @Test
+    void evictsATerminatedStreamRatherThanALiveOne() {
+        var registry = registry(2);
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        registry.share("a", Flux::never).subscribe().subscribe(response -> { }, errors::add);
+        registry.share("b", () -> Flux.just(response("done"))).subscribe().blockLast(TIMEOUT);
+
+        registry.share("c", Flux::never).subscribe().subscribe(response -> { }, errors::add);
+
+        assertThat(registry.get("a")).isNotNull();
+        assertThat(registry.get("b")).isNull();
+        assertThat(errors).isEmpty();
+    }
+
+    @Test
+    void concurrentSharesNeverExceedTheMaximum() throws Exception {
+        var registry = registry(4);
+        var start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<?>> shares = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                String requestId = "request-" + i;
+                shares.add(executor.submit(() -> {
+                    start.await();
+                    return registry.share(requestId, () -> Flux.just(response(requestId)));
+                }));
+            }
+            start.countDown();
+            for (Future<?> share : shares) {
+                share.get(5, TimeUnit.SECONDS);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(registry.size()).isLessThanOrEqualTo(4);
+    }
+
+    private static SharedStreamRegistry registry(int maxStreams) {
+        return new SharedStreamRegistry(maxStreams, SharedStreamRegistry.DEFAULT_BUFFER_SIZE,
+                SharedStreamRegistry.DEFAULT_TTL, SharedStreamRegistry.DEFAULT_GRACE_PERIOD, new LLMsFreeApiMetrics());
+    }
+
+    private static ChatResponse response(String content) {
+        return new ChatResponse(List.of(new Generation(content)));
+    }
+
+}
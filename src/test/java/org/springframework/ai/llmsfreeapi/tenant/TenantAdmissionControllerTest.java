@@ -0,0 +1,99 @@
+package org.springframework.ai.llmsfreeapi.tenant;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.llmsfreeapi.metrics.LLMsFreeApiMetrics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.awaitility.Awaitility.await;
+
+class TenantAdmissionControllerTest {
+
+    private static final TenantAdmissionController.Quota UNLIMITED = new TenantAdmissionController.Quota(0, 0, 0);
+
+    @Test
+    void rejectsCallsOverTheRateLimit() {
+        var controller = new TenantAdmissionController(new TenantAdmissionController.Quota(0.001, 2, 0), 0,
+                Duration.ofSeconds(1), 10, new LLMsFreeApiMetrics());
+
+        controller.acquire("a", 1).release();
+        controller.acquire("a", 1).release();
+
+        assertThatExceptionOfType(TenantQuotaExceededException.class).isThrownBy(() -> controller.acquire("a", 1))
+                .satisfies(ex -> assertThat(ex.getReason()).isEqualTo(TenantQuotaExceededException.Reason.RATE_LIMITED));
+        assertThat(controller.acquire("b", 1).getTenantId()).isEqualTo("b");
+    }
+
+    @Test
+    void doesNotForgetATenantWhoseBucketIsNotFull() {
+        var controller = new TenantAdmissionController(new TenantAdmissionController.Quota(0.001, 1, 0), 0,
+                Duration.ofSeconds(1), 1, new LLMsFreeApiMetrics());
+        controller.acquire("a", 1).release();
+
+        assertThatExceptionOfType(TenantQuotaExceededException.class).isThrownBy(() -> controller.acquire("b", 1))
+                .satisfies(ex -> assertThat(ex.getReason())
+                        .isEqualTo(TenantQuotaExceededException.Reason.TOO_MANY_TENANTS));
+        // Crowding itself out did not reset its bucket.
+        assertThatExceptionOfType(TenantQuotaExceededException.class).isThrownBy(() -> controller.acquire("a", 1))
+                .satisfies(ex -> assertThat(ex.getReason()).isEqualTo(TenantQuotaExceededException.Reason.RATE_LIMITED));
+    }
+
+    @Test
+    void forgetsTheLeastRecentlySeenIdleTenant() {
+        var controller = new TenantAdmissionController(UNLIMITED, 0, Duration.ofSeconds(1), 2,
+                new LLMsFreeApiMetrics());
+        var busy = controller.acquire("busy", 1);
+        controller.acquire("idle", 1).release();
+
+        assertThat(controller.acquire("new", 1).getTenantId()).isEqualTo("new");
+        assertThat(controller.getTenantCount()).isEqualTo(2);
+        assertThat(controller.getInFlight()).isEqualTo(2);
+        busy.release();
+    }
+
+    @Test
+    void sharesTheCapacityByDeficitRoundRobin() throws Exception {
+        var controller = new TenantAdmissionController(UNLIMITED, 1, Duration.ofSeconds(10), 10,
+                new LLMsFreeApiMetrics());
+        var held = controller.acquire("holder", 1);
+        BlockingQueue<TenantAdmissionController.Permit> permits = new LinkedBlockingQueue<>();
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        try {
+            for (int i = 0; i < 3; i++) {
+                executor.execute(() -> permits.add(controller.acquire("large", 2 * TenantAdmissionController.QUANTUM)));
+            }
+            await().atMost(Duration.ofSeconds(5)).until(() -> controller.getQueued() == 3);
+            for (int i = 0; i < 3; i++) {
+                executor.execute(() -> permits.add(controller.acquire("small", TenantAdmissionController.QUANTUM / 4)));
+            }
+            await().atMost(Duration.ofSeconds(5)).until(() -> controller.getQueued() == 6);
+
+            held.release();
+            List<String> order = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                TenantAdmissionController.Permit permit = permits.poll(5, TimeUnit.SECONDS);
+                assertThat(permit).isNotNull();
+                order.add(permit.getTenantId());
+                permit.release();
+            }
+
+            // The large prompts queued first do not hold back the small ones.
+            assertThat(order).containsExactly("small", "small", "small", "large", "large", "large");
+            assertThat(controller.getInFlight()).isZero();
+            assertThat(controller.getQueued()).isZero();
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+}